@@ -0,0 +1,85 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Keys of the benchmarks, drawn from a universe four times as large as
+ * the number of keys. UNIFORM keys are spread evenly over the universe,
+ * SKEWED keys follow a Zipf distribution so that a few hot keys are
+ * repeated many times, as in real workloads.
+ */
+class BenchmarkKeys {
+	private static final int UNIVERSE_RATIO = 4;
+	private static final double ZIPF_EXPONENT = 1.0;
+
+	enum KeyTypes {
+		INTEGER,
+		LONG,	 /* Spread over the upper bits as well */
+		STRING
+	}
+
+	enum Distributions {
+		UNIFORM,
+		SKEWED
+	}
+
+	/*
+	 * @param keyType Type of the keys
+	 * @param distribution How often each key of the universe is drawn
+	 * @param size Number of keys, including repeated ones
+	 * @param seed Seed of the random numbers, so that runs are comparable
+	 * @return Keys in the order they were drawn
+	 */
+	static Object[] generate(KeyTypes keyType, Distributions distribution, int size, long seed) {
+		Random random = new Random(seed);
+		int universe = Math.max(1, size * UNIVERSE_RATIO);
+		double[] zipf = (distribution == Distributions.SKEWED) ? zipfCumulative(universe) : null;
+		Object[] keys = new Object[size];
+		for (int i=0; i<size; i++) {
+			int value;
+			if (zipf != null) {
+				value = drawZipf(zipf, random);
+			} else {
+				value = random.nextInt(universe);
+			}
+			keys[i] = toKey(keyType, value);
+		}
+		return keys;
+	}
+
+	private static Object toKey(KeyTypes keyType, int value) {
+		if (keyType == KeyTypes.LONG) {
+			return Long.valueOf(((long)value << 32) ^ (value * 0x9e3779b97f4a7c15L));
+		}
+		else if (keyType == KeyTypes.STRING) {
+			return "key-" + value;
+		}
+		return Integer.valueOf(value);
+	}
+
+	/*
+	 * @return Probability of drawing any of the ranks [0, i], for each rank i
+	 */
+	private static double[] zipfCumulative(int universe) {
+		double[] cumulative = new double[universe];
+		double total = 0;
+		for (int rank=0; rank<universe; rank++) {
+			total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+			cumulative[rank] = total;
+		}
+		for (int rank=0; rank<universe; rank++) {
+			cumulative[rank] /= total;
+		}
+		return cumulative;
+	}
+
+	/*
+	 * Ranks are scrambled so that hot keys don't sit next to each other
+	 */
+	private static int drawZipf(double[] cumulative, Random random) {
+		int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+		if (rank < 0) {
+			rank = Math.min(-rank - 1, cumulative.length - 1);
+		}
+		return (int)(((long)rank * 0x9e3779b1L) % cumulative.length);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Results of SetBenchmark, written as CSV with one row per scenario
+ * so that reports of two versions can be compared row by row.
+ */
+class BenchmarkReport {
+	private static final String HEADER =
+		"benchmark,implementation,keyType,distribution,size,threads,iterations,"
+		+ "meanNanos,stddevNanos,minNanos,nanosPerElement";
+	private static final int SCENARIO_COLUMNS = 6; /* Columns that identify a scenario */
+	private static final int MEAN_COLUMN = 7;
+	private List<String> rows = new ArrayList<String>();
+
+	/*
+	 * @param scenario Benchmark, implementation, key type, distribution, size and threads
+	 * @param nanos Time of each measured iteration
+	 * @param elements Number of elements an iteration visits
+	 */
+	public void add(String scenario, long[] nanos, long elements) {
+		double mean = 0;
+		long min = Long.MAX_VALUE;
+		for (long time : nanos) {
+			mean += time;
+			min = Math.min(min, time);
+		}
+		mean /= nanos.length;
+		double variance = 0;
+		for (long time : nanos) {
+			variance += (time - mean) * (time - mean);
+		}
+		double stddev = (nanos.length > 1) ? Math.sqrt(variance / (nanos.length - 1)) : 0;
+		String row = String.format("%s,%d,%.0f,%.0f,%d,%.2f", scenario, nanos.length,
+								   mean, stddev, min, mean / Math.max(1, elements));
+		rows.add(row);
+		System.out.println(row);
+	}
+
+	public void write(File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try {
+			writer.println(HEADER);
+			for (String row : rows) {
+				writer.println(row);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/*
+	 * Print the mean time of each scenario found in both reports
+	 * and how many times faster the new report is.
+	 *
+	 * @param oldFile Report of the baseline version
+	 * @param newFile Report of the version to compare
+	 */
+	public static void compare(File oldFile, File newFile, PrintStream out) throws IOException {
+		Map<String, Double> oldMeans = readMeans(oldFile);
+		Map<String, Double> newMeans = readMeans(newFile);
+		out.println("benchmark,implementation,keyType,distribution,size,threads,"
+					+ "oldMeanNanos,newMeanNanos,speedup");
+		for (Map.Entry<String, Double> entry : newMeans.entrySet()) {
+			Double oldMean = oldMeans.get(entry.getKey());
+			if (oldMean == null) {
+				continue;
+			}
+			out.println(String.format("%s,%.0f,%.0f,%.2f", entry.getKey(), oldMean,
+									  entry.getValue(), oldMean / entry.getValue()));
+		}
+	}
+
+	private static Map<String, Double> readMeans(File file) throws IOException {
+		Map<String, Double> means = new LinkedHashMap<String, Double>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line = reader.readLine(); /* Header */
+			while ((line = reader.readLine()) != null) {
+				String[] columns = line.split(",");
+				if (columns.length <= MEAN_COLUMN) {
+					continue;
+				}
+				StringBuilder scenario = new StringBuilder(columns[0]);
+				for (int i=1; i<SCENARIO_COLUMNS; i++) {
+					scenario.append(',').append(columns[i]);
+				}
+				means.put(scenario.toString(), Double.valueOf(columns[MEAN_COLUMN]));
+			}
+		} finally {
+			reader.close();
+		}
+		return means;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,490 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+ * Benchmarks of HashSetWithChain with java.util.HashSet as the baseline.
+ *
+ * Every benchmark runs for each key type, distribution and size, and the
+ * bulk operations of HashSetWithChain for each number of threads and
+ * execution mode as well. Each iteration prepares its sets untimed,
+ * then times the operation.
+ *
+ * MANY_SMALL_ADD_ALL and FEW_LARGE_ADD_ALL issue concurrent addAll()
+ * from a pool of caller threads, one set per request, with the inline
+ * threshold off so that every request goes through the executor. They
+ * compare platform and virtual threads under many small requests and
+ * under a few large ones.
+ *
+ *   mvn -Pbench compile exec:exec -Dbench.args="--sizes=100000 --threads=1,4"
+ *
+ * Options, with comma separated values:
+ *   --benchmarks=ADD,UNION,...	   Names of Benchmarks, all by default
+ *   --keys=INTEGER,LONG,STRING	   Key types, INTEGER by default
+ *   --distributions=UNIFORM,SKEWED Both by default
+ *   --sizes=10000,100000		   Number of keys
+ *   --threads=1,4				   Threads of bulk operations, 1 and the processors by default
+ *   --modes=PLATFORM,VIRTUAL	   Execution modes, VIRTUAL only if the runtime has virtual threads
+ *   --warmup=3 --iterations=5	   Iterations run before measuring and measured
+ *   --output=FILE				   CSV report, target/benchmarks/report.csv by default
+ *   --compare=OLD.csv,NEW.csv	   Compare two reports instead of running benchmarks
+ *
+ * JMH would have been the natural harness, but it only accepts benchmark
+ * classes in a named package and the sets live in the unnamed package.
+ */
+class SetBenchmark {
+	private static final long SEED = 42;
+	private static volatile long sink; /* Keeps results alive so that the JIT can't drop the work */
+	private static final int CALLERS = 4 * Runtime.getRuntime().availableProcessors(); /* Concurrent requests */
+	private static final int SMALL_REQUEST_SIZE = 1024;
+	private static final int LARGE_REQUESTS = 2;
+	private static ExecutorService callers; /* Issues the requests of concurrent benchmarks */
+
+	enum Benchmarks {
+		ADD,
+		CONTAINS,
+		REMOVE,
+		ADD_ALL_COLLECTION,
+		ADD_ALL_SET,
+		REMOVE_ALL_COLLECTION,
+		REMOVE_ALL_SET,
+		RETAIN_ALL_COLLECTION,
+		RETAIN_ALL_SET,
+		CONTAINS_ALL_COLLECTION,
+		CONTAINS_ALL_SET,
+		UNION,
+		INTERSECTION,
+		DIFFERENCE,
+		MANY_SMALL_ADD_ALL,
+		FEW_LARGE_ADD_ALL
+	}
+
+	/*
+	 * One measured iteration of a scenario
+	 */
+	private static abstract class Trial {
+		/* Untimed setup of the iteration */
+		abstract void prepare();
+
+		/* Timed part of the iteration, returning something derived from the result */
+		abstract long run();
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> benchmarks = names(Benchmarks.values());
+		List<String> keyTypes = Arrays.asList("INTEGER");
+		List<String> distributions = names(BenchmarkKeys.Distributions.values());
+		List<String> sizes = Arrays.asList("10000", "100000");
+		List<String> threads = new ArrayList<String>(new LinkedHashSet<String>(Arrays.asList(
+			"1", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+		List<String> modes = VirtualThreads.isSupported()
+			? names(ExecutionModes.values()) : Arrays.asList(ExecutionModes.PLATFORM.name());
+		int warmup = 3;
+		int iterations = 5;
+		File output = new File("target/benchmarks/report.csv");
+
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new IllegalArgumentException("Illegal option: " + arg);
+			}
+			String name = arg.substring(2, separator);
+			String value = arg.substring(separator + 1);
+			List<String> values = Arrays.asList(value.split(","));
+			if (name.equals("benchmarks")) {
+				benchmarks = values;
+			}
+			else if (name.equals("keys")) {
+				keyTypes = values;
+			}
+			else if (name.equals("distributions")) {
+				distributions = values;
+			}
+			else if (name.equals("sizes")) {
+				sizes = values;
+			}
+			else if (name.equals("threads")) {
+				threads = values;
+			}
+			else if (name.equals("modes")) {
+				for (String mode : values) {
+					if (ExecutionModes.valueOf(mode) == ExecutionModes.VIRTUAL && !VirtualThreads.isSupported()) {
+						throw new IllegalArgumentException("Illegal mode, as the runtime has no virtual threads: " + mode);
+					}
+				}
+				modes = values;
+			}
+			else if (name.equals("warmup")) {
+				warmup = Integer.parseInt(value);
+			}
+			else if (name.equals("iterations")) {
+				iterations = Integer.parseInt(value);
+			}
+			else if (name.equals("output")) {
+				output = new File(value);
+			}
+			else if (name.equals("compare")) {
+				if (values.size() != 2) {
+					throw new IllegalArgumentException("Illegal option: " + arg);
+				}
+				BenchmarkReport.compare(new File(values.get(0)), new File(values.get(1)), System.out);
+				return;
+			}
+			else {
+				throw new IllegalArgumentException("Illegal option: " + arg);
+			}
+		}
+
+		callers = Executors.newFixedThreadPool(CALLERS);
+		BenchmarkReport report = new BenchmarkReport();
+		for (String benchmarkName : benchmarks) {
+			Benchmarks benchmark = Benchmarks.valueOf(benchmarkName);
+			for (String keyTypeName : keyTypes) {
+				BenchmarkKeys.KeyTypes keyType = BenchmarkKeys.KeyTypes.valueOf(keyTypeName);
+				for (String distributionName : distributions) {
+					BenchmarkKeys.Distributions distribution =
+						BenchmarkKeys.Distributions.valueOf(distributionName);
+					for (String sizeName : sizes) {
+						int size = Integer.parseInt(sizeName);
+						/* Keys of the set and of the argument, overlapping each other */
+						Object[] keys   = BenchmarkKeys.generate(keyType, distribution, size, SEED);
+						Object[] others = BenchmarkKeys.generate(keyType, distribution, size, SEED + 1);
+						String scenario = benchmark + ",%s," + keyType + "," + distribution + "," + size;
+
+						report.add(String.format(scenario, "HashSet") + ",1",
+								   measure(newHashSetTrial(benchmark, keys, others), warmup, iterations),
+								   size);
+						for (String modeName : modes) {
+							ExecutionModes mode = ExecutionModes.valueOf(modeName);
+							if (mode != ExecutionModes.PLATFORM && !isBulk(benchmark)) {
+								continue;
+							}
+							String implementation = (mode == ExecutionModes.PLATFORM)
+								? "HashSetWithChain" : "HashSetWithChain-" + mode;
+							for (String threadName : threads) {
+								int numberOfThreads = Integer.parseInt(threadName);
+								if (numberOfThreads > 1 && !isBulk(benchmark)) {
+									continue;
+								}
+								/* Virtual threads don't run on a pool of our own */
+								ForkJoinPool pool = (mode == ExecutionModes.PLATFORM)
+									? new ForkJoinPool(numberOfThreads) : null;
+								HashSetWithChain.setDefaultExecutor(pool);
+								HashSetWithChain.setDefaultExecutionMode(mode);
+								try {
+									Trial trial = newHashSetWithChainTrial(benchmark, keys, others,
+																		   numberOfThreads, pool);
+									report.add(String.format(scenario, implementation) + "," + numberOfThreads,
+											   measure(trial, warmup, iterations), size);
+								} finally {
+									HashSetWithChain.setDefaultExecutor(null);
+									HashSetWithChain.setDefaultExecutionMode(ExecutionModes.PLATFORM);
+									if (pool != null) {
+										pool.shutdown();
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		callers.shutdown();
+		report.write(output);
+		System.out.println("Report written to " + output);
+	}
+
+	/*
+	 * @return Keys of each request of a concurrent benchmark
+	 */
+	private static List<List<Object>> requests(Benchmarks benchmark, Object[] keys) {
+		int requestSize = (benchmark == Benchmarks.MANY_SMALL_ADD_ALL)
+			? SMALL_REQUEST_SIZE : (keys.length + LARGE_REQUESTS - 1) / LARGE_REQUESTS;
+		List<List<Object>> requests = new ArrayList<List<Object>>();
+		List<Object> keyList = Arrays.asList(keys);
+		for (int from=0; from<keys.length; from+=requestSize) {
+			requests.add(keyList.subList(from, Math.min(keys.length, from + requestSize)));
+		}
+		return requests;
+	}
+
+	/*
+	 * Run the requests on the caller threads and wait for all of them
+	 *
+	 * @return Total of the results of the requests
+	 */
+	private static long runConcurrently(List<Callable<Long>> requests) {
+		long total = 0;
+		try {
+			for (Future<Long> result : callers.invokeAll(requests)) {
+				total += result.get();
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return total;
+	}
+
+	private static boolean isConcurrent(Benchmarks benchmark) {
+		return benchmark == Benchmarks.MANY_SMALL_ADD_ALL
+			|| benchmark == Benchmarks.FEW_LARGE_ADD_ALL;
+	}
+
+	private static List<String> names(Enum<?>[] values) {
+		List<String> names = new ArrayList<String>();
+		for (Enum<?> value : values) {
+			names.add(value.name());
+		}
+		return names;
+	}
+
+	/*
+	 * @return True if the number of threads matters to the benchmark
+	 */
+	private static boolean isBulk(Benchmarks benchmark) {
+		return benchmark != Benchmarks.ADD
+			&& benchmark != Benchmarks.CONTAINS
+			&& benchmark != Benchmarks.REMOVE;
+	}
+
+	/*
+	 * @return Time of each measured iteration
+	 */
+	private static long[] measure(Trial trial, int warmup, int iterations) {
+		for (int i=0; i<warmup; i++) {
+			trial.prepare();
+			sink += trial.run();
+		}
+		long[] nanos = new long[iterations];
+		for (int i=0; i<iterations; i++) {
+			trial.prepare();
+			long start = System.nanoTime();
+			sink += trial.run();
+			nanos[i] = System.nanoTime() - start;
+		}
+		return nanos;
+	}
+
+	private static HashSetWithChain<Object> newSet(Object[] keys, int numberOfThreads,
+												   ForkJoinPool pool) {
+		HashSetWithChain<Object> set = new HashSetWithChain<Object>();
+		if (pool != null) {
+			set.setExecutor(pool);
+		}
+		set.setParallelism(numberOfThreads);
+		set.addAll(Arrays.asList(keys));
+		return set;
+	}
+
+	private static Trial newHashSetWithChainTrial(final Benchmarks benchmark,
+												  final Object[] keys, final Object[] others,
+												  final int numberOfThreads,
+												  final ForkJoinPool pool) {
+		final List<Object> keyList   = Arrays.asList(keys);
+		final List<Object> otherList = Arrays.asList(others);
+		return new Trial() {
+			private HashSetWithChain<Object> set;
+			private HashSetWithChain<Object> otherSet;
+			private HashSetWithChain<Object> copySet; /* Same keys as set */
+			private List<Callable<Long>> requests;	  /* Of concurrent benchmarks */
+
+			void prepare() {
+				if (isConcurrent(benchmark)) {
+					requests = new ArrayList<Callable<Long>>();
+					for (final List<Object> request : requests(benchmark, keys)) {
+						final HashSetWithChain<Object> requestSet =
+							newSet(new Object[0], numberOfThreads, pool);
+						requestSet.setInlineThreshold(0);
+						requests.add(new Callable<Long>() {
+							public Long call() {
+								requestSet.addAll(request);
+								return (long)requestSet.size();
+							}
+						});
+					}
+					return;
+				}
+				if (benchmark == Benchmarks.ADD) {
+					set = newSet(new Object[0], numberOfThreads, pool);
+				} else {
+					set = newSet(keys, numberOfThreads, pool);
+				}
+				otherSet = newSet(others, numberOfThreads, pool);
+				if (benchmark == Benchmarks.CONTAINS_ALL_SET) {
+					copySet = newSet(keys, numberOfThreads, pool);
+				}
+			}
+
+			long run() {
+				if (isConcurrent(benchmark)) {
+					return runConcurrently(requests);
+				}
+				if (benchmark == Benchmarks.ADD) {
+					for (Object key : keys) {
+						set.add(key);
+					}
+				}
+				else if (benchmark == Benchmarks.CONTAINS) {
+					long found = 0;
+					for (Object key : others) {
+						if (set.contains(key)) {
+							found++;
+						}
+					}
+					return found;
+				}
+				else if (benchmark == Benchmarks.REMOVE) {
+					for (Object key : keys) {
+						set.remove(key);
+					}
+				}
+				else if (benchmark == Benchmarks.ADD_ALL_COLLECTION) {
+					set.addAll(otherList);
+				}
+				else if (benchmark == Benchmarks.ADD_ALL_SET) {
+					set.addAll(otherSet);
+				}
+				else if (benchmark == Benchmarks.REMOVE_ALL_COLLECTION) {
+					set.removeAll(otherList);
+				}
+				else if (benchmark == Benchmarks.REMOVE_ALL_SET) {
+					set.removeAll(otherSet);
+				}
+				else if (benchmark == Benchmarks.RETAIN_ALL_COLLECTION) {
+					set.retainAll(otherList);
+				}
+				else if (benchmark == Benchmarks.RETAIN_ALL_SET) {
+					set.retainAll(otherSet);
+				}
+				else if (benchmark == Benchmarks.CONTAINS_ALL_COLLECTION) {
+					return set.containsAll(keyList) ? 1 : 0;
+				}
+				else if (benchmark == Benchmarks.CONTAINS_ALL_SET) {
+					return set.containsAll(copySet) ? 1 : 0;
+				}
+				else if (benchmark == Benchmarks.UNION) {
+					return SetExpression.<Object>of(set).union(otherSet).evaluate(numberOfThreads).size();
+				}
+				else if (benchmark == Benchmarks.INTERSECTION) {
+					return SetExpression.<Object>of(set).intersection(otherSet).evaluate(numberOfThreads).size();
+				}
+				else if (benchmark == Benchmarks.DIFFERENCE) {
+					return SetExpression.<Object>of(set).difference(otherSet).evaluate(numberOfThreads).size();
+				}
+				return set.size();
+			}
+		};
+	}
+
+	private static Trial newHashSetTrial(final Benchmarks benchmark,
+										 final Object[] keys, final Object[] others) {
+		final List<Object> keyList   = Arrays.asList(keys);
+		final List<Object> otherList = Arrays.asList(others);
+		return new Trial() {
+			private Set<Object> set;
+			private Set<Object> otherSet;
+			private Set<Object> copySet; /* Same keys as set */
+			private List<Callable<Long>> requests; /* Of concurrent benchmarks */
+
+			void prepare() {
+				if (isConcurrent(benchmark)) {
+					requests = new ArrayList<Callable<Long>>();
+					for (final List<Object> request : requests(benchmark, keys)) {
+						requests.add(new Callable<Long>() {
+							public Long call() {
+								return (long)new HashSet<Object>(request).size();
+							}
+						});
+					}
+					return;
+				}
+				set = new HashSet<Object>();
+				if (benchmark != Benchmarks.ADD) {
+					set.addAll(keyList);
+				}
+				otherSet = new HashSet<Object>(otherList);
+				if (benchmark == Benchmarks.CONTAINS_ALL_SET) {
+					copySet = new HashSet<Object>(keyList);
+				}
+			}
+
+			long run() {
+				if (isConcurrent(benchmark)) {
+					return runConcurrently(requests);
+				}
+				if (benchmark == Benchmarks.ADD) {
+					for (Object key : keys) {
+						set.add(key);
+					}
+				}
+				else if (benchmark == Benchmarks.CONTAINS) {
+					long found = 0;
+					for (Object key : others) {
+						if (set.contains(key)) {
+							found++;
+						}
+					}
+					return found;
+				}
+				else if (benchmark == Benchmarks.REMOVE) {
+					for (Object key : keys) {
+						set.remove(key);
+					}
+				}
+				else if (benchmark == Benchmarks.ADD_ALL_COLLECTION) {
+					set.addAll(otherList);
+				}
+				else if (benchmark == Benchmarks.ADD_ALL_SET) {
+					set.addAll(otherSet);
+				}
+				else if (benchmark == Benchmarks.REMOVE_ALL_COLLECTION) {
+					/* AbstractSet.removeAll() calls List.contains() per element when the set is smaller */
+					for (Object key : otherList) {
+						set.remove(key);
+					}
+				}
+				else if (benchmark == Benchmarks.REMOVE_ALL_SET) {
+					set.removeAll(otherSet);
+				}
+				else if (benchmark == Benchmarks.RETAIN_ALL_COLLECTION) {
+					/* Hashing the list once, as retainAll() calls List.contains() per element */
+					set.retainAll(new HashSet<Object>(otherList));
+				}
+				else if (benchmark == Benchmarks.RETAIN_ALL_SET) {
+					set.retainAll(otherSet);
+				}
+				else if (benchmark == Benchmarks.CONTAINS_ALL_COLLECTION) {
+					return set.containsAll(keyList) ? 1 : 0;
+				}
+				else if (benchmark == Benchmarks.CONTAINS_ALL_SET) {
+					return set.containsAll(copySet) ? 1 : 0;
+				}
+				else if (benchmark == Benchmarks.UNION) {
+					Set<Object> union = new HashSet<Object>(set);
+					union.addAll(otherSet);
+					return union.size();
+				}
+				else if (benchmark == Benchmarks.INTERSECTION) {
+					Set<Object> intersection = new HashSet<Object>(set);
+					intersection.retainAll(otherSet);
+					return intersection.size();
+				}
+				else if (benchmark == Benchmarks.DIFFERENCE) {
+					Set<Object> difference = new HashSet<Object>(set);
+					difference.removeAll(otherSet);
+					return difference.size();
+				}
+				return set.size();
+			}
+		};
+	}
+}
\ No newline at end of file
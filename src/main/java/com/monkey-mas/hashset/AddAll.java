@@ -5,21 +5,24 @@ import java.util.Iterator;
 class AddAll<T> extends SetOperation<T> {
 	private HashSetWithChain<T> setA;
 	private HashSetWithChain<? extends T> setB; /* Not used when adding collection */
-	private Chain<T>[] tableA;
-	private Chain<? extends T>[] tableB;		/* Not used when adding collection */
+	private ChainInterface<T>[] tableA;
+	private ChainInterface<? extends T>[] tableB;		/* Not used when adding collection */
 	private Collection<? extends T> collection; /* Not used when adding set */
+	private ScatteredCollection<T> scattered;	/* Null unless collection is split among threads */
 	private int from;
 	private int to;
 
 	public AddAll(HashSetWithChain<T> setA,
 				  HashSetWithChain<? extends T> setB,
 				  Collection<? extends T> collection,
+				  ScatteredCollection<T> scattered,
 				  int from, int to) {
 		this.setA = setA;
 		this.setB = setB;
 		this.tableA = setA.getTable();
 		this.tableB = (setB == null) ? null : setB.getTable(); 
 		this.collection = collection;
+		this.scattered = scattered;
 		this.from = from;
 		this.to   = to;
 	}
@@ -30,10 +33,13 @@ class AddAll<T> extends SetOperation<T> {
 	@Override
 	public Boolean call() {
 		try {
-			if (setB == null) { // Indicates that we'll add collections, NOT SET.
+			if (setB == null && scattered != null) { // Collection already split by chain
+				addAllScatteredElements();
+			}
+			else if (setB == null) { // Indicates that we'll add collections, NOT SET.
 				addAllElementsOfCollection();
 			}
-			else { // Will add elements in setB
+			else { // setB stores elements in the same or nested chains
 				addAllElementsOfSet();
 			}
 		} catch (Exception e) {
@@ -52,30 +58,94 @@ class AddAll<T> extends SetOperation<T> {
 			*/
 			@SuppressWarnings("unchecked") T elem = 
 				(T)iter.next();
-			int hashValue = setA.hashCode(elem); // set = setA
-			if (from <= hashValue && hashValue < to) {
-				Chain<T> chain = tableA[hashValue];
-				chain.add(elem);
+			int hashValue = setA.hash(elem); // set = setA
+			int index = setA.indexFor(hashValue);
+			if (from <= index && index < to) {
+				addToChain(index, elem, hashValue);
 			}
 		}
 	}
 
-	private void addAllElementsOfSet() {
+	private void addAllScatteredElements() {
 		for (int i=from; i<to; i++) {
-			Chain<T> 		   chainA = tableA[i];
-			Chain<? extends T> chainB = tableB[i];
+			setA.beginChainUpdate(i);
+			ChainInterface<T> chainA = tableA[i];
+			int sizeBefore = chainA.size();
+			try {
+				for (int pos=scattered.getStart(i), end=scattered.getEnd(i); pos<end; pos++) {
+					int hashValue = scattered.getHash(pos);
+					setA.addHashToBloomFilter(hashValue);
+					chainA.add(scattered.get(pos), hashValue);
+				}
+			} finally {
+				setA.endChainUpdate(i, chainA.size() - sizeBefore);
+			}
+		}
+	}
+
+	/*
+	 * Both tables are powers of two and setB uses a nested layout, so
+	 * chains whose index is the same modulo the smaller table hold the
+	 * same elements. Each range handles the chains of its indices in both
+	 * tables, without visiting any chain of another range.
+	 */
+	private void addAllElementsOfSet() {
+		int groups = Math.min(tableA.length, tableB.length);
+		for (int g=from; g<to; g++) {
+			for (int j=g; j<tableB.length; j+=groups) {
+				if (tableA.length <= tableB.length) {
+					addAllElementsOfChain(g, tableB[j]);
+				}
+				else {
+					addAllElementsOfRehashedChain(tableB[j]);
+				}
+			}
+		}
+	}
 
+	/*
+	 * All the elements of chainB belong to the chain of the index in setA
+	 */
+	private void addAllElementsOfChain(int index, ChainInterface<? extends T> chainB) {
+		setA.beginChainUpdate(index);
+		ChainInterface<T> chainA = tableA[index];
+		int sizeBefore = chainA.size();
+		try {
 			/* Add all elements in chainB by iterating chainB */
-			Iterator iter = chainB.iterator();
+			Iterator<? extends T> iter = chainB.iterator();
 			while (iter.hasNext()) {
-				/*
-			 	 * As we intend to create Chain<T> object using 
-			 	 * Chain<? extends T>, we can say that this is type-safe 
-			 	 */
-				@SuppressWarnings("unchecked") T elem = 
-					(T)iter.next();
+				T elem = iter.next();
+				setA.addToBloomFilter(elem);
 				chainA.add(elem);
 			}
+		} finally {
+			setA.endChainUpdate(index, chainA.size() - sizeBefore);
+		}
+	}
+
+	/*
+	 * Elements of chainB are spread over the chains of the group in setA
+	 */
+	private void addAllElementsOfRehashedChain(ChainInterface<? extends T> chainB) {
+		Iterator<? extends T> iter = chainB.iterator();
+		while (iter.hasNext()) {
+			T elem = iter.next();
+			int hashValue = setA.hash(elem);
+			addToChain(setA.indexFor(hashValue), elem, hashValue);
+		}
+	}
+
+	/*
+	 * Add a single element, letting the set lock its chain if it is concurrent
+	 */
+	private void addToChain(int index, T elem, int hashValue) {
+		boolean added = false;
+		setA.beginChainUpdate(index);
+		try {
+			setA.addHashToBloomFilter(hashValue);
+			added = tableA[index].add(elem, hashValue);
+		} finally {
+			setA.endChainUpdate(index, added ? 1 : 0);
 		}
 	}
 }
\ No newline at end of file
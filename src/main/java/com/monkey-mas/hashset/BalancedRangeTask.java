@@ -0,0 +1,75 @@
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Runs an operation on a range of chains in a ForkJoinPool.
+ * The range is split recursively at the middle of its weight, i.e. the
+ * number of elements to visit, rather than at the middle of its indices,
+ * so that a few heavy chains don't leave one thread with most of the work.
+ * Forked halves are stolen by idle threads of the pool.
+ */
+class BalancedRangeTask extends RecursiveTask<Boolean> {
+	private RangeScheduler scheduler;
+	private long[] prefixWeight; /* Total weight of chains [0, i) */
+	private long leafWeight;	 /* Ranges lighter than this are not split */
+	private TaskBalance.Recorder recorder;
+	private int from;
+	private int to;
+
+	public BalancedRangeTask(RangeScheduler scheduler,
+							 long[] prefixWeight,
+							 long leafWeight,
+							 TaskBalance.Recorder recorder,
+							 int from, int to) {
+		this.scheduler = scheduler;
+		this.prefixWeight = prefixWeight;
+		this.leafWeight = leafWeight;
+		this.recorder = recorder;
+		this.from = from;
+		this.to   = to;
+	}
+
+	@Override
+	protected Boolean compute() {
+		long weight = prefixWeight[to] - prefixWeight[from];
+		if (scheduler.isStopped()) {
+			/* Another range already decided the result */
+			return false;
+		}
+		if (to - from < 2 || weight <= leafWeight) {
+			return scheduler.runRange(from, to, recorder);
+		}
+
+		long half = prefixWeight[from] + weight / 2;
+		int middle = splitIndex(prefixWeight, from, to, half);
+		BalancedRangeTask left =
+			new BalancedRangeTask(scheduler, prefixWeight, leafWeight, recorder, from, middle);
+		BalancedRangeTask right =
+			new BalancedRangeTask(scheduler, prefixWeight, leafWeight, recorder, middle, to);
+
+		/* Leave the left half to be stolen and work on the right half */
+		left.fork();
+		boolean rightResult = right.compute();
+		boolean leftResult  = left.join();
+		return leftResult && rightResult;
+	}
+
+	/*
+	 * @param prefixWeight Total weight of chains [0, i)
+	 * @param target Weight to split at
+	 * @return Index in (from, to) whose prefix weight is the closest from above to target
+	 */
+	static int splitIndex(long[] prefixWeight, int from, int to, long target) {
+		int low  = from + 1;
+		int high = to - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (prefixWeight[middle] < target) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
\ No newline at end of file
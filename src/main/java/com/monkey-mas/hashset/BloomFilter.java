@@ -0,0 +1,101 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/*
+ * Blocked Bloom filter over the hash values of a set.
+ * Each hash value sets one bit in each word of a single 512-bit block,
+ * so a lookup reads one or two cache lines however large the filter is.
+ * It never misses an added hash value, but cannot forget one either:
+ * after removals it must be rebuilt to stay selective.
+ */
+class BloomFilter {
+	static final int DEFAULT_BITS_PER_ELEMENT = 12;
+	private static final int WORDS_PER_BLOCK = 8;	/* 512 bits, a cache line */
+	private static final int BITS_PER_BLOCK = WORDS_PER_BLOCK * Long.SIZE;
+	private static final int MAXIMUM_BLOCKS = 1 << 26;
+	/* Odd constants choosing the bit of each word, as in the Parquet split block filter */
+	private static final int[] SALTS = {
+		0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+		0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31
+	};
+	/* Sets bits atomically, as threads of a bulk operation add to the same blocks */
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+	private final long[] words;
+	private final int blockMask;
+	private final long capacity;
+
+	/*
+	 * @param capacity Number of elements the filter is sized for
+	 * @param bitsPerElement Bits of the filter per element, more giving fewer false positives
+	 */
+	public BloomFilter(long capacity, int bitsPerElement) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		}
+		if (bitsPerElement <= 0) {
+			throw new IllegalArgumentException("Illegal bits per element: " + bitsPerElement);
+		}
+		long required = (capacity * bitsPerElement + BITS_PER_BLOCK - 1) / BITS_PER_BLOCK;
+		int blocks = 1;
+		while (blocks < required && blocks < MAXIMUM_BLOCKS) {
+			blocks <<= 1;
+		}
+		this.words = new long[blocks * WORDS_PER_BLOCK];
+		this.blockMask = blocks - 1;
+		this.capacity = capacity;
+	}
+
+	/*
+	 * @return Number of elements the filter is sized for
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/*
+	 * @return Size of the filter in bytes
+	 */
+	public long getSizeInBytes() {
+		return (long)words.length * Long.BYTES;
+	}
+
+	/*
+	 * Spread the bits of the hash value, as the hash values of
+	 * neighbouring keys such as small Integers only differ in a few bits
+	 */
+	private static long mix(int hashValue) {
+		long h = hashValue * 0x9e3779b97f4a7c15L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/*
+	 * @param hashValue Hash value of the element to add
+	 */
+	public void add(int hashValue) {
+		long h = mix(hashValue);
+		int base = ((int)(h >>> 32) & blockMask) * WORDS_PER_BLOCK;
+		int key = (int)h;
+		for (int i=0; i<WORDS_PER_BLOCK; i++) {
+			WORDS.getAndBitwiseOr(words, base + i, 1L << ((key * SALTS[i]) >>> 26));
+		}
+	}
+
+	/*
+	 * @param hashValue Hash value of the element to look up
+	 * @return False if no element of the hash value was added
+	 */
+	public boolean mightContain(int hashValue) {
+		long h = mix(hashValue);
+		int base = ((int)(h >>> 32) & blockMask) * WORDS_PER_BLOCK;
+		int key = (int)h;
+		for (int i=0; i<WORDS_PER_BLOCK; i++) {
+			if ((words[base + i] & (1L << ((key * SALTS[i]) >>> 26))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * Flight recorder event of a bulk operation on a set.
+ * Unless a recording enables it, creating and checking it is all it costs.
+ */
+@Name("hashset.BulkOperation")
+@Label("Bulk Set Operation")
+@Category("Hash Set")
+@Description("addAll/removeAll/retainAll/containsAll run by a task invoker")
+class BulkOperationEvent extends Event {
+	@Label("Operation")
+	String operation;
+
+	@Label("Set Class")
+	String setClass;
+
+	@Label("Work Size")
+	@Description("Rough number of elements the operation visits")
+	long workSize;
+
+	@Label("Table Size")
+	int tableSize;
+
+	@Label("Threads")
+	int threads;
+
+	@Label("Tasks")
+	int tasks;
+
+	@Label("Imbalance")
+	@Description("Weight of the busiest thread divided by the average weight per thread")
+	double imbalance;
+
+	@Label("Max Thread Nanos")
+	long maxThreadNanos;
+
+	@Label("Result")
+	boolean result;
+
+	/*
+	 * Fill in and commit the event if the recording wants it
+	 *
+	 * @param taskBalance Work of each thread of the operation, or null if unknown
+	 */
+	void commitOperation(SetOperationTypes setOperation, Object set, long workSize, int tableSize,
+						 int threads, TaskBalance taskBalance, boolean result) {
+		commitOperation(setOperation.name(), set, workSize, tableSize, threads, taskBalance, result);
+	}
+
+	/*
+	 * Same as above for operations that are not a SetOperationTypes, such as SetExpression
+	 */
+	void commitOperation(String operation, Object set, long workSize, int tableSize,
+						 int threads, TaskBalance taskBalance, boolean result) {
+		end();
+		if (!shouldCommit()) {
+			return;
+		}
+		this.operation = operation;
+		this.setClass = set.getClass().getSimpleName();
+		this.workSize = workSize;
+		this.tableSize = tableSize;
+		this.threads = threads;
+		if (taskBalance != null) {
+			this.tasks = taskBalance.getNumberOfTasks();
+			this.imbalance = taskBalance.getImbalance();
+			this.maxThreadNanos = taskBalance.getMaxThreadNanos();
+		}
+		this.result = result;
+		commit();
+	}
+}
\ No newline at end of file
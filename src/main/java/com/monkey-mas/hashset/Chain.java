@@ -1,6 +1,7 @@
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 
 class Chain<T> implements ChainInterface<T> {
 	private HashSet<T> chain;
@@ -28,4 +29,8 @@ class Chain<T> implements ChainInterface<T> {
 	public Iterator<T> iterator() {
 		return chain.iterator();
 	}
+
+	public void forEach(Consumer<? super T> action) {
+		chain.forEach(action);
+	}
 }
\ No newline at end of file
@@ -1,5 +1,34 @@
+import java.util.Iterator;
+import java.util.function.Consumer;
+
 public interface ChainInterface<T> {
 	public abstract boolean add(T data);
 	public abstract boolean remove(T data);
 	public abstract boolean contains(T data);
+
+	/*
+	 * Same as add/remove/contains, given the hash value the set computed
+	 * for the input data with its HashStrategy, so that chains keyed by
+	 * the hash value don't compute it again. Others ignore it.
+	 */
+	public default boolean add(T data, int hashValue) {
+		return add(data);
+	}
+
+	public default boolean remove(T data, int hashValue) {
+		return remove(data);
+	}
+
+	public default boolean contains(T data, int hashValue) {
+		return contains(data);
+	}
+
+	public abstract int size();
+	public abstract Iterator<T> iterator();
+
+	/*
+	 * Pass every element to action without creating an iterator.
+	 * The action must not change the chain.
+	 */
+	public abstract void forEach(Consumer<? super T> action);
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+/*
+ * Distribution of the number of elements among the chains of a table,
+ * taken at once when asked for, so it costs nothing on other operations.
+ */
+class ChainOccupancy {
+	private static final int MAX_TRACKED_LENGTH = 64; /* Longer chains share the last bucket */
+	private final int tableSize;
+	private final long[] histogram; /* Number of chains holding i elements */
+	private final int maxChainLength;
+	private final long totalElements;
+
+	private ChainOccupancy(int tableSize, long[] histogram, int maxChainLength, long totalElements) {
+		this.tableSize = tableSize;
+		this.histogram = histogram;
+		this.maxChainLength = maxChainLength;
+		this.totalElements = totalElements;
+	}
+
+	/*
+	 * @param table Table to walk
+	 * @return Occupancy of the chains of the table
+	 */
+	static ChainOccupancy of(ChainInterface<?>[] table) {
+		long[] histogram = new long[MAX_TRACKED_LENGTH + 1];
+		int maxChainLength = 0;
+		long totalElements = 0;
+		for (ChainInterface<?> chain : table) {
+			int length = chain.size();
+			histogram[Math.min(length, MAX_TRACKED_LENGTH)]++;
+			maxChainLength = Math.max(maxChainLength, length);
+			totalElements += length;
+		}
+		return new ChainOccupancy(table.length, histogram, maxChainLength, totalElements);
+	}
+
+	public int getTableSize() {
+		return tableSize;
+	}
+
+	/*
+	 * @return Number of chains holding i elements at index i,
+	 *         the last index counting all the longer chains as well
+	 */
+	public long[] getHistogram() {
+		return histogram.clone();
+	}
+
+	public int getMaxChainLength() {
+		return maxChainLength;
+	}
+
+	public long getEmptyChains() {
+		return histogram[0];
+	}
+
+	public double getMeanChainLength() {
+		return (tableSize == 0) ? 0 : (double)totalElements / tableSize;
+	}
+
+	@Override
+	public String toString() {
+		return "ChainOccupancy[tableSize=" + tableSize
+			+ ", empty=" + getEmptyChains()
+			+ ", mean=" + String.format("%.2f", getMeanChainLength())
+			+ ", max=" + maxChainLength + "]";
+	}
+}
\ No newline at end of file
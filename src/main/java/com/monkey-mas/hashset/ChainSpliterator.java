@@ -0,0 +1,134 @@
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/*
+ * Spliterator over a range of chains of HashSetWithChain.
+ * It splits at the chain that halves the remaining elements, the way
+ * RangeScheduler balances bulk operations, so parallel streams get an
+ * even share of elements rather than of chains.
+ *
+ * Sizes are exact for sets that are not changed meanwhile. Concurrent
+ * sets get estimates instead and report CONCURRENT.
+ */
+class ChainSpliterator<T> implements Spliterator<T> {
+	private final ChainInterface<T>[] table;
+	private final long[] prefixSize; /* Elements of chains [0, i), null if sizes are not exact */
+	private final int characteristics;
+	private int index;				/* Next chain to visit */
+	private final int end;
+	private long estimate;			/* Only used if prefixSize is null */
+	private Iterator<T> current;	/* Chain being visited by tryAdvance(), null otherwise */
+
+	private ChainSpliterator(ChainInterface<T>[] table, long[] prefixSize, int characteristics,
+							 int from, int to, long estimate) {
+		this.table = table;
+		this.prefixSize = prefixSize;
+		this.characteristics = characteristics;
+		this.index = from;
+		this.end = to;
+		this.estimate = estimate;
+	}
+
+	/*
+	 * @param table Table that won't change while traversing
+	 * @return Spliterator over all the chains of table with exact sizes
+	 */
+	static <T> ChainSpliterator<T> sized(ChainInterface<T>[] table) {
+		long[] prefixSize = new long[table.length + 1];
+		for (int i=0; i<table.length; i++) {
+			prefixSize[i + 1] = prefixSize[i] + table[i].size();
+		}
+		return new ChainSpliterator<T>(table, prefixSize,
+									   Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.SUBSIZED,
+									   0, table.length, prefixSize[table.length]);
+	}
+
+	/*
+	 * @param table Table whose chains may change while traversing
+	 * @param size Current number of elements
+	 * @return Spliterator over all the chains of table with estimated sizes
+	 */
+	static <T> ChainSpliterator<T> concurrent(ChainInterface<T>[] table, long size) {
+		return new ChainSpliterator<T>(table, null,
+									   Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.CONCURRENT,
+									   0, table.length, size);
+	}
+
+	public boolean tryAdvance(Consumer<? super T> action) {
+		while (current == null || !current.hasNext()) {
+			if (index >= end) {
+				current = null;
+				return false;
+			}
+			current = table[index++].iterator();
+		}
+		action.accept(current.next());
+		return true;
+	}
+
+	/*
+	 * Hand whole chains to the action, without an iterator per chain
+	 */
+	public void forEachRemaining(Consumer<? super T> action) {
+		if (current != null) {
+			while (current.hasNext()) {
+				action.accept(current.next());
+			}
+			current = null;
+		}
+		for (; index<end; index++) {
+			table[index].forEach(action);
+		}
+	}
+
+	public Spliterator<T> trySplit() {
+		/* Don't split a range whose traversal has started, as its size is no longer known */
+		if (current != null || end - index < 2) {
+			return null;
+		}
+		int middle;
+		if (prefixSize != null) {
+			middle = splitPoint();
+		}
+		else {
+			middle = (index + end) >>> 1;
+			estimate >>>= 1;
+		}
+		ChainSpliterator<T> prefix =
+			new ChainSpliterator<T>(table, prefixSize, characteristics, index, middle, estimate);
+		index = middle;
+		return prefix;
+	}
+
+	/*
+	 * @return First chain of the second half of the elements of [index, end),
+	 *         leaving at least one chain on each side
+	 */
+	private int splitPoint() {
+		long half = (prefixSize[index] + prefixSize[end]) >>> 1;
+		int low  = index + 1;
+		int high = end - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (prefixSize[middle] < half) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	public long estimateSize() {
+		if (prefixSize != null) {
+			return prefixSize[end] - prefixSize[index];
+		}
+		return estimate;
+	}
+
+	public int characteristics() {
+		return characteristics;
+	}
+}
\ No newline at end of file
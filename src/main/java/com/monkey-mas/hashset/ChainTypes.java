@@ -0,0 +1,8 @@
+/*
+ * Implementations of ChainInterface a HashSetWithChain can store its elements in
+ */
+public enum ChainTypes {
+	HASH_SET,		 /* java.util.HashSet per chain, see Chain */
+	OPEN_ADDRESSING, /* Flat array with linear probing, see OpenAddressingChain */
+	SORTED_ARRAY	 /* Array sorted by hash value, see SortedArrayChain */
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/*
+ * Chain of ConcurrentHashSetWithChain. Readers never lock, and
+ * iterators stay valid while other threads change the chain.
+ * Null elements are not supported.
+ */
+class ConcurrentChain<T> implements ChainInterface<T> {
+	private final Set<T> chain;
+
+	public ConcurrentChain() {
+		chain = ConcurrentHashMap.<T>newKeySet();
+	}
+
+	public boolean add(T data) {
+		return chain.add(data);
+	}
+
+	public boolean remove(T data) {
+		return chain.remove(data);
+	}
+
+	public boolean contains(T data) {
+		return chain.contains(data);
+	}
+
+	public int size() {
+		return chain.size();
+	}
+
+	public Iterator<T> iterator() {
+		return chain.iterator();
+	}
+
+	public void forEach(Consumer<? super T> action) {
+		chain.forEach(action);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,552 @@
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * HashSetWithChain that many threads can use at once.
+ *
+ * - contains() never locks: chains are ConcurrentChain and a resized
+ *   table is only published once all of its chains are filled.
+ * - add()/remove() lock one of a fixed number of stripes, chosen by
+ *   the index of the chain, so writers of different chains run in parallel.
+ * - Bulk operations lock the stripe of each chain while changing it,
+ *   so they can run together with add()/remove() of other threads.
+ *   They hold the read lock of resizeLock so that the table is not
+ *   replaced under them.
+ *
+ * Resizing moves one chain at a time into the new table, under the lock
+ * of its stripe, which it shares with both of its new chains as long as
+ * both tables have at least one chain per stripe. add()/remove() move
+ * the chain they change and a few more, and bulk operations, iterators
+ * and resize() move the rest. Smaller tables are copied at once while
+ * every stripe is locked.
+ */
+class ConcurrentHashSetWithChain<T> extends HashSetWithChain<T> {
+	private static final int DEFAULT_TABLE_SIZE = 32;
+	private static final float DEFAULT_LOAD_FACTOR = 4.0f;
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 64; /* Number of stripes */
+	private final ReentrantLock[] locks;
+	private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+	private volatile Resize<T> resize; /* Non-null only while chains are moved to a new table */
+
+	/*
+	 * Chains of oldTable being moved to newTable. Moved chains are left
+	 * as they were, so readers that found them before the move still
+	 * see the elements, but nothing changes them anymore.
+	 */
+	private static class Resize<T> {
+		final ChainInterface<T>[] oldTable;
+		final ChainInterface<T>[] newTable;
+		final AtomicIntegerArray moved;	/* 1 once the chain of oldTable is moved */
+		final AtomicInteger nextIndex = new AtomicInteger(); /* Next chain add()/remove() move */
+		final AtomicInteger remaining;	/* Chains left to move */
+
+		Resize(ChainInterface<T>[] oldTable, ChainInterface<T>[] newTable) {
+			this.oldTable = oldTable;
+			this.newTable = newTable;
+			this.moved = new AtomicIntegerArray(oldTable.length);
+			this.remaining = new AtomicInteger(oldTable.length);
+		}
+
+		boolean isMoved(int index) {
+			return moved.get(index) == 1;
+		}
+	}
+
+	public ConcurrentHashSetWithChain() {
+		this(DEFAULT_TABLE_SIZE, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 */
+	public ConcurrentHashSetWithChain(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 */
+	public ConcurrentHashSetWithChain(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, new DefaultHashStrategy<T>());
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 * @param hashStrategy Hash function used to choose the chain of elements
+	 */
+	public ConcurrentHashSetWithChain(int initialCapacity, float loadFactor,
+									  HashStrategy<? super T> hashStrategy) {
+		this(initialCapacity, loadFactor, hashStrategy, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 * @param hashStrategy Hash function used to choose the chain of elements
+	 * @param concurrencyLevel Number of stripes, rounded up to a power of two
+	 */
+	public ConcurrentHashSetWithChain(int initialCapacity, float loadFactor,
+									  HashStrategy<? super T> hashStrategy,
+									  int concurrencyLevel) {
+		super(initialCapacity, loadFactor, hashStrategy, ChainTypes.HASH_SET);
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+		}
+		locks = new ReentrantLock[tableSizeFor(concurrencyLevel)];
+		for (int i=0; i<locks.length; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/*
+	 * @return Empty chain that can be read while other threads change it
+	 */
+	@Override
+	protected ChainInterface<T> newChain() {
+		return new ConcurrentChain<T>();
+	}
+
+	/*
+	 * @param index Index of the chain in table
+	 * @return Lock of the stripe the chain belongs to
+	 */
+	private ReentrantLock lockFor(int index) {
+		return locks[index & (locks.length - 1)];
+	}
+
+	/*
+	 * Lock the stripe of the chain of the hash value. While the table is
+	 * resized, the chain is first moved and the new table is returned.
+	 * The caller must unlock lockFor(index) of the returned table.
+	 *
+	 * @param hashValue Hash value of the input data
+	 * @return Table whose chain of the hash value is the one to change
+	 */
+	private ChainInterface<T>[] lockTableFor(int hashValue) {
+		while (true) {
+			ChainInterface<T>[] table = getTable();
+			int index = getHashStrategy().indexFor(hashValue, table.length);
+			ReentrantLock lock = lockFor(index);
+			lock.lock();
+			/* Read before the table, which a finished resize replaces first */
+			Resize<T> resize = this.resize;
+			if (resize != null && resize.oldTable == table) {
+				moveChain(resize, index);
+				return resize.newTable;
+			}
+			if (table == getTable()) {
+				return table;
+			}
+			/* Resized while waiting for the lock, so the index may have changed */
+			lock.unlock();
+		}
+	}
+
+	@Override
+	protected void beginChainUpdate(int index) {
+		lockFor(index).lock();
+	}
+
+	@Override
+	protected void endChainUpdate(int index, int sizeDelta) {
+		super.endChainUpdate(index, sizeDelta);
+		lockFor(index).unlock();
+	}
+
+	/*
+	 * Add the input data to set
+	 *
+	 * @param data Input data
+	 * @return Result of operation
+	 */
+	@Override
+	protected boolean addElement(T data) {
+		int hashValue = getHashStrategy().hash(data);
+		ChainInterface<T>[] table = lockTableFor(hashValue);
+		int index = getHashStrategy().indexFor(hashValue, table.length);
+		ChainInterface<T> chain = table[index];
+		boolean success = false;
+		try {
+			success = chain.add(data);
+		} finally {
+			endChainUpdate(index, success ? 1 : 0);
+		}
+		rehashStep();
+		/* Only a long chain can make the set exceed its load factor */
+		if (success && chain.size() > getLoadFactor()) {
+			growIfNeeded(table);
+		}
+		return success;
+	}
+
+	/*
+	 * Remove the input data from set.
+	 *
+	 * @param data Input data
+	 * @return Result of operation
+	 */
+	@Override
+	protected boolean removeElement(T data) {
+		int hashValue = getHashStrategy().hash(data);
+		ChainInterface<T>[] table = lockTableFor(hashValue);
+		int index = getHashStrategy().indexFor(hashValue, table.length);
+		boolean success = false;
+		try {
+			success = table[index].remove(data);
+		} finally {
+			endChainUpdate(index, success ? -1 : 0);
+		}
+		rehashStep();
+		return success;
+	}
+
+	/*
+	 * Check if the input data exists in set without locking.
+	 *
+	 * @param data Input data
+	 * @return Result of operation
+	 */
+	@Override
+	protected boolean containsElement(T data) {
+		int hashValue = getHashStrategy().hash(data);
+		Resize<T> resize = this.resize;
+		ChainInterface<T>[] table = getTable();
+		int index = getHashStrategy().indexFor(hashValue, table.length);
+		if (resize != null && resize.oldTable == table && resize.isMoved(index)) {
+			table = resize.newTable;
+			index = getHashStrategy().indexFor(hashValue, table.length);
+		}
+		return table[index].contains(data);
+	}
+
+	/*
+	 * Not supported: the filter is rebuilt while other threads add
+	 * elements, so readers could miss elements it was rebuilt without.
+	 */
+	@Override
+	public void setBloomFilterEnabled(boolean enabled) {
+		if (enabled) {
+			throw new UnsupportedOperationException("Bloom filter is not supported by concurrent sets");
+		}
+	}
+
+	/*
+	 * Weakly consistent: elements added or removed by other threads meanwhile
+	 * may or may not be seen. Removing through the iterator goes through
+	 * remove(), as the table may have been replaced since.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		final Iterator<T> iter = super.iterator();
+		return new Iterator<T>() {
+			private T last; /* Null unless it can be removed */
+
+			public boolean hasNext() {
+				return iter.hasNext();
+			}
+
+			public T next() {
+				if (!iter.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = iter.next();
+				return last;
+			}
+
+			public void remove() {
+				if (last == null) {
+					throw new IllegalStateException();
+				}
+				ConcurrentHashSetWithChain.this.remove(last);
+				last = null;
+			}
+		};
+	}
+
+	/*
+	 * Chains may change while they are traversed, so sizes are estimates
+	 */
+	@Override
+	public Spliterator<T> spliterator() {
+		completeResize();
+		return ChainSpliterator.<T>concurrent(getTable(), size());
+	}
+
+	/*
+	 * Double the table unless another thread is already resizing it
+	 * or a bulk operation is running, in which case a later add() retries.
+	 *
+	 * @param table Table the caller added an element to
+	 */
+	private void growIfNeeded(ChainInterface<T>[] table) {
+		if (size() <= table.length * (double)getLoadFactor()
+				|| table.length >= MAXIMUM_TABLE_SIZE) {
+			return;
+		}
+		if (!resizeLock.writeLock().tryLock()) {
+			return;
+		}
+		try {
+			if (table == getTable() && resize == null) {
+				beginResize(table.length * 2);
+			}
+		} finally {
+			resizeLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Called by ensureCapacity()/shrinkIfNeeded(). Skipped while this thread
+	 * runs a bulk operation, as the operation is using the current table.
+	 * Other threads keep adding and removing elements of the chains that
+	 * are not being moved.
+	 *
+	 * @param length Size of the new table
+	 */
+	@Override
+	protected void resize(int length) {
+		if (resizeLock.getReadHoldCount() > 0) {
+			return;
+		}
+		resizeLock.writeLock().lock();
+		try {
+			completeResize();
+			beginResize(length);
+			completeResize();
+		} finally {
+			resizeLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Start moving the chains to a new table, or copy a small table at once.
+	 * The caller holds the write lock of resizeLock.
+	 *
+	 * @param length Size of the new table
+	 */
+	private void beginResize(int length) {
+		ChainInterface<T>[] table = getTable();
+		if (table.length == length) {
+			return;
+		}
+		if (Math.min(table.length, length) < locks.length) {
+			/* Chains of both tables don't share stripes */
+			rehash(length);
+			return;
+		}
+		resize = new Resize<T>(table, newTable(length));
+	}
+
+	/*
+	 * Move the next few chains of the resize in progress
+	 */
+	private void rehashStep() {
+		Resize<T> resize = this.resize;
+		if (resize == null) {
+			return;
+		}
+		for (int step=0; step<REHASH_STEPS_PER_OPERATION; step++) {
+			int index = resize.nextIndex.getAndIncrement();
+			if (index >= resize.oldTable.length) {
+				return;
+			}
+			ReentrantLock lock = lockFor(index);
+			lock.lock();
+			try {
+				moveChain(resize, index);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Move all the chains left by the resize in progress. Bulk operations
+	 * call this while holding the read lock of resizeLock, so that the
+	 * table stays the same until they end.
+	 */
+	@Override
+	protected void completeResize() {
+		Resize<T> resize = this.resize;
+		if (resize == null) {
+			return;
+		}
+		for (int index=0; index<resize.oldTable.length; index++) {
+			ReentrantLock lock = lockFor(index);
+			lock.lock();
+			try {
+				moveChain(resize, index);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Copy a chain of oldTable to its chains of newTable, and publish
+	 * newTable once it was the last one. The caller holds its stripe lock.
+	 *
+	 * @param index Index of the chain in oldTable
+	 */
+	private void moveChain(Resize<T> resize, int index) {
+		if (resize.isMoved(index)) {
+			return;
+		}
+		ChainInterface<T>[] newTable = resize.newTable;
+		Iterator<T> iter = resize.oldTable[index].iterator();
+		while (iter.hasNext()) {
+			T elem = iter.next();
+			newTable[getHashStrategy().indexFor(getHashStrategy().hash(elem), newTable.length)].add(elem);
+		}
+		resize.moved.set(index, 1);
+		if (resize.remaining.decrementAndGet() == 0) {
+			setTable(newTable);
+			this.resize = null;
+		}
+	}
+
+	/*
+	 * Copy all the elements to a new table and publish it.
+	 * Readers keep using the old table, which stays unchanged
+	 * as every stripe is locked, until the new one is complete.
+	 *
+	 * @param length Size of the new table
+	 */
+	private void rehash(int length) {
+		for (ReentrantLock lock : locks) {
+			lock.lock();
+		}
+		try {
+			ChainInterface<T>[] oldTable = getTable();
+			if (oldTable.length == length) {
+				return;
+			}
+			ChainInterface<T>[] newTable = newTable(length);
+			for (ChainInterface<T> chain : oldTable) {
+				Iterator<T> iter = chain.iterator();
+				while (iter.hasNext()) {
+					T elem = iter.next();
+					newTable[getHashStrategy().indexFor(getHashStrategy().hash(elem), length)].add(elem);
+				}
+			}
+			setTable(newTable);
+		} finally {
+			for (ReentrantLock lock : locks) {
+				lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> collection, int parallelism) {
+		ensureCapacity(size() + (long)collection.size());
+		resizeLock.readLock().lock();
+		try {
+			return super.addAll(collection, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean addAll(HashSetWithChain<? extends T> set, int parallelism) {
+		ensureCapacity(size() + (long)set.size());
+		resizeLock.readLock().lock();
+		try {
+			return super.addAll(set, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<? extends T> collection, int parallelism) {
+		boolean success;
+		resizeLock.readLock().lock();
+		try {
+			success = super.removeAll(collection, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+		shrinkIfNeeded();
+		return success;
+	}
+
+	@Override
+	public boolean removeAll(HashSetWithChain<? extends T> setB, int parallelism) {
+		boolean success;
+		resizeLock.readLock().lock();
+		try {
+			success = super.removeAll(setB, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+		shrinkIfNeeded();
+		return success;
+	}
+
+	@Override
+	public boolean containsAll(Collection<? extends T> collection, int parallelism) {
+		resizeLock.readLock().lock();
+		try {
+			return super.containsAll(collection, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsAll(HashSetWithChain<? extends T> setB, int parallelism) {
+		resizeLock.readLock().lock();
+		try {
+			return super.containsAll(setB, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public BitSet containsEach(Collection<? extends T> collection, int parallelism) {
+		resizeLock.readLock().lock();
+		try {
+			return super.containsEach(collection, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean retainAll(Collection<? extends T> collection, int parallelism) {
+		boolean success;
+		resizeLock.readLock().lock();
+		try {
+			success = super.retainAll(collection, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+		shrinkIfNeeded();
+		return success;
+	}
+
+	@Override
+	public boolean retainAll(HashSetWithChain<? extends T> setB, int parallelism) {
+		boolean success;
+		resizeLock.readLock().lock();
+		try {
+			success = super.retainAll(setB, parallelism);
+		} finally {
+			resizeLock.readLock().unlock();
+		}
+		shrinkIfNeeded();
+		return success;
+	}
+}
\ No newline at end of file
@@ -5,21 +5,24 @@ import java.util.Iterator;
 class ContainsAll<T> extends SetOperation<T> {
 	private HashSetWithChain<T> setA;
 	private HashSetWithChain<? extends T> setB; /* Not used when adding collection */
-	private Chain<T>[] tableA;
-	private Chain<? extends T>[] tableB;		/* Not used when adding collection */
+	private ChainInterface<T>[] tableA;
+	private ChainInterface<? extends T>[] tableB;		/* Not used when adding collection */
 	private Collection<? extends T> collection; /* Not used when adding set */
+	private ScatteredCollection<T> scattered;	/* Null unless collection is split among threads */
 	private int from;
 	private int to;
 
 	public ContainsAll(HashSetWithChain<T> setA,
 				 	   HashSetWithChain<? extends T> setB,
 					   Collection<? extends T> collection,
+					   ScatteredCollection<T> scattered,
 					   int from, int to) {
 		this.setA = setA;
 		this.setB = setB;
 		this.tableA = setA.getTable();
 		this.tableB = (setB == null) ? null : setB.getTable(); 
 		this.collection = collection;
+		this.scattered = scattered;
 		this.from = from;
 		this.to   = to;
 	}
@@ -30,11 +33,15 @@ class ContainsAll<T> extends SetOperation<T> {
 	@Override
 	public Boolean call() {
 		try {
-			if (setB == null) { // Indicates that we'll add collections, NOT SET.
+			if (setB == null && scattered != null) { // Collection already split by chain
+				Boolean result = containsAllScatteredElements();
+				return result;
+			}
+			else if (setB == null) { // Indicates that we'll add collections, NOT SET.
 				Boolean result = containsAllElementsOfCollection();
 				return result;
 			}
-			else { // Will add elements in setB
+			else { // setB stores elements in the same or nested chains
 				Boolean result = containsAllElementsOfSet();
 				return result;
 			}
@@ -54,36 +61,56 @@ class ContainsAll<T> extends SetOperation<T> {
 			*/ 	 	 
 			@SuppressWarnings("unchecked") T elem = 
 				(T)iter.next();
-			int hashValue = setA.hashCode(elem);
-			if (from <= hashValue && hashValue < to) {
-				Chain<T> chainA = tableA[hashValue];
-				if (!chainA.contains(elem)) {
+			int hashValue = setA.hash(elem);
+			int index = setA.indexFor(hashValue);
+			if (from <= index && index < to) {
+				ChainInterface<T> chainA = tableA[index];
+				if (!setA.mightContainHash(hashValue) || !chainA.contains(elem, hashValue)) {
 					return false;
 				}
 		 	}
+			if (isStopped()) {
+				return false;
+			}
 		}
 		return true;
 	}
 
-	private Boolean containsAllElementsOfSet() {
-		for (int i=from; i<to; i++) {
-			Chain<T> 		   chainA = tableA[i];
-			Chain<? extends T> chainB = tableB[i];
-
-			/* Add all elements in chainB by iterating chainB */
-			Iterator iter = chainB.iterator();
-			while (iter.hasNext()) {
-				/*
-			 	 * As we intend to create Chain<T> object using 
-			 	 * Chain<? extends T>, we can say that this is type-safe 
-			 	 */
-				@SuppressWarnings("unchecked") T elem = 
-					(T)iter.next();
-				if (!chainA.contains(elem)) {
+	private Boolean containsAllScatteredElements() {
+		for (int i=from; i<to && !isStopped(); i++) {
+			ChainInterface<T> chainA = tableA[i];
+			for (int pos=scattered.getStart(i), end=scattered.getEnd(i); pos<end; pos++) {
+				T elem = scattered.get(pos);
+				int hashValue = scattered.getHash(pos);
+				if (!setA.mightContainHash(hashValue) || !chainA.contains(elem, hashValue)) {
 					return false;
 				}
 			}
 		}
-		return true;
+		return !isStopped();
+	}
+
+	/*
+	 * Both tables are powers of two and setB uses a nested layout, so
+	 * chains whose index is the same modulo the smaller table hold the
+	 * same elements. Each range handles the chains of its indices in both
+	 * tables, without visiting any chain of another range.
+	 */
+	private Boolean containsAllElementsOfSet() {
+		int groups = Math.min(tableA.length, tableB.length);
+		for (int g=from; g<to && !isStopped(); g++) {
+			for (int j=g; j<tableB.length; j+=groups) {
+				Iterator<? extends T> iter = tableB[j].iterator();
+				while (iter.hasNext()) {
+					T elem = iter.next();
+					/* Elements of chainB are spread over the group when setA is larger */
+					int index = (tableA.length <= tableB.length) ? g : setA.hashCode(elem);
+					if (!setA.mightContain(elem) || !tableA[index].contains(elem)) {
+						return false;
+					}
+				}
+			}
+		}
+		return !isStopped();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+import java.util.Collection;
+import java.util.Iterator;
+
+/*
+ * Check which elements of a collection exist in setA, writing the result
+ * of each element to its position in found. Ranges write to different
+ * positions, so they need no locking.
+ */
+class ContainsEach<T> extends SetOperation<T> {
+	private HashSetWithChain<T> setA;
+	private ChainInterface<T>[] tableA;
+	private Collection<? extends T> collection;
+	private ScatteredCollection<T> scattered;	/* Null unless collection is split among threads */
+	private boolean[] found;
+	private int from;
+	private int to;
+
+	public ContainsEach(HashSetWithChain<T> setA,
+						Collection<? extends T> collection,
+						ScatteredCollection<T> scattered,
+						boolean[] found,
+						int from, int to) {
+		this.setA = setA;
+		this.tableA = setA.getTable();
+		this.collection = collection;
+		this.scattered = scattered;
+		this.found = found;
+		this.from = from;
+		this.to   = to;
+	}
+
+	@Override
+	public Boolean call() {
+		try {
+			if (scattered != null) { // Collection already split by chain
+				containsEachScatteredElement();
+			}
+			else {
+				containsEachElementOfCollection();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Visit each chain of the range once, probing all the elements that belong to it
+	 */
+	private void containsEachScatteredElement() {
+		for (int i=from; i<to; i++) {
+			ChainInterface<T> chainA = tableA[i];
+			for (int pos=scattered.getStart(i), end=scattered.getEnd(i); pos<end; pos++) {
+				T elem = scattered.get(pos);
+				int hashValue = scattered.getHash(pos);
+				found[scattered.getOrder(pos)] = setA.mightContainHash(hashValue)
+					&& chainA.contains(elem, hashValue);
+			}
+		}
+	}
+
+	private void containsEachElementOfCollection() {
+		Iterator<? extends T> iter = collection.iterator();
+		for (int pos=0; pos<found.length && iter.hasNext(); pos++) {
+			/*
+			 * As we intend to create Chain<T> object using
+			 * Chain<? extends T>, we can say that this is type-safe
+			 */
+			@SuppressWarnings("unchecked") T elem =
+				(T)iter.next();
+			int hashValue = setA.hash(elem);
+			int index = setA.indexFor(hashValue);
+			if (from <= index && index < to) {
+				found[pos] = setA.mightContainHash(hashValue) && tableA[index].contains(elem, hashValue);
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+/*
+ * Uses Object.hashCode() and spreads its bits so that
+ * masking with the table size uses all of them.
+ */
+public class DefaultHashStrategy<T> extends HashStrategy<T> {
+	@Override
+	public int hash(T data) {
+		return spread(data.hashCode());
+	}
+
+	/*
+	 * Finalization mix of MurmurHash3
+	 *
+	 * @param h Hash value to mix
+	 * @return Hash value whose bits all depend on every bit of the input
+	 */
+	static int spread(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+}
\ No newline at end of file
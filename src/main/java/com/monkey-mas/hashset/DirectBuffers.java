@@ -0,0 +1,60 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Allocates and frees the direct buffers of off-heap sets.
+ * Direct buffers are normally freed only once the garbage collector finds
+ * them unreachable, so they are freed through sun.misc.Unsafe.invokeCleaner()
+ * when the runtime allows it, and left to the collector otherwise.
+ */
+class DirectBuffers {
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception e) {
+			/* Leave the buffers to the garbage collector */
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	/*
+	 * @param capacity Number of bytes
+	 * @return Zero-filled direct buffer in the native byte order
+	 */
+	static ByteBuffer allocate(long capacity) {
+		if (capacity < 0 || capacity > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		}
+		return ByteBuffer.allocateDirect((int)capacity).order(ByteOrder.nativeOrder());
+	}
+
+	/*
+	 * Release the memory of the buffer now. The buffer must not be used afterwards.
+	 *
+	 * @param buffer Direct buffer returned by allocate(), or null
+	 */
+	static void free(ByteBuffer buffer) {
+		if (buffer == null || INVOKE_CLEANER == null) {
+			return;
+		}
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		} catch (Exception e) {
+			/* The garbage collector frees it instead */
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * Adds the elements of a range of chains of the result of a SetExpression.
+ * Candidates with the layout of the result are visited chain by chain,
+ * others were scattered once by chain of the result, so that a range
+ * only visits the elements that belong to it.
+ */
+class EvaluateExpression<T> extends SetOperation<T> {
+	private HashSetWithChain<T> result;
+	private ChainInterface<T>[] resultTable;
+	private SetExpression<T> expression;
+	private List<HashSetWithChain<T>> candidates;
+	private List<ScatteredCollection<T>> scattered; /* Elements of each candidate by chain of the result, null if aligned */
+	private int from;
+	private int to;
+
+	public EvaluateExpression(HashSetWithChain<T> result,
+							  SetExpression<T> expression,
+							  List<HashSetWithChain<T>> candidates,
+							  List<ScatteredCollection<T>> scattered,
+							  int from, int to) {
+		this.result = result;
+		this.resultTable = result.getTable();
+		this.expression = expression;
+		this.candidates = candidates;
+		this.scattered = scattered;
+		this.from = from;
+		this.to   = to;
+	}
+
+	@Override
+	public Boolean call() {
+		try {
+			for (int i=from; i<to; i++) {
+				evaluateChain(i);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Fill the chain from the same chain of every aligned candidate
+	 * and from the elements of other candidates scattered to it
+	 */
+	private void evaluateChain(int index) {
+		result.beginChainUpdate(index);
+		ChainInterface<T> chain = resultTable[index];
+		int sizeBefore = chain.size();
+		try {
+			for (int k=0; k<candidates.size(); k++) {
+				HashSetWithChain<T> candidate = candidates.get(k);
+				ScatteredCollection<T> elements = scattered.get(k);
+				if (elements == null) {
+					Iterator<T> iter = candidate.getTable()[index].iterator();
+					while (iter.hasNext()) {
+						T elem = iter.next();
+						if (expression.contains(elem, candidate)) {
+							chain.add(elem);
+						}
+					}
+					continue;
+				}
+				for (int position=elements.getStart(index); position<elements.getEnd(index); position++) {
+					T elem = elements.get(position);
+					if (expression.contains(elem, candidate)) {
+						chain.add(elem, elements.getHash(position));
+					}
+				}
+			}
+		} finally {
+			result.endChainUpdate(index, chain.size() - sizeBefore);
+		}
+	}
+}
\ No newline at end of file
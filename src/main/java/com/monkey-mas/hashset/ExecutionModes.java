@@ -0,0 +1,7 @@
+/*
+ * Kinds of threads that run the ranges of bulk operations
+ */
+public enum ExecutionModes {
+	PLATFORM, /* Pool of platform threads, the common ForkJoinPool by default */
+	VIRTUAL	  /* A virtual thread per range, see VirtualThreads */
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+/*
+ * Set algebra operators a SetExpression can combine its operands with
+ */
+public enum ExpressionTypes {
+	UNION,
+	INTERSECTION,
+	DIFFERENCE,
+	SYMMETRIC_DIFFERENCE
+}
\ No newline at end of file
@@ -0,0 +1,35 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Stores byte[] keys of a fixed length, such as 16-byte hashes
+ */
+public class FixedBytesKeyCodec implements KeyCodec<byte[]> {
+	private final int width;
+
+	/*
+	 * @param width Length of every key
+	 */
+	public FixedBytesKeyCodec(int width) {
+		if (width <= 0) {
+			throw new IllegalArgumentException("Illegal width: " + width);
+		}
+		this.width = width;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public void encode(byte[] key, ByteBuffer buffer, int offset) {
+		if (key.length != width) {
+			throw new IllegalArgumentException("Illegal key length: " + key.length);
+		}
+		buffer.put(offset, key);
+	}
+
+	public byte[] decode(ByteBuffer buffer, int offset) {
+		byte[] key = new byte[width];
+		buffer.get(offset, key);
+		return key;
+	}
+}
\ No newline at end of file
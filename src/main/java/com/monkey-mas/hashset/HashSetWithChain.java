@@ -1,49 +1,186 @@
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-class HashSetWithChain<T> {
+class HashSetWithChain<T> implements Iterable<T> {
 	private static final int DEFAULT_TABLE_SIZE = 32;
-	private static final int DEFAULT_THREAD_SIZE = 1;
-	private static final int DEFAULT_UPPER_LIMIT_OF_THREAD_NUMS = 16;
-	private int size;
-	private Chain<T>[] table;
+	static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+	private static final float DEFAULT_LOAD_FACTOR = 4.0f;
+	static final int REHASH_STEPS_PER_OPERATION = 2; /* Chains moved per add/remove while resizing */
+	private static final int SHRINK_RATIO = 4; /* Shrink once the table is 4 times larger than needed */
+	private static final int DEFAULT_INLINE_THRESHOLD = 4096; /* Smaller operations run on the caller thread */
+	private static final int DEFAULT_PARALLELISM = 0; /* Let the set decide the number of threads */
+	static final int MIN_ELEMENTS_PER_THREAD = 8192; /* Smaller share isn't worth a thread */
+	private static final int DEFAULT_INGEST_BATCH_SIZE = 1 << 16; /* Elements read from a stream at a time */
+	private static volatile ExecutorService defaultExecutor;
+	private static volatile ExecutionModes defaultExecutionMode = ExecutionModes.PLATFORM;
+	private final float loadFactor;
+	private final HashStrategy<? super T> hashStrategy;
+	private final ChainTypes chainType;
+	private final int minimumTableSize;
+	private boolean shrinkEnabled;
+	private final LongAdder count = new LongAdder(); /* Striped so that threads of bulk operations don't contend */
+	private volatile ChainInterface<T>[] table; /* Volatile so that concurrent sets can publish a new one */
+	private ChainInterface<T>[] oldTable; /* Non-null only while the table is being resized */
+	private int rehashIndex;	 /* Chains of oldTable below this index are already moved */
+	private ExecutorService executor; /* Null to use the default executor */
+	private ExecutionModes executionMode; /* Null to use the default execution mode */
+	private int inlineThreshold = DEFAULT_INLINE_THRESHOLD;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int ingestBatchSize = DEFAULT_INGEST_BATCH_SIZE;
+	private volatile TaskBalance lastTaskBalance; /* Of the last bulk operation run on this set */
+	private SetMetrics metrics; /* Null unless metrics are enabled */
+	private BloomFilter bloomFilter; /* Null unless the Bloom filter is enabled */
+	private BloomFilter nextBloomFilter; /* Filled as chains are moved, replaces bloomFilter once resized */
+	private boolean ingesting; /* True while the batches of a streamed operation run */
+	private int bloomFilterBitsPerElement = BloomFilter.DEFAULT_BITS_PER_ELEMENT;
 
 	public HashSetWithChain() {
+		this(DEFAULT_TABLE_SIZE, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param hashStrategy Hash function used to choose the chain of elements
+	 */
+	public HashSetWithChain(HashStrategy<? super T> hashStrategy) {
+		this(DEFAULT_TABLE_SIZE, DEFAULT_LOAD_FACTOR, hashStrategy);
+	}
+
+	/*
+	 * @param chainType Implementation of the chains
+	 */
+	public HashSetWithChain(ChainTypes chainType) {
+		this(DEFAULT_TABLE_SIZE, DEFAULT_LOAD_FACTOR, new DefaultHashStrategy<T>(), chainType);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 */
+	public HashSetWithChain(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 */
+	public HashSetWithChain(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, new DefaultHashStrategy<T>());
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 * @param hashStrategy Hash function used to choose the chain of elements
+	 */
+	public HashSetWithChain(int initialCapacity, float loadFactor,
+							HashStrategy<? super T> hashStrategy) {
+		this(initialCapacity, loadFactor, hashStrategy, ChainTypes.HASH_SET);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 * @param hashStrategy Hash function used to choose the chain of elements
+	 * @param chainType Implementation of the chains
+	 */
+	public HashSetWithChain(int initialCapacity, float loadFactor,
+							HashStrategy<? super T> hashStrategy,
+							ChainTypes chainType) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		}
+		if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		}
+		if (hashStrategy == null) {
+			throw new NullPointerException("hashStrategy");
+		}
+		if (chainType == null) {
+			throw new NullPointerException("chainType");
+		}
+		this.loadFactor = loadFactor;
+		this.hashStrategy = hashStrategy;
+		this.chainType = chainType;
+		this.minimumTableSize = tableSizeFor(initialCapacity);
+		this.table = newTable(minimumTableSize);
+	}
+
+	/*
+	 * @param length Number of chains
+	 * @return Table filled with empty chains
+	 */
+	protected ChainInterface<T>[] newTable(int length) {
 		/*
 		 * As Chain objects only contain T,
 		 * we can say that this is type-safe
 		 */
-		@SuppressWarnings("unchecked") Chain<T>[] table = new Chain[DEFAULT_TABLE_SIZE];
-		for (int i=0; i<DEFAULT_TABLE_SIZE; i++) {
-			table[i] = new Chain<T>();
+		@SuppressWarnings("unchecked") ChainInterface<T>[] table = new ChainInterface[length];
+		for (int i=0; i<length; i++) {
+			table[i] = newChain();
 		}
-		this.table = table;
+		return table;
 	}
 
 	/*
-	 * @return The number of elements in set
+	 * @return Empty chain of the implementation chosen for this set
 	 */
-	public int size() {
-		int totalSize=0;
-		for (Chain<T> chain : table) {
-			totalSize += chain.size();
+	protected ChainInterface<T> newChain() {
+		if (chainType == ChainTypes.OPEN_ADDRESSING) {
+			return new OpenAddressingChain<T>(hashStrategy);
+		}
+		else if (chainType == ChainTypes.SORTED_ARRAY) {
+			return new SortedArrayChain<T>(hashStrategy);
+		}
+		return new Chain<T>();
+	}
+
+	/*
+	 * @return The smallest power of two that is not less than capacity
+	 */
+	static int tableSizeFor(int capacity) {
+		int length = 1;
+		while (length < capacity && length < MAXIMUM_TABLE_SIZE) {
+			length <<= 1;
 		}
-		return totalSize;
+		return length;
 	}
 
 	/*
-	 * Recompute the current size of set
+	 * @return The number of elements in set
 	 */
-	private void updateSize() {
-		size = size();
+	public int size() {
+		return (int)count.sum();
 	}
 
 	/*
 	 * @return Table that contains all the chains
 	 */
-	protected Chain<T>[] getTable() {
+	protected ChainInterface<T>[] getTable() {
 		return table;
 	}
 
+	/*
+	 * Replace the whole table at once. Used by sets that rehash
+	 * into a new table themselves instead of incrementally.
+	 *
+	 * @param table Table that contains all the chains
+	 */
+	protected void setTable(ChainInterface<T>[] table) {
+		this.table = table;
+	}
+
 	/*
 	 * @return The size of table
 	 */
@@ -52,48 +189,373 @@ class HashSetWithChain<T> {
 	}
 
 	public boolean isEmpty() {
-		if (size == 0)
-			return true;
-		return false;
+		return count.sum() == 0;
+	}
+
+	/*
+	 * Enable or disable shrinking the table after removeAll/retainAll.
+	 * The table never shrinks below its initial capacity.
+	 */
+	public void setShrinkEnabled(boolean shrinkEnabled) {
+		this.shrinkEnabled = shrinkEnabled;
 	}
 
-	/* 
-	 * Much too simple hash function used to compute the index of table
-	 * to store the input data.
-	 * FIXME(mas): Use the better function
+	/*
+	 * Enable or disable a Bloom filter in front of the chains, which lets
+	 * contains() reject most missing elements without visiting a chain.
+	 * add() and addAll() keep it up to date, and removeAll()/retainAll()
+	 * rebuild it. remove() leaves the bits of removed elements set,
+	 * which only makes the filter less selective until the next rebuild.
 	 *
-	 * @param data Input data to compute a hash value
-	 * @return Hash value computed with the input data
+	 * The filter grows with the table: a larger one is filled as chains
+	 * are moved to the new table, so add() never rebuilds it as a whole.
+	 *
+	 * @param enabled True to build the filter from the current elements
 	 */
-	public int hashCode(T data) {
-		String strFormat = data.toString();
-		int length = strFormat.length();
-		int hashValue = 0;
+	public void setBloomFilterEnabled(boolean enabled) {
+		if (enabled) {
+			rebuildBloomFilter(size());
+		}
+		else {
+			bloomFilter = null;
+			nextBloomFilter = null;
+		}
+	}
+
+	public boolean isBloomFilterEnabled() {
+		return bloomFilter != null;
+	}
 
-		for (int i=0, weight=0; i<length; i++, weight++) {
-			if (weight > 7) {
-				weight = 0;
+	/*
+	 * @param bitsPerElement Bits of the Bloom filter per element, more giving
+	 *                       fewer false positives, applied when it is next built
+	 */
+	public void setBloomFilterBitsPerElement(int bitsPerElement) {
+		if (bitsPerElement <= 0) {
+			throw new IllegalArgumentException("Illegal bits per element: " + bitsPerElement);
+		}
+		this.bloomFilterBitsPerElement = bitsPerElement;
+	}
+
+	/*
+	 * @return Size of the Bloom filter in bytes, 0 if it is disabled
+	 */
+	public long getBloomFilterSize() {
+		BloomFilter filter = bloomFilter;
+		return (filter == null) ? 0 : filter.getSizeInBytes();
+	}
+
+	/*
+	 * Build a new Bloom filter from all the elements, with room for
+	 * twice the expected size and at least until the table grows
+	 *
+	 * @param expectedSize Number of elements the set may hold
+	 */
+	private void rebuildBloomFilter(long expectedSize) {
+		final BloomFilter filter = newBloomFilter(Math.max(2 * expectedSize, getGrowthThreshold(table.length)));
+		Consumer<T> addHash = new Consumer<T>() {
+			public void accept(T elem) {
+				filter.add(hash(elem));
+			}
+		};
+		if (oldTable != null) {
+			for (int i=rehashIndex; i<oldTable.length; i++) {
+				oldTable[i].forEach(addHash);
 			}
-			hashValue += (int)strFormat.charAt(i) << (4 * weight);
 		}
+		for (ChainInterface<T> chain : table) {
+			chain.forEach(addHash);
+		}
+		bloomFilter = filter;
+		nextBloomFilter = null;
+	}
+
+	private BloomFilter newBloomFilter(long capacity) {
+		return new BloomFilter(Math.max(capacity, DEFAULT_TABLE_SIZE), bloomFilterBitsPerElement);
+	}
+
+	/*
+	 * @return Number of elements above which a table of the length grows
+	 */
+	private long getGrowthThreshold(int length) {
+		return (long)(length * (double)loadFactor);
+	}
+
+	/*
+	 * Rebuild the Bloom filter, if enabled, after elements were removed.
+	 * Streamed operations rebuild it once after their last batch.
+	 */
+	private void refreshBloomFilter() {
+		if (bloomFilter != null && !ingesting) {
+			rebuildBloomFilter(count.sum());
+		}
+	}
 
-		int result = hashValue % table.length;
-		if (result < 0) {
-			return (result * -1);
+	/*
+	 * Bulk operations call this before adding the input data to a chain
+	 */
+	void addToBloomFilter(T data) {
+		BloomFilter filter = bloomFilter;
+		if (filter != null) {
+			filter.add(hash(data));
 		}
-		return result;
+	}
+
+	/*
+	 * @param hashValue Hash value computed with hash()
+	 */
+	void addHashToBloomFilter(int hashValue) {
+		BloomFilter filter = bloomFilter;
+		if (filter != null) {
+			filter.add(hashValue);
+		}
+	}
+
+	/*
+	 * @return False if the Bloom filter rules out the input data,
+	 *         true if it may exist or there is no filter
+	 */
+	boolean mightContain(T data) {
+		BloomFilter filter = bloomFilter;
+		return filter == null || filter.mightContain(hash(data));
+	}
+
+	/*
+	 * @param hashValue Hash value computed with hash()
+	 */
+	boolean mightContainHash(int hashValue) {
+		BloomFilter filter = bloomFilter;
+		return filter == null || filter.mightContain(hashValue);
+	}
+
+	/*
+	 * @return Average number of elements per chain that triggers growth
+	 */
+	protected float getLoadFactor() {
+		return loadFactor;
+	}
+
+	/*
+	 * @return Hash function used to choose the chain of elements
+	 */
+	protected HashStrategy<? super T> getHashStrategy() {
+		return hashStrategy;
+	}
+
+	/*
+	 * @param other Set to compare with
+	 * @return True if any element is stored in the chain of the same index in both sets
+	 */
+	protected boolean hasSameLayout(HashSetWithChain<?> other) {
+		return table.length == other.table.length
+			&& hashStrategy.equals(other.hashStrategy);
+	}
+
+	/*
+	 * @param other Set to compare with
+	 * @return True if any element is stored in chains whose indices are the same
+	 *         modulo the smaller table in both sets, whatever their table sizes
+	 */
+	protected boolean hasNestedLayout(HashSetWithChain<?> other) {
+		return hashStrategy.equals(other.hashStrategy) && hashStrategy.isNested();
+	}
+
+	/*
+	 * @param data Input data
+	 * @return Hash value of the input data, before it is mapped to a chain
+	 */
+	int hash(T data) {
+		return hashStrategy.hash(data);
+	}
+
+	/*
+	 * @param hashValue Hash value computed with hash()
+	 * @return Index of table to store the data of the hash value
+	 */
+	int indexFor(int hashValue) {
+		return indexFor(hashValue, table.length);
+	}
+
+	private int indexFor(int hashValue, int length) {
+		return hashStrategy.indexFor(hashValue, length);
+	}
+
+	/*
+	 * @param data Input data to compute a hash value
+	 * @return Index of table to store the input data
+	 */
+	public int hashCode(T data) {
+		return indexFor(hash(data), table.length);
 	}
 
 	/*
 	 * @param data Input data
 	 * @return Chain that is used to add/remove/contains... the input data
 	 */
-	protected Chain<T> getChain(T data) {
+	protected ChainInterface<T> getChain(T data) {
 		int hashValue    = hashCode(data);
-		Chain<T>[] table = getTable();
+		ChainInterface<T>[] table = getTable();
 		return table[hashValue];
 	}
 
+	/*
+	 * While resizing, elements whose chain is not moved yet still live in oldTable.
+	 *
+	 * @param hashValue Hash value of the input data
+	 * @return Chain of oldTable that may hold the input data, or null if there is none
+	 */
+	private ChainInterface<T> getOldChain(int hashValue) {
+		if (oldTable == null) {
+			return null;
+		}
+		int index = indexFor(hashValue, oldTable.length);
+		if (index < rehashIndex) {
+			return null;
+		}
+		return oldTable[index];
+	}
+
+	/*
+	 * Start moving all the elements to a table of the given size.
+	 * The chains are moved a few at a time by the following add/remove
+	 * so that a single operation never pays for rehashing the whole table.
+	 *
+	 * @param length Size of the new table
+	 */
+	protected void resize(int length) {
+		completeResize();
+		oldTable = table;
+		table = newTable(length);
+		rehashIndex = 0;
+		if (bloomFilter != null) {
+			nextBloomFilter = newBloomFilter(getGrowthThreshold(length));
+		}
+	}
+
+	/*
+	 * Move the next few chains of oldTable to the current table
+	 */
+	private void rehashStep() {
+		if (oldTable == null) {
+			return;
+		}
+		for (int step=0; step<REHASH_STEPS_PER_OPERATION && rehashIndex<oldTable.length; step++) {
+			moveChain(rehashIndex++);
+		}
+		if (rehashIndex == oldTable.length) {
+			endResize();
+		}
+	}
+
+	/*
+	 * Move all the remaining chains of oldTable to the current table.
+	 * Bulk operations call this so that they see a single, stable table.
+	 */
+	protected void completeResize() {
+		if (oldTable == null) {
+			return;
+		}
+		while (rehashIndex < oldTable.length) {
+			moveChain(rehashIndex++);
+		}
+		endResize();
+	}
+
+	/*
+	 * Drop oldTable and switch to the Bloom filter of the new table,
+	 * which now holds every element
+	 */
+	private void endResize() {
+		oldTable = null;
+		rehashIndex = 0;
+		if (nextBloomFilter != null) {
+			bloomFilter = nextBloomFilter;
+			nextBloomFilter = null;
+		}
+	}
+
+	private void moveChain(int index) {
+		BloomFilter filter = nextBloomFilter;
+		Iterator<T> iter = oldTable[index].iterator();
+		while (iter.hasNext()) {
+			T elem = iter.next();
+			int hashValue = hash(elem);
+			table[indexFor(hashValue, table.length)].add(elem, hashValue);
+			if (filter != null) {
+				filter.add(hashValue);
+			}
+		}
+		oldTable[index] = null;
+	}
+
+	/*
+	 * Start growing the table once it holds more elements than the load factor allows
+	 */
+	private void growIfNeeded() {
+		if (oldTable == null && count.sum() > table.length * loadFactor
+				&& table.length < MAXIMUM_TABLE_SIZE) {
+			resize(table.length * 2);
+		}
+	}
+
+	/*
+	 * Grow the table before a bulk add so that the elements are stored
+	 * in their final chains. The rehash is done right away as the bulk
+	 * operation visits every element anyway.
+	 *
+	 * @param expectedSize Number of elements the set may hold after the operation
+	 */
+	protected void ensureCapacity(long expectedSize) {
+		completeResize();
+		long required = (long)Math.ceil(expectedSize / (double)loadFactor);
+		int length = tableSizeFor((int)Math.min(required, MAXIMUM_TABLE_SIZE));
+		if (length > table.length) {
+			resize(length);
+			completeResize();
+		}
+		BloomFilter filter = bloomFilter;
+		if (filter != null && expectedSize > filter.getCapacity()) {
+			rebuildBloomFilter(expectedSize);
+		}
+	}
+
+	/*
+	 * Shrink the table after removeAll/retainAll if enabled and
+	 * the table has become much larger than needed
+	 */
+	protected void shrinkIfNeeded() {
+		if (!shrinkEnabled || ingesting) {
+			return;
+		}
+		completeResize();
+		long required = (long)Math.ceil(count.sum() / (double)loadFactor);
+		int length = Math.max(tableSizeFor((int)required), minimumTableSize);
+		if ((long)length * SHRINK_RATIO <= table.length) {
+			resize(length);
+			completeResize();
+		}
+	}
+
+	/*
+	 * Bulk operations call this before changing the chain of the index
+	 * and endChainUpdate() after it, so that concurrent sets can lock
+	 * the chain against single-element operations of other threads.
+	 *
+	 * @param index Index of the chain in table
+	 */
+	protected void beginChainUpdate(int index) {
+	}
+
+	/*
+	 * @param index Index of the chain in table
+	 * @param sizeDelta Number of elements added to the chain, negative if removed
+	 */
+	protected void endChainUpdate(int index, int sizeDelta) {
+		if (sizeDelta != 0) {
+			count.add(sizeDelta);
+		}
+	}
+
 	/*
 	 * Add the input data to set
 	 *
@@ -101,8 +563,37 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean add(T data) {
-		Chain<T> chain   = getChain(data);
-		boolean  success = chain.add(data);
+		SetMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return addElement(data);
+		}
+		long start = System.nanoTime();
+		boolean success = addElement(data);
+		metrics.record(SetMetrics.Operations.ADD, System.nanoTime() - start);
+		return success;
+	}
+
+	protected boolean addElement(T data) {
+		rehashStep();
+		int hashValue = hash(data);
+		ChainInterface<T> oldChain = getOldChain(hashValue);
+		if (oldChain != null && oldChain.contains(data, hashValue)) {
+			return false;
+		}
+		BloomFilter filter = bloomFilter;
+		if (filter != null) {
+			filter.add(hashValue);
+		}
+		BloomFilter nextFilter = nextBloomFilter;
+		if (nextFilter != null) {
+			nextFilter.add(hashValue);
+		}
+		ChainInterface<T> chain   = table[indexFor(hashValue, table.length)];
+		boolean  success = chain.add(data, hashValue);
+		if (success) {
+			count.increment();
+			growIfNeeded();
+		}
 		return success;
 	}
 
@@ -113,9 +604,20 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean addAll(Collection<? extends T> collection) {
-		TaskInvoker<T> task = new TaskInvoker<T>(this, collection);
+		return addAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Add the input collection data to set
+	 * 
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean addAll(Collection<? extends T> collection, int parallelism) {
+		ensureCapacity(count.sum() + collection.size());
+		TaskInvoker<T> task = new TaskInvoker<T>(this, collection, parallelism);
 		boolean success = task.execute(SetOperationTypes.ADD_ALL);
-		updateSize();
 		return success;
 	}
 
@@ -126,9 +628,20 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean addAll(HashSetWithChain<? extends T> set) {
-		TaskInvoker<T> task = new TaskInvoker<T>(this, set);
+		return addAll(set, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Add the input set data to set
+	 * 
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean addAll(HashSetWithChain<? extends T> set, int parallelism) {
+		ensureCapacity(count.sum() + set.size());
+		TaskInvoker<T> task = new TaskInvoker<T>(this, set, parallelism);
 		boolean success = task.execute(SetOperationTypes.ADD_ALL);
-		updateSize();
 		return success;
 	}
 
@@ -141,8 +654,28 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean remove(T data) {
-		Chain<T> chain   = getChain(data);
-		boolean  success = chain.remove(data);
+		SetMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return removeElement(data);
+		}
+		long start = System.nanoTime();
+		boolean success = removeElement(data);
+		metrics.record(SetMetrics.Operations.REMOVE, System.nanoTime() - start);
+		return success;
+	}
+
+	protected boolean removeElement(T data) {
+		rehashStep();
+		int hashValue = hash(data);
+		ChainInterface<T> oldChain = getOldChain(hashValue);
+		boolean  success  = (oldChain != null) && oldChain.remove(data, hashValue);
+		if (!success) {
+			ChainInterface<T> chain = table[indexFor(hashValue, table.length)];
+			success = chain.remove(data, hashValue);
+		}
+		if (success) {
+			count.decrement();
+		}
 		return success;
 	}
 
@@ -155,10 +688,24 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean removeAll(Collection<? extends T> collection) {
+		return removeAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Remove the input collection data from set.
+	 * Even if nothing to remove from set,
+	 * return true if the operation succeeded.
+	 *
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean removeAll(Collection<? extends T> collection, int parallelism) {
 		HashSetWithChain<T> set = this;
-		TaskInvoker<T> task = new TaskInvoker<T>(set, collection);
+		TaskInvoker<T> task = new TaskInvoker<T>(set, collection, parallelism);
 		boolean success = task.execute(SetOperationTypes.REMOVE_ALL);
-		set.updateSize();
+		set.shrinkIfNeeded();
+		set.refreshBloomFilter();
 		return success;
 	}
 
@@ -171,10 +718,24 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean removeAll(HashSetWithChain<? extends T> setB) {
+		return removeAll(setB, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Remove the input set data from set.
+	 * Even if nothing to remove from set,
+	 * return true if the operation succeeded.
+	 *
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean removeAll(HashSetWithChain<? extends T> setB, int parallelism) {
 		HashSetWithChain<T> set = this;
-		TaskInvoker<T> task = new TaskInvoker<T>(set, setB);
+		TaskInvoker<T> task = new TaskInvoker<T>(set, setB, parallelism);
 		boolean success = task.execute(SetOperationTypes.REMOVE_ALL);
-		set.updateSize();
+		set.shrinkIfNeeded();
+		set.refreshBloomFilter();
 		return success;
 	}
 
@@ -185,11 +746,114 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean contains(T data) {
-		Chain<T> chain = getChain(data);
-		boolean  exist = chain.contains(data);
+		SetMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return containsElement(data);
+		}
+		long start = System.nanoTime();
+		boolean exist = containsElement(data);
+		metrics.record(SetMetrics.Operations.CONTAINS, System.nanoTime() - start);
+		return exist;
+	}
+
+	protected boolean containsElement(T data) {
+		int hashValue  = hash(data);
+		BloomFilter filter = bloomFilter;
+		if (filter != null && !filter.mightContain(hashValue)) {
+			return false;
+		}
+		ChainInterface<T> chain = table[indexFor(hashValue, table.length)];
+		boolean  exist = chain.contains(data, hashValue);
+		if (!exist) {
+			ChainInterface<T> oldChain = getOldChain(hashValue);
+			exist = (oldChain != null) && oldChain.contains(data, hashValue);
+		}
 		return exist;
 	}
 
+	/*
+	 * Walk the elements chain by chain. Removing through the iterator
+	 * removes from the chain of the last element returned.
+	 *
+	 * @return Iterator over all the elements of set
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		completeResize();
+		final ChainInterface<T>[] chains = getTable();
+		return new Iterator<T>() {
+			private int index = 0;		   /* Next chain to visit */
+			private Iterator<T> current;
+			private Iterator<T> last;	   /* Iterator of the last element returned */
+			private int lastIndex = -1;	   /* Chain of the last element returned */
+
+			public boolean hasNext() {
+				while ((current == null || !current.hasNext()) && index < chains.length) {
+					current = chains[index++].iterator();
+				}
+				return current != null && current.hasNext();
+			}
+
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = current;
+				lastIndex = index - 1;
+				return current.next();
+			}
+
+			public void remove() {
+				if (lastIndex < 0) {
+					throw new IllegalStateException();
+				}
+				boolean removed = false;
+				beginChainUpdate(lastIndex);
+				try {
+					last.remove();
+					removed = true;
+				} finally {
+					endChainUpdate(lastIndex, removed ? -1 : 0);
+				}
+				lastIndex = -1;
+			}
+		};
+	}
+
+	/*
+	 * Pass every element to action, handing whole chains over
+	 * instead of going through an iterator per element.
+	 * The action must not change the set.
+	 */
+	@Override
+	public void forEach(Consumer<? super T> action) {
+		if (action == null) {
+			throw new NullPointerException("action");
+		}
+		completeResize();
+		for (ChainInterface<T> chain : getTable()) {
+			chain.forEach(action);
+		}
+	}
+
+	/*
+	 * Splits follow ranges of chains holding about the same number of
+	 * elements, with exact SIZED and SUBSIZED estimates.
+	 */
+	@Override
+	public Spliterator<T> spliterator() {
+		completeResize();
+		return ChainSpliterator.<T>sized(getTable());
+	}
+
+	public Stream<T> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	public Stream<T> parallelStream() {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
 	/*
 	 * Check if all the input collection data exist in set.
 	 *
@@ -197,8 +861,19 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean containsAll(Collection<? extends T> collection) {
+		return containsAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Check if all the input collection data exist in set.
+	 *
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean containsAll(Collection<? extends T> collection, int parallelism) {
 		HashSetWithChain<T> set = this;
-		TaskInvoker<T> task = new TaskInvoker<T>(set, collection);
+		TaskInvoker<T> task = new TaskInvoker<T>(set, collection, parallelism);
 		boolean success = task.execute(SetOperationTypes.CONTAINS_ALL);
 		return success;
 	}
@@ -210,12 +885,84 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean containsAll(HashSetWithChain<? extends T> setB) {
+		return containsAll(setB, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Check if all the input setB elements exist in set.
+	 *
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean containsAll(HashSetWithChain<? extends T> setB, int parallelism) {
 		HashSetWithChain<T> set = this;
-		TaskInvoker<T> task = new TaskInvoker<T>(set, setB);
+		TaskInvoker<T> task = new TaskInvoker<T>(set, setB, parallelism);
 		boolean success = task.execute(SetOperationTypes.CONTAINS_ALL);
 		return success;
 	}
 
+	/*
+	 * Check which of the input collection data exist in set.
+	 *
+	 * @param collection Input data
+	 * @return Bit i is set if the i-th element of collection exists in set
+	 */
+	public BitSet containsEach(Collection<? extends T> collection) {
+		return containsEach(collection, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Check which of the input collection data exist in set.
+	 * The elements are grouped by chain, so that each chain is
+	 * visited once by the thread of its range.
+	 *
+	 * @param collection Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Bit i is set if the i-th element of collection exists in set
+	 */
+	public BitSet containsEach(Collection<? extends T> collection, int parallelism) {
+		TaskInvoker<T> task = new TaskInvoker<T>(this, collection, parallelism);
+		if (!task.execute(SetOperationTypes.CONTAINS_EACH)) {
+			throw new IllegalStateException("Failed to check elements");
+		}
+		boolean[] found = task.getFound();
+		BitSet result = new BitSet(found.length);
+		for (int i=0; i<found.length; i++) {
+			if (found[i]) {
+				result.set(i);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * @param collection Input data
+	 * @param present True to keep the elements that exist in set, false to keep the others
+	 * @return Elements of collection that exist in set, or that don't, in the order of collection
+	 */
+	public List<T> filter(Collection<? extends T> collection, boolean present) {
+		return filter(collection, present, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * @param collection Input data
+	 * @param present True to keep the elements that exist in set, false to keep the others
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Elements of collection that exist in set, or that don't, in the order of collection
+	 */
+	public List<T> filter(Collection<? extends T> collection, boolean present, int parallelism) {
+		BitSet found = containsEach(collection, parallelism);
+		List<T> result = new ArrayList<T>(present ? found.cardinality() : collection.size() - found.cardinality());
+		int i = 0;
+		for (T elem : collection) {
+			if (found.get(i++) == present) {
+				result.add(elem);
+			}
+		}
+		return result;
+	}
+
 	/*
 	 * Remove all the elements in set that don't exist in collection.
 	 * In other words, this is intersection operation with the input data.
@@ -224,10 +971,23 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean retainAll(Collection<? extends T> collection) {
+		return retainAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Remove all the elements in set that don't exist in collection.
+	 * In other words, this is intersection operation with the input data.
+	 *
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean retainAll(Collection<? extends T> collection, int parallelism) {
 		HashSetWithChain<T> set = this;
-		TaskInvoker<T> task = new TaskInvoker<T>(set, collection);
+		TaskInvoker<T> task = new TaskInvoker<T>(set, collection, parallelism);
 		boolean success = task.execute(SetOperationTypes.RETAIN_ALL);
-		set.updateSize();
+		set.shrinkIfNeeded();
+		set.refreshBloomFilter();
 		return success;
 	}
 
@@ -239,17 +999,345 @@ class HashSetWithChain<T> {
 	 * @return Result of operation
 	 */
 	public boolean retainAll(HashSetWithChain<? extends T> setB) {
+		return retainAll(setB, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * Remove all the elements in set that don't exist in seB.
+	 * In other words, this is intersection operation with the input setB.
+	 *
+	 * @param data Input data
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return Result of operation
+	 */
+	public boolean retainAll(HashSetWithChain<? extends T> setB, int parallelism) {
 		HashSetWithChain<T> set = this;
-		TaskInvoker<T> task = new TaskInvoker<T>(set, setB);
+		TaskInvoker<T> task = new TaskInvoker<T>(set, setB, parallelism);
 		boolean success = task.execute(SetOperationTypes.RETAIN_ALL);
-		updateSize();
+		shrinkIfNeeded();
+		refreshBloomFilter();
 		return success;
 	}
 
-	public int getThreadSizeOfSetOp() {
-		int numberOfThreads = DEFAULT_THREAD_SIZE;
-		int maxThreadNum = DEFAULT_TABLE_SIZE; /* Table size is the max thread size as well */
-		if (numberOfThreads < 0) {
+	/*
+	 * Read the next batch of elements from source.
+	 * Nothing more is read until the caller is done with the batch,
+	 * so the source is never buffered as a whole.
+	 *
+	 * @param source Input data
+	 * @param batch List to fill, cleared first
+	 * @return False if source has no more elements
+	 */
+	private boolean nextBatch(Iterator<? extends T> source, ArrayList<T> batch) {
+		batch.clear();
+		while (batch.size() < ingestBatchSize && source.hasNext()) {
+			batch.add(source.next());
+		}
+		return !batch.isEmpty();
+	}
+
+	/*
+	 * Presize the table when the source knows its size
+	 */
+	private void ensureCapacityFor(Spliterator<? extends T> source) {
+		if (source.hasCharacteristics(Spliterator.SIZED)) {
+			ensureCapacity(count.sum() + source.estimateSize());
+		}
+	}
+
+	/*
+	 * Add the elements of source in batches, each of which is hashed
+	 * and added by addAll(Collection) in parallel
+	 *
+	 * @param source Input data, which may be larger than memory
+	 * @return Result of operation
+	 */
+	public boolean addAll(Iterator<? extends T> source) {
+		ArrayList<T> batch = new ArrayList<T>();
+		boolean success = true;
+		while (nextBatch(source, batch)) {
+			success &= addAll(batch);
+		}
+		return success;
+	}
+
+	public boolean addAll(Spliterator<? extends T> source) {
+		ensureCapacityFor(source);
+		return addAll(Spliterators.iterator(source));
+	}
+
+	public boolean addAll(Stream<? extends T> source) {
+		return addAll(source.spliterator());
+	}
+
+	/*
+	 * Remove the elements of source in batches
+	 *
+	 * @param source Input data, which may be larger than memory
+	 * @return Result of operation
+	 */
+	public boolean removeAll(Iterator<? extends T> source) {
+		ArrayList<T> batch = new ArrayList<T>();
+		boolean success = true;
+		/* Shrink and rebuild the Bloom filter once, not after every batch */
+		ingesting = true;
+		try {
+			while (nextBatch(source, batch)) {
+				success &= removeAll(batch);
+			}
+		} finally {
+			ingesting = false;
+		}
+		shrinkIfNeeded();
+		refreshBloomFilter();
+		return success;
+	}
+
+	public boolean removeAll(Spliterator<? extends T> source) {
+		return removeAll(Spliterators.iterator(source));
+	}
+
+	public boolean removeAll(Stream<? extends T> source) {
+		return removeAll(source.spliterator());
+	}
+
+	/*
+	 * Check if all the elements of source exist in set, reading
+	 * no further than the batch holding the first missing one
+	 *
+	 * @param source Input data, which may be larger than memory
+	 * @return Result of operation
+	 */
+	public boolean containsAll(Iterator<? extends T> source) {
+		ArrayList<T> batch = new ArrayList<T>();
+		while (nextBatch(source, batch)) {
+			if (!containsAll(batch)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean containsAll(Spliterator<? extends T> source) {
+		return containsAll(Spliterators.iterator(source));
+	}
+
+	public boolean containsAll(Stream<? extends T> source) {
+		return containsAll(source.spliterator());
+	}
+
+	/*
+	 * Remove all the elements in set that don't exist in source.
+	 * The elements of each batch found in set, checked in parallel by
+	 * filter(), are collected into a set with our layout, so memory is
+	 * bounded by the size of this set rather than of source, and the set
+	 * is then retained in one pass.
+	 *
+	 * @param source Input data, which may be larger than memory
+	 * @return Result of operation
+	 */
+	public boolean retainAll(Iterator<? extends T> source) {
+		completeResize();
+		HashSetWithChain<T> found = newSetWithLayoutOf(this);
+		ArrayList<T> batch = new ArrayList<T>();
+		while (nextBatch(source, batch)) {
+			found.addAll(filter(batch, true));
+		}
+		return retainAll(found);
+	}
+
+	public boolean retainAll(Spliterator<? extends T> source) {
+		return retainAll(Spliterators.iterator(source));
+	}
+
+	public boolean retainAll(Stream<? extends T> source) {
+		return retainAll(source.spliterator());
+	}
+
+	/*
+	 * @param ingestBatchSize Number of elements that bulk operations
+	 *                        on an Iterator, Spliterator or Stream read at a time
+	 */
+	public void setIngestBatchSize(int ingestBatchSize) {
+		if (ingestBatchSize <= 0) {
+			throw new IllegalArgumentException("Illegal ingest batch size: " + ingestBatchSize);
+		}
+		this.ingestBatchSize = ingestBatchSize;
+	}
+
+	/*
+	 * Set the thread pool that runs bulk operations of every set
+	 * without its own executor. The pool is never shut down by sets.
+	 *
+	 * @param executor Thread pool, or null to use the common ForkJoinPool
+	 */
+	public static void setDefaultExecutor(ExecutorService executor) {
+		defaultExecutor = executor;
+	}
+
+	/*
+	 * Set the thread pool that runs bulk operations of this set.
+	 * The pool is never shut down by the set.
+	 *
+	 * @param executor Thread pool, or null to use the default executor
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/*
+	 * Choose the threads that run bulk operations of every set without
+	 * its own executor or execution mode. VIRTUAL takes precedence over
+	 * setDefaultExecutor(), and falls back to PLATFORM on runtimes
+	 * without virtual threads.
+	 *
+	 * @param executionMode Mode, PLATFORM by default
+	 */
+	public static void setDefaultExecutionMode(ExecutionModes executionMode) {
+		if (executionMode == null) {
+			throw new NullPointerException("executionMode");
+		}
+		defaultExecutionMode = executionMode;
+	}
+
+	/*
+	 * Choose the threads that run bulk operations of this set,
+	 * unless it has its own executor
+	 *
+	 * @param executionMode Mode, or null to use the default execution mode
+	 */
+	public void setExecutionMode(ExecutionModes executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	/*
+	 * @return Thread pool that runs bulk operations of this set
+	 */
+	protected ExecutorService getExecutor() {
+		if (executor != null) {
+			return executor;
+		}
+		return (executionMode != null) ? getExecutor(executionMode) : getDefaultExecutor();
+	}
+
+	/*
+	 * @return Thread pool that runs bulk operations of sets without their own executor
+	 */
+	static ExecutorService getDefaultExecutor() {
+		return getExecutor(defaultExecutionMode);
+	}
+
+	private static ExecutorService getExecutor(ExecutionModes executionMode) {
+		if (executionMode == ExecutionModes.VIRTUAL && VirtualThreads.isSupported()) {
+			return VirtualThreads.getExecutor();
+		}
+		ExecutorService shared = defaultExecutor;
+		return (shared != null) ? shared : ForkJoinPool.commonPool();
+	}
+
+	/*
+	 * Bulk operations visiting fewer elements than the threshold
+	 * run on the caller thread instead of the thread pool.
+	 *
+	 * @param inlineThreshold Number of elements, 0 to always use the thread pool
+	 */
+	public void setInlineThreshold(int inlineThreshold) {
+		if (inlineThreshold < 0) {
+			throw new IllegalArgumentException("Illegal inline threshold: " + inlineThreshold);
+		}
+		this.inlineThreshold = inlineThreshold;
+	}
+
+	protected int getInlineThreshold() {
+		return inlineThreshold;
+	}
+
+	/*
+	 * Only recorded while metrics are enabled or a flight recording
+	 * takes BulkOperationEvent, as timing each range isn't free.
+	 *
+	 * @return How evenly the last such bulk operation on this set spread
+	 *         its work among threads, or null if none has run yet
+	 */
+	public TaskBalance getLastTaskBalance() {
+		return lastTaskBalance;
+	}
+
+	protected void setLastTaskBalance(TaskBalance taskBalance) {
+		lastTaskBalance = taskBalance;
+	}
+
+	/*
+	 * Start or stop collecting counts and latencies of the operations.
+	 * Enable it before sharing the set among threads.
+	 *
+	 * @param enabled True to start with empty metrics, false to drop them
+	 */
+	public void setMetricsEnabled(boolean enabled) {
+		metrics = enabled ? new SetMetrics() : null;
+	}
+
+	/*
+	 * @return Metrics of this set, or null if they are not enabled
+	 */
+	public SetMetrics getMetrics() {
+		return metrics;
+	}
+
+	/*
+	 * Walk the table to see how evenly elements are spread among chains
+	 *
+	 * @return Number of chains by number of elements
+	 */
+	public ChainOccupancy getChainOccupancy() {
+		completeResize();
+		return ChainOccupancy.of(getTable());
+	}
+
+	/*
+	 * Set the number of threads used by bulk operations of this set.
+	 *
+	 * @param parallelism Number of threads, 0 to choose it from the
+	 *                    number of processors and elements of each operation
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 0) {
+			throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/*
+	 * @param requested Number of threads asked for the operation, 0 if not specified
+	 * @param workSize Rough number of elements the operation visits
+	 * @return Number of threads to run the operation with
+	 */
+	protected int getThreadSizeOfSetOp(int requested, long workSize) {
+		return getThreadSizeOfSetOp(requested, parallelism, workSize,
+									getTableSize(), getExecutor());
+	}
+
+	/*
+	 * Shared by every kind of set.
+	 *
+	 * @param requested Number of threads asked for the operation, 0 if not specified
+	 * @param parallelism Number of threads set on the set, 0 if not specified
+	 * @param workSize Rough number of elements the operation visits
+	 * @param tableSize Size of table of the set
+	 * @param service Thread pool that runs the operation
+	 * @return Number of threads to run the operation with
+	 */
+	static int getThreadSizeOfSetOp(int requested, int parallelism, long workSize,
+									int tableSize, ExecutorService service) {
+		int numberOfThreads = requested;
+		if (numberOfThreads == DEFAULT_PARALLELISM) {
+			numberOfThreads = parallelism;
+		}
+		if (numberOfThreads == DEFAULT_PARALLELISM) {
+			numberOfThreads = getAdaptiveThreadSize(workSize, service);
+		}
+		int maxThreadNum = tableSize; /* Table size is the max thread size as well */
+		if (numberOfThreads < 1) {
 			/* Must be POSITIVE */
 			numberOfThreads = 1;
 		}
@@ -260,69 +1348,56 @@ class HashSetWithChain<T> {
 		return numberOfThreads;
 	}
 
-	public static <T> HashSetWithChain<T> union(HashSetWithChain<? extends T> a,
-												HashSetWithChain<? extends T> b) {
-		HashSetWithChain<T> union = new HashSetWithChain<T>();
-
-		/* Add all of set a to union */
-		TaskInvoker<T> taskA = new TaskInvoker<T>(union, a);
-		boolean successA = taskA.execute(SetOperationTypes.ADD_ALL);
-
-		/* Add all of set b to union */
-		TaskInvoker<T> taskB = new TaskInvoker<T>(union, b);
-		boolean successB = taskB.execute(SetOperationTypes.ADD_ALL);
-
-		union.updateSize();
-		return union;
+	/*
+	 * Use every thread of the pool for large operations, but give each
+	 * thread at least MIN_ELEMENTS_PER_THREAD elements so that small
+	 * operations stay on a single thread.
+	 */
+	private static int getAdaptiveThreadSize(long workSize, ExecutorService service) {
+		int processors = (service instanceof ForkJoinPool)
+			? ((ForkJoinPool)service).getParallelism()
+			: Runtime.getRuntime().availableProcessors();
+		long byWorkSize = (workSize + MIN_ELEMENTS_PER_THREAD - 1) / MIN_ELEMENTS_PER_THREAD;
+		return (int)Math.max(1, Math.min(processors, byWorkSize));
 	}
 
-	public static <T> HashSetWithChain<T> intersection(HashSetWithChain<? extends T> a,
-													   HashSetWithChain<? extends T> b) {
+	/*
+	 * Create an empty set that stores elements in the same chains as the input set,
+	 * so that copying the input set into it does not rehash anything.
+	 *
+	 * @param set Input set
+	 * @return Empty set with the table size and hash function of the input set
+	 */
+	static <T> HashSetWithChain<T> newSetWithLayoutOf(HashSetWithChain<?> set) {
 		/*
-		 * FIXME(mas):
-		 * This optimization should be done in the implementation?
-		 * If so then, retailAll.java class has its responsbility.
+		 * Hash strategies only hash elements of the input set,
+		 * which are T as well, so we can say that this is type-safe
 		 */
-		if (a.size() > b.size()) { // Faster algorithm
-			return HashSetWithChain.<T>intersection(b, a);
-		}
-
-		HashSetWithChain<T> intersection = new HashSetWithChain<T>();
-
-		/* Add all of set a to intersection */
-		TaskInvoker<T> taskA = new TaskInvoker<T>(intersection, a);
-		boolean successA = taskA.execute(SetOperationTypes.ADD_ALL);
+		@SuppressWarnings("unchecked") HashStrategy<? super T> hashStrategy =
+			(HashStrategy<? super T>)set.getHashStrategy();
+		return new HashSetWithChain<T>(set.getTableSize(), set.loadFactor,
+									   hashStrategy, set.chainType);
+	}
 
-		/* Remove elements in b which are not in intersection */
-		TaskInvoker<T> taskB = new TaskInvoker<T>(intersection, b);
-		boolean successB = taskB.execute(SetOperationTypes.RETAIN_ALL);
+	public static <T> HashSetWithChain<T> union(HashSetWithChain<? extends T> a,
+												HashSetWithChain<? extends T> b) {
+		return SetExpression.<T>of(a).union(b).evaluate();
+	}
 
-		intersection.updateSize();
-		return intersection;
+	public static <T> HashSetWithChain<T> intersection(HashSetWithChain<? extends T> a,
+													   HashSetWithChain<? extends T> b) {
+		/* Only the smaller set is visited, see SetExpression */
+		return SetExpression.<T>of(a).intersection(b).evaluate();
 	}
 
 	public static <T> HashSetWithChain<T> difference(HashSetWithChain<? extends T> a,
 													 HashSetWithChain<? extends T> b) {
-		HashSetWithChain<T> diff = new HashSetWithChain<T>();
-
-		/* Add all of set a to diff */
-		TaskInvoker<T> taskA = new TaskInvoker<T>(diff, a);
-		boolean successA = taskA.execute(SetOperationTypes.ADD_ALL);
-
-		/* Remove all of set b from diff */
-		TaskInvoker<T> taskB = new TaskInvoker<T>(diff, b);
-		boolean successB = taskB.execute(SetOperationTypes.REMOVE_ALL);
-
-		diff.updateSize();
-		return diff;
+		return SetExpression.<T>of(a).difference(b).evaluate();
 	}
 
 	public static <T> HashSetWithChain<T> symmetricDifference(HashSetWithChain<? extends T> a,
 															  HashSetWithChain<? extends T> b) {
-		/* Union the difference of a and b & b and a */
-		HashSetWithChain<T> left  = HashSetWithChain.<T>difference(a, b);
-		HashSetWithChain<T> right = HashSetWithChain.<T>difference(a, b);
-		HashSetWithChain<T> sdiff = HashSetWithChain.<T>union(left, right);
-		return sdiff;
+		/* Elements of a not in b & elements of b not in a, in a single pass */
+		return SetExpression.<T>of(a).symmetricDifference(b).evaluate();
 	}
 }
\ No newline at end of file
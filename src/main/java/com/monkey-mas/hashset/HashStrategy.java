@@ -0,0 +1,48 @@
+/*
+ * Computes hash values of elements and maps them to chains of a table.
+ * Tables of HashSetWithChain always have a power-of-two size.
+ */
+public abstract class HashStrategy<T> {
+	/*
+	 * @param data Input data to compute a hash value
+	 * @return Hash value computed with the input data
+	 */
+	public abstract int hash(T data);
+
+	/*
+	 * @param hashValue Hash value computed with hash()
+	 * @param length Size of the table to index, a power of two
+	 * @return Index of the chain in a table of the given size
+	 */
+	public int indexFor(int hashValue, int length) {
+		return hashValue & (length - 1);
+	}
+
+	/*
+	 * Whether the index of a hash value in a table equals its index in
+	 * any larger table modulo the smaller size, as with masking or a
+	 * non-negative modulo. Sets of different sizes then hold the same
+	 * elements in corresponding chains, which bulk operations use to merge
+	 * them chain by chain. Strategies whose indexFor() doesn't keep this
+	 * must return false.
+	 *
+	 * @return True if the layouts of tables of different sizes are nested
+	 */
+	public boolean isNested() {
+		return true;
+	}
+
+	/*
+	 * Strategies are stateless by default, so two strategies of
+	 * the same class put any element into the same chain.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		return other != null && other.getClass() == getClass();
+	}
+
+	@Override
+	public int hashCode() {
+		return getClass().hashCode();
+	}
+}
\ No newline at end of file
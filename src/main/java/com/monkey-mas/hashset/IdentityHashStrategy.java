@@ -0,0 +1,11 @@
+/*
+ * Uses System.identityHashCode(), which is cheap for elements with
+ * an expensive hashCode(). Only suitable for elements whose equals()
+ * is identity, as equal but distinct objects may end up in different chains.
+ */
+public class IdentityHashStrategy<T> extends HashStrategy<T> {
+	@Override
+	public int hash(T data) {
+		return DefaultHashStrategy.spread(System.identityHashCode(data));
+	}
+}
\ No newline at end of file
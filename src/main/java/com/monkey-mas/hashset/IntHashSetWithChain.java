@@ -0,0 +1,147 @@
+/*
+ * HashSetWithChain specialized for int keys. Keys are stored in
+ * open-addressing int arrays and are never boxed, while bulk operations
+ * run in parallel over ranges of chains like HashSetWithChain.
+ */
+class IntHashSetWithChain extends PrimitiveHashSetWithChain<IntHashSetWithChain, IntChain> {
+	public IntHashSetWithChain() {
+		super();
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 */
+	public IntHashSetWithChain(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of keys per chain that triggers growth
+	 */
+	public IntHashSetWithChain(int initialCapacity, float loadFactor) {
+		super(initialCapacity, loadFactor);
+	}
+
+	protected IntChain[] newTable(int length) {
+		IntChain[] table = new IntChain[length];
+		for (int i=0; i<length; i++) {
+			table[i] = new IntChain();
+		}
+		return table;
+	}
+
+	protected IntHashSetWithChain newSet(int initialCapacity, float loadFactor) {
+		return new IntHashSetWithChain(initialCapacity, loadFactor);
+	}
+
+	protected void moveKeys(IntChain chain) {
+		for (int key : chain.toArray()) {
+			getTable()[hashCode(key)].add(key);
+		}
+	}
+
+	protected IntTaskInvoker newTaskInvoker(IntHashSetWithChain set, int parallelism) {
+		return new IntTaskInvoker(this, set, parallelism);
+	}
+
+	/*
+	 * @param key Input key
+	 * @return Index of table to store the input key
+	 */
+	public int hashCode(int key) {
+		return indexFor(IntChain.hash(key));
+	}
+
+	public boolean add(int key) {
+		rehashStep();
+		int hashValue = IntChain.hash(key);
+		IntChain oldChain = getOldChain(hashValue);
+		if (oldChain != null && oldChain.contains(key)) {
+			return false;
+		}
+		boolean success = getTable()[indexFor(hashValue)].add(key);
+		if (success) {
+			keyAdded();
+		}
+		return success;
+	}
+
+	public boolean remove(int key) {
+		rehashStep();
+		int hashValue = IntChain.hash(key);
+		IntChain oldChain = getOldChain(hashValue);
+		boolean  success  = (oldChain != null) && oldChain.remove(key);
+		if (!success) {
+			success = getTable()[indexFor(hashValue)].remove(key);
+		}
+		if (success) {
+			keyRemoved();
+		}
+		return success;
+	}
+
+	public boolean contains(int key) {
+		int hashValue = IntChain.hash(key);
+		if (getTable()[indexFor(hashValue)].contains(key)) {
+			return true;
+		}
+		IntChain oldChain = getOldChain(hashValue);
+		return (oldChain != null) && oldChain.contains(key);
+	}
+
+	/*
+	 * @return Copy of all the keys of set
+	 */
+	public int[] toArray() {
+		int[] result = new int[size()];
+		int count = 0;
+		for (IntChain chain : getTable()) {
+			int[] keys = chain.toArray();
+			System.arraycopy(keys, 0, result, count, keys.length);
+			count += keys.length;
+		}
+		for (IntChain chain : getRemainingOldChains()) {
+			int[] keys = chain.toArray();
+			System.arraycopy(keys, 0, result, count, keys.length);
+			count += keys.length;
+		}
+		return result;
+	}
+
+	public boolean addAll(int[] keys) {
+		return addAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 */
+	public boolean addAll(int[] keys, int parallelism) {
+		ensureCapacity((long)size() + keys.length);
+		return execute(new IntTaskInvoker(this, keys, parallelism), SetOperationTypes.ADD_ALL);
+	}
+
+	public boolean removeAll(int[] keys) {
+		return removeAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	public boolean removeAll(int[] keys, int parallelism) {
+		return execute(new IntTaskInvoker(this, keys, parallelism), SetOperationTypes.REMOVE_ALL);
+	}
+
+	public boolean containsAll(int[] keys) {
+		return containsAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	public boolean containsAll(int[] keys, int parallelism) {
+		return execute(new IntTaskInvoker(this, keys, parallelism), SetOperationTypes.CONTAINS_ALL);
+	}
+
+	public boolean retainAll(int[] keys) {
+		return retainAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	public boolean retainAll(int[] keys, int parallelism) {
+		return execute(new IntTaskInvoker(this, keys, parallelism), SetOperationTypes.RETAIN_ALL);
+	}
+}
\ No newline at end of file
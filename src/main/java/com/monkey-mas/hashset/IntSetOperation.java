@@ -0,0 +1,62 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * PrimitiveSetOperation of IntHashSetWithChain
+ */
+class IntSetOperation extends PrimitiveSetOperation<Integer, IntChain> {
+	private int[] keys;	/* Keys sorted by chain, not used when tableB is given */
+
+	public IntSetOperation(SetOperationTypes setOperation,
+						   IntChain[] tableA,
+						   IntChain[] tableB,
+						   int[] keys, int[] chainStart,
+						   LongAdder sizeDelta,
+						   int from, int to) {
+		super(setOperation, tableA, tableB, chainStart, sizeDelta, from, to);
+		this.keys = keys;
+	}
+
+	@Override
+	protected boolean operateOnChain(int index) {
+		IntChain chainA = tableA[index];
+		int[] keysB = keys;
+		int start, end;
+		if (tableB != null) {
+			keysB = tableB[index].toArray();
+			start = 0;
+			end   = keysB.length;
+		}
+		else {
+			start = chainStart[index];
+			end   = chainStart[index + 1];
+		}
+
+		if (setOperation == SetOperationTypes.ADD_ALL) {
+			for (int pos=start; pos<end; pos++) {
+				chainA.add(keysB[pos]);
+			}
+		}
+		else if (setOperation == SetOperationTypes.REMOVE_ALL) {
+			for (int pos=start; pos<end; pos++) {
+				chainA.remove(keysB[pos]);
+			}
+		}
+		else if (setOperation == SetOperationTypes.RETAIN_ALL) {
+			IntChain retain = new IntChain();
+			for (int pos=start; pos<end; pos++) {
+				if (chainA.contains(keysB[pos])) {
+					retain.add(keysB[pos]);
+				}
+			}
+			tableA[index] = retain;
+		}
+		else if (setOperation == SetOperationTypes.CONTAINS_ALL) {
+			for (int pos=start; pos<end; pos++) {
+				if (!chainA.contains(keysB[pos])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * PrimitiveTaskInvoker of IntHashSetWithChain
+ */
+class IntTaskInvoker extends PrimitiveTaskInvoker<IntHashSetWithChain, IntChain> {
+	private int[] keys;	/* Input keys when setB is not used */
+
+	/* Used for operations with an array of keys */
+	public IntTaskInvoker(IntHashSetWithChain a, int[] keys, int parallelism) {
+		super(a);
+		this.keys = keys;
+		initNumberOfThreads(parallelism);
+	}
+
+	/* Used for operations with another set */
+	public IntTaskInvoker(IntHashSetWithChain a, IntHashSetWithChain b, int parallelism) {
+		super(a, b);
+		if (setB == null) {
+			/* Keys of a chain of b are spread over several chains of a */
+			keys = b.toArray();
+		}
+		initNumberOfThreads(parallelism);
+	}
+
+	protected int getNumberOfKeys() {
+		return (keys == null) ? 0 : keys.length;
+	}
+
+	protected void scatter() {
+		int[] indices = new int[keys.length];
+		for (int i=0; i<keys.length; i++) {
+			indices[i] = setA.hashCode(keys[i]);
+		}
+		int[] positions = sortByChain(indices);
+		int[] sorted = new int[keys.length];
+		for (int i=0; i<keys.length; i++) {
+			sorted[positions[i]] = keys[i];
+		}
+		keys = sorted;
+	}
+
+	protected SetOperation<?> createOperation(int from, int to, SetOperationTypes setOperation,
+											  LongAdder sizeDelta) {
+		IntChain[] tableB = (setB == null) ? null : setB.getTable();
+		return new IntSetOperation(setOperation, setA.getTable(), tableB,
+								   keys, chainStart, sizeDelta, from, to);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Converts keys of OffHeapHashSetWithChain to and from a fixed number of bytes.
+ * Keys are hashed and compared by their bytes, so equal keys must be
+ * encoded to the same bytes.
+ */
+public interface KeyCodec<T> {
+	/*
+	 * @return Number of bytes of every encoded key
+	 */
+	public abstract int getWidth();
+
+	/*
+	 * @param key Key to encode
+	 * @param buffer Buffer to write getWidth() bytes to
+	 * @param offset Position of the first byte in buffer
+	 */
+	public abstract void encode(T key, ByteBuffer buffer, int offset);
+
+	/*
+	 * @param buffer Buffer holding an encoded key
+	 * @param offset Position of the first byte in buffer
+	 * @return Decoded key
+	 */
+	public abstract T decode(ByteBuffer buffer, int offset);
+}
\ No newline at end of file
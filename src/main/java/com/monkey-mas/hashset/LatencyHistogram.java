@@ -0,0 +1,89 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counts of latencies in power-of-two buckets of nanoseconds.
+ * Bucket i holds latencies in [2^i, 2^(i+1)), and bucket 0 holds 0 as well.
+ * Threads record into striped counters, so recording never contends.
+ */
+class LatencyHistogram {
+	private static final int BUCKETS = 64;
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+	private final LongAdder totalNanos = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int i=0; i<BUCKETS; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/*
+	 * @param nanos Latency to record
+	 */
+	public void record(long nanos) {
+		counts[63 - Long.numberOfLeadingZeros(Math.max(1, nanos))].increment();
+		totalNanos.add(nanos);
+	}
+
+	/*
+	 * @return Number of latencies recorded
+	 */
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : counts) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	/*
+	 * @return Number of latencies recorded in each bucket
+	 */
+	public long[] getCounts() {
+		long[] snapshot = new long[BUCKETS];
+		for (int i=0; i<BUCKETS; i++) {
+			snapshot[i] = counts[i].sum();
+		}
+		return snapshot;
+	}
+
+	public double getMeanNanos() {
+		long count = getCount();
+		return (count == 0) ? 0 : (double)totalNanos.sum() / count;
+	}
+
+	/*
+	 * @param percentile Between 0 and 100
+	 * @return Upper bound of the bucket the percentile falls in, 0 if nothing is recorded
+	 */
+	public long getPercentileNanos(double percentile) {
+		if (percentile < 0 || percentile > 100 || Double.isNaN(percentile)) {
+			throw new IllegalArgumentException("Illegal percentile: " + percentile);
+		}
+		long[] snapshot = getCounts();
+		long count = 0;
+		for (long bucket : snapshot) {
+			count += bucket;
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long)Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int i=0; i<BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank && snapshot[i] > 0) {
+				return (i == BUCKETS - 1) ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram[count=" + getCount()
+			+ ", meanNanos=" + String.format("%.0f", getMeanNanos())
+			+ ", p50<=" + getPercentileNanos(50)
+			+ ", p99<=" + getPercentileNanos(99)
+			+ ", max<=" + getPercentileNanos(100) + "]";
+	}
+}
\ No newline at end of file
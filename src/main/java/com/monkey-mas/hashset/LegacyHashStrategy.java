@@ -0,0 +1,31 @@
+/*
+ * The original hash function of HashSetWithChain, based on toString().
+ * Keeps elements in the same chains as before for a given table size,
+ * which is 32 by default. It is slow as it allocates a String per call,
+ * so only use it when depending on the old layout.
+ */
+public class LegacyHashStrategy<T> extends HashStrategy<T> {
+	@Override
+	public int hash(T data) {
+		String strFormat = data.toString();
+		int length = strFormat.length();
+		int hashValue = 0;
+
+		for (int i=0, weight=0; i<length; i++, weight++) {
+			if (weight > 7) {
+				weight = 0;
+			}
+			hashValue += (int)strFormat.charAt(i) << (4 * weight);
+		}
+		return hashValue;
+	}
+
+	@Override
+	public int indexFor(int hashValue, int length) {
+		int result = hashValue % length;
+		if (result < 0) {
+			return (result * -1);
+		}
+		return result;
+	}
+}
\ No newline at end of file
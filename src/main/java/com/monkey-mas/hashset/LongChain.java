@@ -0,0 +1,133 @@
+/*
+ * Chain of LongHashSetWithChain, storing keys in an open-addressing
+ * long array with linear probing, so that keys are never boxed.
+ */
+class LongChain extends PrimitiveChain {
+	private static final long[] EMPTY_KEYS = new long[0];
+	private long[] keys = EMPTY_KEYS;
+	private int shift = 64;		 /* 64 - log2(keys.length) */
+
+	/*
+	 * @return Hash value of the key in LongHashSetWithChain
+	 */
+	static int hash(long key) {
+		return DefaultHashStrategy.spread((int)(key ^ (key >>> 32)));
+	}
+
+	public boolean add(long key) {
+		if (key == 0) {
+			return addZero();
+		}
+		if (isFull()) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int slot = slotFor(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		numberOfKeys++;
+		return true;
+	}
+
+	public boolean remove(long key) {
+		if (key == 0) {
+			return removeZero();
+		}
+		int slot = findSlot(key);
+		if (slot < 0) {
+			return false;
+		}
+		removeSlot(slot);
+		return true;
+	}
+
+	public boolean contains(long key) {
+		if (key == 0) {
+			return containsZero;
+		}
+		return findSlot(key) >= 0;
+	}
+
+	/*
+	 * @return Copy of all the keys of chain
+	 */
+	public long[] toArray() {
+		long[] result = new long[size()];
+		int count = 0;
+		for (long key : keys) {
+			if (key != 0) {
+				result[count++] = key;
+			}
+		}
+		/* The last slot is left 0 if the chain contains 0 */
+		return result;
+	}
+
+	/*
+	 * @return Slot of the key, or -1 if not found
+	 */
+	private int findSlot(long key) {
+		if (numberOfKeys == 0) {
+			return -1;
+		}
+		int mask = keys.length - 1;
+		int slot = slotFor(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/*
+	 * Keys of a chain share the low bits of their hash value in the set,
+	 * so use the high bits of a multiplicative hash instead.
+	 */
+	private int slotFor(long key) {
+		return (int)((key * 0x9e3779b97f4a7c15L) >>> shift);
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int length = (oldKeys.length == 0) ? INITIAL_CAPACITY : oldKeys.length * 2;
+		keys  = new long[length];
+		shift = 64 - Integer.numberOfTrailingZeros(length);
+		int mask = length - 1;
+		for (long key : oldKeys) {
+			if (key != 0) {
+				int slot = slotFor(key);
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+			}
+		}
+	}
+
+	protected int capacity() {
+		return keys.length;
+	}
+
+	protected boolean isFree(int slot) {
+		return keys[slot] == 0;
+	}
+
+	protected int homeSlot(int slot) {
+		return slotFor(keys[slot]);
+	}
+
+	protected void moveKey(int from, int to) {
+		keys[to] = keys[from];
+	}
+
+	protected void clearSlot(int slot) {
+		keys[slot] = 0;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+/*
+ * HashSetWithChain specialized for long keys. Keys are stored in
+ * open-addressing long arrays and are never boxed, while bulk operations
+ * run in parallel over ranges of chains like HashSetWithChain.
+ */
+class LongHashSetWithChain extends PrimitiveHashSetWithChain<LongHashSetWithChain, LongChain> {
+	public LongHashSetWithChain() {
+		super();
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 */
+	public LongHashSetWithChain(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of keys per chain that triggers growth
+	 */
+	public LongHashSetWithChain(int initialCapacity, float loadFactor) {
+		super(initialCapacity, loadFactor);
+	}
+
+	protected LongChain[] newTable(int length) {
+		LongChain[] table = new LongChain[length];
+		for (int i=0; i<length; i++) {
+			table[i] = new LongChain();
+		}
+		return table;
+	}
+
+	protected LongHashSetWithChain newSet(int initialCapacity, float loadFactor) {
+		return new LongHashSetWithChain(initialCapacity, loadFactor);
+	}
+
+	protected void moveKeys(LongChain chain) {
+		for (long key : chain.toArray()) {
+			getTable()[hashCode(key)].add(key);
+		}
+	}
+
+	protected LongTaskInvoker newTaskInvoker(LongHashSetWithChain set, int parallelism) {
+		return new LongTaskInvoker(this, set, parallelism);
+	}
+
+	/*
+	 * @param key Input key
+	 * @return Index of table to store the input key
+	 */
+	public int hashCode(long key) {
+		return indexFor(LongChain.hash(key));
+	}
+
+	public boolean add(long key) {
+		rehashStep();
+		int hashValue = LongChain.hash(key);
+		LongChain oldChain = getOldChain(hashValue);
+		if (oldChain != null && oldChain.contains(key)) {
+			return false;
+		}
+		boolean success = getTable()[indexFor(hashValue)].add(key);
+		if (success) {
+			keyAdded();
+		}
+		return success;
+	}
+
+	public boolean remove(long key) {
+		rehashStep();
+		int hashValue = LongChain.hash(key);
+		LongChain oldChain = getOldChain(hashValue);
+		boolean  success  = (oldChain != null) && oldChain.remove(key);
+		if (!success) {
+			success = getTable()[indexFor(hashValue)].remove(key);
+		}
+		if (success) {
+			keyRemoved();
+		}
+		return success;
+	}
+
+	public boolean contains(long key) {
+		int hashValue = LongChain.hash(key);
+		if (getTable()[indexFor(hashValue)].contains(key)) {
+			return true;
+		}
+		LongChain oldChain = getOldChain(hashValue);
+		return (oldChain != null) && oldChain.contains(key);
+	}
+
+	/*
+	 * @return Copy of all the keys of set
+	 */
+	public long[] toArray() {
+		long[] result = new long[size()];
+		int count = 0;
+		for (LongChain chain : getTable()) {
+			long[] keys = chain.toArray();
+			System.arraycopy(keys, 0, result, count, keys.length);
+			count += keys.length;
+		}
+		for (LongChain chain : getRemainingOldChains()) {
+			long[] keys = chain.toArray();
+			System.arraycopy(keys, 0, result, count, keys.length);
+			count += keys.length;
+		}
+		return result;
+	}
+
+	public boolean addAll(long[] keys) {
+		return addAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 */
+	public boolean addAll(long[] keys, int parallelism) {
+		ensureCapacity((long)size() + keys.length);
+		return execute(new LongTaskInvoker(this, keys, parallelism), SetOperationTypes.ADD_ALL);
+	}
+
+	public boolean removeAll(long[] keys) {
+		return removeAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	public boolean removeAll(long[] keys, int parallelism) {
+		return execute(new LongTaskInvoker(this, keys, parallelism), SetOperationTypes.REMOVE_ALL);
+	}
+
+	public boolean containsAll(long[] keys) {
+		return containsAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	public boolean containsAll(long[] keys, int parallelism) {
+		return execute(new LongTaskInvoker(this, keys, parallelism), SetOperationTypes.CONTAINS_ALL);
+	}
+
+	public boolean retainAll(long[] keys) {
+		return retainAll(keys, DEFAULT_PARALLELISM);
+	}
+
+	public boolean retainAll(long[] keys, int parallelism) {
+		return execute(new LongTaskInvoker(this, keys, parallelism), SetOperationTypes.RETAIN_ALL);
+	}
+}
\ No newline at end of file
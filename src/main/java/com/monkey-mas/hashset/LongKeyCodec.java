@@ -0,0 +1,18 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Stores Long keys in 8 bytes
+ */
+public class LongKeyCodec implements KeyCodec<Long> {
+	public int getWidth() {
+		return 8;
+	}
+
+	public void encode(Long key, ByteBuffer buffer, int offset) {
+		buffer.putLong(offset, key);
+	}
+
+	public Long decode(ByteBuffer buffer, int offset) {
+		return buffer.getLong(offset);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * PrimitiveSetOperation of LongHashSetWithChain
+ */
+class LongSetOperation extends PrimitiveSetOperation<Long, LongChain> {
+	private long[] keys;	/* Keys sorted by chain, not used when tableB is given */
+
+	public LongSetOperation(SetOperationTypes setOperation,
+							LongChain[] tableA,
+							LongChain[] tableB,
+							long[] keys, int[] chainStart,
+							LongAdder sizeDelta,
+							int from, int to) {
+		super(setOperation, tableA, tableB, chainStart, sizeDelta, from, to);
+		this.keys = keys;
+	}
+
+	@Override
+	protected boolean operateOnChain(int index) {
+		LongChain chainA = tableA[index];
+		long[] keysB = keys;
+		int start, end;
+		if (tableB != null) {
+			keysB = tableB[index].toArray();
+			start = 0;
+			end   = keysB.length;
+		}
+		else {
+			start = chainStart[index];
+			end   = chainStart[index + 1];
+		}
+
+		if (setOperation == SetOperationTypes.ADD_ALL) {
+			for (int pos=start; pos<end; pos++) {
+				chainA.add(keysB[pos]);
+			}
+		}
+		else if (setOperation == SetOperationTypes.REMOVE_ALL) {
+			for (int pos=start; pos<end; pos++) {
+				chainA.remove(keysB[pos]);
+			}
+		}
+		else if (setOperation == SetOperationTypes.RETAIN_ALL) {
+			LongChain retain = new LongChain();
+			for (int pos=start; pos<end; pos++) {
+				if (chainA.contains(keysB[pos])) {
+					retain.add(keysB[pos]);
+				}
+			}
+			tableA[index] = retain;
+		}
+		else if (setOperation == SetOperationTypes.CONTAINS_ALL) {
+			for (int pos=start; pos<end; pos++) {
+				if (!chainA.contains(keysB[pos])) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
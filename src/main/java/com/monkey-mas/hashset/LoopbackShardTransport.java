@@ -0,0 +1,32 @@
+/*
+ * Transport to shards living in this process. Requests are still
+ * encoded, so it runs the same code as a remote transport without
+ * the network, which suits tests and single-machine setups.
+ */
+class LoopbackShardTransport implements ShardTransport {
+	private final ShardServer[] servers;
+
+	/*
+	 * @param numberOfShards Number of shards to create
+	 */
+	public LoopbackShardTransport(int numberOfShards) {
+		if (numberOfShards <= 0) {
+			throw new IllegalArgumentException("Illegal number of shards: " + numberOfShards);
+		}
+		servers = new ShardServer[numberOfShards];
+		for (int i=0; i<numberOfShards; i++) {
+			servers[i] = new ShardServer();
+		}
+	}
+
+	public int getNumberOfShards() {
+		return servers.length;
+	}
+
+	public byte[] call(int shard, byte[] request) {
+		return servers[shard].handle(request);
+	}
+
+	public void close() {
+	}
+}
\ No newline at end of file
@@ -0,0 +1,561 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/*
+ * Read-only set served from a file mapped into memory.
+ *
+ * write() stores the keys of a set, encoded by a KeyCodec, in a file
+ * organized by bucket. open() maps the file, so contains() can answer
+ * right away without reading the whole file or decoding any key, and the
+ * pages are shared with the page cache. toHashSetWithChain() and
+ * toOffHeapSet() promote the snapshot into a mutable set.
+ *
+ * File layout:
+ *   header   magic, version, byte order of the data, key width, number of
+ *            buckets, number of keys, CRC32 of the bucket index, of the
+ *            entries and of the header itself
+ *   index    (buckets + 1) longs, entries of bucket i are [index[i], index[i+1])
+ *   entries  int hash followed by the key bytes, sorted by hash within a bucket
+ *
+ * Reads hold the read lock of unmapLock, so close() waits for them
+ * instead of unmapping the file under them, which would crash the JVM.
+ */
+class MappedSetSnapshot<T> implements Iterable<T>, AutoCloseable {
+	private static final int MAGIC = 0x48535743; /* "HSWC" */
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int CHECKSUMMED_HEADER_SIZE = 56; /* Header without its own checksum */
+	private static final int KEYS_PER_BUCKET = 8;
+	private static final int MAXIMUM_BUCKETS = 1 << 27; /* Keeps the index in a single mapping */
+	private static final int MAXIMUM_SEGMENT_SIZE = 1 << 30; /* A mapping can't exceed 2GB */
+	private final Path path;
+	private final KeyCodec<T> codec;
+	private final int width;
+	private final int entrySize;
+	private final int numberOfBuckets;
+	private final long size;
+	private final long indexChecksum;
+	private final long entriesChecksum;
+	private final ByteOrder order;
+	private MappedByteBuffer index;		 /* Null once the snapshot is closed */
+	private MappedByteBuffer[] segments; /* Entries, split in mappings of whole entries */
+	private final int entriesPerSegment;
+	private final ReentrantReadWriteLock unmapLock = new ReentrantReadWriteLock();
+	/* Encoded key that contains() looks up, one per thread */
+	private final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(width).order(order);
+		}
+	};
+
+	private MappedSetSnapshot(Path path, KeyCodec<T> codec, ByteOrder order,
+							  int numberOfBuckets, long size,
+							  long indexChecksum, long entriesChecksum,
+							  MappedByteBuffer index, MappedByteBuffer[] segments) {
+		this.path = path;
+		this.codec = codec;
+		this.width = codec.getWidth();
+		this.entrySize = 4 + width;
+		this.numberOfBuckets = numberOfBuckets;
+		this.size = size;
+		this.indexChecksum = indexChecksum;
+		this.entriesChecksum = entriesChecksum;
+		this.order = order;
+		this.index = index;
+		this.segments = segments;
+		this.entriesPerSegment = MAXIMUM_SEGMENT_SIZE / entrySize;
+		index.order(order);
+		for (MappedByteBuffer segment : segments) {
+			segment.order(order);
+		}
+	}
+
+	/*
+	 * Calls the visitor for every key of a set to write, encoded in
+	 * the native byte order and hashed by OffHeapChain.hash()
+	 */
+	private static abstract class Entries {
+		abstract long size();
+		abstract void forEach(EntryVisitor visitor);
+	}
+
+	private static interface EntryVisitor {
+		void visit(ByteBuffer buffer, int offset, int hash);
+	}
+
+	/*
+	 * Write all the keys of the set to the file. The file is replaced
+	 * atomically, so readers never see a partially written snapshot.
+	 *
+	 * @param set Set to write, which must not be modified meanwhile
+	 * @param codec Codec of keys
+	 * @param path File to write
+	 */
+	public static <T> void write(final HashSetWithChain<T> set, final KeyCodec<T> codec,
+								 Path path) throws IOException {
+		set.completeResize();
+		final int width = codec.getWidth();
+		Entries entries = new Entries() {
+			long size() {
+				return set.size();
+			}
+
+			void forEach(EntryVisitor visitor) {
+				ByteBuffer scratch = ByteBuffer.allocate(width).order(ByteOrder.nativeOrder());
+				for (ChainInterface<T> chain : set.getTable()) {
+					Iterator<T> iter = chain.iterator();
+					while (iter.hasNext()) {
+						codec.encode(iter.next(), scratch, 0);
+						visitor.visit(scratch, 0, OffHeapChain.hash(scratch, 0, width));
+					}
+				}
+			}
+		};
+		write(entries, width, path);
+	}
+
+	/*
+	 * Write all the keys of the off-heap set to the file without decoding them
+	 *
+	 * @param set Set to write, which must not be modified meanwhile
+	 * @param path File to write
+	 */
+	public static <T> void write(final OffHeapHashSetWithChain<T> set, Path path) throws IOException {
+		set.completeResize();
+		Entries entries = new Entries() {
+			long size() {
+				return set.size();
+			}
+
+			void forEach(EntryVisitor visitor) {
+				for (OffHeapChain chain : set.getTable()) {
+					ByteBuffer slots = chain.getSlots();
+					for (int slot=0, capacity=chain.capacity(); slot<capacity; slot++) {
+						if (chain.isOccupied(slot)) {
+							visitor.visit(slots, chain.keyOffset(slot), chain.hashAt(slot));
+						}
+					}
+				}
+			}
+		};
+		write(entries, set.getWidth(), path);
+	}
+
+	private static void write(Entries entries, final int width, Path path) throws IOException {
+		final long size = entries.size();
+		final int entrySize = 4 + width;
+		final int buckets = HashSetWithChain.tableSizeFor(
+			(int)Math.min((size + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET, MAXIMUM_BUCKETS));
+		final int entriesPerSegment = MAXIMUM_SEGMENT_SIZE / entrySize;
+		long indexSize = 8L * (buckets + 1);
+		long entriesOffset = HEADER_SIZE + indexSize;
+		ByteOrder order = ByteOrder.nativeOrder();
+
+		/* First pass counts the keys of each bucket */
+		final long[] next = new long[buckets + 1];
+		entries.forEach(new EntryVisitor() {
+			public void visit(ByteBuffer buffer, int offset, int hash) {
+				next[(hash & (buckets - 1)) + 1]++;
+			}
+		});
+		for (int i=0; i<buckets; i++) {
+			next[i + 1] += next[i];
+		}
+		if (next[buckets] != size) {
+			throw new IllegalStateException("Set was modified while writing");
+		}
+
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+													StandardOpenOption.TRUNCATE_EXISTING,
+													StandardOpenOption.READ,
+													StandardOpenOption.WRITE)) {
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, indexSize);
+			index.order(order);
+			for (int i=0; i<=buckets; i++) {
+				index.putLong(8 * i, next[i]);
+			}
+			final MappedByteBuffer[] segments =
+				mapSegments(channel, FileChannel.MapMode.READ_WRITE, entriesOffset, size, entrySize);
+			for (MappedByteBuffer segment : segments) {
+				segment.order(order);
+			}
+
+			/* Second pass writes each key at the next position of its bucket */
+			entries.forEach(new EntryVisitor() {
+				public void visit(ByteBuffer buffer, int offset, int hash) {
+					long entry = next[hash & (buckets - 1)]++;
+					ByteBuffer segment = segments[(int)(entry / entriesPerSegment)];
+					int position = (int)(entry % entriesPerSegment) * entrySize;
+					segment.putInt(position, hash);
+					segment.put(position + 4, buffer, offset, width);
+				}
+			});
+			sortBuckets(index, segments, buckets, entrySize, entriesPerSegment);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, (order == ByteOrder.BIG_ENDIAN) ? 1 : 0);
+			header.putInt(12, width);
+			header.putInt(16, buckets);
+			header.putLong(24, size);
+			header.putLong(32, checksum(new ByteBuffer[] { index }));
+			header.putLong(40, checksum(segments));
+			header.putLong(48, 0);
+			header.putLong(CHECKSUMMED_HEADER_SIZE, checksumOfHeader(header));
+			channel.write(header, 0);
+
+			index.force();
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+			channel.force(true);
+			DirectBuffers.free(index);
+			for (MappedByteBuffer segment : segments) {
+				DirectBuffers.free(segment);
+			}
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+				   StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Sort the entries of each bucket by hash, so that lookups
+	 * binary search them
+	 */
+	private static void sortBuckets(ByteBuffer index, ByteBuffer[] segments, int buckets,
+									int entrySize, int entriesPerSegment) {
+		byte[] bucket = new byte[0];
+		byte[] entry = new byte[entrySize];
+		for (int b=0; b<buckets; b++) {
+			long start = index.getLong(8 * b);
+			int count = (int)(index.getLong(8 * (b + 1)) - start);
+			if (count < 2) {
+				continue;
+			}
+			if (bucket.length < count * entrySize) {
+				bucket = new byte[count * entrySize];
+			}
+			ByteBuffer view = ByteBuffer.wrap(bucket).order(index.order());
+			for (int i=0; i<count; i++) {
+				long e = start + i;
+				segments[(int)(e / entriesPerSegment)]
+					.get((int)(e % entriesPerSegment) * entrySize, bucket, i * entrySize, entrySize);
+			}
+			/* Insertion sort, as buckets hold a few keys */
+			for (int i=1; i<count; i++) {
+				int hash = view.getInt(i * entrySize);
+				int j = i - 1;
+				if (view.getInt(j * entrySize) <= hash) {
+					continue;
+				}
+				System.arraycopy(bucket, i * entrySize, entry, 0, entrySize);
+				while (j >= 0 && view.getInt(j * entrySize) > hash) {
+					System.arraycopy(bucket, j * entrySize, bucket, (j + 1) * entrySize, entrySize);
+					j--;
+				}
+				System.arraycopy(entry, 0, bucket, (j + 1) * entrySize, entrySize);
+			}
+			for (int i=0; i<count; i++) {
+				long e = start + i;
+				segments[(int)(e / entriesPerSegment)]
+					.put((int)(e % entriesPerSegment) * entrySize, bucket, i * entrySize, entrySize);
+			}
+		}
+	}
+
+	private static MappedByteBuffer[] mapSegments(FileChannel channel, FileChannel.MapMode mode,
+												  long offset, long entries, int entrySize)
+												  throws IOException {
+		long entriesPerSegment = MAXIMUM_SEGMENT_SIZE / entrySize;
+		int numberOfSegments = (int)((entries + entriesPerSegment - 1) / entriesPerSegment);
+		MappedByteBuffer[] segments = new MappedByteBuffer[numberOfSegments];
+		for (int i=0; i<numberOfSegments; i++) {
+			long count = Math.min(entriesPerSegment, entries - i * entriesPerSegment);
+			segments[i] = channel.map(mode, offset + i * entriesPerSegment * entrySize,
+									  count * entrySize);
+		}
+		return segments;
+	}
+
+	private static long checksum(ByteBuffer[] buffers) {
+		CRC32 crc = new CRC32();
+		for (ByteBuffer buffer : buffers) {
+			crc.update(buffer.duplicate().clear());
+		}
+		return crc.getValue();
+	}
+
+	private static long checksumOfHeader(ByteBuffer header) {
+		CRC32 crc = new CRC32();
+		crc.update(header.duplicate().clear().limit(CHECKSUMMED_HEADER_SIZE));
+		return crc.getValue();
+	}
+
+	/*
+	 * Map a snapshot, checking its header and bucket index only
+	 */
+	public static <T> MappedSetSnapshot<T> open(Path path, KeyCodec<T> codec) throws IOException {
+		return open(path, codec, false);
+	}
+
+	/*
+	 * @param path File written by write()
+	 * @param codec Codec the file was written with
+	 * @param verify True to also check the entries, which reads the whole file
+	 * @return Snapshot, which must be closed to unmap the file
+	 * @throws IOException If the file can't be read or is corrupt
+	 */
+	public static <T> MappedSetSnapshot<T> open(Path path, KeyCodec<T> codec,
+												boolean verify) throws IOException {
+		if (codec == null) {
+			throw new NullPointerException("codec");
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+				/* Read the whole header */
+			}
+			if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+				throw new IOException("Not a set snapshot: " + path);
+			}
+			if (header.getLong(CHECKSUMMED_HEADER_SIZE) != checksumOfHeader(header)) {
+				throw new IOException("Corrupt snapshot header: " + path);
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Unsupported snapshot version: " + header.getInt(4));
+			}
+			ByteOrder order = (header.getInt(8) == 1) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+			int width = header.getInt(12);
+			if (width != codec.getWidth()) {
+				throw new IllegalArgumentException("Illegal key width: " + codec.getWidth());
+			}
+			int buckets = header.getInt(16);
+			long size = header.getLong(24);
+			long indexSize = 8L * (buckets + 1);
+			if (channel.size() != HEADER_SIZE + indexSize + size * (4 + width)) {
+				throw new IOException("Truncated snapshot: " + path);
+			}
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexSize);
+			MappedByteBuffer[] segments = mapSegments(channel, FileChannel.MapMode.READ_ONLY,
+													  HEADER_SIZE + indexSize, size, 4 + width);
+			MappedSetSnapshot<T> snapshot =
+				new MappedSetSnapshot<T>(path, codec, order, buckets, size,
+										 header.getLong(32), header.getLong(40), index, segments);
+			if (checksum(new ByteBuffer[] { index }) != snapshot.indexChecksum
+					|| (verify && !snapshot.verify())) {
+				snapshot.close();
+				throw new IOException("Corrupt snapshot: " + path);
+			}
+			return snapshot;
+		}
+	}
+
+	/*
+	 * Check the entries against their checksum, reading the whole file
+	 *
+	 * @return True if the entries are intact
+	 */
+	public boolean verify() {
+		unmapLock.readLock().lock();
+		try {
+			ensureOpen();
+			return checksum(segments) == entriesChecksum;
+		} finally {
+			unmapLock.readLock().unlock();
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public int size() {
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public KeyCodec<T> getCodec() {
+		return codec;
+	}
+
+	private void ensureOpen() {
+		if (index == null) {
+			throw new IllegalStateException("Snapshot is closed");
+		}
+	}
+
+	private ByteBuffer segmentOf(long entry) {
+		return segments[(int)(entry / entriesPerSegment)];
+	}
+
+	private int positionOf(long entry) {
+		return (int)(entry % entriesPerSegment) * entrySize;
+	}
+
+	/*
+	 * Safe to call from many threads at once, and with close()
+	 */
+	public boolean contains(T key) {
+		if (key == null) {
+			throw new NullPointerException("key");
+		}
+		ByteBuffer encoded = scratch.get();
+		codec.encode(key, encoded, 0);
+		int hash = OffHeapChain.hash(encoded, 0, width);
+		unmapLock.readLock().lock();
+		try {
+			ensureOpen();
+			return find(encoded, hash);
+		} finally {
+			unmapLock.readLock().unlock();
+		}
+	}
+
+	private boolean find(ByteBuffer encoded, int hash) {
+		int bucket = hash & (numberOfBuckets - 1);
+		long low  = index.getLong(8 * bucket);
+		long high = index.getLong(8 * (bucket + 1));
+		/* Find the first entry of the hash */
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (segmentOf(middle).getInt(positionOf(middle)) < hash) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		for (long entry=low, end=index.getLong(8 * (bucket + 1)); entry<end; entry++) {
+			ByteBuffer segment = segmentOf(entry);
+			int position = positionOf(entry);
+			if (segment.getInt(position) != hash) {
+				return false;
+			}
+			if (equalKeys(segment, position + 4, encoded)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean equalKeys(ByteBuffer segment, int position, ByteBuffer encoded) {
+		for (int i=0; i<width; i++) {
+			if (segment.get(position + i) != encoded.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Keys are decoded one at a time in the order of the file.
+	 * next() throws IllegalStateException once the snapshot is closed.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		ensureOpen();
+		return new Iterator<T>() {
+			private long entry = 0;
+
+			public boolean hasNext() {
+				return entry < size;
+			}
+
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				unmapLock.readLock().lock();
+				try {
+					ensureOpen();
+					T key = codec.decode(segmentOf(entry), positionOf(entry) + 4);
+					entry++;
+					return key;
+				} finally {
+					unmapLock.readLock().unlock();
+				}
+			}
+		};
+	}
+
+	/*
+	 * @return Mutable copy of the snapshot, with a table sized for its keys
+	 */
+	public HashSetWithChain<T> toHashSetWithChain() {
+		ensureOpen();
+		HashSetWithChain<T> set = new HashSetWithChain<T>();
+		set.ensureCapacity(size);
+		for (T key : this) {
+			set.add(key);
+		}
+		return set;
+	}
+
+	/*
+	 * Keys are copied as raw bytes when the file has the native byte order
+	 *
+	 * @return Mutable off-heap copy of the snapshot
+	 */
+	public OffHeapHashSetWithChain<T> toOffHeapSet() {
+		ensureOpen();
+		OffHeapHashSetWithChain<T> set = new OffHeapHashSetWithChain<T>(codec);
+		if (order != ByteOrder.nativeOrder()) {
+			for (T key : this) {
+				set.add(key);
+			}
+			return set;
+		}
+		set.ensureCapacity(size);
+		unmapLock.readLock().lock();
+		try {
+			ensureOpen();
+			for (long entry=0; entry<size; entry++) {
+				ByteBuffer segment = segmentOf(entry);
+				int position = positionOf(entry);
+				set.addEncoded(segment, position + 4, segment.getInt(position));
+			}
+		} finally {
+			unmapLock.readLock().unlock();
+		}
+		return set;
+	}
+
+	/*
+	 * Unmap the file once the reads in progress are done.
+	 * Later reads throw IllegalStateException.
+	 */
+	@Override
+	public void close() {
+		unmapLock.writeLock().lock();
+		try {
+			if (index == null) {
+				return;
+			}
+			DirectBuffers.free(index);
+			for (MappedByteBuffer segment : segments) {
+				DirectBuffers.free(segment);
+			}
+			index = null;
+			segments = null;
+		} finally {
+			unmapLock.writeLock().unlock();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,230 @@
+import java.nio.ByteBuffer;
+
+/*
+ * Chain of OffHeapHashSetWithChain. Keys are stored as raw bytes in the
+ * slots of a direct buffer with open addressing, and removal shifts the
+ * following keys back. Each slot holds a state byte, the hash of the key
+ * and the key bytes, so keys are moved without being decoded or rehashed.
+ */
+class OffHeapChain {
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int STATE_OFFSET = 0;
+	private static final int HASH_OFFSET = 1;
+	private static final int KEY_OFFSET = 5;
+	private final int width;
+	private final int slotSize;
+	private ByteBuffer slots; /* Null until the first key is added */
+	private int capacity;
+	private int shift;		  /* 32 - log2(capacity) */
+	private int numberOfKeys;
+
+	/*
+	 * @param width Number of bytes of every key
+	 */
+	public OffHeapChain(int width) {
+		this.width = width;
+		this.slotSize = KEY_OFFSET + width;
+	}
+
+	/*
+	 * Hash of an encoded key, computed from its bytes only
+	 *
+	 * @param buffer Buffer holding the key
+	 * @param offset Position of the key in buffer
+	 * @param width Number of bytes of the key
+	 */
+	static int hash(ByteBuffer buffer, int offset, int width) {
+		long h = width;
+		int i = 0;
+		for (; i + 8 <= width; i += 8) {
+			h = (h ^ buffer.getLong(offset + i)) * 0x9e3779b97f4a7c15L;
+			h ^= h >>> 32;
+		}
+		for (; i < width; i++) {
+			h = (h ^ (buffer.get(offset + i) & 0xff)) * 0x9e3779b97f4a7c15L;
+		}
+		h ^= h >>> 29;
+		h *= 0xbf58476d1ce4e5b9L;
+		h ^= h >>> 32;
+		return (int)h;
+	}
+
+	public int size() {
+		return numberOfKeys;
+	}
+
+	public boolean isEmpty() {
+		return numberOfKeys == 0;
+	}
+
+	/*
+	 * @return Number of slots, occupied or not
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/*
+	 * @return Number of bytes of the buffer of the slots
+	 */
+	public long allocatedBytes() {
+		return (long)capacity * slotSize;
+	}
+
+	/*
+	 * @return Buffer of the slots, or null if no key was ever added
+	 */
+	public ByteBuffer getSlots() {
+		return slots;
+	}
+
+	public boolean isOccupied(int slot) {
+		return slots.get(slot * slotSize + STATE_OFFSET) != 0;
+	}
+
+	public int hashAt(int slot) {
+		return slots.getInt(slot * slotSize + HASH_OFFSET);
+	}
+
+	/*
+	 * @return Position of the key of the slot in getSlots()
+	 */
+	public int keyOffset(int slot) {
+		return slot * slotSize + KEY_OFFSET;
+	}
+
+	/*
+	 * The chain index of a key comes from its low bits,
+	 * so the slot is taken from the high bits of the product.
+	 */
+	private int slotFor(int hash) {
+		return (hash * 0x9e3779b9) >>> shift;
+	}
+
+	/*
+	 * @return Slot holding the key, or the empty slot where it would be added
+	 */
+	private int find(ByteBuffer key, int offset, int hash) {
+		int mask = capacity - 1;
+		int slot = slotFor(hash);
+		while (isOccupied(slot)) {
+			if (hashAt(slot) == hash && equalKeys(slots, keyOffset(slot), key, offset)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private boolean equalKeys(ByteBuffer a, int offsetA, ByteBuffer b, int offsetB) {
+		int i = 0;
+		for (; i + 8 <= width; i += 8) {
+			if (a.getLong(offsetA + i) != b.getLong(offsetB + i)) {
+				return false;
+			}
+		}
+		for (; i < width; i++) {
+			if (a.get(offsetA + i) != b.get(offsetB + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * @param key Buffer holding the encoded key
+	 * @param offset Position of the key in buffer
+	 * @param hash hash() of the key
+	 */
+	public boolean contains(ByteBuffer key, int offset, int hash) {
+		if (numberOfKeys == 0) {
+			return false;
+		}
+		return isOccupied(find(key, offset, hash));
+	}
+
+	public boolean add(ByteBuffer key, int offset, int hash) {
+		if (slots == null) {
+			allocate(INITIAL_CAPACITY);
+		}
+		int slot = find(key, offset, hash);
+		if (isOccupied(slot)) {
+			return false;
+		}
+		write(slot, key, offset, hash);
+		if (++numberOfKeys * 4 > capacity * 3) {
+			grow();
+		}
+		return true;
+	}
+
+	public boolean remove(ByteBuffer key, int offset, int hash) {
+		if (numberOfKeys == 0) {
+			return false;
+		}
+		int slot = find(key, offset, hash);
+		if (!isOccupied(slot)) {
+			return false;
+		}
+		/* Shift back the following keys that could not be stored in their home slot */
+		int mask = capacity - 1;
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (isOccupied(next)) {
+			int home = slotFor(hashAt(next));
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				copySlot(next, hole);
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		slots.put(hole * slotSize + STATE_OFFSET, (byte)0);
+		numberOfKeys--;
+		return true;
+	}
+
+	private void write(int slot, ByteBuffer key, int offset, int hash) {
+		int base = slot * slotSize;
+		slots.put(base + STATE_OFFSET, (byte)1);
+		slots.putInt(base + HASH_OFFSET, hash);
+		slots.put(base + KEY_OFFSET, key, offset, width);
+	}
+
+	private void copySlot(int from, int to) {
+		slots.put(to * slotSize, slots, from * slotSize, slotSize);
+	}
+
+	private void allocate(int newCapacity) {
+		slots = DirectBuffers.allocate((long)newCapacity * slotSize);
+		capacity = newCapacity;
+		shift = 32 - Integer.numberOfTrailingZeros(newCapacity);
+	}
+
+	private void grow() {
+		ByteBuffer oldSlots = slots;
+		int oldCapacity = capacity;
+		allocate(capacity * 2);
+		int mask = capacity - 1;
+		for (int i=0; i<oldCapacity; i++) {
+			int base = i * slotSize;
+			if (oldSlots.get(base + STATE_OFFSET) != 0) {
+				int slot = slotFor(oldSlots.getInt(base + HASH_OFFSET));
+				while (isOccupied(slot)) {
+					slot = (slot + 1) & mask;
+				}
+				slots.put(slot * slotSize, oldSlots, base, slotSize);
+			}
+		}
+		DirectBuffers.free(oldSlots);
+	}
+
+	/*
+	 * Release the buffer of the chain, which becomes empty
+	 */
+	public void free() {
+		DirectBuffers.free(slots);
+		slots = null;
+		capacity = 0;
+		numberOfKeys = 0;
+	}
+}
\ No newline at end of file
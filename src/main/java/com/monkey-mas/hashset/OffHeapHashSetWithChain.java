@@ -0,0 +1,575 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+
+/*
+ * HashSetWithChain for fixed-width keys that lives outside of the Java heap.
+ * Keys are encoded by a KeyCodec and stored as raw bytes in direct buffers,
+ * one per chain, so hundreds of millions of keys neither fill the heap
+ * nor add to the work of the garbage collector. Bulk operations between
+ * two such sets compare and copy the bytes without decoding any key.
+ *
+ * The table grows incrementally like HashSetWithChain: single-key
+ * operations move a few chains of the old table each, so that no add
+ * stops to copy every key at once. Bulk operations complete the move first.
+ *
+ * The memory is released by close(), after which the set must not be used.
+ * The set is not thread-safe, though bulk operations run in parallel.
+ * Like java.util.HashSet, it can be read by several threads at once
+ * as long as none of them changes it.
+ */
+class OffHeapHashSetWithChain<T> implements Iterable<T>, AutoCloseable {
+	private static final int DEFAULT_TABLE_SIZE = 32;
+	private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+	private static final float DEFAULT_LOAD_FACTOR = 256.0f; /* Chains use open addressing, so long chains are cheap */
+	private static final int REHASH_STEPS_PER_OPERATION = 2; /* Chains moved per add/remove while resizing */
+	private static final int SHRINK_RATIO = 4; /* Shrink once the table is 4 times larger than needed */
+	private static final int DEFAULT_INLINE_THRESHOLD = 4096; /* Smaller operations run on the caller thread */
+	private static final int DEFAULT_PARALLELISM = 0; /* Let the set decide the number of threads */
+	private final KeyCodec<T> codec;
+	private final int width;
+	private final float loadFactor;
+	private final int minimumTableSize;
+	/* Encoded key of single-key operations, one per thread so that readers don't share it */
+	private final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(width).order(ByteOrder.nativeOrder());
+		}
+	};
+	private boolean shrinkEnabled;
+	private long size;
+	private OffHeapChain[] table; /* Null once the set is closed */
+	private OffHeapChain[] oldTable; /* Non-null only while the table is being resized */
+	private int rehashIndex;		 /* Chains of oldTable below this index are already moved */
+	private ExecutorService executor; /* Null to use the default executor */
+	private int inlineThreshold = DEFAULT_INLINE_THRESHOLD;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private volatile TaskBalance lastTaskBalance; /* Of the last bulk operation run on this set */
+
+	public OffHeapHashSetWithChain(KeyCodec<T> codec) {
+		this(codec, DEFAULT_TABLE_SIZE, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param codec Codec of keys
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 */
+	public OffHeapHashSetWithChain(KeyCodec<T> codec, int initialCapacity) {
+		this(codec, initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param codec Codec of keys
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of keys per chain that triggers growth
+	 */
+	public OffHeapHashSetWithChain(KeyCodec<T> codec, int initialCapacity, float loadFactor) {
+		if (codec == null) {
+			throw new NullPointerException("codec");
+		}
+		if (codec.getWidth() <= 0) {
+			throw new IllegalArgumentException("Illegal key width: " + codec.getWidth());
+		}
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		}
+		if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		}
+		this.codec = codec;
+		this.width = codec.getWidth();
+		this.loadFactor = loadFactor;
+		this.minimumTableSize = HashSetWithChain.tableSizeFor(initialCapacity);
+		this.table = newTable(minimumTableSize);
+	}
+
+	private OffHeapChain[] newTable(int length) {
+		OffHeapChain[] table = new OffHeapChain[length];
+		for (int i=0; i<length; i++) {
+			table[i] = new OffHeapChain(width);
+		}
+		return table;
+	}
+
+	/*
+	 * @return The number of keys in set
+	 */
+	public int size() {
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * @return Number of bytes allocated outside of the heap for the keys
+	 */
+	public long getOffHeapSize() {
+		ensureOpen();
+		long bytes = 0;
+		for (OffHeapChain chain : getChains()) {
+			bytes += chain.allocatedBytes();
+		}
+		return bytes;
+	}
+
+	public KeyCodec<T> getCodec() {
+		return codec;
+	}
+
+	/*
+	 * @return Number of bytes of every encoded key
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/*
+	 * @return Table that contains all the chains
+	 */
+	protected OffHeapChain[] getTable() {
+		ensureOpen();
+		return table;
+	}
+
+	/*
+	 * @return The size of table
+	 */
+	protected int getTableSize() {
+		return getTable().length;
+	}
+
+	/*
+	 * @return Chains of table followed by the chains of oldTable that are not moved yet
+	 */
+	private OffHeapChain[] getChains() {
+		if (oldTable == null) {
+			return table;
+		}
+		OffHeapChain[] chains = new OffHeapChain[table.length + oldTable.length - rehashIndex];
+		System.arraycopy(table, 0, chains, 0, table.length);
+		System.arraycopy(oldTable, rehashIndex, chains, table.length, oldTable.length - rehashIndex);
+		return chains;
+	}
+
+	/*
+	 * @param hash Hash of an encoded key
+	 * @return Index of table to store the key
+	 */
+	protected int indexFor(int hash) {
+		return hash & (table.length - 1);
+	}
+
+	/*
+	 * Enable or disable shrinking the table after removeAll/retainAll.
+	 * The table never shrinks below its initial capacity.
+	 */
+	public void setShrinkEnabled(boolean shrinkEnabled) {
+		this.shrinkEnabled = shrinkEnabled;
+	}
+
+	private void ensureOpen() {
+		if (table == null) {
+			throw new IllegalStateException("Set is closed");
+		}
+	}
+
+	/*
+	 * While resizing, keys whose chain is not moved yet still live in oldTable.
+	 *
+	 * @param hash Hash of an encoded key
+	 * @return Chain of oldTable that may hold the key, or null if there is none
+	 */
+	private OffHeapChain getOldChain(int hash) {
+		if (oldTable == null) {
+			return null;
+		}
+		int index = hash & (oldTable.length - 1);
+		if (index < rehashIndex) {
+			return null;
+		}
+		return oldTable[index];
+	}
+
+	/*
+	 * Start moving all the keys to a table of the given size.
+	 * The chains are moved a few at a time by the following add/remove.
+	 */
+	private void resize(int length) {
+		completeResize();
+		oldTable = table;
+		table = newTable(length);
+		rehashIndex = 0;
+	}
+
+	private void rehashStep() {
+		if (oldTable == null) {
+			return;
+		}
+		for (int step=0; step<REHASH_STEPS_PER_OPERATION && rehashIndex<oldTable.length; step++) {
+			moveChain(rehashIndex++);
+		}
+		if (rehashIndex == oldTable.length) {
+			oldTable = null;
+			rehashIndex = 0;
+		}
+	}
+
+	/*
+	 * Move all the remaining chains of oldTable to the current table.
+	 * Bulk operations call this so that they see a single, stable table.
+	 */
+	protected void completeResize() {
+		if (oldTable == null) {
+			return;
+		}
+		while (rehashIndex < oldTable.length) {
+			moveChain(rehashIndex++);
+		}
+		oldTable = null;
+		rehashIndex = 0;
+	}
+
+	/*
+	 * Slots keep the hash of their key, so the bytes are copied without rehashing
+	 */
+	private void moveChain(int index) {
+		OffHeapChain chain = oldTable[index];
+		ByteBuffer slots = chain.getSlots();
+		for (int slot=0, capacity=chain.capacity(); slot<capacity; slot++) {
+			if (chain.isOccupied(slot)) {
+				int hash = chain.hashAt(slot);
+				table[indexFor(hash)].add(slots, chain.keyOffset(slot), hash);
+			}
+		}
+		chain.free();
+		oldTable[index] = null;
+	}
+
+	private void growIfNeeded() {
+		if (oldTable == null && size > table.length * loadFactor
+				&& table.length < MAXIMUM_TABLE_SIZE) {
+			resize(table.length * 2);
+		}
+	}
+
+	/*
+	 * Grow the table right away before a bulk add
+	 *
+	 * @param expectedSize Number of keys the set may hold after the operation
+	 */
+	protected void ensureCapacity(long expectedSize) {
+		completeResize();
+		long required = (long)Math.ceil(expectedSize / (double)loadFactor);
+		int length = HashSetWithChain.tableSizeFor((int)Math.min(required, MAXIMUM_TABLE_SIZE));
+		if (length > table.length) {
+			resize(length);
+			completeResize();
+		}
+	}
+
+	private void shrinkIfNeeded() {
+		if (!shrinkEnabled) {
+			return;
+		}
+		completeResize();
+		long required = (long)Math.ceil(size / (double)loadFactor);
+		int length = Math.max(HashSetWithChain.tableSizeFor((int)required), minimumTableSize);
+		if ((long)length * SHRINK_RATIO <= table.length) {
+			resize(length);
+			completeResize();
+		}
+	}
+
+	/*
+	 * Encode the key at the start of buffer
+	 *
+	 * @return Hash of the encoded key
+	 */
+	private int encode(T key, ByteBuffer buffer) {
+		if (key == null) {
+			throw new NullPointerException("key");
+		}
+		codec.encode(key, buffer, 0);
+		return OffHeapChain.hash(buffer, 0, width);
+	}
+
+	public boolean add(T key) {
+		ensureOpen();
+		ByteBuffer buffer = scratch.get();
+		int hash = encode(key, buffer);
+		return addEncoded(buffer, 0, hash);
+	}
+
+	/*
+	 * Add a key that is already encoded
+	 *
+	 * @param buffer Buffer holding the encoded key
+	 * @param offset Position of the key in buffer
+	 * @param hash OffHeapChain.hash() of the key
+	 */
+	boolean addEncoded(ByteBuffer buffer, int offset, int hash) {
+		rehashStep();
+		OffHeapChain oldChain = getOldChain(hash);
+		if (oldChain != null && oldChain.contains(buffer, offset, hash)) {
+			return false;
+		}
+		boolean success = table[indexFor(hash)].add(buffer, offset, hash);
+		if (success) {
+			size++;
+			growIfNeeded();
+		}
+		return success;
+	}
+
+	public boolean remove(T key) {
+		ensureOpen();
+		ByteBuffer buffer = scratch.get();
+		int hash = encode(key, buffer);
+		rehashStep();
+		OffHeapChain oldChain = getOldChain(hash);
+		boolean success = (oldChain != null) && oldChain.remove(buffer, 0, hash);
+		if (!success) {
+			success = table[indexFor(hash)].remove(buffer, 0, hash);
+		}
+		if (success) {
+			size--;
+		}
+		return success;
+	}
+
+	public boolean contains(T key) {
+		ensureOpen();
+		ByteBuffer buffer = scratch.get();
+		int hash = encode(key, buffer);
+		if (table[indexFor(hash)].contains(buffer, 0, hash)) {
+			return true;
+		}
+		OffHeapChain oldChain = getOldChain(hash);
+		return (oldChain != null) && oldChain.contains(buffer, 0, hash);
+	}
+
+	/*
+	 * Keys are decoded one at a time while iterating.
+	 * The set must not be modified during the iteration.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		ensureOpen();
+		final OffHeapChain[] chains = getChains();
+		return new Iterator<T>() {
+			private int index = 0;
+			private int slot = -1;
+
+			{
+				advance();
+			}
+
+			/* Move to the next occupied slot */
+			private void advance() {
+				slot++;
+				while (index < chains.length) {
+					OffHeapChain chain = chains[index];
+					while (slot < chain.capacity()) {
+						if (chain.isOccupied(slot)) {
+							return;
+						}
+						slot++;
+					}
+					index++;
+					slot = 0;
+				}
+			}
+
+			public boolean hasNext() {
+				return index < chains.length;
+			}
+
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				OffHeapChain chain = chains[index];
+				T key = codec.decode(chain.getSlots(), chain.keyOffset(slot));
+				advance();
+				return key;
+			}
+		};
+	}
+
+	/*
+	 * Release the memory of all the keys. The set must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (table == null) {
+			return;
+		}
+		for (OffHeapChain chain : getChains()) {
+			chain.free();
+		}
+		table = null;
+		oldTable = null;
+		rehashIndex = 0;
+		size = 0;
+	}
+
+	public boolean addAll(Collection<? extends T> collection) {
+		return addAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 */
+	public boolean addAll(Collection<? extends T> collection, int parallelism) {
+		ensureOpen();
+		ensureCapacity(size + collection.size());
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, collection, parallelism);
+		boolean success = task.execute(SetOperationTypes.ADD_ALL);
+		size += task.getSizeDelta();
+		return success;
+	}
+
+	public boolean addAll(OffHeapHashSetWithChain<T> set) {
+		return addAll(set, DEFAULT_PARALLELISM);
+	}
+
+	public boolean addAll(OffHeapHashSetWithChain<T> set, int parallelism) {
+		ensureOpen();
+		ensureCapacity(size + set.size);
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, set, parallelism);
+		boolean success = task.execute(SetOperationTypes.ADD_ALL);
+		size += task.getSizeDelta();
+		return success;
+	}
+
+	public boolean removeAll(Collection<? extends T> collection) {
+		return removeAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	public boolean removeAll(Collection<? extends T> collection, int parallelism) {
+		ensureOpen();
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, collection, parallelism);
+		boolean success = task.execute(SetOperationTypes.REMOVE_ALL);
+		size += task.getSizeDelta();
+		shrinkIfNeeded();
+		return success;
+	}
+
+	public boolean removeAll(OffHeapHashSetWithChain<T> set) {
+		return removeAll(set, DEFAULT_PARALLELISM);
+	}
+
+	public boolean removeAll(OffHeapHashSetWithChain<T> set, int parallelism) {
+		ensureOpen();
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, set, parallelism);
+		boolean success = task.execute(SetOperationTypes.REMOVE_ALL);
+		size += task.getSizeDelta();
+		shrinkIfNeeded();
+		return success;
+	}
+
+	public boolean containsAll(Collection<? extends T> collection) {
+		return containsAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	public boolean containsAll(Collection<? extends T> collection, int parallelism) {
+		ensureOpen();
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, collection, parallelism);
+		return task.execute(SetOperationTypes.CONTAINS_ALL);
+	}
+
+	public boolean containsAll(OffHeapHashSetWithChain<T> set) {
+		return containsAll(set, DEFAULT_PARALLELISM);
+	}
+
+	public boolean containsAll(OffHeapHashSetWithChain<T> set, int parallelism) {
+		ensureOpen();
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, set, parallelism);
+		return task.execute(SetOperationTypes.CONTAINS_ALL);
+	}
+
+	public boolean retainAll(Collection<? extends T> collection) {
+		return retainAll(collection, DEFAULT_PARALLELISM);
+	}
+
+	public boolean retainAll(Collection<? extends T> collection, int parallelism) {
+		ensureOpen();
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, collection, parallelism);
+		boolean success = task.execute(SetOperationTypes.RETAIN_ALL);
+		size += task.getSizeDelta();
+		shrinkIfNeeded();
+		return success;
+	}
+
+	public boolean retainAll(OffHeapHashSetWithChain<T> set) {
+		return retainAll(set, DEFAULT_PARALLELISM);
+	}
+
+	public boolean retainAll(OffHeapHashSetWithChain<T> set, int parallelism) {
+		ensureOpen();
+		OffHeapTaskInvoker<T> task = new OffHeapTaskInvoker<T>(this, set, parallelism);
+		boolean success = task.execute(SetOperationTypes.RETAIN_ALL);
+		size += task.getSizeDelta();
+		shrinkIfNeeded();
+		return success;
+	}
+
+	/*
+	 * Set the thread pool that runs bulk operations of this set.
+	 * The pool is never shut down by the set.
+	 *
+	 * @param executor Thread pool, or null to use the default executor of HashSetWithChain
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	protected ExecutorService getExecutor() {
+		return (executor != null) ? executor : HashSetWithChain.getDefaultExecutor();
+	}
+
+	/*
+	 * @param inlineThreshold Number of keys below which bulk operations
+	 *                        run on the caller thread, 0 to always use the thread pool
+	 */
+	public void setInlineThreshold(int inlineThreshold) {
+		if (inlineThreshold < 0) {
+			throw new IllegalArgumentException("Illegal inline threshold: " + inlineThreshold);
+		}
+		this.inlineThreshold = inlineThreshold;
+	}
+
+	protected int getInlineThreshold() {
+		return inlineThreshold;
+	}
+
+	/*
+	 * @param parallelism Number of threads of bulk operations, 0 to choose it
+	 *                    from the number of processors and keys of each operation
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 0) {
+			throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	protected int getThreadSizeOfSetOp(int requested, long workSize) {
+		return HashSetWithChain.getThreadSizeOfSetOp(requested, parallelism, workSize,
+													 getTableSize(), getExecutor());
+	}
+
+	public TaskBalance getLastTaskBalance() {
+		return lastTaskBalance;
+	}
+
+	protected void setLastTaskBalance(TaskBalance taskBalance) {
+		lastTaskBalance = taskBalance;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,177 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Add/remove/retain/contains all of the keys of a range of chains of
+ * OffHeapHashSetWithChain. Keys are compared and copied as raw bytes and
+ * never decoded. They come from the chains of the same index of another
+ * set with the same table size, from every chain of another set with
+ * another table size, or from a buffer of encoded keys grouped by chain.
+ */
+class OffHeapSetOperation extends SetOperation<Object> {
+	private SetOperationTypes setOperation;
+	private int width;
+	private OffHeapChain[] tableA;
+	private OffHeapChain[] tableB;	/* Null when keys are given */
+	private boolean aligned;		/* True if tableB has the size of tableA */
+	private ByteBuffer keys;		/* Encoded keys, not used when tableB is given */
+	private int[] hashes;			/* hashes[k] is the hash of the k-th key of keys */
+	private int[] order;			/* Keys sorted by chain, as indices into keys */
+	private int[] chainStart;		/* Keys of chain i are order[chainStart[i]] to order[chainStart[i+1]-1] */
+	private LongAdder sizeDelta;	/* Shared by all ranges */
+	private long delta;				/* Keys added by this range, negative if removed */
+	private int from;
+	private int to;
+
+	public OffHeapSetOperation(SetOperationTypes setOperation, int width,
+							   OffHeapChain[] tableA, OffHeapChain[] tableB,
+							   ByteBuffer keys, int[] hashes, int[] order, int[] chainStart,
+							   LongAdder sizeDelta, int from, int to) {
+		this.setOperation = setOperation;
+		this.width = width;
+		this.tableA = tableA;
+		this.tableB = tableB;
+		this.aligned = (tableB != null) && (tableB.length == tableA.length);
+		this.keys = keys;
+		this.hashes = hashes;
+		this.order = order;
+		this.chainStart = chainStart;
+		this.sizeDelta = sizeDelta;
+		this.from = from;
+		this.to   = to;
+	}
+
+	@Override
+	public Boolean call() {
+		try {
+			if (tableB != null && !aligned) {
+				return operateOnRehashedSet();
+			}
+			for (int i=from; i<to; i++) {
+				if (!operateOnChain(i) || isStopped()) {
+					return false;
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			if (delta != 0) {
+				sizeDelta.add(delta);
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * @param index Index of chain
+	 * @return False if a key is missing on CONTAINS_ALL, true otherwise
+	 */
+	private boolean operateOnChain(int index) {
+		OffHeapChain retain = null;
+		if (setOperation == SetOperationTypes.RETAIN_ALL) {
+			retain = new OffHeapChain(width);
+		}
+		if (tableB != null) {
+			OffHeapChain chainB = tableB[index];
+			ByteBuffer slotsB = chainB.getSlots();
+			for (int slot=0, capacity=chainB.capacity(); slot<capacity; slot++) {
+				if (chainB.isOccupied(slot)
+						&& !operateOnKey(index, slotsB, chainB.keyOffset(slot), chainB.hashAt(slot), retain)) {
+					return false;
+				}
+			}
+		}
+		else {
+			for (int pos=chainStart[index], end=chainStart[index + 1]; pos<end; pos++) {
+				int k = order[pos];
+				if (!operateOnKey(index, keys, k * width, hashes[k], retain)) {
+					return false;
+				}
+			}
+		}
+		if (retain != null) {
+			delta += retain.size() - tableA[index].size();
+			tableA[index].free();
+			tableA[index] = retain;
+		}
+		return true;
+	}
+
+	/*
+	 * @param retain Chain collecting the kept keys on RETAIN_ALL, null otherwise
+	 * @return False if the key is missing on CONTAINS_ALL, true otherwise
+	 */
+	private boolean operateOnKey(int index, ByteBuffer buffer, int offset, int hash,
+								 OffHeapChain retain) {
+		OffHeapChain chainA = tableA[index];
+		if (setOperation == SetOperationTypes.ADD_ALL) {
+			if (chainA.add(buffer, offset, hash)) {
+				delta++;
+			}
+		}
+		else if (setOperation == SetOperationTypes.REMOVE_ALL) {
+			if (chainA.remove(buffer, offset, hash)) {
+				delta--;
+			}
+		}
+		else if (setOperation == SetOperationTypes.RETAIN_ALL) {
+			if (chainA.contains(buffer, offset, hash)) {
+				retain.add(buffer, offset, hash);
+			}
+		}
+		else if (setOperation == SetOperationTypes.CONTAINS_ALL) {
+			return chainA.contains(buffer, offset, hash);
+		}
+		return true;
+	}
+
+	/*
+	 * As keys of a chain in setB are spread over several chains of setA,
+	 * visit every chain of setB and only take keys of our range.
+	 * Retaining visits our chains instead and looks their keys up in setB.
+	 */
+	private boolean operateOnRehashedSet() {
+		int maskA = tableA.length - 1;
+		int maskB = tableB.length - 1;
+		if (setOperation == SetOperationTypes.RETAIN_ALL) {
+			for (int i=from; i<to; i++) {
+				OffHeapChain chainA = tableA[i];
+				OffHeapChain retain = new OffHeapChain(width);
+				ByteBuffer slotsA = chainA.getSlots();
+				for (int slot=0, capacity=chainA.capacity(); slot<capacity; slot++) {
+					if (!chainA.isOccupied(slot)) {
+						continue;
+					}
+					int hash = chainA.hashAt(slot);
+					int offset = chainA.keyOffset(slot);
+					if (tableB[hash & maskB].contains(slotsA, offset, hash)) {
+						retain.add(slotsA, offset, hash);
+					}
+				}
+				delta += retain.size() - chainA.size();
+				chainA.free();
+				tableA[i] = retain;
+			}
+			return true;
+		}
+		for (OffHeapChain chainB : tableB) {
+			ByteBuffer slotsB = chainB.getSlots();
+			for (int slot=0, capacity=chainB.capacity(); slot<capacity; slot++) {
+				if (!chainB.isOccupied(slot)) {
+					continue;
+				}
+				int hash  = chainB.hashAt(slot);
+				int index = hash & maskA;
+				if (from <= index && index < to
+						&& !operateOnKey(index, slotsB, chainB.keyOffset(slot), hash, null)) {
+					return false;
+				}
+			}
+			if (isStopped()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,182 @@
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Runs a bulk operation of OffHeapHashSetWithChain over its chains,
+ * the same way TaskInvoker does for HashSetWithChain.
+ */
+class OffHeapTaskInvoker<T> {
+	private OffHeapHashSetWithChain<T> setA;
+	private OffHeapHashSetWithChain<T> setB; /* Not used when a collection is given */
+	private Collection<? extends T> collection;
+	private ByteBuffer keys;		/* Encoded collection, freed after the operation */
+	private int[] hashes;
+	private int[] order;			/* Indices of keys sorted by chain of setA */
+	private int[] chainStart;
+	private int numberOfThreads;
+	private final LongAdder sizeDelta = new LongAdder(); /* Added to by each range */
+
+	/* Used for operations with a collection */
+	public OffHeapTaskInvoker(OffHeapHashSetWithChain<T> a, Collection<? extends T> collection,
+							  int parallelism) {
+		a.completeResize();
+		setA = a;
+		this.collection = collection;
+		numberOfThreads = a.getThreadSizeOfSetOp(parallelism, getWorkSize());
+	}
+
+	/* Used for operations with another set */
+	public OffHeapTaskInvoker(OffHeapHashSetWithChain<T> a, OffHeapHashSetWithChain<T> b,
+							  int parallelism) {
+		if (a.getWidth() != b.getWidth()) {
+			throw new IllegalArgumentException("Illegal key width: " + b.getWidth());
+		}
+		a.completeResize();
+		b.completeResize();
+		setA = a;
+		setB = b;
+		numberOfThreads = a.getThreadSizeOfSetOp(parallelism, getWorkSize());
+	}
+
+	/*
+	 * @return Number of keys added to setA by the operation, negative if removed
+	 */
+	protected long getSizeDelta() {
+		return sizeDelta.sum();
+	}
+
+	/*
+	 * Run the operation, recording it to the flight recorder if enabled
+	 */
+	protected final boolean execute(SetOperationTypes setOperation) {
+		try {
+			BulkOperationEvent event = new BulkOperationEvent();
+			if (!event.isEnabled()) {
+				return run(setOperation, false);
+			}
+			long workSize = getWorkSize();
+			event.begin();
+			boolean result = run(setOperation, true);
+			event.commitOperation(setOperation, setA, workSize, setA.getTableSize(),
+								  numberOfThreads, setA.getLastTaskBalance(), result);
+			return result;
+		} finally {
+			DirectBuffers.free(keys);
+			keys = null;
+		}
+	}
+
+	/*
+	 * @param recordBalance True to record how the work was spread to setA
+	 */
+	private boolean run(final SetOperationTypes setOperation, boolean recordBalance) {
+		if (collection != null) {
+			encode();
+		}
+
+		if (numberOfThreads == 1 || getWorkSize() < setA.getInlineThreshold()) {
+			/* Not worth handing over to other threads, so run on this thread */
+			SetOperation<?> operation = createOperation(0, setA.getTableSize(), setOperation);
+			if (!recordBalance) {
+				return operation.call();
+			}
+			TaskBalance.Recorder recorder = new TaskBalance.Recorder();
+			boolean success = recorder.call(operation, getWorkSize());
+			setA.setLastTaskBalance(recorder.toBalance(0));
+			return success;
+		}
+
+		/* Thread pool shared by set operations, which we must not shut down */
+		ExecutorService service = setA.getExecutor();
+
+		RangeOperationFactory factory = new RangeOperationFactory() {
+			public SetOperation<?> createOperation(int from, int to) {
+				return OffHeapTaskInvoker.this.createOperation(from, to, setOperation);
+			}
+		};
+		/*
+		 * If setB stores keys in other chains, each range visits
+		 * all of setB, so don't split more than the number of threads.
+		 */
+		boolean splittable = (setB == null) || setA.getTableSize() == setB.getTableSize();
+		/* A single missing key decides containsAll, so stop the other ranges */
+		boolean stopOnFalse = (setOperation == SetOperationTypes.CONTAINS_ALL);
+		RangeScheduler scheduler = new RangeScheduler(service, factory, computePrefixWeight(),
+													  numberOfThreads, splittable, stopOnFalse);
+		TaskBalance taskBalance = scheduler.execute(recordBalance);
+		if (recordBalance) {
+			setA.setLastTaskBalance(taskBalance);
+		}
+		return scheduler.getResult();
+	}
+
+	/*
+	 * Encode the collection into a direct buffer, hashing each key once,
+	 * and group the keys by chain of setA with a counting sort
+	 */
+	private void encode() {
+		int width = setA.getWidth();
+		int n = collection.size();
+		int tableSize = setA.getTableSize();
+		keys = DirectBuffers.allocate((long)n * width);
+		hashes = new int[n];
+		int[] indices = new int[n];
+		chainStart = new int[tableSize + 1];
+		KeyCodec<T> codec = setA.getCodec();
+		int k = 0;
+		for (T key : collection) {
+			codec.encode(key, keys, k * width);
+			hashes[k] = OffHeapChain.hash(keys, k * width, width);
+			indices[k] = setA.indexFor(hashes[k]);
+			chainStart[indices[k] + 1]++;
+			k++;
+		}
+		for (int i=0; i<tableSize; i++) {
+			chainStart[i + 1] += chainStart[i];
+		}
+		int[] next = new int[tableSize];
+		System.arraycopy(chainStart, 0, next, 0, tableSize);
+		order = new int[n];
+		for (int i=0; i<n; i++) {
+			order[next[indices[i]]++] = i;
+		}
+	}
+
+	/*
+	 * @return Total weight of chains [0, i) of setA
+	 */
+	private long[] computePrefixWeight() {
+		OffHeapChain[] tableA = setA.getTable();
+		OffHeapChain[] tableB = (setB == null) ? null : setB.getTable();
+		boolean aligned = (tableB != null) && tableB.length == tableA.length;
+		long[] prefixWeight = new long[tableA.length + 1];
+		for (int i=0; i<tableA.length; i++) {
+			long weight = 1 + tableA[i].size();
+			if (aligned) {
+				weight += tableB[i].size();
+			}
+			else if (tableB == null) {
+				weight += chainStart[i + 1] - chainStart[i];
+			}
+			prefixWeight[i + 1] = prefixWeight[i] + weight;
+		}
+		return prefixWeight;
+	}
+
+	/*
+	 * @return Rough number of keys the operation visits
+	 */
+	private long getWorkSize() {
+		long incoming = (setB == null) ? collection.size() : setB.size();
+		return setA.size() + incoming;
+	}
+
+	private SetOperation<?> createOperation(int from, int to,
+											SetOperationTypes setOperation) {
+		OffHeapChain[] tableB = (setB == null) ? null : setB.getTable();
+		return new OffHeapSetOperation(setOperation, setA.getWidth(), setA.getTable(), tableB,
+									   keys, hashes, order, chainStart, sizeDelta, from, to);
+	}
+}
\ No newline at end of file
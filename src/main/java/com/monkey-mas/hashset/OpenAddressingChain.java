@@ -0,0 +1,194 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/*
+ * Chain storing elements in a single flat array with linear probing,
+ * without the table and node objects of a java.util.HashSet.
+ * Null elements are not supported, as null marks an empty slot.
+ *
+ * The hash value of each element, from the HashStrategy of the set, is
+ * kept next to it, so that neither growing nor removing hashes elements
+ * again and probes only call equals() on matching hash values.
+ */
+class OpenAddressingChain<T> implements ChainInterface<T> {
+	private static final int[] EMPTY_HASHES = new int[0];
+	private static final Object[] EMPTY_ELEMENTS = new Object[0];
+	private static final int INITIAL_CAPACITY = 4;
+	private final HashStrategy<? super T> hashStrategy;
+	private int[] hashes = EMPTY_HASHES;		 /* Hash value of the element in the same slot */
+	private Object[] elements = EMPTY_ELEMENTS;
+	private int shift = 32;	/* 32 - log2(elements.length) */
+	private int size;
+
+	/*
+	 * @param hashStrategy Hash function of the set, used when no hash value is given
+	 */
+	public OpenAddressingChain(HashStrategy<? super T> hashStrategy) {
+		this.hashStrategy = hashStrategy;
+	}
+
+	public boolean add(T data) {
+		return add(data, hashStrategy.hash(data));
+	}
+
+	public boolean add(T data, int hashValue) {
+		if ((size + 1) * 4 > elements.length * 3) {
+			grow();
+		}
+		int mask = elements.length - 1;
+		int slot = slotFor(hashValue);
+		while (elements[slot] != null) {
+			if (hashes[slot] == hashValue && elements[slot].equals(data)) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		hashes[slot]   = hashValue;
+		elements[slot] = data;
+		size++;
+		return true;
+	}
+
+	public boolean remove(T data) {
+		return remove(data, hashStrategy.hash(data));
+	}
+
+	public boolean remove(T data, int hashValue) {
+		int slot = findSlot(data, hashValue);
+		if (slot < 0) {
+			return false;
+		}
+
+		/* Shift back the following elements so that no probe sequence is broken */
+		int mask = elements.length - 1;
+		int gap  = slot;
+		int next = (gap + 1) & mask;
+		while (elements[next] != null) {
+			int home = slotFor(hashes[next]);
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				hashes[gap]   = hashes[next];
+				elements[gap] = elements[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		elements[gap] = null;
+		size--;
+		return true;
+	}
+
+	public boolean contains(T data) {
+		return contains(data, hashStrategy.hash(data));
+	}
+
+	public boolean contains(T data, int hashValue) {
+		return findSlot(data, hashValue) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Removing an element shifts others back, so the iterator walks
+	 * a copy of the elements and removes through remove(T).
+	 */
+	public Iterator<T> iterator() {
+		final Object[] snapshot = new Object[size];
+		int count = 0;
+		for (Object elem : elements) {
+			if (elem != null) {
+				snapshot[count++] = elem;
+			}
+		}
+		return new Iterator<T>() {
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < snapshot.length;
+			}
+
+			public T next() {
+				if (next >= snapshot.length) {
+					throw new NoSuchElementException();
+				}
+				return elementAt(snapshot, next++);
+			}
+
+			public void remove() {
+				if (next == 0) {
+					throw new IllegalStateException();
+				}
+				OpenAddressingChain.this.remove(elementAt(snapshot, next - 1));
+			}
+		};
+	}
+
+	/*
+	 * Walks the slots directly, without the copy made by iterator()
+	 */
+	public void forEach(Consumer<? super T> action) {
+		Object[] elements = this.elements;
+		for (int i=0; i<elements.length; i++) {
+			if (elements[i] != null) {
+				action.accept(OpenAddressingChain.<T>elementAt(elements, i));
+			}
+		}
+	}
+
+	/*
+	 * @return Slot of the element, or -1 if not found
+	 */
+	private int findSlot(Object data, int hashValue) {
+		if (size == 0) {
+			return -1;
+		}
+		int mask = elements.length - 1;
+		int slot = slotFor(hashValue);
+		while (elements[slot] != null) {
+			if (hashes[slot] == hashValue && elements[slot].equals(data)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/*
+	 * Elements of a chain share the low bits of their hash value in the set,
+	 * so use the high bits of a multiplicative hash instead.
+	 */
+	private int slotFor(int hashValue) {
+		return (hashValue * 0x9e3779b9) >>> shift;
+	}
+
+	private void grow() {
+		int[] oldHashes = hashes;
+		Object[] oldElements = elements;
+		int length = (oldElements.length == 0) ? INITIAL_CAPACITY : oldElements.length * 2;
+		hashes   = new int[length];
+		elements = new Object[length];
+		shift = 32 - Integer.numberOfTrailingZeros(length);
+		int mask = length - 1;
+		for (int i=0; i<oldElements.length; i++) {
+			if (oldElements[i] != null) {
+				int slot = slotFor(oldHashes[i]);
+				while (elements[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot]   = oldHashes[i];
+				elements[slot] = oldElements[i];
+			}
+		}
+	}
+
+	/*
+	 * The array only holds elements added as T,
+	 * so we can say that this is type-safe
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T elementAt(Object[] array, int index) {
+		return (T)array[index];
+	}
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*
+ * Common part of IntChain and LongChain, which store keys in an
+ * open-addressing array with linear probing so that keys are never boxed.
+ * 0 marks an empty slot, so the key 0 itself is kept in a flag.
+ *
+ * Subclasses own the array of keys and probe it; this class keeps the
+ * counts and the backward-shift deletion, which only move keys by slot.
+ */
+abstract class PrimitiveChain {
+	protected static final int INITIAL_CAPACITY = 4;
+	protected int numberOfKeys;	 /* Keys in the array, excluding 0 */
+	protected boolean containsZero;
+
+	/*
+	 * @return Length of the array of keys
+	 */
+	protected abstract int capacity();
+
+	/*
+	 * @return True if the slot holds no key
+	 */
+	protected abstract boolean isFree(int slot);
+
+	/*
+	 * @return Slot where the probe sequence of the key in the slot starts
+	 */
+	protected abstract int homeSlot(int slot);
+
+	/*
+	 * Move the key of slot from to slot to, leaving slot from as it is
+	 */
+	protected abstract void moveKey(int from, int to);
+
+	protected abstract void clearSlot(int slot);
+
+	public int size() {
+		return containsZero ? numberOfKeys + 1 : numberOfKeys;
+	}
+
+	/*
+	 * @return True if the array must grow before a key is added
+	 */
+	protected boolean isFull() {
+		return (numberOfKeys + 1) * 4 > capacity() * 3;
+	}
+
+	protected boolean addZero() {
+		boolean added = !containsZero;
+		containsZero = true;
+		return added;
+	}
+
+	protected boolean removeZero() {
+		boolean removed = containsZero;
+		containsZero = false;
+		return removed;
+	}
+
+	/*
+	 * Remove the key of the slot, shifting back the following keys
+	 * so that no probe sequence is broken
+	 */
+	protected void removeSlot(int slot) {
+		int mask = capacity() - 1;
+		int gap  = slot;
+		int next = (gap + 1) & mask;
+		while (!isFree(next)) {
+			int home = homeSlot(next);
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				moveKey(next, gap);
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		clearSlot(gap);
+		numberOfKeys--;
+	}
+}
\ No newline at end of file
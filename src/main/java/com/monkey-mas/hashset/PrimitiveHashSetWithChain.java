@@ -0,0 +1,376 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/*
+ * Common part of IntHashSetWithChain and LongHashSetWithChain: the table
+ * of chains, its incremental resize, the size and the bulk operations
+ * between two sets. Subclasses add the operations that take keys, which
+ * must not be boxed.
+ *
+ * @param <S> Type of the set itself
+ * @param <C> Type of its chains
+ */
+abstract class PrimitiveHashSetWithChain<S extends PrimitiveHashSetWithChain<S, C>, C extends PrimitiveChain> {
+	private static final int DEFAULT_TABLE_SIZE = 32;
+	private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+	protected static final float DEFAULT_LOAD_FACTOR = 4.0f;
+	private static final int REHASH_STEPS_PER_OPERATION = 2; /* Chains moved per add/remove while resizing */
+	private static final int SHRINK_RATIO = 4; /* Shrink once the table is 4 times larger than needed */
+	private static final int DEFAULT_INLINE_THRESHOLD = 4096; /* Smaller operations run on the caller thread */
+	protected static final int DEFAULT_PARALLELISM = 0; /* Let the set decide the number of threads */
+	private final float loadFactor;
+	private final int minimumTableSize;
+	private boolean shrinkEnabled;
+	private int size;
+	private C[] table;
+	private C[] oldTable;	 /* Non-null only while the table is being resized */
+	private int rehashIndex; /* Chains of oldTable below this index are already moved */
+	private ExecutorService executor; /* Null to use the default executor */
+	private int inlineThreshold = DEFAULT_INLINE_THRESHOLD;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private volatile TaskBalance lastTaskBalance; /* Of the last bulk operation run on this set */
+
+	protected PrimitiveHashSetWithChain() {
+		this(DEFAULT_TABLE_SIZE, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of keys per chain that triggers growth
+	 */
+	protected PrimitiveHashSetWithChain(int initialCapacity, float loadFactor) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+		}
+		if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+			throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		}
+		this.loadFactor = loadFactor;
+		this.minimumTableSize = HashSetWithChain.tableSizeFor(initialCapacity);
+		this.table = newTable(minimumTableSize);
+	}
+
+	/*
+	 * @return Table of empty chains
+	 */
+	protected abstract C[] newTable(int length);
+
+	/*
+	 * @return Empty set of the given table size and load factor
+	 */
+	protected abstract S newSet(int initialCapacity, float loadFactor);
+
+	/*
+	 * Add the keys of a chain of oldTable to the current table
+	 */
+	protected abstract void moveKeys(C chain);
+
+	protected abstract PrimitiveTaskInvoker<S, C> newTaskInvoker(S set, int parallelism);
+
+	/*
+	 * @return The number of keys in set
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/*
+	 * @return Table that contains all the chains
+	 */
+	protected C[] getTable() {
+		return table;
+	}
+
+	/*
+	 * @return The size of table
+	 */
+	protected int getTableSize() {
+		return table.length;
+	}
+
+	protected float getLoadFactor() {
+		return loadFactor;
+	}
+
+	/*
+	 * Enable or disable shrinking the table after removeAll/retainAll.
+	 * The table never shrinks below its initial capacity.
+	 */
+	public void setShrinkEnabled(boolean shrinkEnabled) {
+		this.shrinkEnabled = shrinkEnabled;
+	}
+
+	/*
+	 * @param hashValue Hash value of a key
+	 * @return Index of table to store the key
+	 */
+	protected int indexFor(int hashValue) {
+		return hashValue & (table.length - 1);
+	}
+
+	/*
+	 * While resizing, keys whose chain is not moved yet still live in oldTable.
+	 *
+	 * @param hashValue Hash value of a key
+	 * @return Chain of oldTable that may hold the key, or null if there is none
+	 */
+	protected C getOldChain(int hashValue) {
+		if (oldTable == null) {
+			return null;
+		}
+		int index = hashValue & (oldTable.length - 1);
+		if (index < rehashIndex) {
+			return null;
+		}
+		return oldTable[index];
+	}
+
+	/*
+	 * @return Chains of oldTable that are not moved yet, empty if not resizing
+	 */
+	protected C[] getRemainingOldChains() {
+		if (oldTable == null) {
+			return newTable(0);
+		}
+		return Arrays.copyOfRange(oldTable, rehashIndex, oldTable.length);
+	}
+
+	/*
+	 * Start moving all the keys to a table of the given size.
+	 * The chains are moved a few at a time by the following add/remove.
+	 */
+	private void resize(int length) {
+		completeResize();
+		oldTable = table;
+		table = newTable(length);
+		rehashIndex = 0;
+	}
+
+	/*
+	 * Single-key operations call this first to move a few chains while resizing
+	 */
+	protected void rehashStep() {
+		if (oldTable == null) {
+			return;
+		}
+		for (int step=0; step<REHASH_STEPS_PER_OPERATION && rehashIndex<oldTable.length; step++) {
+			moveChain(rehashIndex++);
+		}
+		if (rehashIndex == oldTable.length) {
+			oldTable = null;
+			rehashIndex = 0;
+		}
+	}
+
+	/*
+	 * Move all the remaining chains of oldTable to the current table.
+	 * Bulk operations call this so that they see a single, stable table.
+	 */
+	protected void completeResize() {
+		if (oldTable == null) {
+			return;
+		}
+		while (rehashIndex < oldTable.length) {
+			moveChain(rehashIndex++);
+		}
+		oldTable = null;
+		rehashIndex = 0;
+	}
+
+	private void moveChain(int index) {
+		moveKeys(oldTable[index]);
+		oldTable[index] = null;
+	}
+
+	/*
+	 * Single-key operations call this once they added a key
+	 */
+	protected void keyAdded() {
+		size++;
+		if (oldTable == null && size > table.length * loadFactor
+				&& table.length < MAXIMUM_TABLE_SIZE) {
+			resize(table.length * 2);
+		}
+	}
+
+	/*
+	 * Single-key operations call this once they removed a key
+	 */
+	protected void keyRemoved() {
+		size--;
+	}
+
+	/*
+	 * Grow the table right away before a bulk add
+	 *
+	 * @param expectedSize Number of keys the set may hold after the operation
+	 */
+	protected void ensureCapacity(long expectedSize) {
+		completeResize();
+		long required = (long)Math.ceil(expectedSize / (double)loadFactor);
+		int length = HashSetWithChain.tableSizeFor((int)Math.min(required, MAXIMUM_TABLE_SIZE));
+		if (length > table.length) {
+			resize(length);
+			completeResize();
+		}
+	}
+
+	private void shrinkIfNeeded() {
+		if (!shrinkEnabled) {
+			return;
+		}
+		completeResize();
+		long required = (long)Math.ceil(size / (double)loadFactor);
+		int length = Math.max(HashSetWithChain.tableSizeFor((int)required), minimumTableSize);
+		if ((long)length * SHRINK_RATIO <= table.length) {
+			resize(length);
+			completeResize();
+		}
+	}
+
+	/*
+	 * Run a bulk operation and add the size deltas of its ranges to the size,
+	 * so that the table is not walked again to count the keys.
+	 */
+	protected boolean execute(PrimitiveTaskInvoker<S, C> task, SetOperationTypes setOperation) {
+		boolean success = task.execute(setOperation);
+		size += task.getSizeDelta();
+		if (setOperation == SetOperationTypes.REMOVE_ALL || setOperation == SetOperationTypes.RETAIN_ALL) {
+			shrinkIfNeeded();
+		}
+		return success;
+	}
+
+	public boolean addAll(S set) {
+		return addAll(set, DEFAULT_PARALLELISM);
+	}
+
+	/*
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 */
+	public boolean addAll(S set, int parallelism) {
+		ensureCapacity((long)size + set.size());
+		return execute(newTaskInvoker(set, parallelism), SetOperationTypes.ADD_ALL);
+	}
+
+	public boolean removeAll(S set) {
+		return removeAll(set, DEFAULT_PARALLELISM);
+	}
+
+	public boolean removeAll(S set, int parallelism) {
+		return execute(newTaskInvoker(set, parallelism), SetOperationTypes.REMOVE_ALL);
+	}
+
+	public boolean containsAll(S set) {
+		return containsAll(set, DEFAULT_PARALLELISM);
+	}
+
+	public boolean containsAll(S set, int parallelism) {
+		return execute(newTaskInvoker(set, parallelism), SetOperationTypes.CONTAINS_ALL);
+	}
+
+	public boolean retainAll(S set) {
+		return retainAll(set, DEFAULT_PARALLELISM);
+	}
+
+	public boolean retainAll(S set, int parallelism) {
+		return execute(newTaskInvoker(set, parallelism), SetOperationTypes.RETAIN_ALL);
+	}
+
+	/*
+	 * Set the thread pool that runs bulk operations of this set.
+	 * The pool is never shut down by the set.
+	 *
+	 * @param executor Thread pool, or null to use the default executor of HashSetWithChain
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	protected ExecutorService getExecutor() {
+		return (executor != null) ? executor : HashSetWithChain.getDefaultExecutor();
+	}
+
+	/*
+	 * @param inlineThreshold Number of keys below which bulk operations
+	 *                        run on the caller thread, 0 to always use the thread pool
+	 */
+	public void setInlineThreshold(int inlineThreshold) {
+		if (inlineThreshold < 0) {
+			throw new IllegalArgumentException("Illegal inline threshold: " + inlineThreshold);
+		}
+		this.inlineThreshold = inlineThreshold;
+	}
+
+	protected int getInlineThreshold() {
+		return inlineThreshold;
+	}
+
+	/*
+	 * @param parallelism Number of threads of bulk operations, 0 to choose it
+	 *                    from the number of processors and keys of each operation
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 0) {
+			throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	protected int getThreadSizeOfSetOp(int requested, long workSize) {
+		return HashSetWithChain.getThreadSizeOfSetOp(requested, parallelism, workSize,
+													 getTableSize(), getExecutor());
+	}
+
+	public TaskBalance getLastTaskBalance() {
+		return lastTaskBalance;
+	}
+
+	protected void setLastTaskBalance(TaskBalance taskBalance) {
+		lastTaskBalance = taskBalance;
+	}
+
+	/*
+	 * @return Empty set with the table size of the input set
+	 */
+	private static <S extends PrimitiveHashSetWithChain<S, ?>> S newSetWithLayoutOf(S set) {
+		return set.newSet(set.getTableSize(), set.getLoadFactor());
+	}
+
+	public static <S extends PrimitiveHashSetWithChain<S, ?>> S union(S a, S b) {
+		S union = (a.getTableSize() >= b.getTableSize())
+			? newSetWithLayoutOf(a)
+			: newSetWithLayoutOf(b);
+		union.addAll(a);
+		union.addAll(b);
+		return union;
+	}
+
+	public static <S extends PrimitiveHashSetWithChain<S, ?>> S intersection(S a, S b) {
+		if (a.size() > b.size()) { // Faster algorithm
+			return intersection(b, a);
+		}
+		S intersection = newSetWithLayoutOf(a);
+		intersection.addAll(a);
+		intersection.retainAll(b);
+		return intersection;
+	}
+
+	public static <S extends PrimitiveHashSetWithChain<S, ?>> S difference(S a, S b) {
+		S diff = newSetWithLayoutOf(a);
+		diff.addAll(a);
+		diff.removeAll(b);
+		return diff;
+	}
+
+	public static <S extends PrimitiveHashSetWithChain<S, ?>> S symmetricDifference(S a, S b) {
+		/* Union the difference of a and b & b and a */
+		S left  = difference(a, b);
+		S right = difference(b, a);
+		return union(left, right);
+	}
+}
\ No newline at end of file
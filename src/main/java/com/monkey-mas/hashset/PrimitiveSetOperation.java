@@ -0,0 +1,63 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Add/remove/retain/contains all of the keys of a range of chains of
+ * IntHashSetWithChain or LongHashSetWithChain. The keys come either from
+ * the chains of the same index of another set with the same table size,
+ * or from an array of keys grouped by chain, which subclasses hold.
+ */
+abstract class PrimitiveSetOperation<T, C extends PrimitiveChain> extends SetOperation<T> {
+	protected SetOperationTypes setOperation;
+	protected C[] tableA;
+	protected C[] tableB;		/* Not used when keys are given */
+	protected int[] chainStart;	/* Keys of chain i are in [chainStart[i], chainStart[i+1]) */
+	private LongAdder sizeDelta;
+	private int from;
+	private int to;
+
+	protected PrimitiveSetOperation(SetOperationTypes setOperation,
+									C[] tableA, C[] tableB, int[] chainStart,
+									LongAdder sizeDelta, int from, int to) {
+		this.setOperation = setOperation;
+		this.tableA = tableA;
+		this.tableB = tableB;
+		this.chainStart = chainStart;
+		this.sizeDelta = sizeDelta;
+		this.from = from;
+		this.to   = to;
+	}
+
+	/*
+	 * @param index Index of chain
+	 * @return False if a key is missing on CONTAINS_ALL, true otherwise
+	 */
+	protected abstract boolean operateOnChain(int index);
+
+	@Override
+	public Boolean call() {
+		/* Keys added by the range, negative if removed, counted once the range is done */
+		long delta = 0;
+		try {
+			for (int i=from; i<to; i++) {
+				int sizeBefore = tableA[i].size();
+				boolean success;
+				try {
+					success = operateOnChain(i);
+				} finally {
+					delta += tableA[i].size() - sizeBefore;
+				}
+				if (!success || isStopped()) {
+					return false;
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			if (delta != 0) {
+				sizeDelta.add(delta);
+			}
+		}
+		return true;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Runs a bulk operation of IntHashSetWithChain or LongHashSetWithChain
+ * over its chains, the same way TaskInvoker does for HashSetWithChain.
+ * Subclasses hold the input keys when the other side is not a set of
+ * the same table size.
+ */
+abstract class PrimitiveTaskInvoker<S extends PrimitiveHashSetWithChain<S, C>, C extends PrimitiveChain> {
+	protected S setA;
+	protected S setB;			/* Only used if it has the table size of setA */
+	protected int[] chainStart;	/* Input keys of chain i of setA are in [chainStart[i], chainStart[i+1]) */
+	private int numberOfThreads;
+	private final LongAdder sizeDelta = new LongAdder(); /* Added to by each range */
+
+	/* Used for operations with an array of keys */
+	protected PrimitiveTaskInvoker(S a) {
+		a.completeResize();
+		setA = a;
+	}
+
+	/* Used for operations with another set */
+	protected PrimitiveTaskInvoker(S a, S b) {
+		a.completeResize();
+		b.completeResize();
+		setA = a;
+		if (a.getTableSize() == b.getTableSize()) {
+			setB = b;
+		}
+	}
+
+	/*
+	 * Subclass constructors call this once the input keys are known
+	 *
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 */
+	protected void initNumberOfThreads(int parallelism) {
+		numberOfThreads = setA.getThreadSizeOfSetOp(parallelism, getWorkSize());
+	}
+
+	/*
+	 * @return Number of input keys, 0 when setB is used
+	 */
+	protected abstract int getNumberOfKeys();
+
+	/*
+	 * Group the input keys by chain of setA
+	 */
+	protected abstract void scatter();
+
+	protected abstract SetOperation<?> createOperation(int from, int to, SetOperationTypes setOperation,
+													   LongAdder sizeDelta);
+
+	/*
+	 * Counting sort of the input keys by chain of setA. Sets chainStart.
+	 *
+	 * @param indices Index of chain of each input key
+	 * @return Position of each input key once sorted
+	 */
+	protected int[] sortByChain(int[] indices) {
+		int tableSize = setA.getTableSize();
+		chainStart = new int[tableSize + 1];
+		for (int index : indices) {
+			chainStart[index + 1]++;
+		}
+		for (int i=0; i<tableSize; i++) {
+			chainStart[i + 1] += chainStart[i];
+		}
+		int[] next = new int[tableSize];
+		System.arraycopy(chainStart, 0, next, 0, tableSize);
+		int[] positions = new int[indices.length];
+		for (int i=0; i<indices.length; i++) {
+			positions[i] = next[indices[i]]++;
+		}
+		return positions;
+	}
+
+	/*
+	 * @return Number of keys added to setA by the operation, negative if removed
+	 */
+	protected long getSizeDelta() {
+		return sizeDelta.sum();
+	}
+
+	/*
+	 * Run the operation, recording it to the flight recorder if enabled
+	 */
+	protected final boolean execute(SetOperationTypes setOperation) {
+		BulkOperationEvent event = new BulkOperationEvent();
+		if (!event.isEnabled()) {
+			return run(setOperation, false);
+		}
+		long workSize = getWorkSize();
+		event.begin();
+		boolean result = run(setOperation, true);
+		event.commitOperation(setOperation, setA, workSize, setA.getTableSize(),
+							  numberOfThreads, setA.getLastTaskBalance(), result);
+		return result;
+	}
+
+	/*
+	 * @param recordBalance True to record how the work was spread to setA
+	 */
+	private boolean run(final SetOperationTypes setOperation, boolean recordBalance) {
+		if (setB == null) {
+			scatter();
+		}
+
+		if (numberOfThreads == 1 || getWorkSize() < setA.getInlineThreshold()) {
+			/* Not worth handing over to other threads, so run on this thread */
+			SetOperation<?> operation = createOperation(0, setA.getTableSize(), setOperation, sizeDelta);
+			if (!recordBalance) {
+				return operation.call();
+			}
+			TaskBalance.Recorder recorder = new TaskBalance.Recorder();
+			boolean success = recorder.call(operation, getWorkSize());
+			setA.setLastTaskBalance(recorder.toBalance(0));
+			return success;
+		}
+
+		/* Thread pool shared by set operations, which we must not shut down */
+		ExecutorService service = setA.getExecutor();
+
+		RangeOperationFactory factory = new RangeOperationFactory() {
+			public SetOperation<?> createOperation(int from, int to) {
+				return PrimitiveTaskInvoker.this.createOperation(from, to, setOperation, sizeDelta);
+			}
+		};
+		/* A single missing key decides containsAll, so stop the other ranges */
+		boolean stopOnFalse = (setOperation == SetOperationTypes.CONTAINS_ALL);
+		RangeScheduler scheduler = new RangeScheduler(service, factory, computePrefixWeight(),
+													  numberOfThreads, true, stopOnFalse);
+		TaskBalance taskBalance = scheduler.execute(recordBalance);
+		if (recordBalance) {
+			setA.setLastTaskBalance(taskBalance);
+		}
+		return scheduler.getResult();
+	}
+
+	/*
+	 * @return Total weight of chains [0, i) of setA
+	 */
+	private long[] computePrefixWeight() {
+		C[] tableA = setA.getTable();
+		C[] tableB = (setB == null) ? null : setB.getTable();
+		long[] prefixWeight = new long[tableA.length + 1];
+		for (int i=0; i<tableA.length; i++) {
+			long weight = 1 + tableA[i].size();
+			weight += (tableB == null) ? chainStart[i + 1] - chainStart[i] : tableB[i].size();
+			prefixWeight[i + 1] = prefixWeight[i] + weight;
+		}
+		return prefixWeight;
+	}
+
+	/*
+	 * @return Rough number of keys the operation visits
+	 */
+	private long getWorkSize() {
+		long incoming = (setB == null) ? getNumberOfKeys() : setB.size();
+		return setA.size() + incoming;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,7 @@
+/*
+ * Creates the operation to run on a range of chains.
+ * Used by RangeScheduler to create operations of the ranges it splits.
+ */
+interface RangeOperationFactory {
+	public abstract SetOperation<?> createOperation(int from, int to);
+}
\ No newline at end of file
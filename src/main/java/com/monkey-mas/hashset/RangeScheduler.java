@@ -0,0 +1,213 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ * Runs an operation over all the chains of a table on a thread pool,
+ * splitting the table into ranges of the same weight.
+ * Shared by the task invokers of every kind of set.
+ */
+class RangeScheduler {
+	private static final int TASKS_PER_THREAD = 4; /* Split finer than threads so that idle ones can steal */
+	private ExecutorService service;
+	private RangeOperationFactory factory;
+	private long[] prefixWeight; /* Total weight of chains [0, i) */
+	private int numberOfThreads;
+	private boolean splittable;
+	private boolean stopOnFalse; /* True for predicates, whose result is false once any range is */
+	private AtomicBoolean stopFlag = new AtomicBoolean();
+	private volatile boolean result = true;
+
+	/*
+	 * @param service Thread pool to run the ranges
+	 * @param factory Creates the operation of each range
+	 * @param prefixWeight Total weight of chains [0, i), of length table size + 1
+	 * @param numberOfThreads Number of threads to spread the work among
+	 * @param splittable False if each range costs the same whatever its size,
+	 *                   so the table is not split finer than threads
+	 */
+	public RangeScheduler(ExecutorService service,
+						  RangeOperationFactory factory,
+						  long[] prefixWeight,
+						  int numberOfThreads,
+						  boolean splittable) {
+		this(service, factory, prefixWeight, numberOfThreads, splittable, false);
+	}
+
+	/*
+	 * @param stopOnFalse True to stop the other ranges as soon as one returns false
+	 */
+	public RangeScheduler(ExecutorService service,
+						  RangeOperationFactory factory,
+						  long[] prefixWeight,
+						  int numberOfThreads,
+						  boolean splittable,
+						  boolean stopOnFalse) {
+		this.service = service;
+		this.factory = factory;
+		this.prefixWeight = prefixWeight;
+		this.numberOfThreads = numberOfThreads;
+		this.splittable = splittable;
+		this.stopOnFalse = stopOnFalse;
+	}
+
+	/*
+	 * @return False if the operation of any range returned false
+	 */
+	public boolean getResult() {
+		return result;
+	}
+
+	/*
+	 * @return True if a range returned false and the rest need not run
+	 */
+	boolean isStopped() {
+		return stopFlag.get();
+	}
+
+	/*
+	 * Run the operation of a range on this thread
+	 *
+	 * @return Result of the operation of the range
+	 */
+	Boolean runRange(int from, int to, TaskBalance.Recorder recorder) {
+		if (isStopped()) {
+			return false;
+		}
+		SetOperation<?> operation = factory.createOperation(from, to);
+		operation.setStopFlag(stopFlag);
+		boolean success = (recorder == null) ? operation.call()
+			: recorder.call(operation, prefixWeight[to] - prefixWeight[from]);
+		if (!success) {
+			result = false;
+			if (stopOnFalse) {
+				stopFlag.set(true);
+			}
+		}
+		return success;
+	}
+
+	/*
+	 * Run the operation on every range and wait for all of them
+	 *
+	 * @param recordBalance False to skip timing the ranges, which only
+	 *                      metrics and the flight recorder need
+	 * @return How evenly the work was spread among threads, or null if not recorded
+	 */
+	public TaskBalance execute(boolean recordBalance) {
+		TaskBalance.Recorder recorder = recordBalance ? new TaskBalance.Recorder() : null;
+
+		if (service instanceof ForkJoinPool) {
+			/* Split by weight and let idle threads steal ranges */
+			ForkJoinPool pool = (ForkJoinPool)service;
+			long stealCount = pool.getStealCount();
+			invokeBalancedTask(pool, recorder);
+			return recordBalance ? recorder.toBalance(pool.getStealCount() - stealCount) : null;
+		}
+
+		/*
+		 * As we expect our Future objects to return only Boolean,
+		 * we can say that this is type-safe
+		 */
+		@SuppressWarnings("unchecked") Future<Boolean> future[] =
+			new Future[numberOfThreads];
+
+		/* Invoke threads as many threads as being set up */
+		invokeThread(future, recorder);
+
+		/* Check results from thread execution */
+		collectResults(future);
+
+		return recordBalance ? recorder.toBalance(0) : null;
+	}
+
+	private void invokeBalancedTask(ForkJoinPool pool, TaskBalance.Recorder recorder) {
+		int tableSize = prefixWeight.length - 1;
+		int numberOfTasks = splittable ? numberOfThreads * TASKS_PER_THREAD : numberOfThreads;
+		long leafWeight = Math.max(1, prefixWeight[tableSize] / numberOfTasks);
+
+		BalancedRangeTask task =
+			new BalancedRangeTask(this, prefixWeight, leafWeight, recorder, 0, tableSize);
+		try {
+			pool.invoke(task);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			result = false;
+		}
+	}
+
+	/*
+	 * Invoke threads to add/remove/find collection of elements.
+	 * Each thread gets a range of the same weight rather than the same
+	 * number of chains.
+	 */
+	private void invokeThread(Future<Boolean>[] future,
+							  final TaskBalance.Recorder recorder) {
+		int tableSize = prefixWeight.length - 1;
+		long totalWeight = prefixWeight[tableSize];
+		int nextIndex = 0;
+
+		for (int count=0; count < numberOfThreads; count++) {
+			/* Range of table index to do operation */
+			final int from = nextIndex;
+			final int to   = (count == numberOfThreads-1)
+				? tableSize
+				: Math.max(from, BalancedRangeTask.splitIndex(prefixWeight, 0, tableSize,
+					totalWeight * (count+1) / numberOfThreads));
+			
+			/* Create proper object of operation */
+			Callable<Boolean> operation = new Callable<Boolean>() {
+				public Boolean call() {
+					return runRange(from, to, recorder);
+				}
+			};
+
+			/* Thread submmition */
+			try {
+				future[count] = service.submit(operation);
+			} catch (RejectedExecutionException e) {
+				/* The pool doesn't take more tasks, so run it on this thread */
+				FutureTask<Boolean> task = new FutureTask<Boolean>(operation);
+				task.run();
+				future[count] = task;
+			}
+
+			/* Set the next _from_ index */
+			nextIndex = to;
+		}
+	}
+
+	/*
+	 * Wait for every range. Once the result is known, ranges that
+	 * have not started yet are cancelled instead of waited for.
+	 */
+	private void collectResults(Future<Boolean>[] future) {
+		for (int i=0; i<future.length; i++) {
+			if (isStopped()) {
+				for (int j=i; j<future.length; j++) {
+					future[j].cancel(false);
+				}
+			}
+			try {
+				future[i].get();
+			}
+			catch (CancellationException e) {
+				/* Not needed for the result */
+			}
+			catch (InterruptedException e) {
+				e.printStackTrace();
+				result = false;
+			}
+			catch (ExecutionException e) {
+				e.printStackTrace();
+				result = false;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -5,21 +5,24 @@ import java.util.Iterator;
 class RemoveAll<T> extends SetOperation<T> {
 	private HashSetWithChain<T> setA;
 	private HashSetWithChain<? extends T> setB; /* Not used when adding collection */
-	private Chain<T>[] tableA;
-	private Chain<? extends T>[] tableB;		/* Not used when adding collection */
+	private ChainInterface<T>[] tableA;
+	private ChainInterface<? extends T>[] tableB;		/* Not used when adding collection */
 	private Collection<? extends T> collection; /* Not used when adding set */
+	private ScatteredCollection<T> scattered;	/* Null unless collection is split among threads */
 	private int from;
 	private int to;
 
 	public RemoveAll(HashSetWithChain<T> setA,
 					 HashSetWithChain<? extends T> setB,
 					 Collection<? extends T> collection,
+					 ScatteredCollection<T> scattered,
 					 int from, int to) {
 		this.setA = setA;
 		this.setB = setB;
 		this.tableA = setA.getTable();
 		this.tableB = (setB == null) ? null : setB.getTable(); 
 		this.collection = collection;
+		this.scattered = scattered;
 		this.from = from;
 		this.to   = to;
 	}
@@ -30,10 +33,13 @@ class RemoveAll<T> extends SetOperation<T> {
 	@Override
 	public Boolean call() {
 		try {
-			if (setB == null) { // Indicates that we'll add collections, NOT SET.
+			if (setB == null && scattered != null) { // Collection already split by chain
+				removeAllScatteredElements();
+			}
+			else if (setB == null) { // Indicates that we'll add collections, NOT SET.
 				removeAllElementsOfCollection();
 			}
-			else { // Will add elements in setB
+			else { // setB stores elements in the same or nested chains
 				removeAllElementsOfSet();
 			}
 		} catch (Exception e) {
@@ -52,30 +58,107 @@ class RemoveAll<T> extends SetOperation<T> {
 			*/ 	 	 
 			@SuppressWarnings("unchecked") T elem = 
 				(T)iter.next();
-			int hashValue = setA.hashCode(elem); // set = setA
-			if (from <= hashValue && hashValue < to) {
-		 		Chain<T> chain = tableA[hashValue];
-				chain.remove(elem);
+			int hashValue = setA.hash(elem); // set = setA
+			int index = setA.indexFor(hashValue);
+			if (from <= index && index < to) {
+				removeFromChain(index, elem, hashValue);
 		 	}
 		}
 	}
 
-	private void removeAllElementsOfSet() {
+	private void removeAllScatteredElements() {
 		for (int i=from; i<to; i++) {
-			Chain<T> 		   chainA = tableA[i];
-			Chain<? extends T> chainB = tableB[i];
+			setA.beginChainUpdate(i);
+			ChainInterface<T> chainA = tableA[i];
+			int sizeBefore = chainA.size();
+			try {
+				for (int pos=scattered.getStart(i), end=scattered.getEnd(i); pos<end; pos++) {
+					chainA.remove(scattered.get(pos), scattered.getHash(pos));
+				}
+			} finally {
+				setA.endChainUpdate(i, chainA.size() - sizeBefore);
+			}
+		}
+	}
+
+	/*
+	 * Both tables are powers of two and setB uses a nested layout, so
+	 * chains whose index is the same modulo the smaller table hold the
+	 * same elements. Each range handles the chains of its indices in both
+	 * tables, without visiting any chain of another range.
+	 */
+	private void removeAllElementsOfSet() {
+		int groups = Math.min(tableA.length, tableB.length);
+		for (int g=from; g<to; g++) {
+			if (tableA.length <= tableB.length) {
+				for (int j=g; j<tableB.length; j+=groups) {
+					removeAllElementsOfChain(g, tableB[j]);
+				}
+			}
+			else {
+				for (int i=g; i<tableA.length; i+=groups) {
+					removeAllElementsContainedIn(i, tableB[g]);
+				}
+			}
+		}
+	}
+
+	/*
+	 * All the elements of chainB belong to the chain of the index in setA
+	 */
+	private void removeAllElementsOfChain(int index, ChainInterface<? extends T> chainB) {
+		setA.beginChainUpdate(index);
+		ChainInterface<T> chainA = tableA[index];
+		int sizeBefore = chainA.size();
+		try {
+			Iterator<? extends T> iter = chainB.iterator();
+			while (iter.hasNext()) {
+				chainA.remove(iter.next());
+			}
+		} finally {
+			setA.endChainUpdate(index, chainA.size() - sizeBefore);
+		}
+	}
 
-			/* Add all elements in chainB by iterating chainB */
-			Iterator iter = chainB.iterator();
+	/*
+	 * All the elements of the chain of the index in setA belong to chainB,
+	 * so check them against chainB instead of hashing the elements of chainB
+	 */
+	private void removeAllElementsContainedIn(int index, ChainInterface<? extends T> chainB) {
+		setA.beginChainUpdate(index);
+		ChainInterface<T> chainA = tableA[index];
+		int sizeBefore = chainA.size();
+		try {
+			Iterator<T> iter = chainA.iterator();
 			while (iter.hasNext()) {
-				/*
-			 	 * As we intend to create Chain<T> object using 
-			 	 * Chain<? extends T>, we can say that this is type-safe 
-			 	 */
-				@SuppressWarnings("unchecked") T elem = 
-					(T)iter.next();
-				chainA.remove(elem);
+				if (containedIn(chainB, iter.next())) {
+					iter.remove();
+				}
 			}
+		} finally {
+			setA.endChainUpdate(index, chainA.size() - sizeBefore);
 		}
 	}
+
+	/*
+	 * Remove a single element, letting the set lock its chain if it is concurrent
+	 */
+	private void removeFromChain(int index, T elem, int hashValue) {
+		boolean removed = false;
+		setA.beginChainUpdate(index);
+		try {
+			removed = tableA[index].remove(elem, hashValue);
+		} finally {
+			setA.endChainUpdate(index, removed ? -1 : 0);
+		}
+	}
+
+	/*
+	 * chainB only contains ? extends T, so an element of setA that is not
+	 * an instance of it simply isn't found by HashSet.contains().
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> boolean containedIn(ChainInterface<? extends T> chainB, T elem) {
+		return ((ChainInterface<T>)chainB).contains(elem);
+	}
 }
\ No newline at end of file
@@ -5,21 +5,24 @@ import java.util.Iterator;
 class RetainAll<T> extends SetOperation<T> {
 	private HashSetWithChain<T> setA;
 	private HashSetWithChain<? extends T> setB; /* Not used when adding collection */
-	private Chain<T>[] tableA;
-	private Chain<? extends T>[] tableB;		/* Not used when adding collection */
+	private ChainInterface<T>[] tableA;
+	private ChainInterface<? extends T>[] tableB;		/* Not used when adding collection */
 	private Collection<? extends T> collection; /* Not used when adding set */
+	private ScatteredCollection<T> scattered;	/* Null unless collection is split among threads */
 	private int from;
 	private int to;
 
 	public RetainAll(HashSetWithChain<T> setA,
 					 HashSetWithChain<? extends T> setB,
 					 Collection<? extends T> collection,
+					 ScatteredCollection<T> scattered,
 					 int from, int to) {
 		this.setA = setA;
 		this.setB = setB;
 		this.tableA = setA.getTable();
 		this.tableB = (setB == null) ? null : setB.getTable(); 
 		this.collection = collection;
+		this.scattered = scattered;
 		this.from = from;
 		this.to   = to;
 	}
@@ -30,10 +33,13 @@ class RetainAll<T> extends SetOperation<T> {
 	@Override
 	public Boolean call() {
 		try {
-			if (setB == null) { // Indicates that we'll add collections, NOT SET.
+			if (setB == null && scattered != null) { // Collection already split by chain
+				retainAllScatteredElements();
+			}
+			else if (setB == null) { // Indicates that we'll add collections, NOT SET.
 				retainAllElementsOfCollection();
 			}
-			else { // Will add elements in setB
+			else { // setB stores elements in the same or nested chains
 				retainAllElementsOfSet();
 			}
 		} catch (Exception e) {
@@ -66,47 +72,117 @@ class RetainAll<T> extends SetOperation<T> {
 
 		/* Remove elements in chainA if they don't exist in chianFiltered */
 		for (int i=from; i<to; i++) {
-			Chain<T> chainA = tableA[i];			
-			Iterator<T> filtered_collection = chainA.iterator();
-			while (filtered_collection.hasNext()) {
-				T elem = filtered_collection.next();
-				if (!chainFiltered.contains(elem)) {
-					chainA.remove(elem);
+			setA.beginChainUpdate(i);
+			ChainInterface<T> chainA = tableA[i];			
+			int sizeBefore = chainA.size();
+			try {
+				Iterator<T> filtered_collection = chainA.iterator();
+				while (filtered_collection.hasNext()) {
+					T elem = filtered_collection.next();
+					if (!chainFiltered.contains(elem)) {
+						filtered_collection.remove();
+					}
 				}
+			} finally {
+				setA.endChainUpdate(i, chainA.size() - sizeBefore);
 			}
 		}
 	}
 
-	private void retainAllElementsOfSet() {
+	private void retainAllScatteredElements() {
 		for (int i=from; i<to; i++) {
-			Chain<T>		   retain = new Chain<T>(); /* */
-			Chain<T>		   temp   = new Chain<T>();
-			Chain<T> 		   chainA = tableA[i];
-			Chain<? extends T> chainB = tableB[i];
+			setA.beginChainUpdate(i);
+			ChainInterface<T> retain = setA.newChain();
+			ChainInterface<T> chainA = tableA[i];
+			try {
+				/* Keep elements of the collection that chainA has */
+				for (int pos=scattered.getStart(i), end=scattered.getEnd(i); pos<end; pos++) {
+					T elem = scattered.get(pos);
+					int hashValue = scattered.getHash(pos);
+					if (setA.mightContainHash(hashValue) && chainA.contains(elem, hashValue)) {
+						retain.add(elem, hashValue);
+					}
+				}
 
-			/* Add all elements in chainA to temp by iterating chainA */		
-			Iterator<T> iterA = chainA.iterator();
-			while (iterA.hasNext()) {
-				T elem = iterA.next();
-				temp.add(elem);
+				/* Set the updated chain to tableA */
+				tableA[i] = retain;
+			} finally {
+				setA.endChainUpdate(i, tableA[i].size() - chainA.size());
 			}
+		}
+	}
 
-			/* Add all elements in chainB to temp by iterating chainB */
-			Iterator<? extends T> iterB = chainB.iterator();
-			while (iterB.hasNext()) {
-				/*
-			 	 * As we intend to create Chain<T> object using 
-			 	 * Chain<? extends T>, we can say that this is type-safe 
-			 	 */
-				@SuppressWarnings("unchecked") T elem = 
-					(T)iterB.next();
-				if(temp.contains(elem)) {
-					retain.add(elem);
+	/*
+	 * Both tables are powers of two and setB uses a nested layout, so
+	 * chains whose index is the same modulo the smaller table hold the
+	 * same elements. Each range handles the chains of its indices in both
+	 * tables, without visiting any chain of another range.
+	 */
+	private void retainAllElementsOfSet() {
+		int groups = Math.min(tableA.length, tableB.length);
+		for (int g=from; g<to; g++) {
+			if (tableA.length < tableB.length) {
+				retainAllElementsOfChains(g, groups);
+			}
+			else {
+				for (int i=g; i<tableA.length; i+=groups) {
+					retainAllElementsContainedIn(i, tableB[g]);
+				}
+			}
+		}
+	}
+
+	/*
+	 * All the elements of the chain of the index in setA belong to the chains
+	 * of the group in setB, so keep those of the group that chainA has
+	 */
+	private void retainAllElementsOfChains(int index, int groups) {
+		setA.beginChainUpdate(index);
+		ChainInterface<T> retain = setA.newChain();
+		ChainInterface<T> chainA = tableA[index];
+		try {
+			for (int j=index; j<tableB.length; j+=groups) {
+				Iterator<? extends T> iterB = tableB[j].iterator();
+				while (iterB.hasNext()) {
+					T elem = iterB.next();
+					if (chainA.contains(elem)) {
+						retain.add(elem);
+					}
 				}
 			}
 
 			/* Set the updated chain to tableA */
-			tableA[i] = retain;
+			tableA[index] = retain;
+		} finally {
+			setA.endChainUpdate(index, tableA[index].size() - chainA.size());
+		}
+	}
+
+	/*
+	 * All the elements of the chain of the index in setA belong to chainB
+	 */
+	private void retainAllElementsContainedIn(int index, ChainInterface<? extends T> chainB) {
+		setA.beginChainUpdate(index);
+		ChainInterface<T> chainA = tableA[index];
+		int sizeBefore = chainA.size();
+		try {
+			Iterator<T> iter = chainA.iterator();
+			while (iter.hasNext()) {
+				if (!containedIn(chainB, iter.next())) {
+					iter.remove();
+				}
+			}
+		} finally {
+			setA.endChainUpdate(index, chainA.size() - sizeBefore);
 		}
 	}
+
+	/*
+	 * chainB only contains ? extends T, so an element of setA that is not
+	 * an instance of it simply isn't found by HashSet.contains().
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> boolean containedIn(ChainInterface<? extends T> chainB, T elem) {
+		return ((ChainInterface<T>)chainB).contains(elem);
+	}
 }
\ No newline at end of file
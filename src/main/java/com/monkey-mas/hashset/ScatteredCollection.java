@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+ * Elements of a collection grouped by the chain of a set they belong to.
+ * Each element is hashed exactly once, so that every thread of a bulk
+ * operation only visits the elements of its own range of chains.
+ */
+class ScatteredCollection<T> {
+	private Object[] elements;	/* Elements sorted by the index of their chain */
+	private int[] hashes;		/* Hash value of the element at the same position */
+	private int[] chainStart;	/* Elements of chain i are in [chainStart[i], chainStart[i+1]) */
+	private int[] order;		/* Position of each element in the collection */
+
+	private ScatteredCollection(Object[] elements, int[] hashes, int[] chainStart, int[] order) {
+		this.elements = elements;
+		this.hashes = hashes;
+		this.chainStart = chainStart;
+		this.order = order;
+	}
+
+	/*
+	 * @param set Set whose chains the elements are grouped by
+	 * @param collection Input collection
+	 * @param service Thread pool used to hash large collections
+	 * @param numberOfThreads Number of threads to hash with
+	 * @return Elements of the collection grouped by chain
+	 */
+	public static <T> ScatteredCollection<T> scatter(HashSetWithChain<T> set,
+													 Collection<? extends T> collection,
+													 ExecutorService service,
+													 int numberOfThreads) {
+		Object[] input = collection.toArray();
+		int[] inputHashes = new int[input.length];
+		int[] indices = new int[input.length];
+		hashAll(set, input, inputHashes, indices, service, numberOfThreads);
+
+		/* Counting sort by index of chain */
+		int tableSize = set.getTableSize();
+		int[] chainStart = new int[tableSize + 1];
+		for (int index : indices) {
+			chainStart[index + 1]++;
+		}
+		for (int i=0; i<tableSize; i++) {
+			chainStart[i + 1] += chainStart[i];
+		}
+		int[] next = new int[tableSize];
+		System.arraycopy(chainStart, 0, next, 0, tableSize);
+		Object[] elements = new Object[input.length];
+		int[] hashes = new int[input.length];
+		int[] order = new int[input.length];
+		for (int i=0; i<input.length; i++) {
+			int position = next[indices[i]]++;
+			elements[position] = input[i];
+			hashes[position] = inputHashes[i];
+			order[position] = i;
+		}
+		return new ScatteredCollection<T>(elements, hashes, chainStart, order);
+	}
+
+	/*
+	 * Compute the hash value and index of chain of every element,
+	 * splitting the work among threads when there are enough elements.
+	 */
+	private static <T> void hashAll(final HashSetWithChain<T> set,
+									final Object[] input,
+									final int[] hashes,
+									final int[] indices,
+									ExecutorService service,
+									int numberOfThreads) {
+		int threads = Math.min(numberOfThreads, input.length / HashSetWithChain.MIN_ELEMENTS_PER_THREAD);
+		if (threads <= 1) {
+			hashRange(set, input, hashes, indices, 0, input.length);
+			return;
+		}
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(threads);
+		int from = 0;
+		for (int count=0; count<threads; count++) {
+			final int start = from;
+			final int end   = from + (input.length - from) / (threads - count);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					hashRange(set, input, hashes, indices, start, end);
+					return null;
+				}
+			});
+			from = end;
+		}
+
+		try {
+			for (Future<Void> result : service.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while hashing elements", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static <T> void hashRange(HashSetWithChain<T> set, Object[] input,
+									  int[] hashes, int[] indices, int from, int to) {
+		for (int i=from; i<to; i++) {
+			/*
+			 * The array only holds elements of Collection<? extends T>,
+			 * so we can say that this is type-safe
+			 */
+			@SuppressWarnings("unchecked") T elem = (T)input[i];
+			hashes[i] = set.hash(elem);
+			indices[i] = set.indexFor(hashes[i]);
+		}
+	}
+
+	/*
+	 * @return Position of the first element of the chain
+	 */
+	public int getStart(int index) {
+		return chainStart[index];
+	}
+
+	/*
+	 * @return Position just after the last element of the chain
+	 */
+	public int getEnd(int index) {
+		return chainStart[index + 1];
+	}
+
+	/*
+	 * @return Element at the position
+	 */
+	public T get(int position) {
+		/*
+		 * The array only holds elements of Collection<? extends T>,
+		 * so we can say that this is type-safe
+		 */
+		@SuppressWarnings("unchecked") T elem = (T)elements[position];
+		return elem;
+	}
+
+	/*
+	 * @return Hash value of the element at the position, from the HashStrategy of the set
+	 */
+	public int getHash(int position) {
+		return hashes[position];
+	}
+
+	/*
+	 * @return Position in the collection of the element at the position
+	 */
+	public int getOrder(int position) {
+		return order[position];
+	}
+}
\ No newline at end of file
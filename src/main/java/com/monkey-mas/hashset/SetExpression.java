@@ -0,0 +1,390 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * Set algebra over HashSetWithChain that is evaluated lazily.
+ *
+ * An expression such as of(a).union(b).difference(of(c).intersection(d))
+ * only records its operands. contains(), iterator() and size() answer
+ * from the operands without creating intermediate sets, and evaluate()
+ * builds the result in a single pass over the chains of the operands,
+ * on the thread pool if the operands are large.
+ *
+ * Elements of the result always come from some operands, the candidates:
+ * both sides of a union, the smaller side of an intersection and the
+ * left side of a difference. Only candidates are visited, and every
+ * element visited is checked against the whole expression.
+ */
+abstract class SetExpression<T> {
+	/*
+	 * @param set Operand of the expression, which is read when the expression is used
+	 * @return Expression that contains the elements of the set
+	 */
+	public static <T> SetExpression<T> of(HashSetWithChain<? extends T> set) {
+		if (set == null) {
+			throw new NullPointerException("set");
+		}
+		/*
+		 * Expressions only read elements of the set and
+		 * check T against it, so we can say that this is type-safe
+		 */
+		@SuppressWarnings("unchecked") HashSetWithChain<T> operand = (HashSetWithChain<T>)set;
+		return new Operand<T>(operand);
+	}
+
+	public SetExpression<T> union(SetExpression<? extends T> other) {
+		return combine(ExpressionTypes.UNION, other);
+	}
+
+	public SetExpression<T> union(HashSetWithChain<? extends T> other) {
+		return union(SetExpression.<T>of(other));
+	}
+
+	public SetExpression<T> intersection(SetExpression<? extends T> other) {
+		return combine(ExpressionTypes.INTERSECTION, other);
+	}
+
+	public SetExpression<T> intersection(HashSetWithChain<? extends T> other) {
+		return intersection(SetExpression.<T>of(other));
+	}
+
+	public SetExpression<T> difference(SetExpression<? extends T> other) {
+		return combine(ExpressionTypes.DIFFERENCE, other);
+	}
+
+	public SetExpression<T> difference(HashSetWithChain<? extends T> other) {
+		return difference(SetExpression.<T>of(other));
+	}
+
+	public SetExpression<T> symmetricDifference(SetExpression<? extends T> other) {
+		return combine(ExpressionTypes.SYMMETRIC_DIFFERENCE, other);
+	}
+
+	public SetExpression<T> symmetricDifference(HashSetWithChain<? extends T> other) {
+		return symmetricDifference(SetExpression.<T>of(other));
+	}
+
+	private SetExpression<T> combine(ExpressionTypes type, SetExpression<? extends T> other) {
+		if (other == null) {
+			throw new NullPointerException("other");
+		}
+		/*
+		 * Expressions only read their elements and
+		 * check T against them, so we can say that this is type-safe
+		 */
+		@SuppressWarnings("unchecked") SetExpression<T> right = (SetExpression<T>)other;
+		return new Composite<T>(type, this, right);
+	}
+
+	/*
+	 * Check if the input data is in the result of the expression
+	 *
+	 * @param data Input data
+	 * @return Result of operation
+	 */
+	public boolean contains(T data) {
+		return contains(data, null);
+	}
+
+	/*
+	 * @param data Input data
+	 * @param source Operand known to contain the input data, or null,
+	 *               so that it is not looked up again
+	 * @return True if the input data is in the result of the expression
+	 */
+	abstract boolean contains(T data, HashSetWithChain<?> source);
+
+	/*
+	 * Add the operands whose elements may be in the result, each only once
+	 */
+	abstract void addCandidates(List<HashSetWithChain<T>> candidates);
+
+	/*
+	 * @return Upper bound of the number of elements in the result
+	 */
+	abstract long estimateSize();
+
+	/*
+	 * @return Operands whose elements may be in the result, with resizing completed
+	 *         so that all of their elements are in getTable()
+	 */
+	List<HashSetWithChain<T>> getCandidates() {
+		List<HashSetWithChain<T>> candidates = new ArrayList<HashSetWithChain<T>>();
+		addCandidates(candidates);
+		for (HashSetWithChain<T> candidate : candidates) {
+			candidate.completeResize();
+		}
+		return candidates;
+	}
+
+	/*
+	 * @param elem Element of candidates[index]
+	 * @return True if the element is in the result and no earlier candidate has it,
+	 *         so that each element of the result is found only once
+	 */
+	boolean isFirstOccurrence(T elem, List<HashSetWithChain<T>> candidates, int index) {
+		if (!contains(elem, candidates.get(index))) {
+			return false;
+		}
+		for (int i=0; i<index; i++) {
+			if (candidates.get(i).contains(elem)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Iterate the result without creating it.
+	 * The operands must not be changed while iterating.
+	 */
+	public Iterator<T> iterator() {
+		final List<HashSetWithChain<T>> candidates = getCandidates();
+		return new Iterator<T>() {
+			private int candidateIndex = 0;
+			private int chainIndex = 0;
+			private Iterator<T> chainIter = null;
+			private T next;
+			private boolean hasNext = advance();
+
+			public boolean hasNext() {
+				return hasNext;
+			}
+
+			public T next() {
+				if (!hasNext) {
+					throw new NoSuchElementException();
+				}
+				T elem = next;
+				hasNext = advance();
+				return elem;
+			}
+
+			private boolean advance() {
+				while (true) {
+					while (chainIter != null && chainIter.hasNext()) {
+						T elem = chainIter.next();
+						if (isFirstOccurrence(elem, candidates, candidateIndex)) {
+							next = elem;
+							return true;
+						}
+					}
+					if (candidateIndex == candidates.size()) {
+						return false;
+					}
+					ChainInterface<T>[] table = candidates.get(candidateIndex).getTable();
+					if (chainIndex < table.length) {
+						chainIter = table[chainIndex++].iterator();
+					} else {
+						candidateIndex++;
+						chainIndex = 0;
+						chainIter = null;
+					}
+				}
+			}
+		};
+	}
+
+	/*
+	 * Count the elements of the result without creating it
+	 *
+	 * @return The number of elements in the result
+	 */
+	public int size() {
+		int size = 0;
+		Iterator<T> iter = iterator();
+		while (iter.hasNext()) {
+			iter.next();
+			size++;
+		}
+		return size;
+	}
+
+	/*
+	 * @return New set that holds the result of the expression
+	 */
+	public HashSetWithChain<T> evaluate() {
+		return evaluate(0);
+	}
+
+	/*
+	 * Create the result in a single pass over the candidates. The result
+	 * has the layout of the largest candidate, so that candidates of the
+	 * same layout are visited chain by chain on the thread pool. Other
+	 * candidates are first scattered once by chain of the result.
+	 *
+	 * @param parallelism Number of threads to use, 0 to let the set decide
+	 * @return New set that holds the result of the expression
+	 */
+	public HashSetWithChain<T> evaluate(int parallelism) {
+		final List<HashSetWithChain<T>> candidates = getCandidates();
+		HashSetWithChain<T> largest = candidates.get(0);
+		long workSize = 0;
+		for (HashSetWithChain<T> candidate : candidates) {
+			if (candidate.getTableSize() > largest.getTableSize()) {
+				largest = candidate;
+			}
+			workSize += candidate.size();
+		}
+		final HashSetWithChain<T> result = HashSetWithChain.<T>newSetWithLayoutOf(largest);
+
+		int numberOfThreads = result.getThreadSizeOfSetOp(parallelism, workSize);
+		boolean inline = numberOfThreads == 1 || workSize < result.getInlineThreshold();
+		final List<ScatteredCollection<T>> scattered = new ArrayList<ScatteredCollection<T>>(candidates.size());
+		for (HashSetWithChain<T> candidate : candidates) {
+			if (result.hasSameLayout(candidate)) {
+				scattered.add(null);
+			} else {
+				scattered.add(ScatteredCollection.scatter(result, TaskInvoker.asCollection(candidate),
+														  result.getExecutor(), inline ? 1 : numberOfThreads));
+			}
+		}
+		/* The result is new and has no metrics, so only record the balance for metrics of a candidate or JFR */
+		boolean recordBalance = false;
+		for (HashSetWithChain<T> candidate : candidates) {
+			recordBalance |= candidate.getMetrics() != null;
+		}
+		BulkOperationEvent event = new BulkOperationEvent();
+		recordBalance |= event.isEnabled();
+		event.begin();
+		boolean success = run(result, candidates, scattered, workSize, numberOfThreads, inline, recordBalance);
+		event.commitOperation("EVALUATE", result, workSize, result.getTableSize(), inline ? 1 : numberOfThreads,
+							  result.getLastTaskBalance(), success);
+		if (!success) {
+			throw new IllegalStateException("Failed to evaluate expression");
+		}
+		return result;
+	}
+
+	/*
+	 * Fill the result from the candidates
+	 *
+	 * @param recordBalance True to record how the work was spread to the result
+	 * @return True if every chain of the result was filled
+	 */
+	private boolean run(final HashSetWithChain<T> result, final List<HashSetWithChain<T>> candidates,
+						final List<ScatteredCollection<T>> scattered, long workSize, int numberOfThreads,
+						boolean inline, boolean recordBalance) {
+		if (inline) {
+			/* Not worth handing over to other threads, so run on this thread */
+			EvaluateExpression<T> operation =
+				new EvaluateExpression<T>(result, this, candidates, scattered, 0, result.getTableSize());
+			if (!recordBalance) {
+				return operation.call();
+			}
+			TaskBalance.Recorder recorder = new TaskBalance.Recorder();
+			boolean success = recorder.call(operation, workSize);
+			result.setLastTaskBalance(recorder.toBalance(0));
+			return success;
+		}
+
+		RangeOperationFactory factory = new RangeOperationFactory() {
+			public SetOperation<?> createOperation(int from, int to) {
+				return new EvaluateExpression<T>(result, SetExpression.this, candidates, scattered, from, to);
+			}
+		};
+		long[] prefixWeight = new long[result.getTableSize() + 1];
+		for (int i=0; i<result.getTableSize(); i++) {
+			long weight = 1;
+			for (int k=0; k<candidates.size(); k++) {
+				ScatteredCollection<T> elements = scattered.get(k);
+				weight += (elements == null) ? candidates.get(k).getTable()[i].size()
+											 : elements.getEnd(i) - elements.getStart(i);
+			}
+			prefixWeight[i + 1] = prefixWeight[i] + weight;
+		}
+		RangeScheduler scheduler = new RangeScheduler(result.getExecutor(), factory, prefixWeight,
+													  numberOfThreads, true);
+		TaskBalance taskBalance = scheduler.execute(recordBalance);
+		if (recordBalance) {
+			result.setLastTaskBalance(taskBalance);
+		}
+		return scheduler.getResult();
+	}
+
+	/*
+	 * Set given to the expression
+	 */
+	private static class Operand<T> extends SetExpression<T> {
+		private final HashSetWithChain<T> set;
+
+		Operand(HashSetWithChain<T> set) {
+			this.set = set;
+		}
+
+		boolean contains(T data, HashSetWithChain<?> source) {
+			return set == source || set.contains(data);
+		}
+
+		void addCandidates(List<HashSetWithChain<T>> candidates) {
+			for (HashSetWithChain<T> candidate : candidates) {
+				if (candidate == set) {
+					return;
+				}
+			}
+			candidates.add(set);
+		}
+
+		long estimateSize() {
+			return set.size();
+		}
+	}
+
+	/*
+	 * Two expressions combined with a set operator
+	 */
+	private static class Composite<T> extends SetExpression<T> {
+		private final ExpressionTypes type;
+		private final SetExpression<T> left;
+		private final SetExpression<T> right;
+
+		Composite(ExpressionTypes type, SetExpression<T> left, SetExpression<T> right) {
+			this.type = type;
+			this.left = left;
+			this.right = right;
+		}
+
+		boolean contains(T data, HashSetWithChain<?> source) {
+			if (type == ExpressionTypes.UNION) {
+				return left.contains(data, source) || right.contains(data, source);
+			}
+			else if (type == ExpressionTypes.INTERSECTION) {
+				return left.contains(data, source) && right.contains(data, source);
+			}
+			else if (type == ExpressionTypes.DIFFERENCE) {
+				return left.contains(data, source) && !right.contains(data, source);
+			}
+			return left.contains(data, source) != right.contains(data, source);
+		}
+
+		void addCandidates(List<HashSetWithChain<T>> candidates) {
+			if (type == ExpressionTypes.INTERSECTION) {
+				/* Only elements of the smaller side can be in the result */
+				if (left.estimateSize() <= right.estimateSize()) {
+					left.addCandidates(candidates);
+				} else {
+					right.addCandidates(candidates);
+				}
+			}
+			else if (type == ExpressionTypes.DIFFERENCE) {
+				left.addCandidates(candidates);
+			}
+			else {
+				left.addCandidates(candidates);
+				right.addCandidates(candidates);
+			}
+		}
+
+		long estimateSize() {
+			if (type == ExpressionTypes.INTERSECTION) {
+				return Math.min(left.estimateSize(), right.estimateSize());
+			}
+			else if (type == ExpressionTypes.DIFFERENCE) {
+				return left.estimateSize();
+			}
+			return left.estimateSize() + right.estimateSize();
+		}
+	}
+}
\ No newline at end of file
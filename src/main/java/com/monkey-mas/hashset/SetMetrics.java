@@ -0,0 +1,91 @@
+/*
+ * Counts and latencies of the operations on a set, collected only
+ * while enabled with HashSetWithChain.setMetricsEnabled(true).
+ * A set without metrics only checks a null field per operation.
+ */
+class SetMetrics {
+	enum Operations {
+		ADD,
+		REMOVE,
+		CONTAINS,
+		ADD_ALL,
+		REMOVE_ALL,
+		RETAIN_ALL,
+		CONTAINS_ALL,
+		CONTAINS_EACH
+	}
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Operations.values().length];
+	private final LatencyHistogram workerLatency = new LatencyHistogram(); /* Per thread of bulk operations */
+
+	public SetMetrics() {
+		for (int i=0; i<latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+		}
+	}
+
+	/*
+	 * @param operation Single-element operation
+	 * @param nanos Time the operation took
+	 */
+	void record(Operations operation, long nanos) {
+		latencies[operation.ordinal()].record(nanos);
+	}
+
+	/*
+	 * @param setOperation Bulk operation
+	 * @param nanos Time the operation took on the caller thread
+	 * @param taskBalance Work of each thread of the operation, or null if unknown
+	 */
+	void recordBulk(SetOperationTypes setOperation, long nanos, TaskBalance taskBalance) {
+		latencies[of(setOperation).ordinal()].record(nanos);
+		if (taskBalance != null) {
+			for (long threadNanos : taskBalance.getNanosPerThread().values()) {
+				workerLatency.record(threadNanos);
+			}
+		}
+	}
+
+	private static Operations of(SetOperationTypes setOperation) {
+		if (setOperation == SetOperationTypes.ADD_ALL) {
+			return Operations.ADD_ALL;
+		}
+		else if (setOperation == SetOperationTypes.REMOVE_ALL) {
+			return Operations.REMOVE_ALL;
+		}
+		else if (setOperation == SetOperationTypes.RETAIN_ALL) {
+			return Operations.RETAIN_ALL;
+		}
+		else if (setOperation == SetOperationTypes.CONTAINS_EACH) {
+			return Operations.CONTAINS_EACH;
+		}
+		return Operations.CONTAINS_ALL;
+	}
+
+	/*
+	 * @return Number of times the operation ran since metrics were enabled
+	 */
+	public long getCount(Operations operation) {
+		return latencies[operation.ordinal()].getCount();
+	}
+
+	public LatencyHistogram getLatency(Operations operation) {
+		return latencies[operation.ordinal()];
+	}
+
+	/*
+	 * @return Time each thread of a bulk operation spent on its ranges
+	 */
+	public LatencyHistogram getWorkerLatency() {
+		return workerLatency;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("SetMetrics[");
+		for (Operations operation : Operations.values()) {
+			builder.append(operation).append('=').append(getLatency(operation)).append(", ");
+		}
+		return builder.append("workers=").append(workerLatency).append(']').toString();
+	}
+}
\ No newline at end of file
@@ -1,5 +1,24 @@
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class SetOperation<T> implements Callable<Boolean> {
+	private AtomicBoolean stopFlag; /* Set once the result of the whole operation is known */
+
 	public abstract Boolean call();
+
+	/*
+	 * @param stopFlag Flag shared by the operations of all ranges, which is set
+	 *                 when another range has already decided the result
+	 */
+	void setStopFlag(AtomicBoolean stopFlag) {
+		this.stopFlag = stopFlag;
+	}
+
+	/*
+	 * Predicate operations check this between elements
+	 * so that they stop as soon as another range found the answer.
+	 */
+	protected boolean isStopped() {
+		return stopFlag != null && stopFlag.get();
+	}
 }
\ No newline at end of file
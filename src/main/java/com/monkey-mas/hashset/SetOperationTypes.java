@@ -2,5 +2,6 @@ public enum SetOperationTypes {
 	ADD_ALL,
 	REMOVE_ALL,
 	RETAIN_ALL,
-	CONTAINS_ALL
+	CONTAINS_ALL,
+	CONTAINS_EACH
 }
\ No newline at end of file
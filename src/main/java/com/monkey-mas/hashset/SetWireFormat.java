@@ -0,0 +1,519 @@
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+ * Compact binary encoding of a HashSetWithChain, and of the changes
+ * between two versions of a set, streamed over NIO channels.
+ *
+ * Set:   magic "HSWC", format version, element type, class of the hash
+ *        strategy, load factor and table size, then a section of all
+ *        the elements.
+ * Delta: magic "HSWD", format version, element type, base and target
+ *        versions, then a section of the added elements and a section
+ *        of the removed ones.
+ *
+ * A section holds a chunk per non-empty chain: the number of elements,
+ * 0 ending the section, the gap from the index of the previous chunk's
+ * chain, then the elements, sorted. Chains are encoded one at a time, so
+ * neither side holds more than a chain and a buffer in memory.
+ *
+ * - INTEGER and LONG: the first element of a chunk as a zigzag varint,
+ *   the others as the varint gap from the previous one.
+ * - STRING: the stem, up to the last character that is not a letter or
+ *   a digit, as a reference into a dictionary both sides build as they
+ *   go, then the rest in UTF-8. Keys such as "user:1234" share their stem.
+ *
+ * Messages are framed by WireOutput, so sets and deltas can be sent one
+ * after another on the same channel.
+ */
+class SetWireFormat {
+	private static final int SET_MAGIC = 0x48535743;	/* "HSWC" */
+	private static final int DELTA_MAGIC = 0x48535744;	/* "HSWD" */
+	private static final int FORMAT_VERSION = 2;
+	private static final int MAXIMUM_DICTIONARY_SIZE = 1 << 16; /* Later stems are sent in full */
+	private static final int MAXIMUM_STRING_LENGTH = 1 << 24;	/* In bytes */
+	private static final int BATCH_SIZE = 1 << 14; /* Elements of a delta applied at a time */
+
+	/*
+	 * Write all the elements of set. A versioned set is written as its
+	 * published version, other sets must not be changed meanwhile.
+	 *
+	 * @param set Set to write
+	 * @param type Type of the elements of set
+	 * @param channel Channel to write to, left open
+	 */
+	public static <T> void writeSet(HashSetWithChain<T> set, WireTypes type,
+									WritableByteChannel channel) throws IOException {
+		if (set instanceof VersionedHashSetWithChain) {
+			set = ((VersionedHashSetWithChain<T>)set).snapshot();
+		}
+		set.completeResize();
+		WireOutput out = new WireOutput(channel);
+		writeHeader(out, SET_MAGIC, type);
+		writeUtf(out, set.getHashStrategy().getClass().getName());
+		out.writeFloat(set.getLoadFactor());
+		ChainInterface<T>[] table = set.getTable();
+		out.writeVarLong(table.length);
+
+		SectionWriter section = new SectionWriter(out, type, new StemDictionary());
+		final List<Object> elements = new ArrayList<Object>();
+		Consumer<T> collect = new Consumer<T>() {
+			public void accept(T elem) {
+				elements.add(elem);
+			}
+		};
+		for (int i=0; i<table.length; i++) {
+			elements.clear();
+			table[i].forEach(collect);
+			section.writeChunk(i, elements);
+		}
+		section.end();
+		out.end();
+	}
+
+	public static <T> HashSetWithChain<T> readSet(ReadableByteChannel channel,
+												  WireTypes type) throws IOException {
+		return readSet(channel, type, new DefaultHashStrategy<T>());
+	}
+
+	/*
+	 * Read a set written by writeSet(). If it was written with the same
+	 * hash strategy, the chains are filled as they were written instead
+	 * of rehashing the elements. Strategies whose hashes differ between
+	 * processes, such as IdentityHashStrategy, fall back to rehashing
+	 * at the first element found in another chain.
+	 *
+	 * @param channel Channel to read from, left open
+	 * @param type Type of the elements, which must match the stream
+	 * @param hashStrategy Hash function of the new set
+	 * @return New set holding the elements
+	 */
+	public static <T> HashSetWithChain<T> readSet(ReadableByteChannel channel, WireTypes type,
+												  HashStrategy<? super T> hashStrategy) throws IOException {
+		WireInput in = new WireInput(channel);
+		readHeader(in, SET_MAGIC, type);
+		String strategyName = readUtf(in);
+		float loadFactor = in.readFloat();
+		long tableSize = in.readVarLong();
+		if (tableSize <= 0 || tableSize > HashSetWithChain.MAXIMUM_TABLE_SIZE
+				|| (tableSize & (tableSize - 1)) != 0 || !(loadFactor > 0)) {
+			throw new IOException("Illegal layout: " + tableSize + " chains, load factor " + loadFactor);
+		}
+		HashSetWithChain<T> set = new HashSetWithChain<T>((int)tableSize, loadFactor, hashStrategy);
+		boolean sameLayout = hashStrategy.getClass().getName().equals(strategyName);
+
+		SectionReader section = new SectionReader(in, type, new StemDictionary());
+		List<T> batch = new ArrayList<T>();
+		while (section.next()) {
+			if (!sameLayout) {
+				section.<T>drainTo(batch);
+				if (batch.size() >= BATCH_SIZE) {
+					set.addAll(batch);
+					batch.clear();
+				}
+				continue;
+			}
+			int index = section.getIndex();
+			if (index >= tableSize) {
+				throw new IOException("Illegal chain: " + index);
+			}
+			set.beginChainUpdate(index);
+			ChainInterface<T> chain = set.getTable()[index];
+			int sizeBefore = chain.size();
+			try {
+				for (T elem : section.<T>getElements()) {
+					if (sameLayout && set.hashCode(elem) != index) {
+						/* Hashes aren't stable across processes, rehash from here on */
+						sameLayout = false;
+					}
+					if (sameLayout) {
+						chain.add(elem);
+					}
+					else {
+						batch.add(elem);
+					}
+				}
+			} finally {
+				set.endChainUpdate(index, chain.size() - sizeBefore);
+			}
+		}
+		if (!batch.isEmpty()) {
+			set.addAll(batch);
+		}
+		in.end();
+		return set;
+	}
+
+	/*
+	 * Write the changes from the base to the target version of a versioned set.
+	 * Chains the two snapshots share, untouched since the base, are skipped.
+	 *
+	 * @param base Snapshot the replica holds
+	 * @param target Newer snapshot of the same set
+	 * @param type Type of the elements
+	 * @param channel Channel to write to, left open
+	 */
+	public static <T> void writeDelta(VersionedHashSetWithChain.Snapshot<T> base,
+									  VersionedHashSetWithChain.Snapshot<T> target,
+									  WireTypes type, WritableByteChannel channel) throws IOException {
+		writeDelta(base, base.getVersion(), target, target.getVersion(), type, channel);
+	}
+
+	/*
+	 * Write the elements target has and base doesn't, then those base has and target doesn't.
+	 * Neither set may be changed meanwhile.
+	 *
+	 * @param base Set the replica holds
+	 * @param baseVersion Version of base
+	 * @param target Set the replica is brought to
+	 * @param targetVersion Version of target
+	 * @param type Type of the elements
+	 * @param channel Channel to write to, left open
+	 */
+	public static <T> void writeDelta(HashSetWithChain<T> base, long baseVersion,
+									  HashSetWithChain<T> target, long targetVersion,
+									  WireTypes type, WritableByteChannel channel) throws IOException {
+		if (baseVersion < 0 || targetVersion < baseVersion) {
+			throw new IllegalArgumentException("Illegal versions: " + baseVersion + " to " + targetVersion);
+		}
+		base.completeResize();
+		target.completeResize();
+		WireOutput out = new WireOutput(channel);
+		writeHeader(out, DELTA_MAGIC, type);
+		out.writeVarLong(baseVersion);
+		out.writeVarLong(targetVersion);
+		StemDictionary dictionary = new StemDictionary();
+		writeChanges(target, base, new SectionWriter(out, type, dictionary));
+		writeChanges(base, target, new SectionWriter(out, type, dictionary));
+		out.end();
+	}
+
+	/*
+	 * Write the elements of set that other doesn't have
+	 */
+	private static <T> void writeChanges(HashSetWithChain<T> set, final HashSetWithChain<T> other,
+										 SectionWriter section) throws IOException {
+		ChainInterface<T>[] table = set.getTable();
+		ChainInterface<T>[] otherTable = other.getTable();
+		final boolean aligned = set.hasSameLayout(other);
+		final List<Object> elements = new ArrayList<Object>();
+		for (int i=0; i<table.length; i++) {
+			if (aligned && table[i] == otherTable[i]) {
+				continue;
+			}
+			final ChainInterface<T> otherChain = aligned ? otherTable[i] : null;
+			elements.clear();
+			table[i].forEach(new Consumer<T>() {
+				public void accept(T elem) {
+					if (aligned ? !otherChain.contains(elem) : !other.contains(elem)) {
+						elements.add(elem);
+					}
+				}
+			});
+			section.writeChunk(i, elements);
+		}
+		section.end();
+	}
+
+	/*
+	 * Apply a delta written by writeDelta() to a replica, in batches
+	 * so that the delta is never held in memory as a whole.
+	 *
+	 * @param channel Channel to read from, left open
+	 * @param type Type of the elements, which must match the stream
+	 * @param replica Set to change
+	 * @param replicaVersion Version the replica holds, which must be the base of the delta
+	 * @return Version the replica holds afterwards
+	 */
+	public static <T> long applyDelta(ReadableByteChannel channel, WireTypes type,
+									  HashSetWithChain<T> replica, long replicaVersion) throws IOException {
+		WireInput in = new WireInput(channel);
+		readHeader(in, DELTA_MAGIC, type);
+		long baseVersion = in.readVarLong();
+		long targetVersion = in.readVarLong();
+		if (baseVersion != replicaVersion) {
+			throw new IllegalStateException("Delta applies to version " + baseVersion
+											+ ", not " + replicaVersion);
+		}
+		StemDictionary dictionary = new StemDictionary();
+		SectionReader added = new SectionReader(in, type, dictionary);
+		List<T> batch = new ArrayList<T>();
+		while (added.next()) {
+			added.<T>drainTo(batch);
+			if (batch.size() >= BATCH_SIZE) {
+				replica.addAll(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			replica.addAll(batch);
+			batch.clear();
+		}
+		SectionReader removed = new SectionReader(in, type, dictionary);
+		while (removed.next()) {
+			removed.<T>drainTo(batch);
+			if (batch.size() >= BATCH_SIZE) {
+				replica.removeAll(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			replica.removeAll(batch);
+		}
+		in.end();
+		return targetVersion;
+	}
+
+	private static void writeHeader(WireOutput out, int magic, WireTypes type) throws IOException {
+		out.writeInt(magic);
+		out.writeByte(FORMAT_VERSION);
+		out.writeByte(type.ordinal());
+	}
+
+	private static void readHeader(WireInput in, int magic, WireTypes type) throws IOException {
+		int actualMagic = in.readInt();
+		if (actualMagic != magic) {
+			throw new IOException("Illegal magic: " + Integer.toHexString(actualMagic));
+		}
+		int version = in.readByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported format version: " + version);
+		}
+		int actualType = in.readByte();
+		if (actualType != type.ordinal()) {
+			throw new IOException("Illegal element type: " + actualType + ", expected " + type);
+		}
+	}
+
+	private static void writeUtf(WireOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeVarLong(bytes.length);
+		out.writeBytes(bytes);
+	}
+
+	private static String readUtf(WireInput in) throws IOException {
+		long length = in.readVarLong();
+		if (length > MAXIMUM_STRING_LENGTH) {
+			throw new IOException("Illegal string length: " + length);
+		}
+		return new String(in.readBytes((int)length), StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * @return Length of the stem of the string, 0 if it has none
+	 */
+	private static int stemLength(String value) {
+		for (int i=value.length(); i>0; ) {
+			int codePoint = value.codePointBefore(i);
+			if (!Character.isLetterOrDigit(codePoint)) {
+				return i;
+			}
+			i -= Character.charCount(codePoint);
+		}
+		return 0;
+	}
+
+	/*
+	 * Stems seen so far in a stream, numbered in the order they were first sent
+	 */
+	private static class StemDictionary {
+		private final Map<String, Integer> ids = new HashMap<String, Integer>(); /* Used by writers */
+		private final List<String> stems = new ArrayList<String>();			 /* Used by readers */
+
+		void write(WireOutput out, String stem) throws IOException {
+			if (stem.isEmpty()) {
+				out.writeVarLong(0);
+				return;
+			}
+			Integer id = ids.get(stem);
+			if (id != null) {
+				out.writeVarLong(id + 2);
+				return;
+			}
+			out.writeVarLong(1);
+			writeUtf(out, stem);
+			if (ids.size() < MAXIMUM_DICTIONARY_SIZE) {
+				ids.put(stem, ids.size());
+			}
+		}
+
+		String read(WireInput in) throws IOException {
+			long reference = in.readVarLong();
+			if (reference == 0) {
+				return "";
+			}
+			if (reference == 1) {
+				String stem = readUtf(in);
+				if (stems.size() < MAXIMUM_DICTIONARY_SIZE) {
+					stems.add(stem);
+				}
+				return stem;
+			}
+			if (reference - 2 >= stems.size()) {
+				throw new IOException("Illegal stem: " + reference);
+			}
+			return stems.get((int)(reference - 2));
+		}
+	}
+
+	/*
+	 * Writes the chunks of a section
+	 */
+	private static class SectionWriter {
+		private final WireOutput out;
+		private final WireTypes type;
+		private final StemDictionary dictionary;
+		private int lastIndex = 0;
+
+		SectionWriter(WireOutput out, WireTypes type, StemDictionary dictionary) {
+			this.out = out;
+			this.type = type;
+			this.dictionary = dictionary;
+		}
+
+		/*
+		 * @param index Index of the chain holding the elements
+		 * @param elements Elements to write, sorted in place
+		 */
+		void writeChunk(int index, List<Object> elements) throws IOException {
+			if (elements.isEmpty()) {
+				return;
+			}
+			for (Object elem : elements) {
+				check(elem);
+			}
+			if (type == WireTypes.STRING) {
+				Collections.sort(elements, new Comparator<Object>() {
+					public int compare(Object a, Object b) {
+						return ((String)a).compareTo((String)b);
+					}
+				});
+			}
+			else {
+				Collections.sort(elements, new Comparator<Object>() {
+					public int compare(Object a, Object b) {
+						return Long.compare(((Number)a).longValue(), ((Number)b).longValue());
+					}
+				});
+			}
+			out.writeVarLong(elements.size());
+			out.writeVarLong(index - lastIndex);
+			lastIndex = index;
+			long previous = 0;
+			for (int i=0; i<elements.size(); i++) {
+				Object elem = elements.get(i);
+				if (type == WireTypes.STRING) {
+					String value = (String)elem;
+					int stemLength = stemLength(value);
+					dictionary.write(out, value.substring(0, stemLength));
+					writeUtf(out, value.substring(stemLength));
+					continue;
+				}
+				long value = ((Number)elem).longValue();
+				if (i == 0) {
+					out.writeSignedVarLong(value);
+				}
+				else {
+					/* Sorted, so the gap is positive, though it may not fit a long as signed */
+					out.writeVarLong(value - previous);
+				}
+				previous = value;
+			}
+		}
+
+		private void check(Object elem) {
+			boolean legal = (type == WireTypes.INTEGER) ? elem instanceof Integer
+				: (type == WireTypes.LONG) ? elem instanceof Long
+				: elem instanceof String;
+			if (!legal) {
+				throw new IllegalArgumentException("Illegal element for " + type + ": "
+												   + ((elem == null) ? null : elem.getClass().getName()));
+			}
+		}
+
+		void end() throws IOException {
+			out.writeVarLong(0);
+		}
+	}
+
+	/*
+	 * Reads the chunks of a section one at a time
+	 */
+	private static class SectionReader {
+		private final WireInput in;
+		private final WireTypes type;
+		private final StemDictionary dictionary;
+		private final List<Object> elements = new ArrayList<Object>();
+		private long index = 0;
+
+		SectionReader(WireInput in, WireTypes type, StemDictionary dictionary) {
+			this.in = in;
+			this.type = type;
+			this.dictionary = dictionary;
+		}
+
+		/*
+		 * @return False once the section has no more chunks
+		 */
+		boolean next() throws IOException {
+			elements.clear();
+			long count = in.readVarLong();
+			if (count == 0) {
+				return false;
+			}
+			if (count < 0 || count > Integer.MAX_VALUE) {
+				throw new IOException("Illegal chunk size: " + count);
+			}
+			index += in.readVarLong();
+			if (index < 0 || index >= HashSetWithChain.MAXIMUM_TABLE_SIZE) {
+				throw new IOException("Illegal chain: " + index);
+			}
+			long previous = 0;
+			for (long i=0; i<count; i++) {
+				if (type == WireTypes.STRING) {
+					String stem = dictionary.read(in);
+					elements.add(stem + readUtf(in));
+					continue;
+				}
+				long value = (i == 0) ? in.readSignedVarLong() : previous + in.readVarLong();
+				if (type == WireTypes.INTEGER) {
+					if (value != (int)value) {
+						throw new IOException("Illegal integer: " + value);
+					}
+					elements.add((int)value);
+				}
+				else {
+					elements.add(value);
+				}
+				previous = value;
+			}
+			return true;
+		}
+
+		int getIndex() {
+			return (int)index;
+		}
+
+		/*
+		 * Elements of the stream are of the type the caller asked for,
+		 * so we can say that this is type-safe
+		 */
+		@SuppressWarnings("unchecked")
+		<T> List<T> getElements() {
+			return (List<T>)(List<?>)elements;
+		}
+
+		<T> void drainTo(List<T> batch) {
+			batch.addAll(this.<T>getElements());
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+/*
+ * Requests a ShardServer answers, each on one set of the shard
+ */
+enum ShardOperations {
+	CREATE,
+	DROP,
+	ADD,
+	REMOVE,
+	CONTAINS,
+	ADD_ALL,
+	REMOVE_ALL,
+	RETAIN_SET,
+	CONTAINS_ALL,
+	SIZE,
+	ELEMENTS,
+	UNION,
+	INTERSECTION,
+	DIFFERENCE
+}
\ No newline at end of file
@@ -0,0 +1,184 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/*
+ * Encoding of the requests and responses between ShardedHashSetWithChain
+ * and ShardServer. Elements are sent with Java serialization, so they
+ * must be Serializable and hash the same in every process.
+ * Over a stream, each message is framed by its length.
+ *
+ * Messages are deserialized through an allow-list: arrays of elements,
+ * Integer, Long and String elements, and Boolean and Long results.
+ * Other element classes, which every process must have, are allowed
+ * with the hashset.shard.allowedClasses system property, ObjectInputFilter
+ * patterns separated by ';' such as "com.example.Key;com.example.model.*".
+ */
+class ShardProtocol {
+	static final String ALLOWED_CLASSES_PROPERTY = "hashset.shard.allowedClasses";
+	private static final String ALLOWED_CLASSES =
+		"java.lang.Object;java.lang.Number;java.lang.Boolean;java.lang.Integer;java.lang.Long;java.lang.String";
+	private static final int MAXIMUM_DEPTH = 16;
+	private static final int MAXIMUM_FRAME_LENGTH = 1 << 28; /* Split larger operations into batches */
+	static final long END_OF_ELEMENTS = 1L << 32; /* Position of ELEMENTS after the last page */
+	private static final ObjectInputFilter FILTER = newFilter(System.getProperty(ALLOWED_CLASSES_PROPERTY, ""));
+
+	/*
+	 * A decoded request
+	 */
+	static class Request {
+		final ShardOperations operation;
+		final long setId;
+		final long otherSetId;	/* Second operand of set algebra, 0 otherwise */
+		final long resultSetId;	/* Set created by set algebra, 0 otherwise */
+		final Object[] elements;	/* Null if the operation takes none */
+
+		Request(ShardOperations operation, long setId, long otherSetId,
+				long resultSetId, Object[] elements) {
+			this.operation = operation;
+			this.setId = setId;
+			this.otherSetId = otherSetId;
+			this.resultSetId = resultSetId;
+			this.elements = elements;
+		}
+	}
+
+	/*
+	 * @param allowedClasses Patterns of element classes allowed besides the
+	 *                       default ones, separated by ';'
+	 * @return Filter rejecting every class that isn't allowed
+	 */
+	static ObjectInputFilter newFilter(String allowedClasses) {
+		StringBuilder pattern = new StringBuilder("maxdepth=" + MAXIMUM_DEPTH + ";" + ALLOWED_CLASSES);
+		for (String allowed : allowedClasses.split(";")) {
+			if (!allowed.trim().isEmpty()) {
+				pattern.append(';').append(allowed.trim());
+			}
+		}
+		return ObjectInputFilter.Config.createFilter(pattern.append(";!*").toString());
+	}
+
+	private static ObjectInputStream newInput(byte[] message) throws IOException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(message));
+		in.setObjectInputFilter(FILTER);
+		return in;
+	}
+
+	/*
+	 * @throws IOException If the message is too large for a frame
+	 */
+	private static byte[] toMessage(ByteArrayOutputStream bytes) throws IOException {
+		if (bytes.size() > MAXIMUM_FRAME_LENGTH) {
+			throw new IOException("Message too large: " + bytes.size() + " bytes");
+		}
+		return bytes.toByteArray();
+	}
+
+	static byte[] encodeRequest(Request request) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeByte(request.operation.ordinal());
+		out.writeLong(request.setId);
+		out.writeLong(request.otherSetId);
+		out.writeLong(request.resultSetId);
+		out.writeObject(request.elements);
+		out.close();
+		return toMessage(bytes);
+	}
+
+	/*
+	 * @throws IOException If the request is malformed or holds a class that isn't allowed
+	 */
+	static Request decodeRequest(byte[] request) throws IOException {
+		ObjectInputStream in = newInput(request);
+		int operation = in.readUnsignedByte();
+		if (operation >= ShardOperations.values().length) {
+			throw new IOException("Illegal operation: " + operation);
+		}
+		long setId = in.readLong();
+		long otherSetId = in.readLong();
+		long resultSetId = in.readLong();
+		try {
+			return new Request(ShardOperations.values()[operation], setId, otherSetId,
+							   resultSetId, (Object[])in.readObject());
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Illegal elements", e);
+		}
+	}
+
+	/*
+	 * @param result Boolean, Long or Object[] answering the request
+	 */
+	static byte[] encodeResponse(Object result) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeBoolean(true);
+		out.writeObject(result);
+		out.close();
+		return toMessage(bytes);
+	}
+
+	/*
+	 * @param message Why the shard failed to answer
+	 */
+	static byte[] encodeError(String message) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeBoolean(false);
+			out.writeUTF(String.valueOf(message));
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			/* Writing to memory doesn't fail */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * @param response Response of the shard
+	 * @param shard Index of the shard, for the error message
+	 * @return Result answering the request
+	 */
+	static Object decodeResponse(byte[] response, int shard) throws IOException {
+		ObjectInputStream in = newInput(response);
+		if (!in.readBoolean()) {
+			throw new IllegalStateException("Shard " + shard + " failed: " + in.readUTF());
+		}
+		try {
+			return in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Illegal response", e);
+		}
+	}
+
+	static void writeFrame(DataOutputStream out, byte[] message) throws IOException {
+		out.writeInt(message.length);
+		out.write(message);
+		out.flush();
+	}
+
+	/*
+	 * @return Next message, or null if the stream ended before it
+	 */
+	static byte[] readFrame(DataInputStream in) throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if (length < 0 || length > MAXIMUM_FRAME_LENGTH) {
+			throw new IOException("Illegal frame length: " + length);
+		}
+		byte[] message = new byte[length];
+		in.readFully(message);
+		return message;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,213 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Holds one shard of every ShardedHashSetWithChain, by set id, and
+ * answers their requests. Sets are ConcurrentHashSetWithChain, so
+ * requests of several connections can run at once.
+ *
+ * Run as a worker process with "java ShardServer [port]". It prints
+ * "Listening on <port>" once it accepts connections on the loopback
+ * address and exits when its standard input is closed, so that it
+ * doesn't outlive the process that launched it.
+ */
+class ShardServer {
+	private final ConcurrentHashMap<Long, ConcurrentHashSetWithChain<Object>> sets =
+		new ConcurrentHashMap<Long, ConcurrentHashSetWithChain<Object>>();
+
+	/*
+	 * @param request Request encoded by ShardProtocol
+	 * @return Response encoded by ShardProtocol, an error if the request failed
+	 */
+	public byte[] handle(byte[] request) {
+		try {
+			return ShardProtocol.encodeResponse(execute(ShardProtocol.decodeRequest(request)));
+		} catch (Exception e) {
+			return ShardProtocol.encodeError(e.toString());
+		}
+	}
+
+	private Object execute(ShardProtocol.Request request) {
+		ShardOperations operation = request.operation;
+		if (operation == ShardOperations.CREATE) {
+			return put(request.setId, new ConcurrentHashSetWithChain<Object>());
+		}
+		else if (operation == ShardOperations.DROP) {
+			return sets.remove(request.setId) != null;
+		}
+		else if (operation == ShardOperations.UNION
+				|| operation == ShardOperations.INTERSECTION
+				|| operation == ShardOperations.DIFFERENCE) {
+			return put(request.resultSetId, evaluate(operation, getSet(request.setId),
+													 getSet(request.otherSetId)));
+		}
+
+		ConcurrentHashSetWithChain<Object> set = getSet(request.setId);
+		if (operation == ShardOperations.ADD) {
+			return set.add(request.elements[0]);
+		}
+		else if (operation == ShardOperations.REMOVE) {
+			return set.remove(request.elements[0]);
+		}
+		else if (operation == ShardOperations.CONTAINS) {
+			return set.contains(request.elements[0]);
+		}
+		else if (operation == ShardOperations.ADD_ALL) {
+			return set.addAll(Arrays.asList(request.elements));
+		}
+		else if (operation == ShardOperations.REMOVE_ALL) {
+			return set.removeAll(Arrays.asList(request.elements));
+		}
+		else if (operation == ShardOperations.RETAIN_SET) {
+			return set.retainAll(getSet(request.otherSetId));
+		}
+		else if (operation == ShardOperations.CONTAINS_ALL) {
+			return set.containsAll(Arrays.asList(request.elements));
+		}
+		else if (operation == ShardOperations.SIZE) {
+			return (long)set.size();
+		}
+		else if (operation == ShardOperations.ELEMENTS) {
+			return page(set, (Long)request.elements[0], (Integer)request.elements[1]);
+		}
+		throw new IllegalArgumentException("Illegal operation: " + operation);
+	}
+
+	/*
+	 * Page through the elements in the order of their hash value with
+	 * reversed bits. Chain i of a table of 2^k chains holds the elements
+	 * whose reversed hash value starts with the k bits of i reversed,
+	 * so a page of whole chains covers a range of reversed hash values
+	 * whatever the size of the table. Paging then goes on from the right
+	 * element even if the table was resized between pages.
+	 *
+	 * @param position Reversed hash value to start from, 0 for the first page
+	 * @param limit Number of elements after which the page ends with its chain
+	 * @return Position of the next page, END_OF_ELEMENTS after the last one,
+	 *         and the elements of this page
+	 */
+	static Object[] page(ConcurrentHashSetWithChain<Object> set, long position, int limit) {
+		if (position < 0 || position > ShardProtocol.END_OF_ELEMENTS) {
+			throw new IllegalArgumentException("Illegal position: " + position);
+		}
+		ChainInterface<Object>[] table = set.getTable();
+		int shift = 32 - Integer.numberOfTrailingZeros(table.length);
+		List<Object> elements = new ArrayList<Object>();
+		while (position < ShardProtocol.END_OF_ELEMENTS && elements.size() < limit) {
+			int index = Integer.reverse((int)position) & (table.length - 1);
+			Iterator<Object> iter = table[index].iterator();
+			while (iter.hasNext()) {
+				Object elem = iter.next();
+				/* A larger table before a shrink may have returned part of the chain */
+				if ((Integer.reverse(set.getHashStrategy().hash(elem)) & 0xffffffffL) >= position) {
+					elements.add(elem);
+				}
+			}
+			position = ((position >>> shift) + 1) << shift;
+		}
+		return new Object[] { position, elements.toArray() };
+	}
+
+	/*
+	 * Set algebra on this shard only, as both operands are partitioned alike
+	 */
+	private static ConcurrentHashSetWithChain<Object> evaluate(ShardOperations operation,
+															   ConcurrentHashSetWithChain<Object> a,
+															   ConcurrentHashSetWithChain<Object> b) {
+		HashSetWithChain<Object> result;
+		if (operation == ShardOperations.UNION) {
+			result = HashSetWithChain.<Object>union(a, b);
+		}
+		else if (operation == ShardOperations.INTERSECTION) {
+			result = HashSetWithChain.<Object>intersection(a, b);
+		}
+		else {
+			result = HashSetWithChain.<Object>difference(a, b);
+		}
+		ConcurrentHashSetWithChain<Object> set = new ConcurrentHashSetWithChain<Object>(result.getTableSize());
+		set.addAll(result);
+		return set;
+	}
+
+	private boolean put(long setId, ConcurrentHashSetWithChain<Object> set) {
+		if (sets.putIfAbsent(setId, set) != null) {
+			throw new IllegalArgumentException("Set already exists: " + setId);
+		}
+		return true;
+	}
+
+	private ConcurrentHashSetWithChain<Object> getSet(long setId) {
+		ConcurrentHashSetWithChain<Object> set = sets.get(setId);
+		if (set == null) {
+			throw new IllegalArgumentException("Unknown set: " + setId);
+		}
+		return set;
+	}
+
+	/*
+	 * Answer the requests of a connection until it is closed
+	 */
+	void serve(Socket socket) throws IOException {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			byte[] request;
+			while ((request = ShardProtocol.readFrame(in)) != null) {
+				ShardProtocol.writeFrame(out, handle(request));
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 0;
+		final ShardServer server = new ShardServer();
+		ServerSocket listener = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		System.out.println("Listening on " + listener.getLocalPort());
+		System.out.flush();
+
+		/* Exit with the launching process, which holds the other end of stdin */
+		Thread watchdog = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (System.in.read() >= 0) {
+						//
+					}
+				} catch (IOException e) {
+					//
+				}
+				System.exit(0);
+			}
+		}, "shard-watchdog");
+		watchdog.setDaemon(true);
+		watchdog.start();
+
+		while (true) {
+			final Socket socket = listener.accept();
+			socket.setTcpNoDelay(true);
+			Thread connection = new Thread(new Runnable() {
+				public void run() {
+					try {
+						server.serve(socket);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}, "shard-connection");
+			connection.setDaemon(true);
+			connection.start();
+		}
+	}
+}
\ No newline at end of file
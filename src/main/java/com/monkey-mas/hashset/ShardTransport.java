@@ -0,0 +1,21 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * Carries encoded requests of ShardedHashSetWithChain to the shards
+ * and their responses back. A transport may be called by many threads
+ * at once, including for the same shard.
+ */
+interface ShardTransport extends Closeable {
+	/*
+	 * @return Number of shards reachable through this transport
+	 */
+	int getNumberOfShards();
+
+	/*
+	 * @param shard Index of the shard, in [0, getNumberOfShards())
+	 * @param request Request encoded by ShardProtocol
+	 * @return Response encoded by ShardProtocol
+	 */
+	byte[] call(int shard, byte[] request) throws IOException;
+}
\ No newline at end of file
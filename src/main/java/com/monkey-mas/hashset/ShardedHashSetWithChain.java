@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Set whose elements are spread over shards, which may live in other
+ * processes, so that it can hold more than a single heap.
+ *
+ * Chains of a table of NUMBER_OF_BUCKETS are split into contiguous
+ * ranges, one per shard, as TaskInvoker splits a table into ranges.
+ * The range owning the chain of an element decides its shard.
+ *
+ * - add()/remove()/contains() send one request to the owning shard.
+ * - Bulk operations group the elements by shard and send each shard
+ *   its batches, all shards in parallel.
+ * - retainAll() adds the elements to a temporary set of the shards,
+ *   which each shard then intersects with its part of the set.
+ * - iterator() fetches the elements of a shard in pages.
+ * - union()/intersection()/difference() of two sets partitioned alike
+ *   are computed by each shard on its own part, and the parts together
+ *   form the resulting set, without moving any element.
+ *
+ * The shards hold the set until close(). Elements are sent through a
+ * ShardTransport, so they must be Serializable, and the hash strategy
+ * must hash them the same in every process, which IdentityHashStrategy doesn't.
+ */
+class ShardedHashSetWithChain<T> implements Iterable<T>, AutoCloseable {
+	static final int NUMBER_OF_BUCKETS = 1 << 16;
+	private static final int DEFAULT_BATCH_SIZE = 1 << 14; /* Elements per request of bulk operations */
+	private final ShardTransport transport;
+	private final HashStrategy<? super T> hashStrategy;
+	private final long setId;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private ExecutorService executor; /* Null to use the default executor */
+	private boolean closed;
+
+	public ShardedHashSetWithChain(ShardTransport transport) {
+		this(transport, new DefaultHashStrategy<T>());
+	}
+
+	/*
+	 * @param transport Transport to the shards
+	 * @param hashStrategy Hash function used to choose the shard of elements
+	 */
+	public ShardedHashSetWithChain(ShardTransport transport, HashStrategy<? super T> hashStrategy) {
+		this(transport, hashStrategy, newSetId());
+		callAll(ShardOperations.CREATE, 0, 0);
+	}
+
+	private ShardedHashSetWithChain(ShardTransport transport, HashStrategy<? super T> hashStrategy,
+									long setId) {
+		if (transport == null) {
+			throw new NullPointerException("transport");
+		}
+		if (hashStrategy == null) {
+			throw new NullPointerException("hashStrategy");
+		}
+		this.transport = transport;
+		this.hashStrategy = hashStrategy;
+		this.setId = setId;
+	}
+
+	private static long newSetId() {
+		long setId;
+		do {
+			setId = ThreadLocalRandom.current().nextLong();
+		} while (setId == 0);
+		return setId;
+	}
+
+	/*
+	 * @param batchSize Maximum number of elements sent in a request of bulk operations
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Illegal batch size: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/*
+	 * @param executor Executor sending the requests to the shards in parallel,
+	 *                 or null to use the default one
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/*
+	 * Requests mostly wait for the shards, so virtual threads are used if available
+	 *
+	 * @return Executor sending the requests to the shards
+	 */
+	private ExecutorService getExecutor() {
+		if (executor != null) {
+			return executor;
+		}
+		if (VirtualThreads.isSupported()) {
+			return VirtualThreads.getExecutor();
+		}
+		return ForkJoinPool.commonPool();
+	}
+
+	public int getNumberOfShards() {
+		return transport.getNumberOfShards();
+	}
+
+	/*
+	 * @param data Input data
+	 * @return Index of the shard that owns the input data
+	 */
+	public int shardFor(T data) {
+		int bucket = hashStrategy.indexFor(hashStrategy.hash(data), NUMBER_OF_BUCKETS);
+		return (int)((long)bucket * getNumberOfShards() / NUMBER_OF_BUCKETS);
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("Set is closed");
+		}
+	}
+
+	/*
+	 * Send a request to a shard and wait for its result
+	 */
+	private Object call(int shard, ShardOperations operation, long otherSetId,
+						long resultSetId, Object[] elements) {
+		try {
+			byte[] request = ShardProtocol.encodeRequest(
+				new ShardProtocol.Request(operation, setId, otherSetId, resultSetId, elements));
+			return ShardProtocol.decodeResponse(transport.call(shard, request), shard);
+		} catch (IOException e) {
+			throw new IllegalStateException("Shard " + shard + " failed", e);
+		}
+	}
+
+	/*
+	 * Send the same request to every shard in parallel
+	 *
+	 * @return Result of each shard
+	 */
+	private Object[] callAll(final ShardOperations operation, final long otherSetId,
+							 final long resultSetId) {
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int shard=0; shard<getNumberOfShards(); shard++) {
+			final int target = shard;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					return ShardedHashSetWithChain.this.call(target, operation, otherSetId,
+															  resultSetId, null);
+				}
+			});
+		}
+		return invokeAll(tasks);
+	}
+
+	private Object[] invokeAll(List<Callable<Object>> tasks) {
+		try {
+			List<Future<Object>> futures = getExecutor().invokeAll(tasks);
+			Object[] results = new Object[futures.size()];
+			for (int i=0; i<results.length; i++) {
+				results[i] = futures.get(i).get();
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for shards", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/*
+	 * @return Elements of collection grouped by the shard that owns them
+	 */
+	private List<List<Object>> groupByShard(Collection<? extends T> collection) {
+		int shards = getNumberOfShards();
+		List<List<Object>> groups = new ArrayList<List<Object>>(shards);
+		for (int shard=0; shard<shards; shard++) {
+			groups.add(new ArrayList<Object>(collection.size() / shards + 1));
+		}
+		for (T elem : collection) {
+			groups.get(shardFor(elem)).add(elem);
+		}
+		return groups;
+	}
+
+	/*
+	 * Send each shard its elements in batches, all shards in parallel
+	 *
+	 * @return True if the operation returned true on every batch
+	 */
+	private boolean callBatched(final ShardOperations operation, Collection<? extends T> collection) {
+		ensureOpen();
+		List<List<Object>> groups = groupByShard(collection);
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int shard=0; shard<groups.size(); shard++) {
+			final int target = shard;
+			final List<Object> elements = groups.get(shard);
+			if (elements.isEmpty()) {
+				continue;
+			}
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					boolean result = true;
+					for (int from=0; from<elements.size(); from+=batchSize) {
+						int to = Math.min(from + batchSize, elements.size());
+						Object[] batch = elements.subList(from, to).toArray();
+						result &= (Boolean)ShardedHashSetWithChain.this.call(target, operation, 0, 0, batch);
+					}
+					return result;
+				}
+			});
+		}
+		boolean success = true;
+		for (Object result : invokeAll(tasks)) {
+			success &= (Boolean)result;
+		}
+		return success;
+	}
+
+	public boolean add(T data) {
+		ensureOpen();
+		return (Boolean)call(shardFor(data), ShardOperations.ADD, 0, 0, new Object[] { data });
+	}
+
+	public boolean remove(T data) {
+		ensureOpen();
+		return (Boolean)call(shardFor(data), ShardOperations.REMOVE, 0, 0, new Object[] { data });
+	}
+
+	public boolean contains(T data) {
+		ensureOpen();
+		return (Boolean)call(shardFor(data), ShardOperations.CONTAINS, 0, 0, new Object[] { data });
+	}
+
+	/*
+	 * @return Sum of the sizes of the shards
+	 */
+	public long size() {
+		ensureOpen();
+		long size = 0;
+		for (Object result : callAll(ShardOperations.SIZE, 0, 0)) {
+			size += (Long)result;
+		}
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public boolean addAll(Collection<? extends T> collection) {
+		return callBatched(ShardOperations.ADD_ALL, collection);
+	}
+
+	public boolean removeAll(Collection<? extends T> collection) {
+		return callBatched(ShardOperations.REMOVE_ALL, collection);
+	}
+
+	/*
+	 * Retaining a batch would remove the elements of the others, so the
+	 * elements are first added in batches to a temporary set, which each
+	 * shard then intersects with its part of this set. Shards owning none
+	 * of them are emptied.
+	 */
+	public boolean retainAll(Collection<? extends T> collection) {
+		ensureOpen();
+		ShardedHashSetWithChain<T> retained = new ShardedHashSetWithChain<T>(transport, hashStrategy);
+		retained.executor = executor;
+		retained.batchSize = batchSize;
+		try {
+			boolean success = retained.addAll(collection);
+			for (Object result : callAll(ShardOperations.RETAIN_SET, retained.setId, 0)) {
+				success &= (Boolean)result;
+			}
+			return success;
+		} finally {
+			retained.close();
+		}
+	}
+
+	public boolean containsAll(Collection<? extends T> collection) {
+		return callBatched(ShardOperations.CONTAINS_ALL, collection);
+	}
+
+	/*
+	 * Fetches the elements of each shard in pages of about the batch size.
+	 * Elements changed meanwhile may or may not be seen, but the others
+	 * are seen once even if a shard resizes its table between pages.
+	 */
+	public Iterator<T> iterator() {
+		ensureOpen();
+		return new Iterator<T>() {
+			private int shard = 0;
+			private long page = 0; /* Position of the next page of the shard */
+			private Object[] elements = new Object[0];
+			private int position = 0;
+
+			public boolean hasNext() {
+				while (position == elements.length && shard < getNumberOfShards()) {
+					Object[] result = (Object[])call(shard, ShardOperations.ELEMENTS, 0, 0,
+													 new Object[] { page, batchSize });
+					page = (Long)result[0];
+					elements = (Object[])result[1];
+					position = 0;
+					if (page == ShardProtocol.END_OF_ELEMENTS) {
+						shard++;
+						page = 0;
+					}
+				}
+				return position < elements.length;
+			}
+
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				/*
+				 * Shards only hold elements added through this set,
+				 * so we can say that this is type-safe
+				 */
+				@SuppressWarnings("unchecked") T elem = (T)elements[position++];
+				return elem;
+			}
+		};
+	}
+
+	/*
+	 * Evaluate a set operation on every shard into a new set
+	 */
+	private static <T> ShardedHashSetWithChain<T> evaluate(ShardOperations operation,
+														   ShardedHashSetWithChain<? extends T> a,
+														   ShardedHashSetWithChain<? extends T> b) {
+		a.ensureOpen();
+		b.ensureOpen();
+		if (a.transport != b.transport || !a.hashStrategy.equals(b.hashStrategy)) {
+			throw new IllegalArgumentException("Sets are partitioned differently");
+		}
+		/*
+		 * Elements of both sets are T, which the hash strategy of a
+		 * accepts, so we can say that this is type-safe
+		 */
+		@SuppressWarnings("unchecked") HashStrategy<? super T> hashStrategy =
+			(HashStrategy<? super T>)a.hashStrategy;
+		ShardedHashSetWithChain<T> result =
+			new ShardedHashSetWithChain<T>(a.transport, hashStrategy, newSetId());
+		result.executor = a.executor;
+		result.batchSize = a.batchSize;
+		try {
+			a.callAll(operation, b.setId, result.setId);
+		} catch (RuntimeException e) {
+			/* Drop the parts of the result the other shards created, if they can be reached */
+			try {
+				result.close();
+			} catch (RuntimeException dropFailure) {
+				e.addSuppressed(dropFailure);
+			}
+			throw e;
+		}
+		return result;
+	}
+
+	public static <T> ShardedHashSetWithChain<T> union(ShardedHashSetWithChain<? extends T> a,
+													   ShardedHashSetWithChain<? extends T> b) {
+		return ShardedHashSetWithChain.<T>evaluate(ShardOperations.UNION, a, b);
+	}
+
+	public static <T> ShardedHashSetWithChain<T> intersection(ShardedHashSetWithChain<? extends T> a,
+															  ShardedHashSetWithChain<? extends T> b) {
+		return ShardedHashSetWithChain.<T>evaluate(ShardOperations.INTERSECTION, a, b);
+	}
+
+	public static <T> ShardedHashSetWithChain<T> difference(ShardedHashSetWithChain<? extends T> a,
+															ShardedHashSetWithChain<? extends T> b) {
+		return ShardedHashSetWithChain.<T>evaluate(ShardOperations.DIFFERENCE, a, b);
+	}
+
+	/*
+	 * Drop the set from every shard. The transport stays open
+	 * for the other sets using it.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			callAll(ShardOperations.DROP, 0, 0);
+		}
+	}
+}
\ No newline at end of file
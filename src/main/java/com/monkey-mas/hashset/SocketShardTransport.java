@@ -0,0 +1,145 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Transport to ShardServer processes over TCP, one connection per shard.
+ * Requests to the same shard wait for each other, while requests to
+ * different shards run in parallel.
+ */
+class SocketShardTransport implements ShardTransport {
+	private static final String LISTENING = "Listening on ";
+	private final Socket[] sockets;
+	private final DataInputStream[] inputs;
+	private final DataOutputStream[] outputs;
+	private final Process[] processes; /* Workers launched by launchLocal(), empty otherwise */
+
+	/*
+	 * @param addresses Address of the ShardServer of each shard
+	 */
+	public SocketShardTransport(List<InetSocketAddress> addresses) throws IOException {
+		this(addresses, new Process[0]);
+	}
+
+	private SocketShardTransport(List<InetSocketAddress> addresses, Process[] processes) throws IOException {
+		if (addresses.isEmpty()) {
+			throw new IllegalArgumentException("Illegal number of shards: 0");
+		}
+		this.processes = processes;
+		sockets = new Socket[addresses.size()];
+		inputs = new DataInputStream[addresses.size()];
+		outputs = new DataOutputStream[addresses.size()];
+		try {
+			for (int i=0; i<sockets.length; i++) {
+				sockets[i] = new Socket();
+				sockets[i].setTcpNoDelay(true);
+				sockets[i].connect(addresses.get(i));
+				inputs[i] = new DataInputStream(new BufferedInputStream(sockets[i].getInputStream()));
+				outputs[i] = new DataOutputStream(new BufferedOutputStream(sockets[i].getOutputStream()));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Start a ShardServer process per shard on this machine, with the
+	 * class path of this process, and connect to them. The workers
+	 * exit when the transport is closed or this process ends.
+	 *
+	 * @param numberOfShards Number of worker processes
+	 * @return Transport owning the workers
+	 */
+	public static SocketShardTransport launchLocal(int numberOfShards) throws IOException {
+		if (numberOfShards <= 0) {
+			throw new IllegalArgumentException("Illegal number of shards: " + numberOfShards);
+		}
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<String> command = new ArrayList<String>();
+		command.add(java);
+		String allowedClasses = System.getProperty(ShardProtocol.ALLOWED_CLASSES_PROPERTY);
+		if (allowedClasses != null) {
+			/* Workers accept the same elements as this process */
+			command.add("-D" + ShardProtocol.ALLOWED_CLASSES_PROPERTY + "=" + allowedClasses);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("ShardServer");
+		Process[] processes = new Process[numberOfShards];
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(numberOfShards);
+		try {
+			for (int i=0; i<numberOfShards; i++) {
+				processes[i] = new ProcessBuilder(command)
+					.redirectError(ProcessBuilder.Redirect.INHERIT)
+					.start();
+				addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), readPort(processes[i])));
+			}
+		} catch (IOException e) {
+			destroy(processes);
+			throw e;
+		}
+		try {
+			return new SocketShardTransport(addresses, processes);
+		} catch (IOException e) {
+			destroy(processes);
+			throw e;
+		}
+	}
+
+	/*
+	 * @return Port the worker printed once it was listening
+	 */
+	private static int readPort(Process process) throws IOException {
+		BufferedReader reader = new BufferedReader(
+			new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		String line = reader.readLine();
+		if (line == null || !line.startsWith(LISTENING)) {
+			throw new IOException("Shard worker failed to start: " + line);
+		}
+		return Integer.parseInt(line.substring(LISTENING.length()).trim());
+	}
+
+	private static void destroy(Process[] processes) {
+		for (Process process : processes) {
+			if (process != null) {
+				process.destroy();
+			}
+		}
+	}
+
+	public int getNumberOfShards() {
+		return sockets.length;
+	}
+
+	public byte[] call(int shard, byte[] request) throws IOException {
+		synchronized (sockets[shard]) {
+			ShardProtocol.writeFrame(outputs[shard], request);
+			byte[] response = ShardProtocol.readFrame(inputs[shard]);
+			if (response == null) {
+				throw new IOException("Shard " + shard + " closed the connection");
+			}
+			return response;
+		}
+	}
+
+	public void close() throws IOException {
+		for (Socket socket : sockets) {
+			if (socket != null) {
+				socket.close();
+			}
+		}
+		destroy(processes);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/*
+ * Chain storing elements in an array sorted by their hash value from the
+ * HashStrategy of the set, found by binary search. Takes the least memory for chains of a few elements,
+ * but add/remove move the following elements, so avoid it for long chains.
+ */
+class SortedArrayChain<T> implements ChainInterface<T> {
+	private static final int[] EMPTY_HASHES = new int[0];
+	private static final Object[] EMPTY_ELEMENTS = new Object[0];
+	private static final int INITIAL_CAPACITY = 2;
+	private final HashStrategy<? super T> hashStrategy;
+	private int[] hashes = EMPTY_HASHES;		 /* Sorted hash values of elements */
+	private Object[] elements = EMPTY_ELEMENTS; /* Element of the hash value at the same index */
+	private int size;
+
+	/*
+	 * @param hashStrategy Hash function of the set, used when no hash value is given
+	 */
+	public SortedArrayChain(HashStrategy<? super T> hashStrategy) {
+		this.hashStrategy = hashStrategy;
+	}
+
+	public boolean add(T data) {
+		return add(data, hashStrategy.hash(data));
+	}
+
+	public boolean add(T data, int hash) {
+		int index = find(data, hash);
+		if (index >= 0) {
+			return false;
+		}
+		index = -(index + 1);
+		if (size == elements.length) {
+			int length = (size == 0) ? INITIAL_CAPACITY : size * 2;
+			hashes   = Arrays.copyOf(hashes, length);
+			elements = Arrays.copyOf(elements, length);
+		}
+		System.arraycopy(hashes, index, hashes, index + 1, size - index);
+		System.arraycopy(elements, index, elements, index + 1, size - index);
+		hashes[index]   = hash;
+		elements[index] = data;
+		size++;
+		return true;
+	}
+
+	public boolean remove(T data) {
+		return remove(data, hashStrategy.hash(data));
+	}
+
+	public boolean remove(T data, int hash) {
+		int index = find(data, hash);
+		if (index < 0) {
+			return false;
+		}
+		removeAt(index);
+		return true;
+	}
+
+	public boolean contains(T data) {
+		return contains(data, hashStrategy.hash(data));
+	}
+
+	public boolean contains(T data, int hash) {
+		return find(data, hash) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int next = 0;
+			private boolean removable = false;
+
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			public T next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				removable = true;
+				return elementAt(next++);
+			}
+
+			public void remove() {
+				if (!removable) {
+					throw new IllegalStateException();
+				}
+				/* Following elements move back by one, so does the cursor */
+				removeAt(--next);
+				removable = false;
+			}
+		};
+	}
+
+	public void forEach(Consumer<? super T> action) {
+		for (int i=0; i<size; i++) {
+			action.accept(elementAt(i));
+		}
+	}
+
+	/*
+	 * @return Index of the element, or -(insertion point + 1) if not found
+	 */
+	private int find(Object data, int hash) {
+		int low  = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (hashes[middle] < hash) {
+				low = middle + 1;
+			}
+			else if (hashes[middle] > hash) {
+				high = middle - 1;
+			}
+			else {
+				/* Look through every element of the same hash value */
+				int first = middle;
+				while (first > 0 && hashes[first - 1] == hash) {
+					first--;
+				}
+				for (int i=first; i<size && hashes[i] == hash; i++) {
+					if (elements[i].equals(data)) {
+						return i;
+					}
+				}
+				return -(first + 1);
+			}
+		}
+		return -(low + 1);
+	}
+
+	private void removeAt(int index) {
+		System.arraycopy(hashes, index + 1, hashes, index, size - index - 1);
+		System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+		elements[--size] = null;
+	}
+
+	/*
+	 * The array only holds elements added as T,
+	 * so we can say that this is type-safe
+	 */
+	@SuppressWarnings("unchecked")
+	private T elementAt(int index) {
+		return (T)elements[index];
+	}
+}
\ No newline at end of file
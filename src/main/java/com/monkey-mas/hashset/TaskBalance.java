@@ -0,0 +1,164 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * How evenly a bulk operation spread its work among threads.
+ * The weight of a task is the number of chains and elements it visited.
+ */
+class TaskBalance {
+	private int numberOfTasks;
+	private int numberOfThreads;
+	private long totalWeight;
+	private long maxTaskWeight;
+	private long maxThreadWeight;
+	private long stealCount;
+	private long elapsedNanos;
+	private Map<Long, Long> nanosPerThread; /* Time each thread spent running tasks, by thread id */
+
+	private TaskBalance(int numberOfTasks, int numberOfThreads,
+						long totalWeight, long maxTaskWeight, long maxThreadWeight,
+						long stealCount, long elapsedNanos,
+						Map<Long, Long> nanosPerThread) {
+		this.numberOfTasks = numberOfTasks;
+		this.numberOfThreads = numberOfThreads;
+		this.totalWeight = totalWeight;
+		this.maxTaskWeight = maxTaskWeight;
+		this.maxThreadWeight = maxThreadWeight;
+		this.stealCount = stealCount;
+		this.elapsedNanos = elapsedNanos;
+		this.nanosPerThread = Collections.unmodifiableMap(nanosPerThread);
+	}
+
+	/*
+	 * @return Number of ranges the operation was split into
+	 */
+	public int getNumberOfTasks() {
+		return numberOfTasks;
+	}
+
+	/*
+	 * @return Number of distinct threads that ran the ranges
+	 */
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	public long getTotalWeight() {
+		return totalWeight;
+	}
+
+	public long getMaxTaskWeight() {
+		return maxTaskWeight;
+	}
+
+	public long getMaxThreadWeight() {
+		return maxThreadWeight;
+	}
+
+	/*
+	 * @return Tasks stolen in the ForkJoinPool during the operation,
+	 *         including steals of other work running in the same pool
+	 */
+	public long getStealCount() {
+		return stealCount;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/*
+	 * @return Time each thread spent running tasks of the operation, by thread id
+	 */
+	public Map<Long, Long> getNanosPerThread() {
+		return nanosPerThread;
+	}
+
+	/*
+	 * @return Time of the thread that spent the longest running tasks
+	 */
+	public long getMaxThreadNanos() {
+		long maxThreadNanos = 0;
+		for (long nanos : nanosPerThread.values()) {
+			maxThreadNanos = Math.max(maxThreadNanos, nanos);
+		}
+		return maxThreadNanos;
+	}
+
+	/*
+	 * @return Weight of the busiest thread divided by the average weight
+	 *         per thread, 1.0 being a perfect balance
+	 */
+	public double getImbalance() {
+		if (totalWeight == 0) {
+			return 1.0;
+		}
+		return maxThreadWeight / ((double)totalWeight / numberOfThreads);
+	}
+
+	@Override
+	public String toString() {
+		return "TaskBalance[tasks=" + numberOfTasks
+			+ ", threads=" + numberOfThreads
+			+ ", totalWeight=" + totalWeight
+			+ ", maxTaskWeight=" + maxTaskWeight
+			+ ", maxThreadWeight=" + maxThreadWeight
+			+ ", imbalance=" + String.format("%.2f", getImbalance())
+			+ ", steals=" + stealCount
+			+ ", maxThreadNanos=" + getMaxThreadNanos()
+			+ ", elapsedNanos=" + elapsedNanos + "]";
+	}
+
+	/*
+	 * Collects the weight and time of the tasks run by each thread
+	 */
+	static class Recorder {
+		private ConcurrentLinkedQueue<long[]> tasks = new ConcurrentLinkedQueue<long[]>();
+		private long startTime = System.nanoTime();
+
+		/*
+		 * Run the operation on this thread and record its weight and time
+		 */
+		public Boolean call(SetOperation<?> operation, long weight) {
+			long[] task = new long[] { Thread.currentThread().getId(), weight, 0 };
+			long start = System.nanoTime();
+			try {
+				return operation.call();
+			} finally {
+				task[2] = System.nanoTime() - start;
+				tasks.add(task);
+			}
+		}
+
+		/*
+		 * @param stealCount Tasks stolen while the operation ran
+		 * @return Balance of the tasks recorded so far
+		 */
+		public TaskBalance toBalance(long stealCount) {
+			Map<Long, Long> weightPerThread = new HashMap<Long, Long>();
+			Map<Long, Long> nanosPerThread = new HashMap<Long, Long>();
+			long totalWeight = 0;
+			long maxTaskWeight = 0;
+			Iterator<long[]> iter = tasks.iterator();
+			while (iter.hasNext()) {
+				long[] task = iter.next();
+				Long weight = weightPerThread.get(task[0]);
+				weightPerThread.put(task[0], (weight == null) ? task[1] : weight + task[1]);
+				Long nanos = nanosPerThread.get(task[0]);
+				nanosPerThread.put(task[0], (nanos == null) ? task[2] : nanos + task[2]);
+				totalWeight += task[1];
+				maxTaskWeight = Math.max(maxTaskWeight, task[1]);
+			}
+			long maxThreadWeight = 0;
+			for (long weight : weightPerThread.values()) {
+				maxThreadWeight = Math.max(maxThreadWeight, weight);
+			}
+			return new TaskBalance(tasks.size(), Math.max(1, weightPerThread.size()),
+								   totalWeight, maxTaskWeight, maxThreadWeight,
+								   stealCount, System.nanoTime() - startTime, nanosPerThread);
+		}
+	}
+}
\ No newline at end of file
@@ -1,55 +1,202 @@
+import java.util.AbstractCollection;
 import java.util.Collection;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
+import java.util.Iterator;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 class TaskInvoker<T> {
 	private HashSetWithChain<T> setA;
 	private HashSetWithChain<? extends T> setB;
 	private Collection<? extends T> collection;
+	private ScatteredCollection<T> scattered; /* collection split by chain of setA */
+	private boolean[] found;	/* Result of CONTAINS_EACH by position in collection */
 	private int numberOfThreads;
 
 	/* Used for basic operations */
 	public TaskInvoker(HashSetWithChain<T> a,
 					   Collection<? extends T> collection) {
+		this(a, collection, 0);
+	}
+
+	/* Used for basic operations with the number of threads given by caller */
+	public TaskInvoker(HashSetWithChain<T> a,
+					   Collection<? extends T> collection,
+					   int parallelism) {
+		a.completeResize();
 		setA = a;
 		this.collection = collection;
-		numberOfThreads = a.getThreadSizeOfSetOp();
+		numberOfThreads = a.getThreadSizeOfSetOp(parallelism, getWorkSize());
 	}
 
 	/* Used for basic operations */
 	public TaskInvoker(HashSetWithChain<T> a,
 					   HashSetWithChain<? extends T> b) {
+		this(a, b, 0);
+	}
+
+	/* Used for basic operations with the number of threads given by caller */
+	public TaskInvoker(HashSetWithChain<T> a,
+					   HashSetWithChain<? extends T> b,
+					   int parallelism) {
+		a.completeResize();
+		b.completeResize();
 		setA = a;
-		setB = b;
-		numberOfThreads = a.getThreadSizeOfSetOp();
+		if (a.hasNestedLayout(b)) {
+			setB = b;
+		}
+		else {
+			/*
+			 * Chains of setB don't match those of setA, so hash the elements
+			 * of setB once and split them by chain of setA, as with a collection
+			 */
+			collection = asCollection(b);
+		}
+		numberOfThreads = a.getThreadSizeOfSetOp(parallelism, getWorkSize());
 	}
 
 	/*
-	 * Logic of multithreaded set operation
+	 * @return Collection view of the elements of set
+	 */
+	static <E> Collection<E> asCollection(final HashSetWithChain<E> set) {
+		return new AbstractCollection<E>() {
+			public Iterator<E> iterator() {
+				return set.iterator();
+			}
+
+			public int size() {
+				return set.size();
+			}
+		};
+	}
+
+	/*
+	 * Ranges of the operation are ranges of groups of chains. A group holds
+	 * the chains whose index is the same modulo the smaller table.
+	 *
+	 * @return Number of groups, the size of the smaller table
+	 */
+	private int getNumberOfGroups() {
+		int tableSize = setA.getTableSize();
+		return (setB == null) ? tableSize : Math.min(tableSize, setB.getTableSize());
+	}
+
+	/*
+	 * Run the operation, recording it to the metrics of setA
+	 * and to the flight recorder if either is enabled
 	 */
 	protected final boolean execute(SetOperationTypes setOperation) {
-		/*
-		 * As we expect our Future objects to return only Boolean,
-		 * we can say that this is type-safe
-		 */
-		@SuppressWarnings("unchecked") Future<Boolean> future[] =
-			new Future[numberOfThreads];
+		SetMetrics metrics = setA.getMetrics();
+		BulkOperationEvent event = new BulkOperationEvent();
+		if (metrics == null && !event.isEnabled()) {
+			return run(setOperation, false);
+		}
+		long workSize = getWorkSize();
+		event.begin();
+		long start = System.nanoTime();
+		boolean result = run(setOperation, true);
+		long nanos = System.nanoTime() - start;
+		TaskBalance taskBalance = setA.getLastTaskBalance();
+		if (metrics != null) {
+			metrics.recordBulk(setOperation, nanos, taskBalance);
+		}
+		event.commitOperation(setOperation, setA, workSize, setA.getTableSize(),
+							  numberOfThreads, taskBalance, result);
+		return result;
+	}
 
-		/* Create thread pool */
-		ExecutorService service = Executors.newFixedThreadPool(numberOfThreads);
+	/*
+	 * Logic of multithreaded set operation
+	 *
+	 * @param recordBalance True to record how the work was spread to setA
+	 */
+	private boolean run(final SetOperationTypes setOperation, boolean recordBalance) {
+		if (setOperation == SetOperationTypes.CONTAINS_EACH) {
+			found = new boolean[collection.size()];
+		}
+		if (numberOfThreads == 1 || getWorkSize() < setA.getInlineThreshold()) {
+			/* Not worth handing over to other threads, so run on this thread */
+			if (setOperation == SetOperationTypes.CONTAINS_EACH && getWorkSize() >= setA.getInlineThreshold()) {
+				/* Still visit each chain once for a large batch */
+				scattered = ScatteredCollection.<T>scatter(setA, collection, null, 1);
+			}
+			SetOperation<T> operation = createOperation(0, getNumberOfGroups(), setOperation);
+			if (!recordBalance) {
+				return operation.call();
+			}
+			TaskBalance.Recorder recorder = new TaskBalance.Recorder();
+			boolean success = recorder.call(operation, getWorkSize());
+			setA.setLastTaskBalance(recorder.toBalance(0));
+			return success;
+		}
 
-		/* Invoke threads as many threads as being set up */
-		invokeThread(service, future, setOperation);
+		/* Thread pool shared by set operations, which we must not shut down */
+		ExecutorService service = setA.getExecutor();
 
-		/* Check results from thread execution */
-		collectResults(future);
+		/* Hash each element of collection once instead of once per thread */
+		if (collection != null) {
+			scattered = ScatteredCollection.<T>scatter(setA, collection, service, numberOfThreads);
+		}
 
-		/* Destroy the thread pool */
-		service.shutdown();
+		RangeOperationFactory factory = new RangeOperationFactory() {
+			public SetOperation<?> createOperation(int from, int to) {
+				return TaskInvoker.this.createOperation(from, to, setOperation);
+			}
+		};
+		/* Each range only visits the chains of its own groups */
+		boolean splittable = true;
+		/* A single missing element decides containsAll, so stop the other ranges */
+		boolean stopOnFalse = (setOperation == SetOperationTypes.CONTAINS_ALL);
+		RangeScheduler scheduler = new RangeScheduler(service, factory, computePrefixWeight(),
+													  numberOfThreads, splittable, stopOnFalse);
+		TaskBalance taskBalance = scheduler.execute(recordBalance);
+		if (recordBalance) {
+			setA.setLastTaskBalance(taskBalance);
+		}
+		return scheduler.getResult();
+	}
+
+	/*
+	 * @return Whether each element of collection exists in setA,
+	 *         after CONTAINS_EACH was executed
+	 */
+	public boolean[] getFound() {
+		return found;
+	}
 
-		return true;
+	/*
+	 * Weight of a group is the number of elements the operation visits
+	 * for it, plus one for visiting each chain of it.
+	 *
+	 * @return Total weight of groups [0, i)
+	 */
+	private long[] computePrefixWeight() {
+		ChainInterface<T>[] tableA = setA.getTable();
+		int groups = getNumberOfGroups();
+		long[] prefixWeight = new long[groups + 1];
+		for (int i=0; i<tableA.length; i++) {
+			long weight = 1 + tableA[i].size();
+			if (scattered != null) {
+				weight += scattered.getEnd(i) - scattered.getStart(i);
+			}
+			prefixWeight[(i & (groups - 1)) + 1] += weight;
+		}
+		if (setB != null) {
+			ChainInterface<? extends T>[] tableB = setB.getTable();
+			for (int j=0; j<tableB.length; j++) {
+				prefixWeight[(j & (groups - 1)) + 1] += 1 + tableB[j].size();
+			}
+		}
+		for (int g=0; g<groups; g++) {
+			prefixWeight[g + 1] += prefixWeight[g];
+		}
+		return prefixWeight;
+	}
+
+	/*
+	 * @return Rough number of elements the operation visits
+	 */
+	private long getWorkSize() {
+		long incoming = (setB == null) ? collection.size() : setB.size();
+		return setA.size() + incoming;
 	}
 
 	/*
@@ -57,71 +204,28 @@ class TaskInvoker<T> {
 	 */
 	private SetOperation<T> createOperation(int from, int to,
 											SetOperationTypes setOperation) {
-		Chain<T>[] 			 tableA = setA.getTable();
-		Chain<? extends T>[] tableB = (setB == null) ? null : setB.getTable();
+		ChainInterface<T>[]			  tableA = setA.getTable();
+		ChainInterface<? extends T>[] tableB = (setB == null) ? null : setB.getTable();
 
 		SetOperation<T> operation = null;
 		/* Set proper operation */
 		if (setOperation == SetOperationTypes.ADD_ALL) {
-			operation = new AddAll<T>(setA, setB, collection, from, to);
+			operation = new AddAll<T>(setA, setB, collection, scattered, from, to);
 		}
 		else if (setOperation == SetOperationTypes.REMOVE_ALL) {
-			operation = new RemoveAll<T>(setA, setB, collection, from, to);
+			operation = new RemoveAll<T>(setA, setB, collection, scattered, from, to);
 		}
 		else if (setOperation == SetOperationTypes.RETAIN_ALL) {
-			operation = new RetainAll<T>(setA, setB, collection, from, to);
+			operation = new RetainAll<T>(setA, setB, collection, scattered, from, to);
 		}
 		else if (setOperation == SetOperationTypes.CONTAINS_ALL) {
-			operation = new ContainsAll<T>(setA, setB, collection, from, to);
+			operation = new ContainsAll<T>(setA, setB, collection, scattered, from, to);
+		}
+		else if (setOperation == SetOperationTypes.CONTAINS_EACH) {
+			operation = new ContainsEach<T>(setA, collection, scattered, found, from, to);
 		} else {
 			//
 		}
 		return operation;
 	}
-
-	/*
-	 * Invoke threads to add/remove/find collection of elements from setA
-	 */
-	private void invokeThread(ExecutorService service,
-							  Future<Boolean>[] future,
-							  SetOperationTypes setOperation) {
-		int nextIndex = 0;
-		int taskSizeLeft = setA.getTableSize();
-
-		for (int count=0; count < numberOfThreads; count++) {
-			int sizePerThread = taskSizeLeft / (numberOfThreads-count);
-			/* Range of table index to do operation */
-			int from = nextIndex;
-			int to   = nextIndex+sizePerThread;
-			
-			/* Create proper object of operation */
-			SetOperation<T> operation = createOperation(from, to, setOperation);
-
-			/* Thread submmition */
-			try {
-				future[count] = service.submit(operation);
-			} catch (Exception e) {
-				e.printStackTrace();
-				return;
-			}
-
-			/* Set the next _from_ index */
-			nextIndex += sizePerThread;
-			taskSizeLeft -= sizePerThread;
-		}
-	}
-
-	private void collectResults(Future<Boolean>[] future) {
-		for (Future<Boolean> result : future) {
-			try {
-				boolean succeess = (boolean) result.get();
-			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			catch (ExecutionException e) {
-				e.printStackTrace();
-			}
-		}
-	}
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/*
+ * Stores UUID keys in 16 bytes
+ */
+public class UuidKeyCodec implements KeyCodec<UUID> {
+	public int getWidth() {
+		return 16;
+	}
+
+	public void encode(UUID key, ByteBuffer buffer, int offset) {
+		buffer.putLong(offset, key.getMostSignificantBits());
+		buffer.putLong(offset + 8, key.getLeastSignificantBits());
+	}
+
+	public UUID decode(ByteBuffer buffer, int offset) {
+		return new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,546 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/*
+ * HashSetWithChain whose readers see consistent versions of the set,
+ * never a bulk operation half applied.
+ *
+ * - Published chains are never changed. add()/remove() copy the chain
+ *   they change, and bulk operations build the next version in a copy
+ *   of the table, copying each chain the first time they change it.
+ *   The copy is published at once when the operation completes, or
+ *   dropped if it fails.
+ * - contains() and size() read the published version without locking.
+ * - snapshot() returns the published version as a read-only set in
+ *   constant time. The next write after a snapshot copies the table
+ *   instead of changing the one the snapshot uses.
+ *
+ * Writers run one at a time: add()/remove() wait for a running bulk
+ * operation. Other sets read the working table of a set they are given,
+ * so pass them snapshot() while this set is being changed.
+ */
+class VersionedHashSetWithChain<T> extends HashSetWithChain<T> {
+	private static final int DEFAULT_TABLE_SIZE = 32;
+	private static final float DEFAULT_LOAD_FACTOR = 4.0f;
+	/* Stores chains into published tables so that readers see them filled */
+	private static final VarHandle CHAINS = MethodHandles.arrayElementVarHandle(ChainInterface[].class);
+	private final ReentrantLock writeLock = new ReentrantLock();   /* Held by writers throughout */
+	private final ReentrantLock publishLock = new ReentrantLock(); /* Held while publishing or snapshotting */
+	private volatile ChainInterface<T>[] published;
+	private volatile long publishedSize;
+	private long version;
+	private boolean shared;	/* True if a snapshot uses the published table */
+	private boolean[] owned; /* Chains copied into the next version, null unless a bulk operation runs */
+
+	public VersionedHashSetWithChain() {
+		this(DEFAULT_TABLE_SIZE, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 */
+	public VersionedHashSetWithChain(int initialCapacity) {
+		this(initialCapacity, DEFAULT_LOAD_FACTOR);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 */
+	public VersionedHashSetWithChain(int initialCapacity, float loadFactor) {
+		this(initialCapacity, loadFactor, new DefaultHashStrategy<T>(), ChainTypes.HASH_SET);
+	}
+
+	/*
+	 * @param initialCapacity Initial number of chains, rounded up to a power of two
+	 * @param loadFactor Average number of elements per chain that triggers growth
+	 * @param hashStrategy Hash function used to choose the chain of elements
+	 * @param chainType Implementation of the chains
+	 */
+	public VersionedHashSetWithChain(int initialCapacity, float loadFactor,
+									 HashStrategy<? super T> hashStrategy,
+									 ChainTypes chainType) {
+		super(initialCapacity, loadFactor, hashStrategy, chainType);
+		published = getTable();
+	}
+
+	private int indexOf(int hashValue, int length) {
+		return getHashStrategy().indexFor(hashValue, length);
+	}
+
+	/*
+	 * Published tables only hold chains of T,
+	 * so we can say that this is type-safe
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> ChainInterface<T> chainAt(ChainInterface<T>[] table, int index) {
+		return (ChainInterface<T>)CHAINS.getAcquire(table, index);
+	}
+
+	/*
+	 * @return New chain holding the elements of chain
+	 */
+	private ChainInterface<T> copyOf(ChainInterface<T> chain) {
+		final ChainInterface<T> copy = newChain();
+		chain.forEach(new Consumer<T>() {
+			public void accept(T elem) {
+				copy.add(elem);
+			}
+		});
+		return copy;
+	}
+
+	/*
+	 * @return The number of elements of the published version
+	 */
+	@Override
+	public int size() {
+		return (int)publishedSize;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return publishedSize == 0;
+	}
+
+	/*
+	 * @return Number of versions published so far
+	 */
+	public long getVersion() {
+		publishLock.lock();
+		try {
+			return version;
+		} finally {
+			publishLock.unlock();
+		}
+	}
+
+	/*
+	 * Take the published version, which no later write changes.
+	 * Costs the same whatever the size of the set.
+	 *
+	 * @return Read-only set of the published version
+	 */
+	public Snapshot<T> snapshot() {
+		publishLock.lock();
+		try {
+			shared = true;
+			Snapshot<T> snapshot = new Snapshot<T>(published, publishedSize, version,
+												   getLoadFactor(), getHashStrategy());
+			snapshot.setExecutor(getExecutor());
+			snapshot.setInlineThreshold(getInlineThreshold());
+			return snapshot;
+		} finally {
+			publishLock.unlock();
+		}
+	}
+
+	/*
+	 * Make table the published version
+	 */
+	private void publish(ChainInterface<T>[] table) {
+		publishLock.lock();
+		try {
+			published = table;
+			publishedSize = super.size();
+			shared = false;
+			version++;
+		} finally {
+			publishLock.unlock();
+		}
+	}
+
+	/*
+	 * Replace a chain of the published table, which is copied first
+	 * if a snapshot uses it
+	 *
+	 * @param sizeDelta Number of elements added by the new chain, negative if removed
+	 */
+	private void replaceChain(int index, ChainInterface<T> chain, int sizeDelta) {
+		publishLock.lock();
+		try {
+			ChainInterface<T>[] table = getTable();
+			if (shared) {
+				table = table.clone();
+				setTable(table);
+				published = table;
+				shared = false;
+			}
+			CHAINS.setRelease(table, index, chain);
+			endChainUpdate(index, sizeDelta);
+			publishedSize = super.size();
+			version++;
+		} finally {
+			publishLock.unlock();
+		}
+	}
+
+	@Override
+	protected boolean addElement(T data) {
+		writeLock.lock();
+		try {
+			ChainInterface<T>[] table = getTable();
+			int hashValue = hash(data);
+			int index = indexOf(hashValue, table.length);
+			if (table[index].contains(data, hashValue)) {
+				return false;
+			}
+			ChainInterface<T> copy = copyOf(table[index]);
+			copy.add(data, hashValue);
+			replaceChain(index, copy, 1);
+			if (super.size() > table.length * (double)getLoadFactor()
+					&& table.length < MAXIMUM_TABLE_SIZE) {
+				resize(table.length * 2);
+			}
+			return true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	protected boolean removeElement(T data) {
+		writeLock.lock();
+		try {
+			ChainInterface<T>[] table = getTable();
+			int hashValue = hash(data);
+			int index = indexOf(hashValue, table.length);
+			if (!table[index].contains(data, hashValue)) {
+				return false;
+			}
+			ChainInterface<T> copy = copyOf(table[index]);
+			copy.remove(data, hashValue);
+			replaceChain(index, copy, -1);
+			return true;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/*
+	 * Check if the input data exists in the published version without locking.
+	 *
+	 * @param data Input data
+	 * @return Result of operation
+	 */
+	@Override
+	protected boolean containsElement(T data) {
+		ChainInterface<T>[] table = published;
+		int hashValue = hash(data);
+		int index = indexOf(hashValue, table.length);
+		return VersionedHashSetWithChain.<T>chainAt(table, index).contains(data, hashValue);
+	}
+
+	/*
+	 * Copy all the elements into a new table. Within a bulk operation
+	 * it becomes the next version, otherwise it is published right away.
+	 *
+	 * @param length Size of the new table
+	 */
+	@Override
+	protected void resize(int length) {
+		ChainInterface<T>[] source = getTable();
+		if (source.length == length) {
+			return;
+		}
+		final ChainInterface<T>[] resized = newTable(length);
+		final int newLength = length;
+		for (ChainInterface<T> chain : source) {
+			chain.forEach(new Consumer<T>() {
+				public void accept(T elem) {
+					int hashValue = hash(elem);
+					resized[indexOf(hashValue, newLength)].add(elem, hashValue);
+				}
+			});
+		}
+		setTable(resized);
+		if (owned != null) {
+			/* Nobody else sees the chains of the new table yet */
+			owned = new boolean[length];
+			Arrays.fill(owned, true);
+		}
+		else {
+			publish(resized);
+		}
+	}
+
+	/*
+	 * Copy the chain into the next version before the bulk operation changes it
+	 */
+	@Override
+	protected void beginChainUpdate(int index) {
+		boolean[] owned = this.owned;
+		if (owned != null && !owned[index]) {
+			ChainInterface<T>[] table = getTable();
+			table[index] = copyOf(table[index]);
+			owned[index] = true;
+		}
+	}
+
+	/*
+	 * Start building the next version in a copy of the table
+	 */
+	private void beginVersion() {
+		writeLock.lock();
+		ChainInterface<T>[] next = getTable().clone();
+		setTable(next);
+		owned = new boolean[next.length];
+	}
+
+	/*
+	 * Publish the next version, or go back to the published one if the operation failed
+	 *
+	 * @param completed True if the operation succeeded
+	 */
+	private void endVersion(boolean completed) {
+		try {
+			owned = null;
+			if (completed) {
+				publish(getTable());
+			}
+			else {
+				setTable(published);
+				endChainUpdate(0, (int)(publishedSize - super.size()));
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> collection, int parallelism) {
+		beginVersion();
+		boolean completed = false;
+		try {
+			completed = super.addAll(collection, parallelism);
+			return completed;
+		} finally {
+			endVersion(completed);
+		}
+	}
+
+	@Override
+	public boolean addAll(HashSetWithChain<? extends T> set, int parallelism) {
+		beginVersion();
+		boolean completed = false;
+		try {
+			completed = super.addAll(set, parallelism);
+			return completed;
+		} finally {
+			endVersion(completed);
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<? extends T> collection, int parallelism) {
+		beginVersion();
+		boolean completed = false;
+		try {
+			completed = super.removeAll(collection, parallelism);
+			return completed;
+		} finally {
+			endVersion(completed);
+		}
+	}
+
+	@Override
+	public boolean removeAll(HashSetWithChain<? extends T> setB, int parallelism) {
+		beginVersion();
+		boolean completed = false;
+		try {
+			completed = super.removeAll(setB, parallelism);
+			return completed;
+		} finally {
+			endVersion(completed);
+		}
+	}
+
+	@Override
+	public boolean retainAll(Collection<? extends T> collection, int parallelism) {
+		beginVersion();
+		boolean completed = false;
+		try {
+			completed = super.retainAll(collection, parallelism);
+			return completed;
+		} finally {
+			endVersion(completed);
+		}
+	}
+
+	@Override
+	public boolean retainAll(HashSetWithChain<? extends T> setB, int parallelism) {
+		beginVersion();
+		boolean completed = false;
+		try {
+			completed = super.retainAll(setB, parallelism);
+			return completed;
+		} finally {
+			endVersion(completed);
+		}
+	}
+
+	/*
+	 * Runs on a snapshot, so it doesn't wait for writers
+	 */
+	@Override
+	public boolean containsAll(Collection<? extends T> collection, int parallelism) {
+		return snapshot().containsAll(collection, parallelism);
+	}
+
+	@Override
+	public boolean containsAll(HashSetWithChain<? extends T> setB, int parallelism) {
+		return snapshot().containsAll(setB, parallelism);
+	}
+
+	@Override
+	public BitSet containsEach(Collection<? extends T> collection, int parallelism) {
+		return snapshot().containsEach(collection, parallelism);
+	}
+
+	/*
+	 * Not supported: readers don't lock the filter, which is not
+	 * part of a version. It can be enabled on a snapshot instead.
+	 */
+	@Override
+	public void setBloomFilterEnabled(boolean enabled) {
+		if (enabled) {
+			throw new UnsupportedOperationException("Bloom filter is not supported by versioned sets");
+		}
+	}
+
+	/*
+	 * Walks a snapshot. Removing through the iterator goes through remove().
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		final Iterator<T> iter = snapshot().iterator();
+		return new Iterator<T>() {
+			private T last;
+			private boolean removable = false;
+
+			public boolean hasNext() {
+				return iter.hasNext();
+			}
+
+			public T next() {
+				if (!iter.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				last = iter.next();
+				removable = true;
+				return last;
+			}
+
+			public void remove() {
+				if (!removable) {
+					throw new IllegalStateException();
+				}
+				VersionedHashSetWithChain.this.remove(last);
+				removable = false;
+			}
+		};
+	}
+
+	@Override
+	public void forEach(Consumer<? super T> action) {
+		snapshot().forEach(action);
+	}
+
+	@Override
+	public Spliterator<T> spliterator() {
+		return snapshot().spliterator();
+	}
+
+	/*
+	 * Read-only version of a VersionedHashSetWithChain. It can be read by
+	 * many threads and given to operations of other sets, and stays the
+	 * same whatever is done to the set afterwards.
+	 */
+	static class Snapshot<T> extends HashSetWithChain<T> {
+		private final long size;
+		private final long version;
+
+		private Snapshot(ChainInterface<T>[] table, long size, long version,
+						 float loadFactor, HashStrategy<? super T> hashStrategy) {
+			super(1, loadFactor, hashStrategy, ChainTypes.HASH_SET);
+			setTable(table);
+			this.size = size;
+			this.version = version;
+		}
+
+		/*
+		 * @return Version of the set this snapshot was taken at
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		@Override
+		public int size() {
+			return (int)size;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return size == 0;
+		}
+
+		@Override
+		protected boolean addElement(T data) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		protected boolean removeElement(T data) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		protected void beginChainUpdate(int index) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		protected void resize(int length) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean addAll(Collection<? extends T> collection, int parallelism) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean addAll(HashSetWithChain<? extends T> set, int parallelism) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean removeAll(Collection<? extends T> collection, int parallelism) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean removeAll(HashSetWithChain<? extends T> setB, int parallelism) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean retainAll(Collection<? extends T> collection, int parallelism) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+
+		@Override
+		public boolean retainAll(HashSetWithChain<? extends T> setB, int parallelism) {
+			throw new UnsupportedOperationException("Snapshot is read-only");
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Executor starting a virtual thread per task, for callers that run many
+ * bulk operations at once. Ranges then block and wait on cheap virtual
+ * threads multiplexed over the processors, instead of piling up in a
+ * pool of platform threads.
+ *
+ * Virtual threads need Java 21, while the sets build with Java 17, so the
+ * executor is looked up by reflection and is missing on older runtimes.
+ */
+class VirtualThreads {
+	private static final ExecutorService EXECUTOR = createExecutor();
+
+	private static ExecutorService createExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		} catch (Exception e) {
+			/* Runtime without virtual threads */
+			return null;
+		}
+	}
+
+	/*
+	 * @return True if the runtime has virtual threads
+	 */
+	public static boolean isSupported() {
+		return EXECUTOR != null;
+	}
+
+	/*
+	 * The executor is shared and never shut down. It keeps no thread
+	 * of its own, so it doesn't hold the JVM from exiting.
+	 *
+	 * @return Executor starting a virtual thread per task, or null if not supported
+	 */
+	static ExecutorService getExecutor() {
+		return EXECUTOR;
+	}
+}
\ No newline at end of file
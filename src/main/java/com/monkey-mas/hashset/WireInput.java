@@ -0,0 +1,128 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/*
+ * Buffered reader of what WireOutput writes, from a channel. It never
+ * reads past the frame it is in, so whatever follows the message is left
+ * in the channel.
+ */
+class WireInput {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+	private int frameRemaining = 0;	/* Bytes of the frame still in the channel */
+
+	public WireInput(ReadableByteChannel channel) {
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		this.channel = channel;
+		buffer.flip();
+	}
+
+	/*
+	 * Read from the channel until at least one byte is buffered
+	 */
+	private void fill() throws IOException {
+		if (frameRemaining == 0) {
+			frameRemaining = readFrameLength();
+			if (frameRemaining == 0) {
+				throw new EOFException("Unexpected end of message");
+			}
+		}
+		buffer.clear();
+		buffer.limit(Math.min(frameRemaining, BUFFER_SIZE));
+		try {
+			readFully(buffer);
+		} finally {
+			buffer.flip();
+		}
+		frameRemaining -= buffer.remaining();
+	}
+
+	private int readFrameLength() throws IOException {
+		header.clear();
+		readFully(header);
+		int length = header.getInt(0);
+		if (length < 0) {
+			throw new IOException("Illegal frame length: " + length);
+		}
+		return length;
+	}
+
+	private void readFully(ByteBuffer target) throws IOException {
+		while (target.hasRemaining()) {
+			if (channel.read(target) < 0) {
+				throw new EOFException("Unexpected end of stream");
+			}
+		}
+	}
+
+	/*
+	 * Read the empty frame ending the message, so that the channel is
+	 * left at the start of the next one
+	 *
+	 * @throws IOException If the message has bytes left
+	 */
+	public void end() throws IOException {
+		if (buffer.hasRemaining() || frameRemaining > 0 || readFrameLength() != 0) {
+			throw new IOException("Trailing bytes in message");
+		}
+	}
+
+	public int readByte() throws IOException {
+		if (!buffer.hasRemaining()) {
+			fill();
+		}
+		return buffer.get() & 0xff;
+	}
+
+	public int readInt() throws IOException {
+		int value = 0;
+		for (int i=0; i<Integer.BYTES; i++) {
+			value = (value << 8) | readByte();
+		}
+		return value;
+	}
+
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift=0; shift<64; shift+=7) {
+			int b = readByte();
+			value |= (long)(b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Illegal varint");
+	}
+
+	public long readSignedVarLong() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/*
+	 * @param length Number of bytes, checked by the caller
+	 */
+	public byte[] readBytes(int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			if (!buffer.hasRemaining()) {
+				fill();
+			}
+			int count = Math.min(buffer.remaining(), length - offset);
+			buffer.get(bytes, offset, count);
+			offset += count;
+		}
+		return bytes;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/*
+ * Buffered writer of varints and bytes to a channel. Only the buffer is
+ * held in memory, which is written out each time it fills up.
+ *
+ * A message is written as frames, each the length of its payload as an
+ * int then the payload, and ends with an empty frame. So a reader knows
+ * where a message ends without reading past it, and several messages can
+ * follow each other on a channel.
+ */
+class WireOutput {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int HEADER_SIZE = Integer.BYTES;
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	public WireOutput(WritableByteChannel channel) {
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		this.channel = channel;
+		buffer.position(HEADER_SIZE);
+	}
+
+	private void ensureRemaining(int length) throws IOException {
+		if (buffer.remaining() < length) {
+			flush();
+		}
+	}
+
+	public void writeByte(int value) throws IOException {
+		ensureRemaining(1);
+		buffer.put((byte)value);
+	}
+
+	public void writeInt(int value) throws IOException {
+		ensureRemaining(Integer.BYTES);
+		buffer.putInt(value);
+	}
+
+	public void writeFloat(float value) throws IOException {
+		writeInt(Float.floatToIntBits(value));
+	}
+
+	/*
+	 * Write 7 bits per byte, lowest first, the high bit telling that more follow
+	 *
+	 * @param value Value taken as unsigned
+	 */
+	public void writeVarLong(long value) throws IOException {
+		ensureRemaining(10);
+		while ((value & ~0x7fL) != 0) {
+			buffer.put((byte)((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte)value);
+	}
+
+	/*
+	 * Zigzag encoding, so that values of small magnitude take few bytes whatever their sign
+	 */
+	public void writeSignedVarLong(long value) throws IOException {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	public void writeBytes(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			ensureRemaining(1);
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+	}
+
+	/*
+	 * Write out the buffered bytes as a frame. The channel is left open.
+	 */
+	public void flush() throws IOException {
+		if (buffer.position() > HEADER_SIZE) {
+			writeFrame();
+		}
+	}
+
+	/*
+	 * Write out the buffered bytes and the empty frame ending the message.
+	 * The channel is left open.
+	 */
+	public void end() throws IOException {
+		flush();
+		writeFrame();
+	}
+
+	private void writeFrame() throws IOException {
+		buffer.putInt(0, buffer.position() - HEADER_SIZE);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+		buffer.position(HEADER_SIZE);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,8 @@
+/*
+ * Element types SetWireFormat can encode, each with its own compact encoding
+ */
+public enum WireTypes {
+	INTEGER,
+	LONG,
+	STRING
+}
\ No newline at end of file
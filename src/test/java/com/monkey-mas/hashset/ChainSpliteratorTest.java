@@ -0,0 +1,146 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+class ChainSpliteratorTest {
+	/*
+	 * Puts most elements into the chain of 0
+	 */
+	private static class SkewedHashStrategy extends DefaultHashStrategy<Long> {
+		@Override
+		public int hash(Long data) {
+			return (data % 10 == 0) ? super.hash(data) : 0;
+		}
+	}
+
+	private static HashSetWithChain<Long> newSet(HashStrategy<Long> strategy, long size) {
+		HashSetWithChain<Long> set = new HashSetWithChain<Long>(16, 4.0f, strategy);
+		set.addAll(SetTestSupport.range(0, size));
+		return set;
+	}
+
+	/*
+	 * Split down to single chains, checking that sizes stay exact and the halves sum up
+	 *
+	 * @return Leaves of the splits
+	 */
+	private static List<Spliterator<Long>> splitAll(Spliterator<Long> spliterator) {
+		List<Spliterator<Long>> leaves = new ArrayList<Spliterator<Long>>();
+		long size = spliterator.estimateSize();
+		assertEquals(size, spliterator.getExactSizeIfKnown());
+		assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+		Spliterator<Long> prefix = spliterator.trySplit();
+		if (prefix == null) {
+			leaves.add(spliterator);
+			return leaves;
+		}
+		assertEquals(size, prefix.estimateSize() + spliterator.estimateSize());
+		leaves.addAll(splitAll(prefix));
+		leaves.addAll(splitAll(spliterator));
+		return leaves;
+	}
+
+	/*
+	 * Count the elements the leaves visit, each of which must be visited once
+	 */
+	private static void assertVisitedOnce(List<Spliterator<Long>> leaves, long size) {
+		final Set<Long> seen = ConcurrentHashMap.<Long>newKeySet();
+		final AtomicInteger visits = new AtomicInteger();
+		for (Spliterator<Long> leaf : leaves) {
+			long expected = leaf.estimateSize();
+			final AtomicInteger leafVisits = new AtomicInteger();
+			leaf.forEachRemaining(new Consumer<Long>() {
+				public void accept(Long elem) {
+					seen.add(elem);
+					leafVisits.incrementAndGet();
+				}
+			});
+			assertEquals(expected, leafVisits.get(), "Leaf size");
+			visits.addAndGet(leafVisits.get());
+		}
+		assertEquals(size, visits.get());
+		assertEquals(size, seen.size());
+	}
+
+	/*
+	 * Visit every element of a parallel stream, each of which must be visited once
+	 */
+	private static void assertStreamedOnce(HashSetWithChain<Long> set, long size) {
+		assertEquals(size, set.parallelStream().count());
+		final Set<Long> seen = ConcurrentHashMap.<Long>newKeySet();
+		final AtomicInteger duplicates = new AtomicInteger();
+		set.parallelStream().forEach(new Consumer<Long>() {
+			public void accept(Long elem) {
+				if (!seen.add(elem)) {
+					duplicates.incrementAndGet();
+				}
+			}
+		});
+		assertEquals(0, duplicates.get());
+		assertEquals(size, seen.size());
+	}
+
+	@Test
+	void splitsKeepExactSizes() {
+		HashSetWithChain<Long> set = newSet(new DefaultHashStrategy<Long>(), 10000);
+		List<Spliterator<Long>> leaves = splitAll(set.spliterator());
+		assertEquals(set.getTableSize(), leaves.size());
+		assertVisitedOnce(leaves, 10000);
+		assertStreamedOnce(set, 10000);
+	}
+
+	@Test
+	void skewedChainsAreVisitedOnce() {
+		HashSetWithChain<Long> set = newSet(new SkewedHashStrategy(), 10000);
+		Spliterator<Long> spliterator = set.spliterator();
+		/* The first split hands over the long chain alone, leaving the other chains */
+		Spliterator<Long> prefix = spliterator.trySplit();
+		assertNotNull(prefix);
+		assertTrue(prefix.estimateSize() >= 9000, "Long chain was not split off");
+		assertTrue(spliterator.estimateSize() > 0, "Nothing left after the long chain");
+		assertEquals(10000, prefix.estimateSize() + spliterator.estimateSize());
+
+		assertVisitedOnce(splitAll(set.spliterator()), 10000);
+		assertStreamedOnce(set, 10000);
+	}
+
+	@Test
+	void elementsAreVisitedOnceAfterAResize() {
+		/* Single adds leave the chains of the last resize partly moved */
+		HashSetWithChain<Long> set = new HashSetWithChain<Long>(16, 4.0f);
+		for (long i=0; i<10000; i++) {
+			set.add(i);
+		}
+		assertStreamedOnce(set, 10000);
+		assertVisitedOnce(splitAll(set.spliterator()), 10000);
+
+		/* Shrinking moves every element again */
+		set.setShrinkEnabled(true);
+		set.removeAll(SetTestSupport.range(1000, 10000));
+		assertStreamedOnce(set, 1000);
+		assertVisitedOnce(splitAll(set.spliterator()), 1000);
+	}
+
+	@Test
+	void concurrentSetsAreVisitedOnce() {
+		ConcurrentHashSetWithChain<Long> set = new ConcurrentHashSetWithChain<Long>(4, 4.0f,
+			new DefaultHashStrategy<Long>(), 4);
+		for (long i=0; i<10000; i++) {
+			set.add(i);
+		}
+		Spliterator<Long> spliterator = set.spliterator();
+		assertTrue(spliterator.hasCharacteristics(Spliterator.CONCURRENT));
+		assertEquals(10000, spliterator.estimateSize());
+		assertStreamedOnce(set, 10000);
+	}
+}
\ No newline at end of file
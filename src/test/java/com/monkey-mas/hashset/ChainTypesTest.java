@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class ChainTypesTest {
+	/*
+	 * Key counting the calls to hashCode()
+	 */
+	private static class CountingKey {
+		static int hashCodeCalls;
+		private final int value;
+
+		CountingKey(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			hashCodeCalls++;
+			return value;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof CountingKey && ((CountingKey)other).value == value;
+		}
+	}
+
+	@Test
+	void behaveLikeHashSet() {
+		for (ChainTypes chainType : ChainTypes.values()) {
+			HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(chainType);
+			Set<Integer> expected = new HashSet<Integer>();
+			Random random = new Random(8);
+			for (int i=0; i<200000; i++) {
+				int value = random.nextInt(20000);
+				int operation = random.nextInt(3);
+				if (operation == 0) {
+					assertEquals(expected.add(value), set.add(value), chainType.toString());
+				}
+				else if (operation == 1) {
+					assertEquals(expected.remove(value), set.remove(value), chainType.toString());
+				}
+				else {
+					assertEquals(expected.contains(value), set.contains(value), chainType.toString());
+				}
+			}
+			assertEquals(expected.size(), set.size());
+
+			List<Integer> batch = new ArrayList<Integer>();
+			for (int i=0; i<50000; i++) {
+				batch.add(random.nextInt(40000));
+			}
+			expected.addAll(batch);
+			set.addAll(batch, 4);
+			assertEquals(expected.size(), set.size());
+			expected.removeAll(batch.subList(0, 10000));
+			set.removeAll(batch.subList(0, 10000), 4);
+			assertEquals(expected.size(), set.size());
+			assertEquals(expected.containsAll(batch), set.containsAll(batch, 4));
+			for (Integer elem : expected) {
+				assertTrue(set.contains(elem), chainType + " misses " + elem);
+			}
+		}
+	}
+
+	@Test
+	void elementsAreHashedOncePerLookup() {
+		for (ChainTypes chainType : new ChainTypes[] { ChainTypes.OPEN_ADDRESSING, ChainTypes.SORTED_ARRAY }) {
+			HashSetWithChain<CountingKey> set = new HashSetWithChain<CountingKey>(chainType);
+			for (int i=0; i<1000; i++) {
+				set.add(new CountingKey(i));
+			}
+			set.completeResize();
+			CountingKey.hashCodeCalls = 0;
+			for (int i=0; i<2000; i++) {
+				assertEquals(i < 1000, set.contains(new CountingKey(i)));
+			}
+			assertEquals(2000, CountingKey.hashCodeCalls, chainType.toString());
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,189 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentHashSetWithChainTest {
+	private static final int WRITERS = 4;
+	private static final int KEYS_PER_WRITER = 30000;
+
+	/*
+	 * Few stripes so that a small table already moves its chains one by one
+	 */
+	private static ConcurrentHashSetWithChain<Long> newSet() {
+		return new ConcurrentHashSetWithChain<Long>(4, 4.0f, new DefaultHashStrategy<Long>(), 4);
+	}
+
+	private static long keyOf(int writer, int i) {
+		return (writer + 1) * 1000000L + i;
+	}
+
+	/*
+	 * Each writer adds its own keys and removes every other one, checking
+	 * each of them right after, while the table grows under it
+	 *
+	 * @return Writers returning the number of keys they didn't see as expected
+	 */
+	private static List<Callable<Integer>> newWriters(final ConcurrentHashSetWithChain<Long> set) {
+		List<Callable<Integer>> writers = new ArrayList<Callable<Integer>>();
+		for (int t=0; t<WRITERS; t++) {
+			final int writer = t;
+			writers.add(new Callable<Integer>() {
+				public Integer call() {
+					int failures = 0;
+					for (int i=0; i<KEYS_PER_WRITER; i++) {
+						long key = keyOf(writer, i);
+						if (!set.add(key) || !set.contains(key)) {
+							failures++;
+						}
+						if (i % 2 == 1 && (!set.remove(key) || set.contains(key))) {
+							failures++;
+						}
+					}
+					return failures;
+				}
+			});
+		}
+		return writers;
+	}
+
+	private static Set<Long> keptKeys() {
+		Set<Long> kept = new HashSet<Long>();
+		for (int writer=0; writer<WRITERS; writer++) {
+			for (int i=0; i<KEYS_PER_WRITER; i+=2) {
+				kept.add(keyOf(writer, i));
+			}
+		}
+		return kept;
+	}
+
+	@Test
+	void singleElementOperationsRacingResizes() throws Exception {
+		final ConcurrentHashSetWithChain<Long> set = newSet();
+		set.addAll(SetTestSupport.range(0, 1000));
+		final AtomicBoolean done = new AtomicBoolean();
+		List<Callable<Integer>> tasks = newWriters(set);
+		/* Elements that are never removed stay visible while their chains are moved */
+		tasks.add(new Callable<Integer>() {
+			public Integer call() {
+				int missing = 0;
+				while (!done.get()) {
+					for (long key=0; key<1000; key++) {
+						if (!set.contains(key)) {
+							missing++;
+						}
+					}
+				}
+				return missing;
+			}
+		});
+		ExecutorService service = Executors.newFixedThreadPool(tasks.size());
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (Callable<Integer> task : tasks) {
+				results.add(service.submit(task));
+			}
+			for (int writer=0; writer<WRITERS; writer++) {
+				assertEquals(0, results.get(writer).get().intValue(), "Writer " + writer);
+			}
+			done.set(true);
+			assertEquals(0, results.get(WRITERS).get().intValue(), "Reader");
+		} finally {
+			done.set(true);
+			service.shutdown();
+		}
+		Set<Long> expected = keptKeys();
+		expected.addAll(SetTestSupport.range(0, 1000));
+		assertTrue(set.getTableSize() > 4, "Table didn't grow");
+		assertEquals(expected.size(), set.size());
+		assertEquals(expected, SetTestSupport.elementsOf(set));
+	}
+
+	@Test
+	void addAllRacingSingleElementWriters() throws Exception {
+		final ConcurrentHashSetWithChain<Long> set = newSet();
+		final List<Long> bulk = SetTestSupport.range(0, 200000);
+		List<Callable<Integer>> tasks = newWriters(set);
+		tasks.add(new Callable<Integer>() {
+			public Integer call() {
+				return set.addAll(bulk) ? 0 : 1;
+			}
+		});
+		ExecutorService service = Executors.newFixedThreadPool(tasks.size());
+		try {
+			for (Future<Integer> result : service.invokeAll(tasks)) {
+				assertEquals(0, result.get().intValue());
+			}
+		} finally {
+			service.shutdown();
+		}
+		Set<Long> expected = keptKeys();
+		expected.addAll(bulk);
+		assertEquals(expected.size(), set.size());
+		assertEquals(expected, SetTestSupport.elementsOf(set));
+	}
+
+	@Test
+	void sizeAndIteratorsStayConsistent() throws Exception {
+		final ConcurrentHashSetWithChain<Long> set = newSet();
+		set.setShrinkEnabled(true);
+		set.addAll(SetTestSupport.range(0, 1000));
+		final AtomicBoolean done = new AtomicBoolean();
+		List<Callable<Integer>> tasks = newWriters(set);
+		/* Iterators never repeat an element, nor miss one that stays in the set */
+		tasks.add(new Callable<Integer>() {
+			public Integer call() {
+				int failures = 0;
+				while (!done.get()) {
+					Set<Long> seen = new HashSet<Long>();
+					for (Long elem : set) {
+						if (!seen.add(elem)) {
+							failures++;
+						}
+					}
+					if (!seen.containsAll(SetTestSupport.range(0, 1000))) {
+						failures++;
+					}
+				}
+				return failures;
+			}
+		});
+		ExecutorService service = Executors.newFixedThreadPool(tasks.size());
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (Callable<Integer> task : tasks) {
+				results.add(service.submit(task));
+			}
+			for (int writer=0; writer<WRITERS; writer++) {
+				assertEquals(0, results.get(writer).get().intValue(), "Writer " + writer);
+			}
+			done.set(true);
+			assertEquals(0, results.get(WRITERS).get().intValue(), "Iterator");
+		} finally {
+			done.set(true);
+			service.shutdown();
+		}
+		/* Once quiet, every view of the set agrees */
+		int iterated = SetTestSupport.elementsOf(set).size();
+		assertEquals(set.size(), iterated);
+		assertEquals(set.size(), set.stream().count());
+		assertEquals(set.size(), set.parallelStream().count());
+
+		/* Shrinking moves the chains back into a smaller table */
+		int length = set.getTableSize();
+		set.removeAll(keptKeys());
+		assertTrue(set.getTableSize() < length, "Table didn't shrink");
+		assertEquals(1000, set.size());
+		assertEquals(new HashSet<Long>(SetTestSupport.range(0, 1000)), SetTestSupport.elementsOf(set));
+	}
+}
\ No newline at end of file
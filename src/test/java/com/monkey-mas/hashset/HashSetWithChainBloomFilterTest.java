@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class HashSetWithChainBloomFilterTest {
+	private static List<Integer> range(int from, int to) {
+		List<Integer> elements = new ArrayList<Integer>();
+		for (int i=from; i<to; i++) {
+			elements.add(i);
+		}
+		return elements;
+	}
+
+	private static void assertContainsAll(HashSetWithChain<Integer> set, List<Integer> elements) {
+		for (Integer elem : elements) {
+			assertTrue(set.contains(elem), "Missing " + elem);
+		}
+	}
+
+	private static HashSetWithChain<Integer> newFilteredSet(int initialCapacity) {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(initialCapacity);
+		set.setBloomFilterEnabled(true);
+		return set;
+	}
+
+	@Test
+	void noFalseNegativesAfterAddWhileGrowing() {
+		HashSetWithChain<Integer> set = newFilteredSet(1);
+		long sizeBefore = set.getBloomFilterSize();
+		List<Integer> added = new ArrayList<Integer>();
+		for (int i=0; i<50000; i++) {
+			set.add(i);
+			added.add(i);
+			if (i % 5000 == 0) {
+				/* Checked while the table and the filter are being resized */
+				assertContainsAll(set, added);
+			}
+		}
+		assertContainsAll(set, added);
+		assertTrue(set.getBloomFilterSize() > sizeBefore, "The filter grows with the table");
+	}
+
+	@Test
+	void noFalseNegativesAfterAddAll() {
+		for (int parallelism : new int[] { 1, 4 }) {
+			/* Same layout, so chains are added chain by chain */
+			HashSetWithChain<Integer> set = newFilteredSet(1 << 12);
+			HashSetWithChain<Integer> sameLayout = new HashSetWithChain<Integer>(1 << 12);
+			sameLayout.addAll(range(0, 20000));
+			set.addAll(sameLayout, parallelism);
+			assertContainsAll(set, range(0, 20000));
+
+			/* Other layout and a collection, so elements are scattered first */
+			HashSetWithChain<Integer> otherLayout = new HashSetWithChain<Integer>(16);
+			otherLayout.addAll(range(20000, 40000));
+			set.addAll(otherLayout, parallelism);
+			set.addAll(range(40000, 60000), parallelism);
+			assertContainsAll(set, range(0, 60000));
+			assertEquals(60000, set.size());
+		}
+	}
+
+	@Test
+	void noFalseNegativesAfterRebuilds() {
+		HashSetWithChain<Integer> set = newFilteredSet(16);
+		set.setShrinkEnabled(true);
+		set.addAll(range(0, 30000));
+
+		set.removeAll(range(0, 10000));
+		assertContainsAll(set, range(10000, 30000));
+		assertFalse(set.contains(0));
+
+		set.retainAll(range(15000, 40000));
+		assertContainsAll(set, range(15000, 30000));
+		assertFalse(set.contains(10000));
+		assertEquals(15000, set.size());
+
+		/* Streamed removal rebuilds the filter once at the end */
+		set.setIngestBatchSize(1000);
+		set.removeAll(range(15000, 25000).iterator());
+		assertContainsAll(set, range(25000, 30000));
+		assertFalse(set.contains(15000));
+		assertEquals(5000, set.size());
+		assertTrue(set.isBloomFilterEnabled());
+	}
+
+	@Test
+	void noFalseNegativesAfterToggling() {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(16);
+		set.addAll(range(0, 1000));
+		set.setBloomFilterEnabled(true);
+		assertContainsAll(set, range(0, 1000));
+
+		set.setBloomFilterEnabled(false);
+		assertFalse(set.isBloomFilterEnabled());
+		assertEquals(0, set.getBloomFilterSize());
+		for (int i=1000; i<5000; i++) {
+			set.add(i);
+		}
+
+		/* Elements added while disabled are taken in when enabled again */
+		set.setBloomFilterEnabled(true);
+		assertContainsAll(set, range(0, 5000));
+		for (int i=5000; i<20000; i++) {
+			set.add(i);
+		}
+		assertContainsAll(set, range(0, 20000));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class HashSetWithChainContainsEachTest {
+	/* Below and above the inline threshold, so that large inputs are scattered by chain */
+	private static final int[] QUERY_SIZES = { 100, 20000 };
+
+	/*
+	 * @return Elements of the set and others, in random order, each repeated a random number of times
+	 */
+	private static List<Integer> newQuery(Random random, Set<Integer> elements, int size) {
+		List<Integer> present = new ArrayList<Integer>(elements);
+		List<Integer> query = new ArrayList<Integer>(size);
+		while (query.size() < size) {
+			Integer elem = random.nextBoolean() ? present.get(random.nextInt(present.size())) : random.nextInt();
+			int repeat = 1 + random.nextInt(3);
+			for (int i=0; i<repeat && query.size() < size; i++) {
+				query.add(elem);
+			}
+		}
+		return query;
+	}
+
+	@Test
+	void bitOfEachInputMatchesItsElement() {
+		Random random = new Random(31);
+		Set<Integer> elements = SetTestSupport.randomElements(random, 5000);
+		HashSetWithChain<Integer> set = SetTestSupport.newSet(new DefaultHashStrategy<Integer>(), 16, elements);
+		for (int size : QUERY_SIZES) {
+			List<Integer> query = newQuery(random, elements, size);
+			for (int parallelism : SetTestSupport.PARALLELISMS) {
+				String message = size + " elements, parallelism " + parallelism;
+				BitSet found = set.containsEach(query, parallelism);
+				assertEquals(size, query.size());
+				for (int i=0; i<size; i++) {
+					assertEquals(elements.contains(query.get(i)), found.get(i), message + ", element " + i);
+				}
+				assertEquals(-1, found.nextSetBit(size), message);
+			}
+		}
+	}
+
+	@Test
+	void filterKeepsTheOrderOfTheInput() {
+		Random random = new Random(37);
+		Set<Integer> elements = SetTestSupport.randomElements(random, 5000);
+		HashSetWithChain<Integer> set = SetTestSupport.newSet(new DefaultHashStrategy<Integer>(), 16, elements);
+		for (int size : QUERY_SIZES) {
+			List<Integer> query = newQuery(random, elements, size);
+			List<Integer> present = new ArrayList<Integer>();
+			List<Integer> missing = new ArrayList<Integer>();
+			for (Integer elem : query) {
+				(elements.contains(elem) ? present : missing).add(elem);
+			}
+			for (int parallelism : SetTestSupport.PARALLELISMS) {
+				String message = size + " elements, parallelism " + parallelism;
+				assertEquals(present, set.filter(query, true, parallelism), message);
+				assertEquals(missing, set.filter(query, false, parallelism), message);
+			}
+		}
+	}
+}
\ No newline at end of file
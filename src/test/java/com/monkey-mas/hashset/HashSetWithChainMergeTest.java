@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class HashSetWithChainMergeTest {
+	private static final int[] SIZES = { 0, 1, 10, 1000, 5000 };
+
+	private static void checkMerges(HashStrategy<Integer> strategy) {
+		Random random = new Random(23);
+		for (int sizeA : SIZES) {
+			for (int sizeB : SIZES) {
+				Set<Integer> a = SetTestSupport.randomElements(random, sizeA);
+				Set<Integer> b = SetTestSupport.randomElements(random, sizeB);
+				Set<Integer> union = new HashSet<Integer>(a);
+				union.addAll(b);
+				Set<Integer> intersection = new HashSet<Integer>(a);
+				intersection.retainAll(b);
+				Set<Integer> difference = new HashSet<Integer>(a);
+				difference.removeAll(b);
+
+				/* Tables of different sizes, either side larger */
+				for (int capacityB : new int[] { 16, 1 << 12, 1 << 16 }) {
+					HashSetWithChain<Integer> setB = SetTestSupport.newSet(strategy, capacityB, b);
+					for (int parallelism : SetTestSupport.PARALLELISMS) {
+						String message = sizeA + " and " + sizeB + " elements, " + capacityB
+							+ " chains, parallelism " + parallelism;
+
+						HashSetWithChain<Integer> setA = SetTestSupport.newSet(strategy, 16, a);
+						setA.addAll(setB, parallelism);
+						SetTestSupport.assertSameElements(union, setA);
+
+						setA = SetTestSupport.newSet(strategy, 16, a);
+						setA.retainAll(setB, parallelism);
+						SetTestSupport.assertSameElements(intersection, setA);
+
+						setA = SetTestSupport.newSet(strategy, 16, a);
+						setA.removeAll(setB, parallelism);
+						SetTestSupport.assertSameElements(difference, setA);
+
+						setA = SetTestSupport.newSet(strategy, 16, a);
+						assertEquals(a.containsAll(b), setA.containsAll(setB, parallelism), message);
+						HashSetWithChain<Integer> superset = SetTestSupport.newSet(strategy, 16, union);
+						assertTrue(superset.containsAll(setB, parallelism), message);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	void mergesNestedLayouts() {
+		checkMerges(new DefaultHashStrategy<Integer>());
+	}
+
+	@Test
+	void mergesLegacyLayouts() {
+		checkMerges(new LegacyHashStrategy<Integer>());
+	}
+
+	@Test
+	void mergesDifferentStrategies() {
+		Random random = new Random(7);
+		Set<Integer> a = SetTestSupport.randomElements(random, 5000);
+		Set<Integer> b = SetTestSupport.randomElements(random, 3000);
+		Set<Integer> expected = new HashSet<Integer>(a);
+		expected.retainAll(b);
+		HashSetWithChain<Integer> setA = SetTestSupport.newSet(new DefaultHashStrategy<Integer>(), 16, a);
+		HashSetWithChain<Integer> setB = SetTestSupport.newSet(new LegacyHashStrategy<Integer>(), 1 << 10, b);
+		setA.retainAll(setB, 4);
+		SetTestSupport.assertSameElements(expected, setA);
+	}
+}
\ No newline at end of file
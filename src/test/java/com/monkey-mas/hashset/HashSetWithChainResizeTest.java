@@ -0,0 +1,97 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class HashSetWithChainResizeTest {
+	@Test
+	void growsByLoadFactor() {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(16, 0.75f);
+		assertEquals(16, set.getTableSize());
+		for (int i=0; i<12; i++) {
+			set.add(i);
+		}
+		assertEquals(16, set.getTableSize());
+		set.add(12);
+		assertEquals(32, set.getTableSize());
+		set.completeResize();
+		assertEquals(13, set.size());
+	}
+
+	@Test
+	void elementsStayVisibleWhileRehashing() {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(16, 0.75f);
+		int count = 0;
+		for (int i=0; i<100000; i++) {
+			assertTrue(set.add(i));
+			assertFalse(set.add(i));
+			count++;
+			/* Check a few earlier elements, some still in the old table */
+			for (int j=i; j>=0; j-=1 + j/3) {
+				assertTrue(set.contains(j), "Missing " + j + " after adding " + i);
+			}
+			if (i % 7 == 0) {
+				assertTrue(set.remove(i / 2));
+				assertFalse(set.remove(i / 2));
+				assertFalse(set.contains(i / 2));
+				assertTrue(set.add(i / 2));
+			}
+			assertEquals(count, set.size());
+		}
+		for (int i=0; i<100000; i++) {
+			assertTrue(set.contains(i));
+		}
+		assertFalse(set.contains(-1));
+	}
+
+	@Test
+	void iteratorSeesEveryElementWhileRehashing() {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(16, 0.75f);
+		for (int i=0; i<25; i++) {
+			set.add(i);
+		}
+		List<Integer> seen = new ArrayList<Integer>();
+		for (Integer elem : set) {
+			seen.add(elem);
+		}
+		assertEquals(25, seen.size());
+		for (int i=0; i<25; i++) {
+			assertTrue(seen.contains(i));
+		}
+	}
+
+	@Test
+	void bulkAddPresizes() {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(16, 0.75f);
+		List<Integer> elements = new ArrayList<Integer>();
+		for (int i=0; i<10000; i++) {
+			elements.add(i);
+		}
+		assertTrue(set.addAll(elements));
+		assertTrue(set.getTableSize() * 0.75f >= 10000);
+		assertEquals(10000, set.size());
+	}
+
+	@Test
+	void shrinksAfterRemoveAllWhenEnabled() {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(16, 0.75f);
+		set.setShrinkEnabled(true);
+		List<Integer> elements = new ArrayList<Integer>();
+		for (int i=0; i<10000; i++) {
+			elements.add(i);
+		}
+		set.addAll(elements);
+		int grown = set.getTableSize();
+		assertTrue(set.removeAll(elements.subList(10, elements.size())));
+		assertTrue(set.getTableSize() < grown);
+		assertTrue(set.getTableSize() >= 16);
+		assertEquals(10, set.size());
+		for (int i=0; i<10; i++) {
+			assertTrue(set.contains(i));
+		}
+	}
+}
\ No newline at end of file
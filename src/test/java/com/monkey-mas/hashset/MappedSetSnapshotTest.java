@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedSetSnapshotTest {
+	@TempDir
+	Path directory;
+
+	private Path writeSnapshot(int size) throws IOException {
+		HashSetWithChain<Long> set = new HashSetWithChain<Long>();
+		for (long i=0; i<size; i++) {
+			set.add(i * 3);
+		}
+		Path path = directory.resolve("set.snapshot");
+		MappedSetSnapshot.write(set, new LongKeyCodec(), path);
+		return path;
+	}
+
+	@Test
+	void containsWhatWasWritten() throws IOException {
+		try (MappedSetSnapshot<Long> snapshot =
+				 MappedSetSnapshot.open(writeSnapshot(10000), new LongKeyCodec(), true)) {
+			assertEquals(10000, snapshot.size());
+			for (long i=0; i<30000; i++) {
+				assertEquals(i % 3 == 0, snapshot.contains(i));
+			}
+			assertEquals(10000, snapshot.toHashSetWithChain().size());
+		}
+	}
+
+	@Test
+	void closeWaitsForConcurrentReads() throws Exception {
+		final MappedSetSnapshot<Long> snapshot =
+			MappedSetSnapshot.open(writeSnapshot(100000), new LongKeyCodec());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int t=0; t<4; t++) {
+			Thread reader = new Thread() {
+				public void run() {
+					try {
+						for (long i=0; ; i=(i + 1) % 300000) {
+							if (snapshot.contains(i) != (i % 3 == 0)) {
+								failure.set(new AssertionError("Wrong answer for " + i));
+								return;
+							}
+						}
+					} catch (IllegalStateException e) {
+						/* Closed */
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			reader.start();
+			readers.add(reader);
+		}
+		Thread.sleep(200);
+		snapshot.close();
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertThrows(IllegalStateException.class, new Executable() {
+			public void execute() {
+				snapshot.contains(3L);
+			}
+		});
+	}
+
+	@Test
+	void iteratorFailsOnceClosed() throws IOException {
+		final MappedSetSnapshot<Long> snapshot = MappedSetSnapshot.open(writeSnapshot(10), new LongKeyCodec());
+		final Iterator<Long> iter = snapshot.iterator();
+		assertTrue(iter.hasNext());
+		iter.next();
+		snapshot.close();
+		assertThrows(IllegalStateException.class, new Executable() {
+			public void execute() {
+				iter.next();
+			}
+		});
+		assertFalse(snapshot.isEmpty());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class OffHeapHashSetWithChainTest {
+	private static Set<Long> toSet(OffHeapHashSetWithChain<Long> set) {
+		Set<Long> keys = new HashSet<Long>();
+		for (Long key : set) {
+			keys.add(key);
+		}
+		return keys;
+	}
+
+	/*
+	 * A small table and load factor make the set resize many times,
+	 * so keys are often still in the old table
+	 */
+	@Test
+	void singleKeyOperationsWhileResizing() {
+		OffHeapHashSetWithChain<Long> set = new OffHeapHashSetWithChain<Long>(new LongKeyCodec(), 1, 1.0f);
+		try {
+			Set<Long> expected = new HashSet<Long>();
+			Random random = new Random(3);
+			for (int i=0; i<20000; i++) {
+				long key = random.nextInt(5000);
+				if (random.nextInt(3) == 0) {
+					assertEquals(expected.remove(key), set.remove(key));
+				} else {
+					assertEquals(expected.add(key), set.add(key));
+				}
+				assertEquals(expected.size(), set.size());
+				assertEquals(expected.contains(key), set.contains(key));
+				if (i % 1000 == 0) {
+					assertEquals(expected, toSet(set));
+				}
+			}
+			assertEquals(expected, toSet(set));
+			assertTrue(set.getOffHeapSize() > 0);
+		} finally {
+			set.close();
+		}
+	}
+
+	@Test
+	void concurrentReadersDontShareTheEncodedKey() throws Exception {
+		final OffHeapHashSetWithChain<Long> set = new OffHeapHashSetWithChain<Long>(new LongKeyCodec());
+		ExecutorService service = Executors.newFixedThreadPool(8);
+		try {
+			final int n = 200000;
+			List<Long> keys = new ArrayList<Long>();
+			for (long key=0; key<n; key++) {
+				keys.add(key);
+			}
+			set.addAll(keys);
+			List<Callable<Integer>> readers = new ArrayList<Callable<Integer>>();
+			for (int t=0; t<8; t++) {
+				readers.add(new Callable<Integer>() {
+					public Integer call() {
+						int missing = 0;
+						for (long key=0; key<n; key++) {
+							if (!set.contains(key) || set.contains(key + n)) {
+								missing++;
+							}
+						}
+						return missing;
+					}
+				});
+			}
+			for (Future<Integer> result : service.invokeAll(readers)) {
+				assertEquals(0, result.get().intValue());
+			}
+		} finally {
+			service.shutdown();
+			set.close();
+		}
+	}
+
+	@Test
+	void bulkOperationsKeepTheSize() {
+		OffHeapHashSetWithChain<Long> set = new OffHeapHashSetWithChain<Long>(new LongKeyCodec(), 64);
+		OffHeapHashSetWithChain<Long> other = new OffHeapHashSetWithChain<Long>(new LongKeyCodec(), 16);
+		try {
+			List<Long> keys = new ArrayList<Long>();
+			for (long key=0; key<10000; key++) {
+				keys.add(key % 7000);
+			}
+			/* Duplicated and already present keys don't count */
+			set.addAll(keys);
+			set.addAll(keys);
+			assertEquals(7000, set.size());
+			for (long key=5000; key<9000; key++) {
+				other.add(key);
+			}
+			set.addAll(other);
+			assertEquals(9000, set.size());
+			set.retainAll(other);
+			assertEquals(4000, set.size());
+			set.removeAll(keys);
+			assertEquals(2000, set.size());
+			assertEquals(toSet(set).size(), set.size());
+		} finally {
+			set.close();
+			other.close();
+		}
+	}
+
+	@Test
+	void bulkOperationsCompleteTheResize() {
+		OffHeapHashSetWithChain<Long> set = new OffHeapHashSetWithChain<Long>(new LongKeyCodec(), 1, 1.0f);
+		OffHeapHashSetWithChain<Long> other = new OffHeapHashSetWithChain<Long>(new LongKeyCodec(), 1, 1.0f);
+		try {
+			Set<Long> expected = new HashSet<Long>();
+			List<Long> removed = new ArrayList<Long>();
+			for (long key=0; key<3000; key++) {
+				set.add(key);
+				expected.add(key);
+				if (key % 3 == 0) {
+					other.add(key);
+					removed.add(key);
+				}
+			}
+			set.removeAll(other);
+			expected.removeAll(removed);
+			assertEquals(expected.size(), set.size());
+			assertEquals(expected, toSet(set));
+
+			List<Long> added = new ArrayList<Long>();
+			for (long key=10000; key<12000; key++) {
+				added.add(key);
+			}
+			set.addAll(added);
+			expected.addAll(added);
+			assertEquals(expected, toSet(set));
+			assertTrue(set.containsAll(added));
+		} finally {
+			set.close();
+			other.close();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PrimitiveHashSetWithChainTest {
+	private static int[] randomInts(Random random, int size) {
+		int[] keys = new int[size];
+		for (int i=0; i<size; i++) {
+			/* Narrow range so that the inputs overlap, 0 included */
+			keys[i] = random.nextInt(3 * size + 1) - size;
+		}
+		return keys;
+	}
+
+	private static long[] randomLongs(Random random, int size) {
+		long[] keys = new long[size];
+		for (int i=0; i<size; i++) {
+			keys[i] = (random.nextInt(3 * size + 1) - size) * 0x100000001L;
+		}
+		return keys;
+	}
+
+	private static Set<Integer> toSet(int[] keys) {
+		Set<Integer> set = new HashSet<Integer>();
+		for (int key : keys) {
+			set.add(key);
+		}
+		return set;
+	}
+
+	private static Set<Long> toSet(long[] keys) {
+		Set<Long> set = new HashSet<Long>();
+		for (long key : keys) {
+			set.add(key);
+		}
+		return set;
+	}
+
+	private static void assertSameKeys(Set<Integer> expected, IntHashSetWithChain actual, String message) {
+		assertEquals(expected.size(), actual.size(), message);
+		assertEquals(expected, toSet(actual.toArray()), message);
+	}
+
+	private static void assertSameKeys(Set<Long> expected, LongHashSetWithChain actual, String message) {
+		assertEquals(expected.size(), actual.size(), message);
+		assertEquals(expected, toSet(actual.toArray()), message);
+	}
+
+	@Test
+	void singleKeyOperationsWhileResizing() {
+		IntHashSetWithChain ints = new IntHashSetWithChain(1, 1.0f);
+		LongHashSetWithChain longs = new LongHashSetWithChain(1, 1.0f);
+		Set<Integer> expected = new HashSet<Integer>();
+		Random random = new Random(7);
+		for (int i=0; i<20000; i++) {
+			int key = random.nextInt(4000) - 2000;
+			long longKey = key * 0x100000001L;
+			if (random.nextInt(3) == 0) {
+				boolean removed = expected.remove(key);
+				assertEquals(removed, ints.remove(key));
+				assertEquals(removed, longs.remove(longKey));
+			} else {
+				boolean added = expected.add(key);
+				assertEquals(added, ints.add(key));
+				assertEquals(added, longs.add(longKey));
+			}
+			assertEquals(expected.size(), ints.size());
+			assertEquals(expected.size(), longs.size());
+			assertEquals(expected.contains(0), ints.contains(0));
+			assertEquals(expected.contains(0), longs.contains(0));
+		}
+		assertSameKeys(expected, ints, "int");
+		for (int key=-2000; key<2000; key++) {
+			assertEquals(expected.contains(key), longs.contains(key * 0x100000001L));
+		}
+		assertFalse(ints.contains(5000));
+	}
+
+	@Test
+	void bulkOperationsOfIntSets() {
+		Random random = new Random(13);
+		for (int parallelism : SetTestSupport.PARALLELISMS) {
+			for (int capacityB : new int[] { 16, 1 << 12 }) {
+				String message = "parallelism " + parallelism + ", " + capacityB + " chains";
+				int[] keysA = randomInts(random, 20000);
+				int[] keysB = randomInts(random, 8000);
+				Set<Integer> a = toSet(keysA);
+				Set<Integer> b = toSet(keysB);
+
+				IntHashSetWithChain setA = new IntHashSetWithChain(1 << 12);
+				setA.setInlineThreshold(0);
+				setA.addAll(keysA, parallelism);
+				assertSameKeys(a, setA, message);
+				IntHashSetWithChain setB = new IntHashSetWithChain(capacityB);
+				setB.addAll(keysB, parallelism);
+				assertSameKeys(b, setB, message);
+
+				Set<Integer> expected = new HashSet<Integer>(a);
+				expected.addAll(b);
+				IntHashSetWithChain union = new IntHashSetWithChain(1 << 12);
+				union.setInlineThreshold(0);
+				union.addAll(setA, parallelism);
+				union.addAll(setB, parallelism);
+				assertSameKeys(expected, union, message);
+				assertTrue(union.containsAll(setB, parallelism), message);
+				assertTrue(union.containsAll(keysA, parallelism), message);
+
+				expected.retainAll(b);
+				union.retainAll(keysB, parallelism);
+				assertSameKeys(expected, union, message);
+
+				expected = new HashSet<Integer>(a);
+				expected.removeAll(b);
+				setA.removeAll(setB, parallelism);
+				assertSameKeys(expected, setA, message);
+				assertFalse(setA.containsAll(setB, parallelism), message);
+			}
+		}
+	}
+
+	@Test
+	void bulkOperationsOfLongSets() {
+		Random random = new Random(17);
+		for (int parallelism : SetTestSupport.PARALLELISMS) {
+			String message = "parallelism " + parallelism;
+			long[] keysA = randomLongs(random, 20000);
+			long[] keysB = randomLongs(random, 8000);
+			Set<Long> a = toSet(keysA);
+			Set<Long> b = toSet(keysB);
+
+			LongHashSetWithChain setA = new LongHashSetWithChain(1 << 12);
+			setA.setInlineThreshold(0);
+			setA.addAll(keysA, parallelism);
+			assertSameKeys(a, setA, message);
+			LongHashSetWithChain setB = new LongHashSetWithChain(16);
+			setB.addAll(keysB, parallelism);
+
+			Set<Long> expected = new HashSet<Long>(a);
+			expected.retainAll(b);
+			LongHashSetWithChain intersection = new LongHashSetWithChain(1 << 12);
+			intersection.addAll(setA, parallelism);
+			intersection.retainAll(setB, parallelism);
+			assertSameKeys(expected, intersection, message);
+
+			expected = new HashSet<Long>(a);
+			expected.removeAll(b);
+			setA.removeAll(keysB, parallelism);
+			assertSameKeys(expected, setA, message);
+		}
+	}
+
+	@Test
+	void setAlgebra() {
+		Random random = new Random(19);
+		int[] keysA = randomInts(random, 5000);
+		int[] keysB = randomInts(random, 3000);
+		IntHashSetWithChain setA = new IntHashSetWithChain(1 << 10);
+		setA.addAll(keysA);
+		IntHashSetWithChain setB = new IntHashSetWithChain(16);
+		setB.addAll(keysB);
+		Set<Integer> a = toSet(keysA);
+		Set<Integer> b = toSet(keysB);
+
+		Set<Integer> union = new HashSet<Integer>(a);
+		union.addAll(b);
+		Set<Integer> intersection = new HashSet<Integer>(a);
+		intersection.retainAll(b);
+		Set<Integer> difference = new HashSet<Integer>(a);
+		difference.removeAll(b);
+		Set<Integer> symmetricDifference = new HashSet<Integer>(union);
+		symmetricDifference.removeAll(intersection);
+
+		assertSameKeys(union, IntHashSetWithChain.union(setA, setB), "union");
+		assertSameKeys(intersection, IntHashSetWithChain.intersection(setA, setB), "intersection");
+		assertSameKeys(difference, IntHashSetWithChain.difference(setA, setB), "difference");
+		assertSameKeys(symmetricDifference, IntHashSetWithChain.symmetricDifference(setA, setB),
+					   "symmetricDifference");
+	}
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class SetExpressionTest {
+	/*
+	 * Operands of different table sizes and strategies, so that
+	 * some candidates do not have the layout of the result
+	 */
+	@Test
+	void evaluateCandidatesOfOtherLayouts() {
+		Random random = new Random(11);
+		Set<Integer> a = SetTestSupport.randomElements(random, 20000);
+		Set<Integer> b = SetTestSupport.randomElements(random, 3000);
+		Set<Integer> c = SetTestSupport.randomElements(random, 500);
+		HashSetWithChain<Integer> setA = SetTestSupport.newSet(new DefaultHashStrategy<Integer>(), 1 << 15, a);
+		HashSetWithChain<Integer> setB = SetTestSupport.newSet(new DefaultHashStrategy<Integer>(), 16, b);
+		HashSetWithChain<Integer> setC = SetTestSupport.newSet(new LegacyHashStrategy<Integer>(), 1 << 10, c);
+
+		Set<Integer> union = new HashSet<Integer>(a);
+		union.addAll(b);
+		union.addAll(c);
+		Set<Integer> intersection = new HashSet<Integer>(b);
+		intersection.retainAll(a);
+		Set<Integer> difference = new HashSet<Integer>(b);
+		difference.addAll(c);
+		difference.removeAll(a);
+		Set<Integer> symmetricDifference = new HashSet<Integer>(a);
+		symmetricDifference.addAll(c);
+		Set<Integer> common = new HashSet<Integer>(a);
+		common.retainAll(c);
+		symmetricDifference.removeAll(common);
+
+		for (int parallelism : SetTestSupport.PARALLELISMS) {
+			String message = "parallelism " + parallelism;
+			SetTestSupport.assertSameElements(union,
+				SetExpression.of(setA).union(setB).union(setC).evaluate(parallelism), message);
+			SetTestSupport.assertSameElements(intersection,
+				SetExpression.of(setB).intersection(setA).evaluate(parallelism), message);
+			SetTestSupport.assertSameElements(difference,
+				SetExpression.of(setB).union(setC).difference(setA).evaluate(parallelism), message);
+			SetTestSupport.assertSameElements(symmetricDifference,
+				SetExpression.of(setA).symmetricDifference(setC).evaluate(parallelism), message);
+		}
+	}
+
+	/*
+	 * Strategy that fails once the sets are built
+	 */
+	private static class FailingHashStrategy extends DefaultHashStrategy<Integer> {
+		private volatile boolean failing;
+
+		@Override
+		public int hash(Integer data) {
+			if (failing) {
+				throw new IllegalStateException("Failing hash strategy");
+			}
+			return super.hash(data);
+		}
+	}
+
+	/*
+	 * A chain that fails must not leave a partial result behind
+	 */
+	@Test
+	void evaluateThrowsIfAChainFails() {
+		Random random = new Random(12);
+		final FailingHashStrategy strategy = new FailingHashStrategy();
+		final HashSetWithChain<Integer> setA = SetTestSupport.newSet(strategy, 1 << 12, SetTestSupport.randomElements(random, 20000));
+		final HashSetWithChain<Integer> setB = SetTestSupport.newSet(strategy, 1 << 12, SetTestSupport.randomElements(random, 20000));
+		strategy.failing = true;
+		for (final int parallelism : SetTestSupport.PARALLELISMS) {
+			assertThrows(IllegalStateException.class, new Executable() {
+				public void execute() {
+					SetExpression.of(setA).intersection(setB).evaluate(parallelism);
+				}
+			}, "parallelism " + parallelism);
+		}
+	}
+}
\ No newline at end of file
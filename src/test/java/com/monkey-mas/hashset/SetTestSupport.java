@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ * Inputs and checks shared by the tests of the sets
+ */
+class SetTestSupport {
+	static final int[] PARALLELISMS = { 1, 4 };
+
+	/*
+	 * @return Set of the elements whose resize is complete, so that its layout is final
+	 */
+	static HashSetWithChain<Integer> newSet(HashStrategy<Integer> strategy, int initialCapacity,
+											Set<Integer> elements) {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>(initialCapacity, 0.75f, strategy);
+		for (Integer elem : elements) {
+			set.add(elem);
+		}
+		set.completeResize();
+		return set;
+	}
+
+	static Set<Integer> randomElements(Random random, int size) {
+		Set<Integer> elements = new HashSet<Integer>();
+		while (elements.size() < size) {
+			/* Narrow range so that the sets overlap, negative values included */
+			elements.add(random.nextInt(4 * size + 1) - 2 * size + (random.nextBoolean() ? 0 : Integer.MIN_VALUE / 2));
+		}
+		return elements;
+	}
+
+	static List<Long> range(long from, long to) {
+		List<Long> elements = new ArrayList<Long>();
+		for (long i=from; i<to; i++) {
+			elements.add(i);
+		}
+		return elements;
+	}
+
+	/*
+	 * @return Elements the iterator of the set returns, which must not repeat any
+	 */
+	static <T> Set<T> elementsOf(Iterable<T> set) {
+		Set<T> elements = new HashSet<T>();
+		for (T elem : set) {
+			assertTrue(elements.add(elem), "Duplicate " + elem);
+		}
+		return elements;
+	}
+
+	static void assertSameElements(Set<Integer> expected, HashSetWithChain<Integer> actual) {
+		assertSameElements(expected, actual, "");
+	}
+
+	static void assertSameElements(Set<Integer> expected, HashSetWithChain<Integer> actual, String message) {
+		assertEquals(expected.size(), actual.size(), message);
+		for (Integer elem : expected) {
+			assertTrue(actual.contains(elem), message + ": missing " + elem);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,211 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class SetWireFormatTest {
+	private static <T> byte[] write(HashSetWithChain<T> set, WireTypes type) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SetWireFormat.writeSet(set, type, Channels.newChannel(bytes));
+		return bytes.toByteArray();
+	}
+
+	private static <T> HashSetWithChain<T> read(byte[] bytes, WireTypes type) throws IOException {
+		return SetWireFormat.<T>readSet(Channels.newChannel(new ByteArrayInputStream(bytes)), type);
+	}
+
+	private static <T> void assertSameElements(Set<T> expected, HashSetWithChain<T> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (T elem : expected) {
+			assertTrue(actual.contains(elem), "Missing " + elem);
+		}
+	}
+
+	@Test
+	void integerRoundTrip() throws IOException {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>();
+		Set<Integer> expected = new HashSet<Integer>();
+		Random random = new Random(1);
+		for (int i=0; i<100000; i++) {
+			int value = random.nextInt();
+			set.add(value);
+			expected.add(value);
+		}
+		for (int value : new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1 }) {
+			set.add(value);
+			expected.add(value);
+		}
+		assertSameElements(expected, SetWireFormatTest.<Integer>read(write(set, WireTypes.INTEGER), WireTypes.INTEGER));
+	}
+
+	@Test
+	void longRoundTrip() throws IOException {
+		HashSetWithChain<Long> set = new HashSetWithChain<Long>();
+		Set<Long> expected = new HashSet<Long>();
+		Random random = new Random(2);
+		for (int i=0; i<100000; i++) {
+			long value = random.nextLong();
+			set.add(value);
+			expected.add(value);
+		}
+		/* The gap between MIN_VALUE and MAX_VALUE doesn't fit a signed long */
+		for (long value : new long[] { Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE + 1, 0L, -1L }) {
+			set.add(value);
+			expected.add(value);
+		}
+		assertSameElements(expected, SetWireFormatTest.<Long>read(write(set, WireTypes.LONG), WireTypes.LONG));
+	}
+
+	@Test
+	void stringRoundTrip() throws IOException {
+		HashSetWithChain<String> set = new HashSetWithChain<String>();
+		Set<String> expected = new HashSet<String>();
+		for (int i=0; i<50000; i++) {
+			String value = ((i % 3 == 0) ? "user:" : (i % 3 == 1) ? "\u00e9l\u00e8ve/" : "") + i;
+			set.add(value);
+			expected.add(value);
+		}
+		set.add("");
+		expected.add("");
+		assertSameElements(expected, SetWireFormatTest.<String>read(write(set, WireTypes.STRING), WireTypes.STRING));
+	}
+
+	@Test
+	void identityHashStrategyRehashes() throws IOException {
+		HashSetWithChain<String> set = new HashSetWithChain<String>(16, 0.75f, new IdentityHashStrategy<String>());
+		for (int i=0; i<1000; i++) {
+			set.add("key" + i);
+		}
+		ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(write(set, WireTypes.STRING)));
+		HashSetWithChain<String> copy = SetWireFormat.readSet(channel, WireTypes.STRING,
+															  new IdentityHashStrategy<String>());
+		assertEquals(1000, copy.size());
+		int found = 0;
+		for (String elem : copy) {
+			if (elem.startsWith("key")) {
+				found++;
+			}
+		}
+		assertEquals(1000, found);
+	}
+
+	@Test
+	void setThenDeltasOnOneChannel() throws IOException {
+		VersionedHashSetWithChain<Long> source = new VersionedHashSetWithChain<Long>();
+		for (long i=0; i<10000; i++) {
+			source.add(i);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		WritableByteChannel out = Channels.newChannel(bytes);
+		VersionedHashSetWithChain.Snapshot<Long> base = source.snapshot();
+		SetWireFormat.writeSet(base, WireTypes.LONG, out);
+
+		/* Adds and removes, growing the table in between */
+		source.removeAll(Arrays.asList(0L, 1L, 2L, 9999L));
+		for (long i=10000; i<50000; i++) {
+			source.add(i);
+		}
+		VersionedHashSetWithChain.Snapshot<Long> middle = source.snapshot();
+		SetWireFormat.writeDelta(base, middle, WireTypes.LONG, out);
+		source.add(-5L);
+		source.remove(100L);
+		VersionedHashSetWithChain.Snapshot<Long> target = source.snapshot();
+		SetWireFormat.writeDelta(middle, target, WireTypes.LONG, out);
+
+		ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+		HashSetWithChain<Long> replica = SetWireFormat.readSet(in, WireTypes.LONG);
+		long version = SetWireFormat.applyDelta(in, WireTypes.LONG, replica, base.getVersion());
+		assertEquals(middle.getVersion(), version);
+		version = SetWireFormat.applyDelta(in, WireTypes.LONG, replica, version);
+		assertEquals(target.getVersion(), version);
+
+		Set<Long> expected = new HashSet<Long>();
+		for (Long elem : target) {
+			expected.add(elem);
+		}
+		assertSameElements(expected, replica);
+		assertTrue(replica.contains(-5L));
+		assertTrue(!replica.contains(100L) && !replica.contains(0L));
+	}
+
+	@Test
+	void deltaOfAnotherVersionIsRejected() throws IOException {
+		VersionedHashSetWithChain<Integer> source = new VersionedHashSetWithChain<Integer>();
+		source.add(1);
+		VersionedHashSetWithChain.Snapshot<Integer> base = source.snapshot();
+		source.add(2);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SetWireFormat.writeDelta(base, source.snapshot(), WireTypes.INTEGER, Channels.newChannel(bytes));
+		final ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+		final HashSetWithChain<Integer> replica = new HashSetWithChain<Integer>();
+		assertThrows(IllegalStateException.class, new Executable() {
+			public void execute() throws Throwable {
+				SetWireFormat.applyDelta(in, WireTypes.INTEGER, replica, base.getVersion() + 1);
+			}
+		});
+	}
+
+	@Test
+	void truncatedStreamFails() throws IOException {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>();
+		for (int i=0; i<10000; i++) {
+			set.add(i);
+		}
+		byte[] bytes = write(set, WireTypes.INTEGER);
+		for (int length : new int[] { 0, 3, 10, bytes.length / 2, bytes.length - 1 }) {
+			final byte[] truncated = Arrays.copyOf(bytes, length);
+			assertThrows(EOFException.class, new Executable() {
+				public void execute() throws Throwable {
+					read(truncated, WireTypes.INTEGER);
+				}
+			});
+		}
+	}
+
+	@Test
+	void corruptStreamFails() throws IOException {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>();
+		set.add(1);
+		final byte[] bytes = write(set, WireTypes.INTEGER);
+
+		final byte[] magic = bytes.clone();
+		magic[4] ^= 0x01;
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Throwable {
+				read(magic, WireTypes.INTEGER);
+			}
+		});
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Throwable {
+				read(bytes, WireTypes.LONG);
+			}
+		});
+
+		/* A varint of more than 64 bits in place of the table size */
+		final byte[] overlong = Arrays.copyOf(bytes, bytes.length + 16);
+		Arrays.fill(overlong, 4, overlong.length, (byte)0xff);
+		overlong[0] = 0;
+		overlong[1] = 0;
+		overlong[2] = 0;
+		overlong[3] = (byte)(overlong.length - 4);
+		assertThrows(IOException.class, new Executable() {
+			public void execute() throws Throwable {
+				read(overlong, WireTypes.INTEGER);
+			}
+		});
+	}
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class ShardProtocolTest {
+	private static byte[] requestOf(Object... elements) throws IOException {
+		return ShardProtocol.encodeRequest(
+			new ShardProtocol.Request(ShardOperations.ADD_ALL, 1, 0, 0, elements));
+	}
+
+	@Test
+	void allowedElementsAreDecoded() throws IOException {
+		Object[] elements = { 1, 2L, "three" };
+		ShardProtocol.Request request = ShardProtocol.decodeRequest(requestOf(elements));
+		assertEquals(ShardOperations.ADD_ALL, request.operation);
+		assertArrayEquals(elements, request.elements);
+		assertEquals(Boolean.TRUE, ShardProtocol.decodeResponse(ShardProtocol.encodeResponse(true), 0));
+		assertEquals(5L, ShardProtocol.decodeResponse(ShardProtocol.encodeResponse(5L), 0));
+	}
+
+	@Test
+	void otherClassesAreRejected() throws IOException {
+		final byte[] request = requestOf(1, new ArrayList<Object>());
+		assertThrows(InvalidClassException.class, new Executable() {
+			public void execute() throws Throwable {
+				ShardProtocol.decodeRequest(request);
+			}
+		});
+
+		/* The shard answers with an error instead of running the request */
+		final byte[] response = new ShardServer().handle(request);
+		assertThrows(IllegalStateException.class, new Executable() {
+			public void execute() throws Throwable {
+				ShardProtocol.decodeResponse(response, 0);
+			}
+		});
+	}
+
+	@Test
+	void extraClassesCanBeAllowed() {
+		ObjectInputFilter filter = ShardProtocol.newFilter(" java.util.Date ; ");
+		assertEquals(ObjectInputFilter.Status.ALLOWED, filter.checkInput(new FilterInfo(Date.class)));
+		assertEquals(ObjectInputFilter.Status.ALLOWED, filter.checkInput(new FilterInfo(Object[].class)));
+		assertEquals(ObjectInputFilter.Status.REJECTED, filter.checkInput(new FilterInfo(ArrayList.class)));
+	}
+
+	private static class FilterInfo implements ObjectInputFilter.FilterInfo {
+		private final Class<?> serialClass;
+
+		FilterInfo(Class<?> serialClass) {
+			this.serialClass = serialClass;
+		}
+
+		public Class<?> serialClass() {
+			return serialClass;
+		}
+
+		public long arrayLength() {
+			return -1;
+		}
+
+		public long depth() {
+			return 1;
+		}
+
+		public long references() {
+			return 0;
+		}
+
+		public long streamBytes() {
+			return 0;
+		}
+	}
+}
\ No newline at end of file
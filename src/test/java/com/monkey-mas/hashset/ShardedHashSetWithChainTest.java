@@ -0,0 +1,216 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+class ShardedHashSetWithChainTest {
+	private LoopbackShardTransport transport;
+
+	@BeforeEach
+	void setUp() {
+		transport = new LoopbackShardTransport(4);
+	}
+
+	@AfterEach
+	void tearDown() {
+		transport.close();
+	}
+
+	@Test
+	void singleElementOperations() {
+		ShardedHashSetWithChain<String> set = new ShardedHashSetWithChain<String>(transport);
+		assertTrue(set.isEmpty());
+		assertTrue(set.add("a"));
+		assertFalse(set.add("a"));
+		assertTrue(set.add("b"));
+		assertTrue(set.contains("a"));
+		assertFalse(set.contains("c"));
+		assertEquals(2, set.size());
+		assertTrue(set.remove("a"));
+		assertFalse(set.remove("a"));
+		assertEquals(1, set.size());
+		set.close();
+	}
+
+	@Test
+	void elementsAreSpreadOverShards() {
+		ShardedHashSetWithChain<Long> set = new ShardedHashSetWithChain<Long>(transport);
+		int[] counts = new int[set.getNumberOfShards()];
+		for (Long elem : SetTestSupport.range(0, 10000)) {
+			counts[set.shardFor(elem)]++;
+		}
+		for (int count : counts) {
+			assertTrue(count > 10000 / set.getNumberOfShards() / 2, "Unbalanced shards");
+		}
+		set.close();
+	}
+
+	@Test
+	void bulkOperationsInSeveralBatches() {
+		ShardedHashSetWithChain<Long> set = new ShardedHashSetWithChain<Long>(transport);
+		set.setBatchSize(1000);
+		assertTrue(set.addAll(SetTestSupport.range(0, 20000)));
+		assertEquals(20000, set.size());
+		assertTrue(set.containsAll(SetTestSupport.range(5000, 15000)));
+		assertFalse(set.containsAll(SetTestSupport.range(19000, 20001)));
+
+		assertTrue(set.removeAll(SetTestSupport.range(0, 5000)));
+		assertEquals(15000, set.size());
+		assertFalse(set.contains(10L));
+
+		set.retainAll(SetTestSupport.range(10000, 30000));
+		assertEquals(new HashSet<Long>(SetTestSupport.range(10000, 20000)), SetTestSupport.elementsOf(set));
+		set.close();
+	}
+
+	/*
+	 * Every shard holds many pages, and the elements to retain take several batches
+	 */
+	@Test
+	void largeShardsArePagedAndRetainedInBatches() {
+		ShardedHashSetWithChain<Long> set = new ShardedHashSetWithChain<Long>(transport);
+		set.setBatchSize(100);
+		assertTrue(set.addAll(SetTestSupport.range(0, 20000)));
+		assertEquals(new HashSet<Long>(SetTestSupport.range(0, 20000)), SetTestSupport.elementsOf(set));
+
+		assertTrue(set.retainAll(SetTestSupport.range(15000, 40000)));
+		assertEquals(new HashSet<Long>(SetTestSupport.range(15000, 20000)), SetTestSupport.elementsOf(set));
+		set.close();
+	}
+
+	/*
+	 * Pages go on from the right element after the shard grew or shrank its table
+	 */
+	@Test
+	void pagesSurviveResizesOfTheShard() {
+		ConcurrentHashSetWithChain<Object> set = new ConcurrentHashSetWithChain<Object>(4);
+		set.setShrinkEnabled(true);
+		set.addAll(new ArrayList<Object>(SetTestSupport.range(0, 1000)));
+		Set<Object> seen = new HashSet<Object>();
+		long position = 0;
+		int pages = 0;
+		while (position != ShardProtocol.END_OF_ELEMENTS) {
+			Object[] result = ShardServer.page(set, position, 50);
+			position = (Long)result[0];
+			for (Object elem : (Object[])result[1]) {
+				assertTrue(seen.add(elem), "Duplicate " + elem);
+			}
+			/* Grow, then shrink the table between pages, with elements not seen either way */
+			if (pages++ % 2 == 0) {
+				set.addAll(new ArrayList<Object>(SetTestSupport.range(100000, 120000)));
+			} else {
+				set.removeAll(new ArrayList<Object>(SetTestSupport.range(100000, 120000)));
+			}
+		}
+		assertTrue(seen.containsAll(SetTestSupport.range(0, 1000)), "Missing elements");
+	}
+
+	@Test
+	void setOperationsStayOnTheShards() {
+		ShardedHashSetWithChain<Long> a = new ShardedHashSetWithChain<Long>(transport);
+		ShardedHashSetWithChain<Long> b = new ShardedHashSetWithChain<Long>(transport);
+		a.addAll(SetTestSupport.range(0, 3000));
+		b.addAll(SetTestSupport.range(2000, 5000));
+
+		ShardedHashSetWithChain<Long> union = ShardedHashSetWithChain.union(a, b);
+		assertEquals(new HashSet<Long>(SetTestSupport.range(0, 5000)), SetTestSupport.elementsOf(union));
+		ShardedHashSetWithChain<Long> intersection = ShardedHashSetWithChain.intersection(a, b);
+		assertEquals(new HashSet<Long>(SetTestSupport.range(2000, 3000)), SetTestSupport.elementsOf(intersection));
+		ShardedHashSetWithChain<Long> difference = ShardedHashSetWithChain.difference(a, b);
+		assertEquals(new HashSet<Long>(SetTestSupport.range(0, 2000)), SetTestSupport.elementsOf(difference));
+
+		/* Operands are left unchanged */
+		assertEquals(3000, a.size());
+		assertEquals(3000, b.size());
+		for (ShardedHashSetWithChain<Long> set : Arrays.asList(a, b, union, intersection, difference)) {
+			set.close();
+		}
+	}
+
+	@Test
+	void setsOnOtherTransportsAreRejected() {
+		final ShardedHashSetWithChain<Long> a = new ShardedHashSetWithChain<Long>(transport);
+		final ShardedHashSetWithChain<Long> b = new ShardedHashSetWithChain<Long>(new LoopbackShardTransport(4));
+		assertThrows(IllegalArgumentException.class, new Executable() {
+			public void execute() {
+				ShardedHashSetWithChain.union(a, b);
+			}
+		});
+		a.close();
+		b.close();
+	}
+
+	@Test
+	void closedSetIsRejected() {
+		final ShardedHashSetWithChain<Long> set = new ShardedHashSetWithChain<Long>(transport);
+		set.add(1L);
+		set.close();
+		assertThrows(IllegalStateException.class, new Executable() {
+			public void execute() {
+				set.contains(1L);
+			}
+		});
+	}
+
+	/*
+	 * Loopback transport whose last shard fails set algebra
+	 */
+	private static class FailingTransport implements ShardTransport {
+		private final LoopbackShardTransport shards = new LoopbackShardTransport(4);
+		long failedResultSetId;
+
+		public int getNumberOfShards() {
+			return shards.getNumberOfShards();
+		}
+
+		public byte[] call(int shard, byte[] request) throws IOException {
+			ShardProtocol.Request decoded = ShardProtocol.decodeRequest(request);
+			if (decoded.operation == ShardOperations.UNION && shard == getNumberOfShards() - 1) {
+				failedResultSetId = decoded.resultSetId;
+				throw new IOException("Shard is down");
+			}
+			return shards.call(shard, request);
+		}
+
+		public void close() {
+			shards.close();
+		}
+	}
+
+	@Test
+	void failedSetOperationDropsItsResult() throws IOException {
+		final FailingTransport failing = new FailingTransport();
+		final ShardedHashSetWithChain<Long> a = new ShardedHashSetWithChain<Long>(failing);
+		final ShardedHashSetWithChain<Long> b = new ShardedHashSetWithChain<Long>(failing);
+		a.addAll(SetTestSupport.range(0, 1000));
+		b.addAll(SetTestSupport.range(500, 1500));
+		assertThrows(IllegalStateException.class, new Executable() {
+			public void execute() {
+				ShardedHashSetWithChain.union(a, b);
+			}
+		});
+		for (int shard=0; shard<failing.getNumberOfShards() - 1; shard++) {
+			final byte[] response = failing.call(shard, ShardProtocol.encodeRequest(
+				new ShardProtocol.Request(ShardOperations.SIZE, failing.failedResultSetId, 0, 0, null)));
+			final int target = shard;
+			assertThrows(IllegalStateException.class, new Executable() {
+				public void execute() throws Throwable {
+					ShardProtocol.decodeResponse(response, target);
+				}
+			}, "Result left on shard " + shard);
+		}
+		a.close();
+		b.close();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class StreamingBulkTest {
+	@Test
+	void retainAllOfIteratorInSeveralBatches() {
+		Random random = new Random(17);
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>();
+		set.setIngestBatchSize(1000);
+		Set<Integer> expected = new HashSet<Integer>();
+		for (int i=0; i<30000; i++) {
+			int value = random.nextInt(60000);
+			set.add(value);
+			expected.add(value);
+		}
+		List<Integer> source = new ArrayList<Integer>();
+		for (int i=0; i<40000; i++) {
+			source.add(random.nextInt(120000));
+		}
+		expected.retainAll(source);
+		assertTrue(set.retainAll(source.iterator()));
+		assertEquals(expected.size(), set.size());
+		for (Integer elem : expected) {
+			assertTrue(set.contains(elem));
+		}
+	}
+
+	@Test
+	void bulkOperationsOfStreams() {
+		HashSetWithChain<Integer> set = new HashSetWithChain<Integer>();
+		set.setIngestBatchSize(777);
+		assertTrue(set.addAll(IntStream.range(0, 10000).boxed()));
+		assertEquals(10000, set.size());
+		assertTrue(set.containsAll(IntStream.range(0, 10000).boxed()));
+		assertFalse(set.containsAll(IntStream.range(5000, 10001).boxed()));
+		assertTrue(set.removeAll(IntStream.range(0, 5000).boxed()));
+		assertTrue(set.retainAll(IntStream.range(7000, 20000).boxed()));
+		assertEquals(3000, set.size());
+		assertFalse(set.contains(6999));
+		assertTrue(set.contains(7000));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,178 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class VersionedHashSetWithChainTest {
+	/*
+	 * Strategy that stops once at the given element, the first time a bulk
+	 * operation hashes it, so that the operation can be watched half applied
+	 */
+	private static class PausingHashStrategy extends DefaultHashStrategy<Long> {
+		private final Long pauseAt;
+		private final AtomicBoolean armed = new AtomicBoolean();
+		final CountDownLatch paused = new CountDownLatch(1);
+		final CountDownLatch resumed = new CountDownLatch(1);
+
+		PausingHashStrategy(Long pauseAt) {
+			this.pauseAt = pauseAt;
+		}
+
+		void arm() {
+			armed.set(true);
+		}
+
+		@Override
+		public int hash(Long data) {
+			if (data.equals(pauseAt) && armed.compareAndSet(true, false)) {
+				paused.countDown();
+				try {
+					resumed.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.hash(data);
+		}
+	}
+
+	/*
+	 * Strategy that fails on the given element once armed
+	 */
+	private static class FailingHashStrategy extends DefaultHashStrategy<Long> {
+		private final Long failAt;
+		volatile boolean armed;
+
+		FailingHashStrategy(Long failAt) {
+			this.failAt = failAt;
+		}
+
+		@Override
+		public int hash(Long data) {
+			if (armed && data.equals(failAt)) {
+				throw new IllegalStateException("Failing hash strategy");
+			}
+			return super.hash(data);
+		}
+	}
+
+	@Test
+	void snapshotIsUnchangedByLaterWrites() {
+		VersionedHashSetWithChain<Long> set = new VersionedHashSetWithChain<Long>(16);
+		set.addAll(SetTestSupport.range(0, 1000));
+		VersionedHashSetWithChain.Snapshot<Long> snapshot = set.snapshot();
+		long version = snapshot.getVersion();
+
+		assertTrue(set.add(5000L));
+		assertTrue(set.remove(999L));
+		assertTrue(set.removeAll(SetTestSupport.range(0, 100)));
+		assertTrue(set.retainAll(SetTestSupport.range(0, 500)));
+		/* Enough elements to grow the table under the snapshot */
+		assertTrue(set.addAll(SetTestSupport.range(10000, 20000)));
+
+		Set<Long> expected = new HashSet<Long>(SetTestSupport.range(100, 500));
+		expected.addAll(SetTestSupport.range(10000, 20000));
+		assertEquals(expected, SetTestSupport.elementsOf(set));
+		assertEquals(version, snapshot.getVersion());
+		assertEquals(1000, snapshot.size());
+		assertEquals(new HashSet<Long>(SetTestSupport.range(0, 1000)), SetTestSupport.elementsOf(snapshot));
+		assertFalse(snapshot.contains(5000L));
+		assertFalse(snapshot.contains(10000L));
+	}
+
+	@Test
+	void readersSeeTheOldVersionUntilItIsPublished() throws Exception {
+		final PausingHashStrategy strategy = new PausingHashStrategy(900L);
+		final VersionedHashSetWithChain<Long> set =
+			new VersionedHashSetWithChain<Long>(64, 4.0f, strategy, ChainTypes.HASH_SET);
+		set.addAll(SetTestSupport.range(0, 1000));
+		long version = set.getVersion();
+		strategy.arm();
+		ExecutorService service = Executors.newSingleThreadExecutor();
+		try {
+			/* Removes the elements in order on a single thread, then stops at 900 */
+			Future<Boolean> removal = service.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					return set.removeAll(SetTestSupport.range(0, 1000), 1);
+				}
+			});
+			strategy.paused.await();
+			for (long key=0; key<1000; key++) {
+				assertTrue(set.contains(key), "Removed before publishing: " + key);
+			}
+			assertEquals(1000, set.size());
+			assertEquals(version, set.getVersion());
+			assertEquals(1000, set.snapshot().size());
+
+			strategy.resumed.countDown();
+			assertTrue(removal.get());
+		} finally {
+			strategy.resumed.countDown();
+			service.shutdown();
+		}
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains(0L));
+		assertTrue(set.getVersion() > version);
+	}
+
+	@Test
+	void failedBulkOperationRollsBack() {
+		FailingHashStrategy strategy = new FailingHashStrategy(1500L);
+		VersionedHashSetWithChain<Long> set =
+			new VersionedHashSetWithChain<Long>(64, 4.0f, strategy, ChainTypes.HASH_SET);
+		set.addAll(SetTestSupport.range(0, 1000));
+		long version = set.getVersion();
+		strategy.armed = true;
+
+		/* The elements before 1500 are removed from the next version before it fails */
+		assertFalse(set.removeAll(SetTestSupport.range(0, 2000), 1));
+		assertFalse(set.retainAll(SetTestSupport.range(1000, 2000), 1));
+		assertFalse(set.addAll(SetTestSupport.range(1000, 2000), 1));
+		assertEquals(1000, set.size());
+		assertEquals(version, set.getVersion());
+		assertEquals(new HashSet<Long>(SetTestSupport.range(0, 1000)), SetTestSupport.elementsOf(set));
+
+		/* Writes go on from the published table and size */
+		strategy.armed = false;
+		assertTrue(set.add(1000L));
+		assertTrue(set.remove(0L));
+		assertEquals(1000, set.size());
+		assertTrue(set.removeAll(SetTestSupport.range(0, 500)));
+		assertEquals(501, set.size());
+		assertEquals(new HashSet<Long>(SetTestSupport.range(500, 1001)), SetTestSupport.elementsOf(set));
+	}
+
+	@Test
+	void versionIncreasesWithEveryPublishedChange() {
+		VersionedHashSetWithChain<Long> set = new VersionedHashSetWithChain<Long>(16);
+		long version = set.getVersion();
+		assertTrue(set.add(1L));
+		assertTrue(set.getVersion() > version);
+
+		version = set.getVersion();
+		assertFalse(set.add(1L));
+		assertFalse(set.remove(2L));
+		assertEquals(version, set.getVersion());
+
+		assertTrue(set.addAll(SetTestSupport.range(0, 1000)));
+		assertTrue(set.getVersion() > version);
+		version = set.getVersion();
+		assertEquals(version, set.snapshot().getVersion());
+
+		assertTrue(set.remove(1L));
+		assertTrue(set.getVersion() > version);
+		version = set.getVersion();
+		assertTrue(set.retainAll(SetTestSupport.range(0, 500)));
+		assertTrue(set.getVersion() > version);
+	}
+}
\ No newline at end of file